@@ -0,0 +1,92 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.io.Files;
+
+/**
+ * Test resources of the other modules, used as benchmark input. Root directory of the repository is read from the
+ * <code>benchmarks.root</code> system property, and defaults to the current directory or its parent, so that
+ * benchmarks can be executed from the root directory or from the benchmarks module.
+ */
+public final class Corpus {
+  private static final String ROOT_PROPERTY = "benchmarks.root";
+
+  private Corpus() {
+    // No constructor
+  }
+
+  public static File getRoot() {
+    String prop = System.getProperty(ROOT_PROPERTY);
+    if (prop != null)
+      return new File(prop).getAbsoluteFile();
+    File dir = new File("").getAbsoluteFile();
+    if (new File(dir, "proparse").isDirectory())
+      return dir;
+    if ((dir.getParentFile() != null) && new File(dir.getParentFile(), "proparse").isDirectory())
+      return dir.getParentFile();
+    throw new IllegalStateException("Unable to find repository root directory, set " + ROOT_PROPERTY + " property");
+  }
+
+  /**
+   * @param path Path relative to repository root
+   */
+  public static File getFile(String path) {
+    File file = new File(getRoot(), path);
+    if (!file.exists())
+      throw new IllegalStateException("File or directory not found: " + file.getAbsolutePath());
+    return file;
+  }
+
+  /**
+   * Read all files from one directory (not recursively) with one of those extensions, sorted by name
+   * 
+   * @return Map of file name to file content
+   */
+  public static Map<String, byte[]> readFiles(String path, String... extensions) throws IOException {
+    File[] files = getFile(path).listFiles();
+    if (files == null)
+      throw new IllegalStateException("Not a directory: " + path);
+    Arrays.sort(files);
+    Map<String, byte[]> map = new LinkedHashMap<>();
+    for (File f : files) {
+      if (f.isFile() && hasExtension(f.getName(), extensions)) {
+        map.put(f.getName(), Files.toByteArray(f));
+      }
+    }
+    if (map.isEmpty())
+      throw new IllegalStateException("No file found in " + path);
+    return map;
+  }
+
+  private static boolean hasExtension(String name, String... extensions) {
+    for (String ext : extensions) {
+      if (name.endsWith(ext))
+        return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.rssw.antlr.database.DumpFileUtils;
+
+/**
+ * DumpFileUtils on the database-parser test files, or on one large generated dump file
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DumpFileBenchmark {
+
+  /**
+   * <code>resources</code> for the database-parser test files, <code>synthetic</code> for one large generated file
+   */
+  @Param({"resources", "synthetic"})
+  public String corpus;
+
+  /**
+   * Number of tables in the synthetic dump file
+   */
+  @Param({"500"})
+  public int syntheticTables;
+
+  private final Map<String, byte[]> files = new LinkedHashMap<>();
+
+  @Setup
+  public void setUp() throws IOException {
+    files.clear();
+    if ("synthetic".equals(corpus))
+      files.put("synthetic.df", SyntheticSources.dumpFile(syntheticTables).getBytes(StandardCharsets.UTF_8));
+    else
+      files.putAll(Corpus.readFiles("database-parser/src/test/resources", ".df"));
+  }
+
+  @Benchmark
+  public void parseTree(Blackhole bh) throws IOException {
+    for (byte[] content : files.values()) {
+      bh.consume(DumpFileUtils.getDumpFileParseTree(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Benchmark
+  public void databaseDescription(Blackhole bh) throws IOException {
+    for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+      bh.consume(DumpFileUtils.getDatabaseDescription(new ByteArrayInputStream(entry.getValue()),
+          StandardCharsets.UTF_8, entry.getKey()));
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.prorefactor.core.IConstants;
+import org.prorefactor.core.JPNode;
+import org.prorefactor.core.ProToken;
+import org.prorefactor.treeparser.ParseUnit;
+
+import com.google.common.io.ByteSource;
+
+/**
+ * Attributes and links of every node of the Proparse regression files (after TreeParser01), stored in JPNode objects,
+ * compared with the previous implementation (up to four HashMap objects per node). Both benchmarks create the same
+ * nodes and set the same values. Allocation rate is reported by the GC profiler, retained size is measured by
+ * {@link JPNodeFootprint}. The legacy benchmark is the recorded baseline.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JPNodeBenchmark {
+  private static final int[] INT_ATTRS = {
+      IConstants.STORETYPE, IConstants.OPERATOR, IConstants.STATE2, IConstants.STATEHEAD, IConstants.INLINE_VAR_DEF,
+      IConstants.UNQUALIFIED_FIELD, IConstants.CONTEXT_QUALIFIER, IConstants.TO_BE_CUT};
+  private static final int[] LINKS = {
+      IConstants.SYMBOL, IConstants.TET_NODE, IConstants.BUFFERSCOPE, IConstants.BLOCK, IConstants.COMMENTS,
+      IConstants.ORIGINAL, IConstants.FIELD_CONTAINER, IConstants.CALL, IConstants.SUPER_CLASS_TREE,
+      IConstants.FILE_NAME_ARRAY};
+
+  private final List<NodeValues> nodes = new ArrayList<>();
+
+  @Setup
+  public void setUp() throws Exception {
+    nodes.clear();
+    nodes.addAll(collectNodes());
+  }
+
+  /**
+   * @return Values of every node of the Proparse regression files
+   */
+  static List<NodeValues> collectNodes() throws Exception {
+    ProparseState proparse = new ProparseState();
+    proparse.corpus = "bugsfixed";
+    proparse.setUp();
+    List<NodeValues> list = new ArrayList<>();
+    for (Map.Entry<String, ByteSource> entry : proparse.sources.entrySet()) {
+      // Every file of the corpus is accepted by the parser, TreeParser01 failures are not expected
+      ParseUnit unit = proparse.parseANTLR2(entry.getKey(), entry.getValue());
+      unit.treeParser01();
+      collect(unit.getTopNode(), list);
+    }
+    if (list.isEmpty())
+      throw new IllegalStateException("No node in corpus");
+    return list;
+  }
+
+  private static void collect(JPNode root, List<NodeValues> list) {
+    for (JPNode node = root; node != null; node = node.getNextSibling()) {
+      list.add(new NodeValues(node));
+      collect(node.getFirstChild(), list);
+    }
+  }
+
+  @Benchmark
+  public void attributes(Blackhole bh) {
+    for (NodeValues values : nodes) {
+      JPNode node = new JPNode(values.token);
+      for (int zz = 0; zz < values.intAttrs.length; zz += 2) {
+        node.attrSet(values.intAttrs[zz], values.intAttrs[zz + 1]);
+      }
+      if (values.qualifiedClass != null)
+        node.attrSet(IConstants.QUALIFIED_CLASS_INT, values.qualifiedClass);
+      for (int zz = 0; zz < values.linkKeys.length; zz++) {
+        node.setLink(values.linkKeys[zz], values.linkValues[zz]);
+      }
+      bh.consume(node);
+    }
+  }
+
+  @Benchmark
+  public void hashMaps(Blackhole bh) {
+    for (NodeValues values : nodes) {
+      LegacyNode node = new LegacyNode(values.token);
+      for (int zz = 0; zz < values.intAttrs.length; zz += 2) {
+        node.attrSet(values.intAttrs[zz], values.intAttrs[zz + 1]);
+      }
+      if (values.qualifiedClass != null)
+        node.attrSet(IConstants.QUALIFIED_CLASS_INT, values.qualifiedClass);
+      for (int zz = 0; zz < values.linkKeys.length; zz++) {
+        node.setLink(values.linkKeys[zz], values.linkValues[zz]);
+      }
+      bh.consume(node);
+    }
+  }
+
+  /**
+   * Values explicitly set on one node (computed attributes such as ABBREVIATED or SOURCENUM are not stored)
+   */
+  static class NodeValues {
+    final ProToken token;
+    final int[] intAttrs;
+    final String qualifiedClass;
+    final int[] linkKeys;
+    final Object[] linkValues;
+
+    NodeValues(JPNode node) {
+      token = new ProToken(node.getNodeType(), node.getText());
+      List<Integer> attrs = new ArrayList<>();
+      for (int key : INT_ATTRS) {
+        int val = node.attrGet(key);
+        if (val != 0) {
+          attrs.add(key);
+          attrs.add(val);
+        }
+      }
+      intAttrs = attrs.stream().mapToInt(Integer::intValue).toArray();
+      String str = node.attrGetS(IConstants.QUALIFIED_CLASS_INT);
+      qualifiedClass = str.isEmpty() ? null : str;
+      List<Integer> keys = new ArrayList<>();
+      List<Object> values = new ArrayList<>();
+      for (int key : LINKS) {
+        Object obj = node.getLink(key);
+        if (obj != null) {
+          keys.add(key);
+          values.add(obj);
+        }
+      }
+      linkKeys = keys.stream().mapToInt(Integer::intValue).toArray();
+      linkValues = values.toArray();
+    }
+  }
+
+  /**
+   * Fields and attribute storage of the previous JPNode implementation
+   */
+  @SuppressWarnings("unused")
+  static class LegacyNode {
+    private final ProToken token;
+    private LegacyNode down;
+    private LegacyNode right;
+    private LegacyNode left;
+    private LegacyNode up;
+    private Map<Integer, Integer> attrMap;
+    private Map<String, String> attrMapStrings;
+    private Map<Integer, Object> linkMap;
+    private Map<Integer, String> stringAttributes;
+
+    LegacyNode(ProToken token) {
+      this.token = token;
+    }
+
+    void attrSet(int key, String value) {
+      if (stringAttributes == null)
+        stringAttributes = new HashMap<>();
+      stringAttributes.put(key, value);
+    }
+
+    void attrSet(Integer key, int val) {
+      if (attrMap == null)
+        attrMap = new HashMap<>();
+      attrMap.put(key, val);
+    }
+
+    void setLink(Integer key, Object value) {
+      if (linkMap == null)
+        linkMap = new HashMap<>();
+      linkMap.put(key, value);
+    }
+  }
+}
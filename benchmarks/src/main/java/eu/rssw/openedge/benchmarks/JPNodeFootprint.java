@@ -0,0 +1,104 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+import org.openjdk.jol.vm.VM;
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.IConstants;
+import org.prorefactor.core.JPNode;
+import org.prorefactor.core.ProToken;
+
+import eu.rssw.openedge.benchmarks.JPNodeBenchmark.LegacyNode;
+import eu.rssw.openedge.benchmarks.JPNodeBenchmark.NodeValues;
+
+/**
+ * Retained size of the nodes created by {@link JPNodeBenchmark}, measured with JOL. Every node of the Proparse
+ * regression files is recreated with the same attributes and links, in a JPNode and in a LegacyNode. Objects shared
+ * between nodes (token, link targets, qualified class name, cached Integer objects and empty arrays) are excluded, so
+ * the result is the size of the node itself and of its attribute storage.
+ * <p>
+ * Run with <code>java -cp target/benchmarks.jar eu.rssw.openedge.benchmarks.JPNodeFootprint</code>
+ */
+public class JPNodeFootprint {
+  private static final ProToken TOKEN = new ProToken(ABLNodeType.ID, "");
+  private static final Object LINK = new Object();
+  private static final String QUALIFIED_CLASS = "";
+
+  private JPNodeFootprint() {
+    // No constructor
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<NodeValues> values = JPNodeBenchmark.collectNodes();
+    List<JPNode> nodes = new ArrayList<>(values.size());
+    List<LegacyNode> legacyNodes = new ArrayList<>(values.size());
+    List<Object> legacyShared = new ArrayList<>();
+    int withAttributes = 0;
+    for (NodeValues val : values) {
+      JPNode node = new JPNode(TOKEN);
+      LegacyNode legacy = new LegacyNode(TOKEN);
+      for (int zz = 0; zz < val.intAttrs.length; zz += 2) {
+        node.attrSet(val.intAttrs[zz], val.intAttrs[zz + 1]);
+        legacy.attrSet(val.intAttrs[zz], val.intAttrs[zz + 1]);
+        // Integer cache, see Integer.valueOf()
+        legacyShared.add(Integer.valueOf(val.intAttrs[zz]));
+        legacyShared.add(Integer.valueOf(val.intAttrs[zz + 1]));
+      }
+      if (val.qualifiedClass != null) {
+        node.attrSet(IConstants.QUALIFIED_CLASS_INT, QUALIFIED_CLASS);
+        legacy.attrSet(IConstants.QUALIFIED_CLASS_INT, QUALIFIED_CLASS);
+        legacyShared.add(Integer.valueOf(IConstants.QUALIFIED_CLASS_INT));
+      }
+      for (int key : val.linkKeys) {
+        node.setLink(key, LINK);
+        legacy.setLink(key, LINK);
+        legacyShared.add(Integer.valueOf(key));
+      }
+      if ((val.intAttrs.length > 0) || (val.qualifiedClass != null) || (val.linkKeys.length > 0))
+        withAttributes++;
+      nodes.add(node);
+      legacyNodes.add(legacy);
+    }
+    legacyShared.removeIf(obj -> (Integer) obj < -128 || (Integer) obj > 127);
+
+    // An empty JPNode only references the token and the shared empty arrays
+    JPNode empty = new JPNode(TOKEN);
+    long shared = GraphLayout.parseInstance(empty, LINK, QUALIFIED_CLASS).totalSize()
+        - ClassLayout.parseInstance(empty).instanceSize();
+    legacyShared.add(TOKEN);
+    legacyShared.add(LINK);
+    legacyShared.add(QUALIFIED_CLASS);
+    long legacySharedSize = GraphLayout.parseInstance(legacyShared.stream().distinct().toArray()).totalSize();
+
+    long size = GraphLayout.parseInstance(nodes.toArray()).totalSize() - shared;
+    long legacySize = GraphLayout.parseInstance(legacyNodes.toArray()).totalSize() - legacySharedSize;
+
+    System.out.println(VM.current().details());
+    System.out.printf("Nodes: %d (%d with attributes or links)%n", nodes.size(), withAttributes);
+    System.out.printf("JPNode:     %,d bytes, %.1f bytes per node%n", size, (double) size / nodes.size());
+    System.out.printf("LegacyNode: %,d bytes, %.1f bytes per node%n", legacySize,
+        (double) legacySize / legacyNodes.size());
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.ProToken;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+
+import com.google.common.io.ByteSource;
+
+import antlr.TokenStream;
+import antlr.TokenStreamException;
+
+/**
+ * Keyword lookup of each ID and keyword token of the Proparse regression files, directly from a StringBuilder (as done
+ * by the lexer), compared with the previous implementation (lowercased copy looked up in a map of all abbreviations)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeywordBenchmark {
+  private final List<StringBuilder> words = new ArrayList<>();
+  private final Map<String, ABLNodeType> literals = new HashMap<>();
+
+  @Setup
+  public void setUp() throws IOException, TokenStreamException {
+    ProparseState proparse = new ProparseState();
+    proparse.corpus = "bugsfixed";
+    proparse.setUp();
+    for (Map.Entry<String, ByteSource> entry : proparse.sources.entrySet()) {
+      ProgressLexer lexer = new ProgressLexer(proparse.session, entry.getValue(), entry.getKey(), false);
+      TokenStream stream = lexer.getANTLR2TokenStream(true);
+      ProToken tok = (ProToken) stream.nextToken();
+      while (tok.getNodeType() != ABLNodeType.EOF) {
+        if ((tok.getNodeType() == ABLNodeType.ID) || tok.getNodeType().isKeyword())
+          words.add(new StringBuilder(tok.getText()));
+        tok = (ProToken) stream.nextToken();
+      }
+    }
+
+    // Every prefix of every keyword: more entries than real abbreviations, but same cost per lookup
+    literals.clear();
+    for (ABLNodeType type : ABLNodeType.values()) {
+      if (type.isKeyword()) {
+        for (int zz = 1; zz <= type.getText().length(); zz++) {
+          literals.put(type.getText().substring(0, zz), type);
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void trie(Blackhole bh) {
+    for (StringBuilder word : words) {
+      bh.consume(ABLNodeType.getLiteral(word, null));
+    }
+  }
+
+  @Benchmark
+  public void hashMap(Blackhole bh) {
+    for (StringBuilder word : words) {
+      bh.consume(literals.get(word.toString().toLowerCase()));
+    }
+  }
+}
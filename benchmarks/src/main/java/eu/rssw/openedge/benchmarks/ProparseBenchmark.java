@@ -0,0 +1,97 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+import org.prorefactor.treeparser.ParseUnit;
+
+import com.google.common.io.ByteSource;
+
+/**
+ * Each invocation processes the whole corpus, so scores are in corpus per second. Parse benchmarks include lexer and
+ * preprocessor, and TreeParser01 benchmark includes ANTLR2 parser.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProparseBenchmark {
+
+  @Benchmark
+  public void lexer(ProparseState state, Blackhole bh) {
+    for (Map.Entry<String, ByteSource> entry : state.sources.entrySet()) {
+      bh.consume(consume(new ProgressLexer(state.session, entry.getValue(), entry.getKey(), true)));
+    }
+  }
+
+  @Benchmark
+  public void preprocessor(ProparseState state, Blackhole bh) {
+    for (Map.Entry<String, ByteSource> entry : state.sources.entrySet()) {
+      bh.consume(consume(new ProgressLexer(state.session, entry.getValue(), entry.getKey(), false)));
+    }
+  }
+
+  @Benchmark
+  public void parserANTLR2(ProparseState state, Blackhole bh) throws Exception {
+    for (Map.Entry<String, ByteSource> entry : state.sources.entrySet()) {
+      bh.consume(state.parseANTLR2(entry.getKey(), entry.getValue()).getTopNode());
+    }
+  }
+
+  @Benchmark
+  public void parserANTLR4(ProparseState state, Blackhole bh) {
+    for (Map.Entry<String, ByteSource> entry : state.sources.entrySet()) {
+      bh.consume(state.parseANTLR4(entry.getKey(), entry.getValue()));
+    }
+  }
+
+  @Benchmark
+  public void treeParser01(ProparseState state, Blackhole bh) throws Exception {
+    for (Map.Entry<String, ByteSource> entry : state.sources.entrySet()) {
+      ParseUnit unit = state.parseANTLR2(entry.getKey(), entry.getValue());
+      unit.treeParser01();
+      bh.consume(unit.getRootScope());
+    }
+  }
+
+  private static int consume(TokenSource lexer) {
+    int count = 0;
+    Token tok = lexer.nextToken();
+    while (tok.getType() != Token.EOF) {
+      count++;
+      tok = lexer.nextToken();
+    }
+    return count;
+  }
+}
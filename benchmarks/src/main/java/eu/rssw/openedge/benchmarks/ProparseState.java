@@ -0,0 +1,112 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.prorefactor.core.schema.Schema;
+import org.prorefactor.proparse.antlr4.JPNodeVisitor;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+import org.prorefactor.proparse.antlr4.TwoStageParser;
+import org.prorefactor.proparse.antlr4.nodetypes.ProgramRootNode;
+import org.prorefactor.refactor.RefactorSession;
+import org.prorefactor.refactor.settings.ProparseSettings;
+import org.prorefactor.treeparser.ParseUnit;
+
+import com.google.common.io.ByteSource;
+
+/**
+ * Proparse session and source code shared by all Proparse benchmarks. Session is configured as in Proparse unit tests
+ * (same propath and sports2000 schema). Files which can't be parsed by both ANTLR2 and ANTLR4 engines are discarded
+ * during setup, so that every engine works on the same input.
+ */
+@State(Scope.Benchmark)
+public class ProparseState {
+  private static final String RESOURCES = "proparse/src/test/resources";
+
+  /**
+   * <code>bugsfixed</code> for the Proparse regression files, <code>synthetic</code> for one large generated procedure
+   */
+  @Param({"bugsfixed", "synthetic"})
+  public String corpus;
+
+  /**
+   * Number of blocks in the synthetic procedure
+   */
+  @Param({"500"})
+  public int syntheticBlocks;
+
+  RefactorSession session;
+  final Map<String, ByteSource> sources = new LinkedHashMap<>();
+
+  @Setup
+  public void setUp() throws IOException {
+    File resources = Corpus.getFile(RESOURCES);
+    ProparseSettings settings = new ProparseSettings(
+        resources.getAbsolutePath() + "," + new File(resources, "data").getAbsolutePath());
+    Schema schema = new Schema(new File(resources, "projects/sports2000/sports2000.cache").getAbsolutePath(), true);
+    session = new RefactorSession(settings, schema);
+
+    sources.clear();
+    if ("synthetic".equals(corpus)) {
+      sources.put("synthetic.p",
+          ByteSource.wrap(SyntheticSources.procedure(syntheticBlocks).getBytes(StandardCharsets.UTF_8)));
+    } else {
+      for (Map.Entry<String, byte[]> entry : Corpus.readFiles(RESOURCES + "/data/" + corpus, ".p", ".w",
+          ".cls").entrySet()) {
+        sources.put(entry.getKey(), ByteSource.wrap(entry.getValue()));
+      }
+    }
+    Iterator<Map.Entry<String, ByteSource>> iter = sources.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<String, ByteSource> entry = iter.next();
+      try {
+        parseANTLR2(entry.getKey(), entry.getValue());
+        parseANTLR4(entry.getKey(), entry.getValue());
+      } catch (Exception caught) {
+        iter.remove();
+      }
+    }
+    if (sources.isEmpty())
+      throw new IllegalStateException("No valid source file in corpus " + corpus);
+  }
+
+  ParseUnit parseANTLR2(String fileName, ByteSource src) throws Exception {
+    ParseUnit unit = new ParseUnit(src.openStream(), fileName, session);
+    unit.parse();
+    return unit;
+  }
+
+  ProgramRootNode parseANTLR4(String fileName, ByteSource src) {
+    ProgressLexer lexer = new ProgressLexer(session, src, fileName, false);
+    lexer.setMergeNameDotInId(true);
+    TwoStageParser.Result result = session.getTwoStageParser().parse(lexer);
+    return new JPNodeVisitor(result.getParserSupport(), result.getTokenStream()).buildTree(result.getTree());
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import eu.rssw.pct.FileEntry;
+import eu.rssw.pct.PLReader;
+import eu.rssw.pct.RCodeInfo;
+import eu.rssw.pct.RCodeInfo.InvalidRCodeException;
+
+/**
+ * RCodeInfo on the rcode-reader test files, and PLReader (with RCodeInfo on each entry) on the test procedure library
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RCodeBenchmark {
+  private final List<byte[]> rcodes = new ArrayList<>();
+  private File library;
+
+  @Setup
+  public void setUp() throws IOException {
+    for (byte[] content : Corpus.readFiles("rcode-reader/src/test/resources/rcode", ".r").values()) {
+      try {
+        new RCodeInfo(new ByteArrayInputStream(content));
+        rcodes.add(content);
+      } catch (InvalidRCodeException caught) {
+        // Not part of the benchmark
+      }
+    }
+    library = Corpus.getFile("rcode-reader/src/test/resources/ablunit.pl");
+  }
+
+  @Benchmark
+  public void rcodeInfo(Blackhole bh) throws IOException, InvalidRCodeException {
+    for (byte[] content : rcodes) {
+      bh.consume(new RCodeInfo(new ByteArrayInputStream(content)));
+    }
+  }
+
+  @Benchmark
+  public void plReader(Blackhole bh) throws IOException {
+    PLReader reader = new PLReader(library);
+    for (FileEntry entry : reader.getFileList()) {
+      if (!entry.getFileName().endsWith(".r"))
+        continue;
+      try (InputStream input = reader.getInputStream(entry)) {
+        bh.consume(new RCodeInfo(input));
+      } catch (InvalidRCodeException caught) {
+        bh.consume(caught);
+      }
+    }
+  }
+}
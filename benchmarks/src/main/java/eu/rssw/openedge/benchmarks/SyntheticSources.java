@@ -0,0 +1,120 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+/**
+ * Generate large but valid source files, as the test corpora only contain small files. Same input always gives the
+ * same output.
+ */
+public final class SyntheticSources {
+
+  private SyntheticSources() {
+    // No constructor
+  }
+
+  /**
+   * Procedure with one block of variables, temp-table, function, internal procedure and main block statements per
+   * iteration. Preprocessor variables are used in every block. Sports2000 schema is expected.
+   * 
+   * @param blocks Number of blocks, each block is around 40 lines long
+   */
+  public static String procedure(int blocks) {
+    StringBuilder sb = new StringBuilder(blocks * 1500);
+    sb.append("/* Synthetic procedure, ").append(blocks).append(" blocks */\n");
+    for (int zz = 1; zz <= blocks; zz++) {
+      sb.append("&SCOPED-DEFINE MAX").append(zz).append(' ').append(zz % 10 + 5).append('\n');
+      sb.append("DEFINE VARIABLE i").append(zz).append(" AS INTEGER NO-UNDO.\n");
+      sb.append("DEFINE VARIABLE c").append(zz).append(" AS CHARACTER NO-UNDO INITIAL \"abc\".\n");
+      sb.append("DEFINE TEMP-TABLE tt").append(zz).append(" NO-UNDO\n");
+      sb.append("  FIELD f1 AS CHARACTER\n");
+      sb.append("  FIELD f2 AS INTEGER\n");
+      sb.append("  INDEX ix1 IS PRIMARY f1.\n\n");
+
+      sb.append("FUNCTION fn").append(zz).append(" RETURNS INTEGER (INPUT p1 AS INTEGER):\n");
+      sb.append("  RETURN p1 * 2 + ").append(zz).append(".\n");
+      sb.append("END FUNCTION.\n\n");
+
+      sb.append("PROCEDURE proc").append(zz).append(":\n");
+      sb.append("  DEFINE INPUT PARAMETER p1 AS CHARACTER NO-UNDO.\n");
+      sb.append("  /* Loop on {&MAX").append(zz).append("} items */\n");
+      sb.append("  DO i").append(zz).append(" = 1 TO {&MAX").append(zz).append("}:\n");
+      sb.append("    ASSIGN c").append(zz).append(" = c").append(zz).append(" + STRING(fn").append(zz).append("(i").append(
+          zz).append(")).\n");
+      sb.append("    IF i").append(zz).append(" MODULO 2 = 0 THEN\n");
+      sb.append("      MESSAGE \"Even\" i").append(zz).append(".\n");
+      sb.append("    ELSE DO:\n");
+      sb.append("      CREATE tt").append(zz).append(".\n");
+      sb.append("      ASSIGN tt").append(zz).append(".f1 = SUBSTRING(c").append(zz).append(", 1, 5) tt").append(zz).append(
+          ".f2 = i").append(zz).append(".\n");
+      sb.append("    END.\n");
+      sb.append("  END.\n");
+      sb.append("  FOR EACH Customer NO-LOCK WHERE Customer.CustNum > i").append(zz).append(":\n");
+      sb.append("    DISPLAY Customer.Name Customer.City.\n");
+      sb.append("  END.\n");
+      sb.append("  FIND FIRST tt").append(zz).append(" WHERE tt").append(zz).append(".f2 > 0 NO-ERROR.\n");
+      sb.append("  IF AVAILABLE tt").append(zz).append(" THEN DELETE tt").append(zz).append(".\n");
+      sb.append("END PROCEDURE.\n\n");
+
+      sb.append("RUN proc").append(zz).append(" (INPUT c").append(zz).append(").\n");
+      sb.append("CASE i").append(zz).append(":\n");
+      sb.append("  WHEN 1 THEN c").append(zz).append(" = \"one\".\n");
+      sb.append("  OTHERWISE c").append(zz).append(" = \"other\".\n");
+      sb.append("END CASE.\n\n");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Dump file with sequences, and tables with fields and indexes
+   * 
+   * @param tables Number of tables, each table has 10 fields and 2 indexes
+   */
+  public static String dumpFile(int tables) {
+    StringBuilder sb = new StringBuilder(tables * 2500);
+    for (int zz = 1; zz <= tables; zz++) {
+      sb.append("ADD SEQUENCE \"Seq").append(zz).append("\"\n");
+      sb.append("  INITIAL 1\n  INCREMENT 1\n  CYCLE-ON-LIMIT no\n  MIN-VAL 1\n\n");
+    }
+    for (int zz = 1; zz <= tables; zz++) {
+      String table = "Table" + zz;
+      sb.append("ADD TABLE \"").append(table).append("\"\n");
+      sb.append("  AREA \"Data\"\n");
+      sb.append("  DESCRIPTION \"Synthetic table ").append(zz).append("\"\n");
+      sb.append("  DUMP-NAME \"table").append(zz).append("\"\n\n");
+      for (int yy = 1; yy <= 10; yy++) {
+        boolean isChar = (yy % 2 == 0);
+        sb.append("ADD FIELD \"Field").append(yy).append("\" OF \"").append(table).append("\" AS ").append(
+            isChar ? "character" : "integer").append(" \n");
+        sb.append("  FORMAT \"").append(isChar ? "x(8)" : ">>>>9").append("\"\n");
+        sb.append("  INITIAL \"").append(isChar ? "" : "0").append("\"\n");
+        sb.append("  LABEL \"Field ").append(yy).append("\"\n");
+        sb.append("  POSITION ").append(yy + 1).append('\n');
+        sb.append("  MAX-WIDTH ").append(isChar ? 16 : 4).append('\n');
+        sb.append("  ORDER ").append(yy * 10).append("\n\n");
+      }
+      sb.append("ADD INDEX \"PK").append(zz).append("\" ON \"").append(table).append("\" \n");
+      sb.append("  AREA \"Index\"\n  UNIQUE\n  PRIMARY\n  INDEX-FIELD \"Field1\" ASCENDING \n\n");
+      sb.append("ADD INDEX \"Idx").append(zz).append("\" ON \"").append(table).append("\" \n");
+      sb.append("  AREA \"Index\"\n  INDEX-FIELD \"Field2\" ASCENDING \n  INDEX-FIELD \"Field3\" DESCENDING \n\n");
+    }
+    sb.append(".\nPSC\ncpstream=UTF-8\n.\n0000000000\n");
+    return sb.toString();
+  }
+}
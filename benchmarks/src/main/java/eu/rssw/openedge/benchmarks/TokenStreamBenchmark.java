@@ -0,0 +1,105 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.openedge.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.ProToken;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+
+import com.google.common.base.Strings;
+import com.google.common.io.ByteSource;
+
+import antlr.Token;
+import antlr.TokenStream;
+import antlr.TokenStreamException;
+import antlr.TokenStreamHiddenTokenFilter;
+
+/**
+ * Token stream sent to the ANTLR2 parser, compared with the previous implementation (one copy of each token, then
+ * TokenStreamHiddenTokenFilter). Both benchmarks include lexer and preprocessor, so the difference in allocation rate
+ * (GC profiler) is the cost of the token copy and of the filter.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenStreamBenchmark {
+
+  @Benchmark
+  public void tokenStream(ProparseState state, Blackhole bh) throws TokenStreamException {
+    for (Map.Entry<String, ByteSource> entry : state.sources.entrySet()) {
+      ProgressLexer lexer = new ProgressLexer(state.session, entry.getValue(), entry.getKey(), false);
+      bh.consume(consume(lexer.getANTLR2TokenStream(true)));
+    }
+  }
+
+  @Benchmark
+  public void tokenCopyAndFilter(ProparseState state, Blackhole bh) throws TokenStreamException {
+    for (Map.Entry<String, ByteSource> entry : state.sources.entrySet()) {
+      ProgressLexer lexer = new ProgressLexer(state.session, entry.getValue(), entry.getKey(), false);
+      bh.consume(consume(legacyStream(lexer)));
+    }
+  }
+
+  private static int consume(TokenStream stream) throws TokenStreamException {
+    int count = 0;
+    for (Token tok = stream.nextToken(); tok.getType() != Token.EOF_TYPE; tok = stream.nextToken()) {
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Previous implementation of ProgressLexer#getANTLR2TokenStream(true)
+   */
+  private static TokenStream legacyStream(ProgressLexer lexer) {
+    TokenStream wrapper = () -> {
+      org.prorefactor.proparse.antlr4.ProToken tok = (org.prorefactor.proparse.antlr4.ProToken) lexer.nextToken();
+      return new ProToken(tok.getNodeType() == ABLNodeType.EOF_ANTLR4 ? ABLNodeType.EOF : tok.getNodeType(),
+          tok.getText(), tok.getFileIndex(), Strings.nullToEmpty(lexer.getFilename(tok.getFileIndex())),
+          tok.getLine(), tok.getCharPositionInLine(), tok.getEndFileIndex(), tok.getEndLine(),
+          tok.getEndCharPositionInLine(), tok.getMacroSourceNum(), tok.getAnalyzeSuspend(), false,
+          tok.isMacroExpansion());
+    };
+    TokenStreamHiddenTokenFilter filter = new TokenStreamHiddenTokenFilter(wrapper);
+    filter.hide(ABLNodeType.WS.getType());
+    filter.hide(ABLNodeType.COMMENT.getType());
+    filter.hide(ABLNodeType.AMPMESSAGE.getType());
+    filter.hide(ABLNodeType.AMPANALYZESUSPEND.getType());
+    filter.hide(ABLNodeType.AMPANALYZERESUME.getType());
+    filter.hide(ABLNodeType.AMPGLOBALDEFINE.getType());
+    filter.hide(ABLNodeType.AMPSCOPEDDEFINE.getType());
+    filter.hide(ABLNodeType.AMPUNDEFINE.getType());
+    filter.hide(ABLNodeType.PROPARSEDIRECTIVE.getType());
+    return filter;
+  }
+}
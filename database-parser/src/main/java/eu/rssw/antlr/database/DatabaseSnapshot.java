@@ -0,0 +1,483 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.antlr.database;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import eu.rssw.antlr.database.objects.DatabaseDescription;
+import eu.rssw.antlr.database.objects.Field;
+import eu.rssw.antlr.database.objects.Index;
+import eu.rssw.antlr.database.objects.IndexField;
+import eu.rssw.antlr.database.objects.Sequence;
+import eu.rssw.antlr.database.objects.Table;
+import eu.rssw.antlr.database.objects.Trigger;
+import eu.rssw.antlr.database.objects.TriggerType;
+
+/**
+ * Binary snapshot of a {@link DatabaseDescription}, so that an unchanged dump file doesn't have to be parsed again.
+ * Snapshot holds every attribute read from the dump file (including triggers, descriptions, labels, formats, areas and
+ * line numbers), so that a description read from a snapshot can't be distinguished from a parsed one. It is validated
+ * by a fingerprint of the content of the dump file.
+ * <p>
+ * Format: header (magic number, version, fingerprint), then a string table (all strings, each stored once), then
+ * fixed-width records for sequences, triggers, fields, indexes, index fields and tables. Records refer to strings by
+ * their position in the string table (-1 for null values), and tables and fields refer to their first child record. Snapshot is read in a heap
+ * buffer, as all records are copied to {@link DatabaseDescription} objects anyway, and a memory-mapped file couldn't
+ * be replaced on Windows until the mapping is garbage collected.
+ */
+public final class DatabaseSnapshot {
+  private static final Logger LOG = LoggerFactory.getLogger(DatabaseSnapshot.class);
+
+  private static final int MAGIC = 0x4F454442;
+  public static final int VERSION = 2;
+
+  // Record sizes in bytes
+  private static final int SEQUENCE_SIZE = 48;
+  private static final int TRIGGER_SIZE = 16;
+  private static final int FIELD_SIZE = 52;
+  private static final int INDEX_SIZE = 32;
+  private static final int TABLE_SIZE = 56;
+
+  // Index flags
+  private static final int FLAG_PRIMARY = 1;
+  private static final int FLAG_UNIQUE = 2;
+  private static final int FLAG_WORD = 4;
+  // Sequence flags
+  private static final int FLAG_CYCLE = 1;
+  private static final int FLAG_INITIAL = 2;
+  private static final int FLAG_MIN = 4;
+  private static final int FLAG_MAX = 8;
+  private static final int FLAG_INCREMENT = 16;
+  // Field flags
+  private static final int FLAG_EXTENT = 1;
+  private static final int FLAG_ORDER = 2;
+  private static final int FLAG_MAX_WIDTH = 4;
+  // Trigger flags
+  private static final int FLAG_NO_OVERRIDE = 1;
+  private static final int FLAG_OVERRIDE = 2;
+
+  private DatabaseSnapshot() {
+    // Not instantiated
+  }
+
+  /**
+   * @return Fingerprint of dump file content
+   */
+  public static byte[] fingerprint(File dumpFile) throws IOException {
+    return Files.asByteSource(dumpFile).hash(Hashing.murmur3_128()).asBytes();
+  }
+
+  /**
+   * Read database description from snapshot if it's up to date, otherwise parse dump file and write snapshot. A
+   * snapshot which can't be read or written is not an error, as it will be written again next time.
+   * 
+   * @param dumpFile Dump file
+   * @param dbName Logical database name
+   * @param snapshot Snapshot file, which doesn't have to exist
+   */
+  public static DatabaseDescription getDatabaseDescription(File dumpFile, String dbName, File snapshot)
+      throws IOException {
+    return getDatabaseDescription(dumpFile, dbName, snapshot, DumpFileUtils::getDatabaseDescription);
+  }
+
+  /**
+   * Same as {@link #getDatabaseDescription(File, String, File)}, dump file being parsed by loader when snapshot is
+   * not up to date
+   */
+  public static DatabaseDescription getDatabaseDescription(File dumpFile, String dbName, File snapshot,
+      DumpFileLoader loader) throws IOException {
+    byte[] fingerprint = fingerprint(dumpFile);
+    DatabaseDescription desc;
+    try {
+      desc = read(snapshot, dbName, fingerprint);
+    } catch (IOException caught) {
+      // Corrupted snapshot, replaced below
+      desc = null;
+    }
+    if (desc == null) {
+      desc = loader.load(dumpFile, dbName);
+      try {
+        write(desc, fingerprint, snapshot);
+      } catch (IOException caught) {
+        LOG.warn("Unable to write schema snapshot '{}'", snapshot, caught);
+      }
+    }
+    return desc;
+  }
+
+  /**
+   * @return True if snapshot exists and was created from a dump file with this fingerprint, by this version
+   */
+  public static boolean isUpToDate(File snapshot, byte[] fingerprint) {
+    if (!snapshot.isFile())
+      return false;
+    try (DataInputStream input = new DataInputStream(new FileInputStream(snapshot))) {
+      if ((input.readInt() != MAGIC) || (input.readInt() != VERSION))
+        return false;
+      byte[] bytes = new byte[input.readInt()];
+      input.readFully(bytes);
+      return Arrays.equals(bytes, fingerprint);
+    } catch (IOException | RuntimeException caught) {
+      return false;
+    }
+  }
+
+  /**
+   * @return Database description, or null if snapshot doesn't exist or is not up to date
+   * @throws IOException If snapshot is up to date but can't be read
+   */
+  public static DatabaseDescription read(File snapshot, String dbName, byte[] fingerprint) throws IOException {
+    if (!isUpToDate(snapshot, fingerprint))
+      return null;
+    ByteBuffer buffer = ByteBuffer.wrap(java.nio.file.Files.readAllBytes(snapshot.toPath()));
+    try {
+      return read(buffer, dbName);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException caught) {
+      throw new IOException("Invalid schema snapshot '" + snapshot + "'", caught);
+    }
+  }
+
+  private static DatabaseDescription read(ByteBuffer buffer, String dbName) {
+    // Header, already validated
+    buffer.getInt();
+    buffer.getInt();
+    int fingerprintLength = buffer.getInt();
+    buffer.position(buffer.position() + fingerprintLength);
+
+    // String table: end offset of each string, then UTF-8 content
+    String[] strings = new String[checkCount(buffer, buffer.getInt(), 4)];
+    int[] ends = new int[strings.length];
+    for (int zz = 0; zz < ends.length; zz++) {
+      ends[zz] = buffer.getInt();
+    }
+    byte[] content = new byte[checkCount(buffer, buffer.getInt(), 1)];
+    buffer.get(content);
+    for (int zz = 0, start = 0; zz < strings.length; start = ends[zz++]) {
+      strings[zz] = new String(content, start, ends[zz] - start, StandardCharsets.UTF_8);
+    }
+
+    DatabaseDescription db = new DatabaseDescription(dbName);
+    // Sequence records: name, flags, first line, last line, initial, min, max and increment values
+    for (int zz = checkCount(buffer, buffer.getInt(), SEQUENCE_SIZE); zz > 0; zz--) {
+      Sequence seq = new Sequence(strings[buffer.getInt()]);
+      int flags = buffer.getInt();
+      seq.setCycleOnLimit((flags & FLAG_CYCLE) != 0);
+      seq.setFirstLine(buffer.getInt());
+      seq.setLastLine(buffer.getInt());
+      seq.setInitialValue(nullableLong(buffer.getLong(), flags, FLAG_INITIAL));
+      seq.setMinValue(nullableLong(buffer.getLong(), flags, FLAG_MIN));
+      seq.setMaxValue(nullableLong(buffer.getLong(), flags, FLAG_MAX));
+      seq.setIncrement(nullableLong(buffer.getLong(), flags, FLAG_INCREMENT));
+      db.addSequence(seq);
+    }
+
+    // Trigger records: type, procedure, flags, CRC
+    Trigger[] triggers = new Trigger[checkCount(buffer, buffer.getInt(), TRIGGER_SIZE)];
+    TriggerType[] types = TriggerType.values();
+    for (int zz = 0; zz < triggers.length; zz++) {
+      triggers[zz] = new Trigger(types[buffer.getInt()], string(strings, buffer.getInt()));
+      int flags = buffer.getInt();
+      triggers[zz].setNoOverride((flags & FLAG_NO_OVERRIDE) != 0);
+      triggers[zz].setOverride((flags & FLAG_OVERRIDE) != 0);
+      triggers[zz].setCrc(string(strings, buffer.getInt()));
+    }
+
+    // Field records: name, data type, flags, extent, order, max width, description, LOB area, format, first line,
+    // last line, first trigger, number of triggers
+    Field[] fields = new Field[checkCount(buffer, buffer.getInt(), FIELD_SIZE)];
+    for (int zz = 0; zz < fields.length; zz++) {
+      Field fld = new Field(strings[buffer.getInt()], strings[buffer.getInt()]);
+      int flags = buffer.getInt();
+      fld.setExtent(nullableInt(buffer.getInt(), flags, FLAG_EXTENT));
+      fld.setOrder(nullableInt(buffer.getInt(), flags, FLAG_ORDER));
+      fld.setMaxWidth(nullableInt(buffer.getInt(), flags, FLAG_MAX_WIDTH));
+      fld.setDescription(string(strings, buffer.getInt()));
+      fld.setLobArea(string(strings, buffer.getInt()));
+      fld.setFormat(string(strings, buffer.getInt()));
+      fld.setFirstLine(buffer.getInt());
+      fld.setLastLine(buffer.getInt());
+      addTriggers(triggers, buffer.getInt(), buffer.getInt(), fld::addTrigger);
+      fields[zz] = fld;
+    }
+
+    // Index records: name, flags, area, buffer pool, first line, last line, first index field, number of index fields
+    int[] indexes = new int[checkCount(buffer, buffer.getInt(), INDEX_SIZE) * 8];
+    buffer.asIntBuffer().get(indexes);
+    buffer.position(buffer.position() + indexes.length * 4);
+    // Index field records: position of field in table (-1 if not found), ascending
+    int[] indexFields = new int[checkCount(buffer, buffer.getInt(), 8) * 2];
+    buffer.asIntBuffer().get(indexFields);
+    buffer.position(buffer.position() + indexFields.length * 4);
+
+    // Table records: name, area, label, description, dump name, validation message, first line, last line, first
+    // field, number of fields, first index, number of indexes, first trigger, number of triggers
+    for (int zz = checkCount(buffer, buffer.getInt(), TABLE_SIZE); zz > 0; zz--) {
+      Table tbl = new Table(strings[buffer.getInt()]);
+      tbl.setArea(string(strings, buffer.getInt()));
+      tbl.setLabel(string(strings, buffer.getInt()));
+      tbl.setDescription(string(strings, buffer.getInt()));
+      tbl.setDumpName(string(strings, buffer.getInt()));
+      tbl.setValMsg(string(strings, buffer.getInt()));
+      tbl.setFirstLine(buffer.getInt());
+      tbl.setLastLine(buffer.getInt());
+      int firstField = buffer.getInt();
+      List<Field> tblFields = new ArrayList<>(Arrays.asList(fields).subList(firstField, firstField + buffer.getInt()));
+      tblFields.forEach(tbl::addField);
+      int firstIndex = buffer.getInt();
+      int numIndexes = buffer.getInt();
+      for (int yy = firstIndex * 8; yy < (firstIndex + numIndexes) * 8; yy += 8) {
+        Index idx = new Index(strings[indexes[yy]]);
+        idx.setPrimary((indexes[yy + 1] & FLAG_PRIMARY) != 0);
+        idx.setUnique((indexes[yy + 1] & FLAG_UNIQUE) != 0);
+        idx.setWord((indexes[yy + 1] & FLAG_WORD) != 0);
+        idx.setArea(string(strings, indexes[yy + 2]));
+        idx.setBufferPool(string(strings, indexes[yy + 3]));
+        idx.setFirstLine(indexes[yy + 4]);
+        idx.setLastLine(indexes[yy + 5]);
+        for (int xx = indexes[yy + 6] * 2; xx < (indexes[yy + 6] + indexes[yy + 7]) * 2; xx += 2) {
+          int fieldPos = indexFields[xx];
+          idx.addField(new IndexField(fieldPos < 0 ? null : tblFields.get(fieldPos), indexFields[xx + 1] != 0));
+        }
+        tbl.addIndex(idx);
+      }
+      addTriggers(triggers, buffer.getInt(), buffer.getInt(), tbl::addTrigger);
+      db.addTable(tbl);
+    }
+
+    return db;
+  }
+
+  private static void addTriggers(Trigger[] triggers, int first, int count, Consumer<Trigger> consumer) {
+    for (int zz = first; zz < first + count; zz++) {
+      consumer.accept(triggers[zz]);
+    }
+  }
+
+  private static String string(String[] strings, int pos) {
+    return pos < 0 ? null : strings[pos];
+  }
+
+  private static Integer nullableInt(int val, int flags, int flag) {
+    return (flags & flag) != 0 ? val : null;
+  }
+
+  private static Long nullableLong(long val, int flags, int flag) {
+    return (flags & flag) != 0 ? val : null;
+  }
+
+  /**
+   * Write snapshot to a temporary file first, so that an interrupted analysis never leaves a truncated snapshot
+   */
+  public static void write(DatabaseDescription db, byte[] fingerprint, File snapshot) throws IOException {
+    // Records are written in memory first, as strings are added to string table while writing records
+    Map<String, Integer> strings = new LinkedHashMap<>();
+    RecordWriter sequences = new RecordWriter();
+    RecordWriter triggers = new RecordWriter();
+    RecordWriter fields = new RecordWriter();
+    RecordWriter indexes = new RecordWriter();
+    RecordWriter indexFields = new RecordWriter();
+    RecordWriter tables = new RecordWriter();
+
+    for (Sequence seq : db.getSequences()) {
+      sequences.writeInt(stringIndex(strings, seq.getName()));
+      sequences.writeInt((seq.isCycleOnLimit() ? FLAG_CYCLE : 0) | flag(seq.getInitialValue(), FLAG_INITIAL)
+          | flag(seq.getMinValue(), FLAG_MIN) | flag(seq.getMaxValue(), FLAG_MAX)
+          | flag(seq.getIncrement(), FLAG_INCREMENT));
+      sequences.writeInt(seq.getFirstLine());
+      sequences.writeInt(seq.getLastLine());
+      sequences.writeLong(seq.getInitialValue() == null ? 0 : seq.getInitialValue());
+      sequences.writeLong(seq.getMinValue() == null ? 0 : seq.getMinValue());
+      sequences.writeLong(seq.getMaxValue() == null ? 0 : seq.getMaxValue());
+      sequences.writeLong(seq.getIncrement() == null ? 0 : seq.getIncrement());
+      sequences.count++;
+    }
+
+    for (Table tbl : db.getTables()) {
+      tables.writeInt(stringIndex(strings, tbl.getName()));
+      tables.writeInt(stringIndex(strings, tbl.getArea()));
+      tables.writeInt(stringIndex(strings, tbl.getLabel()));
+      tables.writeInt(stringIndex(strings, tbl.getDescription()));
+      tables.writeInt(stringIndex(strings, tbl.getDumpName()));
+      tables.writeInt(stringIndex(strings, tbl.getValMsg()));
+      tables.writeInt(tbl.getFirstLine());
+      tables.writeInt(tbl.getLastLine());
+      tables.writeInt(fields.count);
+      tables.writeInt(tbl.getFields().size());
+      tables.writeInt(indexes.count);
+      tables.writeInt(tbl.getIndexes().size());
+      tables.writeInt(triggers.count);
+      tables.writeInt(tbl.getTriggers().size());
+      tables.count++;
+      writeTriggers(triggers, strings, tbl.getTriggers());
+
+      Map<Field, Integer> fieldPos = new IdentityHashMap<>();
+      for (Field fld : tbl.getFields()) {
+        fieldPos.put(fld, fieldPos.size());
+        fields.writeInt(stringIndex(strings, fld.getName()));
+        fields.writeInt(stringIndex(strings, fld.getDataType()));
+        fields.writeInt(flag(fld.getExtent(), FLAG_EXTENT) | flag(fld.getOrder(), FLAG_ORDER)
+            | flag(fld.getMaxWidth(), FLAG_MAX_WIDTH));
+        fields.writeInt(fld.getExtent() == null ? 0 : fld.getExtent());
+        fields.writeInt(fld.getOrder() == null ? 0 : fld.getOrder());
+        fields.writeInt(fld.getMaxWidth() == null ? 0 : fld.getMaxWidth());
+        fields.writeInt(stringIndex(strings, fld.getDescription()));
+        fields.writeInt(stringIndex(strings, fld.getLobArea()));
+        fields.writeInt(stringIndex(strings, fld.getFormat()));
+        fields.writeInt(fld.getFirstLine());
+        fields.writeInt(fld.getLastLine());
+        fields.writeInt(triggers.count);
+        fields.writeInt(fld.getTriggers().size());
+        fields.count++;
+        writeTriggers(triggers, strings, fld.getTriggers());
+      }
+
+      for (Index idx : tbl.getIndexes()) {
+        indexes.writeInt(stringIndex(strings, idx.getName()));
+        indexes.writeInt((idx.isPrimary() ? FLAG_PRIMARY : 0) | (idx.isUnique() ? FLAG_UNIQUE : 0)
+            | (idx.isWord() ? FLAG_WORD : 0));
+        indexes.writeInt(stringIndex(strings, idx.getArea()));
+        indexes.writeInt(stringIndex(strings, idx.getBufferPool()));
+        indexes.writeInt(idx.getFirstLine());
+        indexes.writeInt(idx.getLastLine());
+        indexes.writeInt(indexFields.count);
+        indexes.writeInt(idx.getFields().size());
+        indexes.count++;
+        for (IndexField ifld : idx.getFields()) {
+          Integer pos = ifld.getField() == null ? null : fieldPos.get(ifld.getField());
+          indexFields.writeInt(pos == null ? -1 : pos);
+          indexFields.writeInt(ifld.isAscending() ? 1 : 0);
+          indexFields.count++;
+        }
+      }
+    }
+
+    File tmpFile = new File(snapshot.getPath() + ".tmp");
+    Files.createParentDirs(snapshot);
+    try (DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeInt(fingerprint.length);
+      output.write(fingerprint);
+
+      List<byte[]> encoded = new ArrayList<>(strings.size());
+      int end = 0;
+      output.writeInt(strings.size());
+      for (String str : strings.keySet()) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        encoded.add(bytes);
+        end += bytes.length;
+        output.writeInt(end);
+      }
+      output.writeInt(end);
+      for (byte[] bytes : encoded) {
+        output.write(bytes);
+      }
+
+      // Same order as in read()
+      for (RecordWriter records : new RecordWriter[] {sequences, triggers, fields, indexes, indexFields, tables}) {
+        output.writeInt(records.count);
+        records.writeTo(output);
+      }
+    } catch (IOException caught) {
+      java.nio.file.Files.deleteIfExists(tmpFile.toPath());
+      throw caught;
+    }
+    java.nio.file.Files.move(tmpFile.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void writeTriggers(RecordWriter triggers, Map<String, Integer> strings,
+      Collection<Trigger> list) throws IOException {
+    for (Trigger trg : list) {
+      triggers.writeInt(trg.getType().ordinal());
+      triggers.writeInt(stringIndex(strings, trg.getProcedure()));
+      triggers.writeInt((trg.isNoOverride() ? FLAG_NO_OVERRIDE : 0) | (trg.isOverride() ? FLAG_OVERRIDE : 0));
+      triggers.writeInt(stringIndex(strings, trg.getCrc()));
+      triggers.count++;
+    }
+  }
+
+  private static int flag(Object value, int flag) {
+    return value == null ? 0 : flag;
+  }
+
+  /**
+   * @return Position of string in string table, -1 for null values
+   */
+  private static int stringIndex(Map<String, Integer> strings, String str) {
+    if (str == null)
+      return -1;
+    return strings.computeIfAbsent(str, key -> strings.size());
+  }
+
+  /**
+   * Reject counts which can't fit in the remaining bytes, instead of allocating arrays from corrupted data
+   */
+  private static int checkCount(ByteBuffer buffer, int count, int recordSize) {
+    if ((count < 0) || ((long) count * recordSize > buffer.remaining()))
+      throw new IllegalArgumentException("Invalid record count " + count);
+    return count;
+  }
+
+  /**
+   * Records of one type, written in memory
+   */
+  private static class RecordWriter extends DataOutputStream {
+    private int count;
+
+    RecordWriter() {
+      super(new ByteArrayOutputStream());
+    }
+
+    void writeTo(DataOutputStream output) throws IOException {
+      ((ByteArrayOutputStream) out).writeTo(output);
+    }
+  }
+
+  @FunctionalInterface
+  public interface DumpFileLoader {
+    DatabaseDescription load(File dumpFile, String dbName) throws IOException;
+  }
+}
@@ -31,7 +31,6 @@ import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.UnsupportedCharsetException;
 
-import org.antlr.v4.runtime.ANTLRErrorListener;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.tree.ParseTree;
@@ -48,7 +47,9 @@ public final class DumpFileUtils {
   }
 
   public static final ParseTree getDumpFileParseTree(File file) throws IOException {
-    return getDumpFileParseTree(new FileInputStream(file), null);
+    try (InputStream input = new FileInputStream(file)) {
+      return getDumpFileParseTree(input, null);
+    }
   }
 
   /**
@@ -56,6 +57,20 @@ public final class DumpFileUtils {
    * right value.
    */
   public static final ParseTree getDumpFileParseTree(InputStream stream, Charset defaultCharset) throws IOException {
+    return getDumpFileParseTree(getDumpFileTokens(stream, defaultCharset));
+  }
+
+  public static final ParseTree getDumpFileParseTree(Reader reader) throws IOException {
+    return getDumpFileParseTree(getDumpFileTokens(reader));
+  }
+
+  /**
+   * Lex the entire dump file, with the same encoding rules as {@link #getDumpFileParseTree(InputStream, Charset)}.
+   * Returned stream contains all tokens (including hidden ones), and can be parsed with
+   * {@link #getDumpFileParseTree(CommonTokenStream)}.
+   */
+  public static final CommonTokenStream getDumpFileTokens(InputStream stream, Charset defaultCharset)
+      throws IOException {
     // FileInputStream doesn't support mark for example, so we read the entire file in memory
     ByteArrayOutputStream outStream = new ByteArrayOutputStream();
     byte[] buffer = new byte[16384];
@@ -70,20 +85,24 @@ public final class DumpFileUtils {
         new InputStreamReader(buffdInput, defaultCharset == null ? Charset.defaultCharset() : defaultCharset),
         charsetReader);
     buffdInput.reset();
-    return getDumpFileParseTree(new InputStreamReader(buffdInput, charsetReader.getResult()));
+    return getDumpFileTokens(new InputStreamReader(buffdInput, charsetReader.getResult()));
   }
 
-  public static final ParseTree getDumpFileParseTree(Reader reader) throws IOException {
-    ANTLRErrorListener listener = new DescriptiveErrorListener();
+  public static final CommonTokenStream getDumpFileTokens(Reader reader) throws IOException {
     DumpFileGrammarLexer lexer = new DumpFileGrammarLexer(CharStreams.fromReader(reader));
     lexer.removeErrorListeners();
-    lexer.addErrorListener(listener);
+    lexer.addErrorListener(new DescriptiveErrorListener());
+    CommonTokenStream tokens = new CommonTokenStream(lexer);
+    tokens.fill();
+
+    return tokens;
+  }
 
+  public static final ParseTree getDumpFileParseTree(CommonTokenStream tokens) {
     // Using SLL first proved not to be useful for the DF parser, so we directly parse with LL prediction mode
-    CommonTokenStream tokens = new CommonTokenStream(lexer);
     DumpFileGrammarParser parser = new DumpFileGrammarParser(tokens);
     parser.removeErrorListeners();
-    parser.addErrorListener(listener);
+    parser.addErrorListener(new DescriptiveErrorListener());
 
     return parser.dump();
   }
@@ -100,8 +119,12 @@ public final class DumpFileUtils {
   }
 
   public static final DatabaseDescription getDatabaseDescription(InputStream stream, Charset cs, String dbName) throws IOException {
+    return getDatabaseDescription(getDumpFileParseTree(stream, cs), dbName);
+  }
+
+  public static final DatabaseDescription getDatabaseDescription(ParseTree tree, String dbName) {
     DumpFileVisitor visitor = new DumpFileVisitor(dbName);
-    visitor.visit(getDumpFileParseTree(stream, cs));
+    visitor.visit(tree);
 
     return visitor.getDatabase();
   }
@@ -102,6 +102,10 @@ public class Index {
     fields.add(fld);
   }
 
+  public String getBufferPool() {
+    return bufferPool;
+  }
+
   public boolean isInAlternateBufferPool() {
     return "alternate".equalsIgnoreCase(bufferPool);
   }
@@ -22,20 +22,27 @@ package eu.rssw.antlr.database;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.Iterator;
 
 import org.testng.annotations.Test;
 
 import eu.rssw.antlr.database.objects.DatabaseDescription;
+import eu.rssw.antlr.database.objects.Field;
 import eu.rssw.antlr.database.objects.Index;
+import eu.rssw.antlr.database.objects.Sequence;
 import eu.rssw.antlr.database.objects.Table;
 import eu.rssw.antlr.database.objects.Trigger;
 import eu.rssw.antlr.database.objects.TriggerType;
@@ -120,4 +127,110 @@ public class TestDumpFile {
     assertEquals(db2.getTable("Order").getIndex("CustOrder").getFields().size(), 2);
   }
 
+  @Test
+  public void testSnapshot() throws IOException {
+    File dfFile = new File("src/test/resources/sp2k.df");
+    File snapshot = File.createTempFile("sp2k", ".bin");
+    snapshot.deleteOnExit();
+    assertTrue(snapshot.delete());
+
+    // Written on first access
+    DatabaseDescription db = DatabaseSnapshot.getDatabaseDescription(dfFile, "sp2k", snapshot);
+    assertTrue(snapshot.isFile());
+    assertTrue(DatabaseSnapshot.isUpToDate(snapshot, DatabaseSnapshot.fingerprint(dfFile)));
+    assertFalse(DatabaseSnapshot.isUpToDate(snapshot, new byte[] {1, 2, 3}));
+    assertNull(DatabaseSnapshot.read(snapshot, "sp2k", new byte[] {1, 2, 3}));
+
+    DatabaseDescription db2 = DatabaseSnapshot.read(snapshot, "foo", DatabaseSnapshot.fingerprint(dfFile));
+    assertNotNull(db2);
+    assertEquals(db2.getDbName(), "foo");
+    assertEquals(db2.getSequences().size(), db.getSequences().size());
+    for (Sequence seq : db.getSequences()) {
+      Sequence seq2 = db2.getSequence(seq.getName());
+      assertNotNull(seq2);
+      assertEquals(seq2.getInitialValue(), seq.getInitialValue());
+      assertEquals(seq2.getMinValue(), seq.getMinValue());
+      assertEquals(seq2.getMaxValue(), seq.getMaxValue());
+      assertEquals(seq2.getIncrement(), seq.getIncrement());
+      assertEquals(seq2.isCycleOnLimit(), seq.isCycleOnLimit());
+      assertEquals(seq2.getFirstLine(), seq.getFirstLine());
+      assertEquals(seq2.getLastLine(), seq.getLastLine());
+    }
+    assertEquals(db2.getTables().size(), db.getTables().size());
+    int numTriggers = 0;
+    for (Table tbl : db.getTables()) {
+      Table tbl2 = db2.getTable(tbl.getName());
+      assertNotNull(tbl2);
+      assertEquals(tbl2.getArea(), tbl.getArea());
+      assertEquals(tbl2.getLabel(), tbl.getLabel());
+      assertEquals(tbl2.getDescription(), tbl.getDescription());
+      assertEquals(tbl2.getDumpName(), tbl.getDumpName());
+      assertEquals(tbl2.getValMsg(), tbl.getValMsg());
+      assertEquals(tbl2.getFirstLine(), tbl.getFirstLine());
+      assertEquals(tbl2.getLastLine(), tbl.getLastLine());
+      numTriggers += assertTriggers(tbl2.getTriggers(), tbl.getTriggers());
+      assertEquals(tbl2.getFields().size(), tbl.getFields().size());
+      for (Field fld : tbl.getFields()) {
+        Field fld2 = tbl2.getField(fld.getName());
+        assertEquals(fld2.getDataType(), fld.getDataType());
+        assertEquals(fld2.getExtent(), fld.getExtent());
+        assertEquals(fld2.getOrder(), fld.getOrder());
+        assertEquals(fld2.getMaxWidth(), fld.getMaxWidth());
+        assertEquals(fld2.getDescription(), fld.getDescription());
+        assertEquals(fld2.getLobArea(), fld.getLobArea());
+        assertEquals(fld2.getFormat(), fld.getFormat());
+        assertEquals(fld2.getFirstLine(), fld.getFirstLine());
+        assertEquals(fld2.getLastLine(), fld.getLastLine());
+        numTriggers += assertTriggers(fld2.getTriggers(), fld.getTriggers());
+      }
+      assertEquals(tbl2.getIndexes().size(), tbl.getIndexes().size());
+      for (Index idx : tbl.getIndexes()) {
+        Index idx2 = tbl2.getIndex(idx.getName());
+        assertEquals(idx2.isPrimary(), idx.isPrimary());
+        assertEquals(idx2.isUnique(), idx.isUnique());
+        assertEquals(idx2.isWord(), idx.isWord());
+        assertEquals(idx2.getArea(), idx.getArea());
+        assertEquals(idx2.getBufferPool(), idx.getBufferPool());
+        assertEquals(idx2.getFirstLine(), idx.getFirstLine());
+        assertEquals(idx2.getLastLine(), idx.getLastLine());
+        assertEquals(idx2.getFields().size(), idx.getFields().size());
+        for (int zz = 0; zz < idx.getFields().size(); zz++) {
+          assertEquals(idx2.getFields().get(zz).getField().getName(), idx.getFields().get(zz).getField().getName());
+          assertEquals(idx2.getFields().get(zz).isAscending(), idx.getFields().get(zz).isAscending());
+        }
+      }
+    }
+    assertEquals(numTriggers, 21);
+    assertEquals(db2.getTable("Benefits").getDescription(), "The benefits table contains employee benefits.");
+  }
+
+  private static int assertTriggers(Collection<Trigger> triggers2, Collection<Trigger> triggers) {
+    assertEquals(triggers2.size(), triggers.size());
+    Iterator<Trigger> iter = triggers.iterator();
+    for (Trigger trg2 : triggers2) {
+      Trigger trg = iter.next();
+      assertEquals(trg2.getType(), trg.getType());
+      assertEquals(trg2.getProcedure(), trg.getProcedure());
+      assertEquals(trg2.isNoOverride(), trg.isNoOverride());
+      assertEquals(trg2.isOverride(), trg.isOverride());
+      assertEquals(trg2.getCrc(), trg.getCrc());
+    }
+    return triggers.size();
+  }
+
+  @Test
+  public void testInvalidSnapshot() throws IOException {
+    File dfFile = new File("src/test/resources/sp2k.df");
+    File snapshot = File.createTempFile("sp2k", ".bin");
+    snapshot.deleteOnExit();
+    // Previous text format
+    try (OutputStream out = new FileOutputStream(snapshot)) {
+      DumpFileUtils.getDatabaseDescription(dfFile).serialize(out);
+    }
+    assertFalse(DatabaseSnapshot.isUpToDate(snapshot, DatabaseSnapshot.fingerprint(dfFile)));
+    // Replaced by binary snapshot
+    assertEquals(DatabaseSnapshot.getDatabaseDescription(dfFile, "sp2k", snapshot).getTables().size(), 25);
+    assertTrue(DatabaseSnapshot.isUpToDate(snapshot, DatabaseSnapshot.fingerprint(dfFile)));
+  }
+
 }
@@ -40,20 +40,33 @@ public class Constants {
   public static final String PROPATH_DLC = "sonar.oe.propath.dlc";
   public static final String DATABASES = "sonar.oe.databases";
   public static final String SLINT_DATABASES = "sonar.oe.lint.databases";
+  public static final String SCHEMA_SNAPSHOT = "sonar.oe.databases.snapshot";
+  public static final String SCHEMA_CACHE_DIR = "sonar.oe.databases.cache.dir";
   public static final String ALIASES = "sonar.oe.aliases";
   public static final String CPD_ANNOTATIONS = "sonar.oe.cpd.annotations";
   public static final String CPD_METHODS = "sonar.oe.cpd.skip_methods";
   public static final String CPD_PROCEDURES = "sonar.oe.cpd.skip_procedures";
   public static final String SUFFIXES = "sonar.oe.file.suffixes";
   public static final String INCLUDE_SUFFIXES = "sonar.oe.include.suffixes";
+  public static final String INCLUDE_CACHE_SIZE = "sonar.oe.include.cache.size";
   public static final String XREF_FILTER = "sonar.oe.filter.invalidxref";
   public static final String XREF_FILTER_BYTES = "sonar.oe.filter.invalidxref.bytes";
+  public static final String XREF_DOM = "sonar.oe.xref.dom";
   public static final String BACKSLASH_ESCAPE = "sonar.oe.backslash.escape";
   public static final String OE_ANALYTICS = "sonar.oe.analytics";
   public static final String SKIP_RCODE = "sonar.oe.rcode.skip";
+  public static final String RCODE_THREADS = "sonar.oe.rcode.threads";
+  public static final String RCODE_SNAPSHOT = "sonar.oe.rcode.snapshot";
+  public static final String RCODE_LAZY = "sonar.oe.rcode.lazy";
   public static final String ANTLR4_TEST = "sonar.oe.antlr4";
   public static final String ANTLR4_PROFILER = "sonar.oe.antlr4.profiler";
+  public static final String ANTLR4_WARMUP = "sonar.oe.antlr4.warmup";
   public static final String SKIP_XCODE = "sonar.oe.xcode.skip";
+  public static final String PROPARSE_THREADS = "sonar.oe.proparse.threads";
+  public static final String ANALYSIS_CACHE = "sonar.oe.analysis.cache";
+  public static final String ANALYSIS_CACHE_DIR = "sonar.oe.analysis.cache.dir";
+  public static final String TELEMETRY = "sonar.oe.telemetry";
+  public static final String TELEMETRY_TOP_FILES = "sonar.oe.telemetry.topfiles";
 
   private Constants() {
     
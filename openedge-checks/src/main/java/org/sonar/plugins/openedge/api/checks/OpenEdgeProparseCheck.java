@@ -20,9 +20,13 @@
 package org.sonar.plugins.openedge.api.checks;
 
 import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.Set;
 
+import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.JPNode;
 import org.prorefactor.treeparser.ParseUnit;
+import org.prorefactor.xref.CrossReference.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.SonarProduct;
@@ -45,6 +49,30 @@ public abstract class OpenEdgeProparseCheck extends OpenEdgeCheck<ParseUnit> {
   public final void sensorExecute(InputFile file, ParseUnit unit) {
     this.unit = unit;
     execute(file, unit);
+    Set<ABLNodeType> types = getNodeTypes();
+    if (!types.isEmpty()) {
+      for (JPNode node : unit.getNodeTypeIndex().query(types)) {
+        visitNode(file, node);
+      }
+    }
+  }
+
+  /**
+   * Override this method to subscribe to nodes of given types. Matching nodes are then sent to
+   * {@link #visitNode(InputFile, JPNode)} in tree order, just after {@link #execute(InputFile, Object)}. Nodes are read
+   * from an index shared by all rules, so the syntax tree doesn't have to be traversed by each rule.
+   * 
+   * @return Set of node types, empty by default
+   */
+  public Set<ABLNodeType> getNodeTypes() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Called for each node whose type is returned by {@link #getNodeTypes()}
+   */
+  public void visitNode(InputFile file, JPNode node) {
+    // No-op
   }
 
   @Override
@@ -189,28 +217,40 @@ public abstract class OpenEdgeProparseCheck extends OpenEdgeCheck<ParseUnit> {
     if (!"Reference".equals(element.getNodeName())) {
       throw new IllegalArgumentException("Invalid 'Reference' element");
     }
-    InputFile file2 = getSourceFile(file, element);
-    int lineNumber = Integer.parseInt(getChildNodeValue(element, "Line-num"));
-    if (file2 == null) {
+    reportIssue(file, getSourceFile(file, element), Integer.parseInt(getChildNodeValue(element, "Line-num")), msg);
+  }
+
+  /**
+   * Reports issue on XREF reference
+   */
+  protected void reportIssue(InputFile file, Reference ref, String msg) {
+    InputFile file2 = ref.getFileNum() == 1 ? file
+        : getContext().fileSystem().inputFile(getContext().fileSystem().predicates().hasRelativePath(ref.getSourceFile()));
+    reportIssue(file, file2, ref.getLineNum(), msg);
+  }
+
+  /**
+   * Reports issue on line of XREF reference found in main file (or in include file target)
+   */
+  private void reportIssue(InputFile file, InputFile target, int lineNumber, String msg) {
+    if (target == null)
       return;
-    } else {
-      NewIssue issue = getContext().newIssue().forRule(getRuleKey());
-      NewIssueLocation location = issue.newLocation().on(file2);
-      if (lineNumber > 0) {
-        if (lineNumber <= file2.lines()) {
-          location.at(file2.selectLine(lineNumber));
-        } else {
-          LOG.error("Invalid line number {} in XREF file {} (base file {})", lineNumber, file2.relativePath(),
-              file.relativePath());
-        }
-      }
-      if (file2 == file) {
-        location.message(msg);
+    NewIssue issue = getContext().newIssue().forRule(getRuleKey());
+    NewIssueLocation location = issue.newLocation().on(target);
+    if (lineNumber > 0) {
+      if (lineNumber <= target.lines()) {
+        location.at(target.selectLine(lineNumber));
       } else {
-        location.message(MessageFormat.format(INC_MESSAGE, file.relativePath(), msg));
+        LOG.error("Invalid line number {} in XREF file {} (base file {})", lineNumber, target.relativePath(),
+            file.relativePath());
       }
-      issue.at(location).save();
     }
+    if (target == file) {
+      location.message(msg);
+    } else {
+      location.message(MessageFormat.format(INC_MESSAGE, file.relativePath(), msg));
+    }
+    issue.at(location).save();
   }
 
   private InputFile getSourceFile(InputFile file, Element refElement) {
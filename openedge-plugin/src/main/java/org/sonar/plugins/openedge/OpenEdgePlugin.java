@@ -27,6 +27,7 @@ import org.sonar.api.resources.Qualifiers;
 import org.sonar.plugins.openedge.api.Constants;
 import org.sonar.plugins.openedge.decorator.CommonDBMetricsDecorator;
 import org.sonar.plugins.openedge.decorator.CommonMetricsDecorator;
+import org.sonar.plugins.openedge.foundation.DumpFileRepository;
 import org.sonar.plugins.openedge.foundation.OpenEdge;
 import org.sonar.plugins.openedge.foundation.OpenEdgeComponents;
 import org.sonar.plugins.openedge.foundation.OpenEdgeDB;
@@ -52,7 +53,7 @@ public class OpenEdgePlugin implements Plugin {
   @Override
   public void define(Context context) {
     // Main components
-    context.addExtensions(OpenEdge.class, OpenEdgeDB.class, OpenEdgeSettings.class);
+    context.addExtensions(OpenEdge.class, OpenEdgeDB.class, OpenEdgeSettings.class, DumpFileRepository.class);
 
     // Profile and rules
     if (context.getRuntime().getProduct() == SonarProduct.SONARQUBE)
@@ -77,6 +78,14 @@ public class OpenEdgePlugin implements Plugin {
         "Skip rcode parsing").type(PropertyType.BOOLEAN).category(CATEGORY_OPENEDGE).subCategory(
             SUBCATEGORY_GENERAL).onQualifiers(Qualifiers.MODULE, Qualifiers.PROJECT).defaultValue(
                 Boolean.FALSE.toString()).build());
+    context.addExtension(PropertyDefinition.builder(Constants.RCODE_SNAPSHOT).name("RCode snapshot").description(
+        "Keep type info extracted from rcode in a binary file next to the .pct directory, so that only modified rcode is read in the next analysis").type(
+            PropertyType.BOOLEAN).category(CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_GENERAL).onQualifiers(
+                Qualifiers.MODULE, Qualifiers.PROJECT).defaultValue(Boolean.FALSE.toString()).build());
+    context.addExtension(PropertyDefinition.builder(Constants.RCODE_LAZY).name("Read rcode on demand").description(
+        "Only read rcode of classes referenced by analyzed files, instead of the entire build directory. Defaults to true in SonarLint").type(
+            PropertyType.BOOLEAN).category(CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_GENERAL).onQualifiers(
+                Qualifiers.MODULE, Qualifiers.PROJECT).build());
     context.addExtension(PropertyDefinition.builder(Constants.OE_ANALYTICS).name("Enable analytics").description(
         "Ping remote server for usage analytics").type(PropertyType.BOOLEAN).category(
             CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_GENERAL).onQualifiers(Qualifiers.MODULE,
@@ -115,6 +124,41 @@ public class OpenEdgePlugin implements Plugin {
             "Does backslash escape next character on Windows ?").type(PropertyType.BOOLEAN).defaultValue(Boolean.FALSE.toString()).category(
                 CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_GENERAL).onQualifiers(Qualifiers.MODULE,
                     Qualifiers.PROJECT).build());
+    context.addExtension(
+        PropertyDefinition.builder(Constants.PROPARSE_THREADS).name("Proparse threads").description(
+            "Number of threads used to parse source code, 0 means one thread per core").type(PropertyType.INTEGER).defaultValue(
+                "1").category(CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_GENERAL).onQualifiers(Qualifiers.MODULE,
+                    Qualifiers.PROJECT).build());
+    context.addExtension(
+        PropertyDefinition.builder(Constants.ANALYSIS_CACHE).name("Analysis cache").description(
+            "Keep results of each file on disk, so that unchanged files are not parsed again in the next analysis").type(
+                PropertyType.BOOLEAN).defaultValue(Boolean.FALSE.toString()).category(CATEGORY_OPENEDGE).subCategory(
+                    SUBCATEGORY_GENERAL).onQualifiers(Qualifiers.MODULE, Qualifiers.PROJECT).build());
+    context.addExtension(
+        PropertyDefinition.builder(Constants.ANALYSIS_CACHE_DIR).name("Analysis cache directory").description(
+            "Location of analysis cache. Defaults to a subdirectory of the first build or .pct directory").type(
+                PropertyType.STRING).category(CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_GENERAL).onQualifiers(
+                    Qualifiers.MODULE, Qualifiers.PROJECT).build());
+    context.addExtension(
+        PropertyDefinition.builder(Constants.TELEMETRY).name("Timing reports").description(
+            "Write JSON and Prometheus reports of time spent in each phase and rule in the working directory. Defaults to true in SonarQube").type(
+                PropertyType.BOOLEAN).category(CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_DEBUG).onQualifiers(
+                    Qualifiers.MODULE, Qualifiers.PROJECT).build());
+    context.addExtension(
+        PropertyDefinition.builder(Constants.TELEMETRY_TOP_FILES).name("Timing reports - Slowest files").description(
+            "Number of slowest files listed in timing reports").type(PropertyType.INTEGER).defaultValue("25").category(
+                CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_DEBUG).onQualifiers(Qualifiers.MODULE,
+                    Qualifiers.PROJECT).build());
+    context.addExtension(
+        PropertyDefinition.builder(Constants.SCHEMA_SNAPSHOT).name("Schema snapshot").description(
+            "Keep a binary snapshot of each dump file, so that unchanged dump files are not parsed in the next analysis").type(
+                PropertyType.BOOLEAN).defaultValue(Boolean.FALSE.toString()).category(CATEGORY_OPENEDGE).subCategory(
+                    SUBCATEGORY_GENERAL).onQualifiers(Qualifiers.MODULE, Qualifiers.PROJECT).build());
+    context.addExtension(
+        PropertyDefinition.builder(Constants.SCHEMA_CACHE_DIR).name("Schema snapshot directory").description(
+            "Location of binary snapshots of dump files. Defaults to a subdirectory of the first build or .pct directory").type(
+                PropertyType.STRING).category(CATEGORY_OPENEDGE).subCategory(SUBCATEGORY_GENERAL).onQualifiers(
+                    Qualifiers.MODULE, Qualifiers.PROJECT).build());
   }
 
 }
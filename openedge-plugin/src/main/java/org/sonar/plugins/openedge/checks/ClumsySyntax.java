@@ -19,6 +19,10 @@
  */
 package org.sonar.plugins.openedge.checks;
 
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.JPNode;
 import org.prorefactor.treeparser.ParseUnit;
@@ -31,16 +35,24 @@ import org.sonar.plugins.openedge.api.model.SqaleConstantRemediation;
 @Rule(priority = Priority.BLOCKER, name = "Valid yet clumsy ABL syntax", tags = {"clumsy", "confusing"})
 @SqaleConstantRemediation(value = "15min")
 public class ClumsySyntax extends OpenEdgeProparseCheck {
+  private static final Set<ABLNodeType> NODE_TYPES = Collections.unmodifiableSet(EnumSet.of(ABLNodeType.METHOD));
+
+  private boolean abstractMethods;
+
+  @Override
+  public Set<ABLNodeType> getNodeTypes() {
+    return NODE_TYPES;
+  }
 
   @Override
   public void execute(InputFile file, ParseUnit unit) {
-    if (unit.getRootScope().isInterface() || unit.getRootScope().isAbstractClass()) {
-      for (JPNode node : unit.getTopNode().queryStateHead(ABLNodeType.METHOD)) {
-        JPNode lastChild = node.getLastDescendant();
-        if (lastChild.getNodeType() == ABLNodeType.LEXCOLON) {
-          reportIssue(file, node, "METHOD ending with colon instead of period");
-        }
-      }
+    abstractMethods = unit.getRootScope().isInterface() || unit.getRootScope().isAbstractClass();
+  }
+
+  @Override
+  public void visitNode(InputFile file, JPNode node) {
+    if (abstractMethods && node.isStateHead() && (node.getLastDescendant().getNodeType() == ABLNodeType.LEXCOLON)) {
+      reportIssue(file, node, "METHOD ending with colon instead of period");
     }
   }
 
@@ -35,6 +35,10 @@ import org.w3c.dom.NodeList;
 
 @Rule(priority = Priority.MAJOR, name = "Shared objects analyzer")
 public class SharedObjectsAnalyzer extends OpenEdgeProparseCheck {
+  private static final String NEW_SHR_TEMPTABLE = "NEW-SHR-TEMPTABLE";
+  private static final String NEW_SHR_DATASET = "NEW-SHR-DATASET";
+  private static final String NEW_SHR_VARIABLE = "NEW-SHR-VARIABLE";
+
   private static XPathExpression shrTTExpr;
   private static XPathExpression shrDSExpr;
   private static XPathExpression shrVarExpr;
@@ -42,9 +46,9 @@ public class SharedObjectsAnalyzer extends OpenEdgeProparseCheck {
   static {
     XPath xPath = XPathFactory.newInstance().newXPath();
     try {
-      shrTTExpr = xPath.compile("//Reference[@Reference-type='NEW-SHR-TEMPTABLE']");
-      shrDSExpr = xPath.compile("//Reference[@Reference-type='NEW-SHR-DATASET']");
-      shrVarExpr = xPath.compile("//Reference[@Reference-type='NEW-SHR-VARIABLE']");
+      shrTTExpr = xPath.compile("//Reference[@Reference-type='" + NEW_SHR_TEMPTABLE + "']");
+      shrDSExpr = xPath.compile("//Reference[@Reference-type='" + NEW_SHR_DATASET + "']");
+      shrVarExpr = xPath.compile("//Reference[@Reference-type='" + NEW_SHR_VARIABLE + "']");
     } catch (XPathExpressionException caught) {
       throw new RuntimeException(caught);
     }
@@ -52,6 +56,12 @@ public class SharedObjectsAnalyzer extends OpenEdgeProparseCheck {
 
   @Override
   public void execute(InputFile file, ParseUnit unit) {
+    if (unit.getCrossReference() != null) {
+      reportMeasure(file, OpenEdgeMetrics.SHR_TT, unit.countXrefReferences(NEW_SHR_TEMPTABLE));
+      reportMeasure(file, OpenEdgeMetrics.SHR_DS, unit.countXrefReferences(NEW_SHR_DATASET));
+      reportMeasure(file, OpenEdgeMetrics.SHR_VAR, unit.countXrefReferences(NEW_SHR_VARIABLE));
+      return;
+    }
     if (unit.getXref() == null)
       return;
 
@@ -0,0 +1,272 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.CoreProperties;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.ActiveRule;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.openedge.api.Constants;
+import org.sonar.plugins.openedge.foundation.AnalysisRecord.Dependency;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+
+/**
+ * On-disk cache of {@link AnalysisRecord}, so that unchanged files don't have to be lexed or parsed again in the next
+ * analysis. One entry per kind of analysis and per file. An entry is only used if:
+ * <ul>
+ * <li>Fingerprint of the analysis is unchanged (plugin, properties, propath, schema, active rules)</li>
+ * <li>Content of the file is unchanged</li>
+ * <li>All dependencies of the entry (include files, XREF and listing files, rcode of referenced classes) are unchanged.
+ * Include files are resolved again in the propath, so that a new include file hiding the previous one is detected</li>
+ * </ul>
+ * Stamps of dependencies are computed only once per analysis, as most include files are shared between many files.
+ */
+public class AnalysisCache {
+  private static final Logger LOG = Loggers.get(AnalysisCache.class);
+  private static final HashFunction HASH = Hashing.murmur3_128();
+
+  private final OpenEdgeSettings settings;
+  private final File directory;
+  private final String fingerprint;
+  private final Map<String, String> stamps = new ConcurrentHashMap<>();
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+  private final AtomicInteger writes = new AtomicInteger();
+
+  public AnalysisCache(OpenEdgeSettings settings, File directory, String fingerprint) {
+    this.settings = settings;
+    this.directory = directory;
+    this.fingerprint = fingerprint;
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return Hash of file content, or null if file can't be read
+   */
+  @Nullable
+  public static String hash(InputFile file) {
+    try (InputStream input = file.inputStream()) {
+      return HASH.hashBytes(ByteStreams.toByteArray(input)).toString();
+    } catch (IOException caught) {
+      LOG.debug("Unable to compute hash of '{}'", file, caught);
+      return null;
+    }
+  }
+
+  /**
+   * @param kind Kind of analysis, for example <code>proparse</code> or <code>highlighting</code>
+   * @param relativePath Relative path of the file
+   * @param hash Current hash of the file, see {@link #hash(InputFile)}
+   * 
+   * @return Valid record, or null if not found or outdated
+   */
+  @Nullable
+  public AnalysisRecord get(String kind, String relativePath, String hash) {
+    File entry = getEntryFile(kind, relativePath);
+    if (!entry.exists()) {
+      misses.incrementAndGet();
+      return null;
+    }
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+      if ((input.readInt() == AnalysisRecord.VERSION) && input.readUTF().equals(fingerprint)
+          && input.readUTF().equals(relativePath) && input.readUTF().equals(hash)) {
+        AnalysisRecord record = AnalysisRecord.read(input);
+        if ((record != null) && isUpToDate(record)) {
+          hits.incrementAndGet();
+          return record;
+        }
+      }
+    } catch (IOException caught) {
+      LOG.debug("Unable to read analysis cache entry '{}', deleting file", entry, caught);
+      FileUtils.deleteQuietly(entry);
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Stores record on disk. Entry is first written to a temporary file, so that an interrupted analysis never leaves a
+   * truncated entry.
+   */
+  public void put(String kind, String relativePath, String hash, AnalysisRecord record) {
+    File entry = getEntryFile(kind, relativePath);
+    File tmpFile = new File(entry.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      Files.createParentDirs(entry);
+      try (DataOutputStream output = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+        output.writeInt(AnalysisRecord.VERSION);
+        output.writeUTF(fingerprint);
+        output.writeUTF(relativePath);
+        output.writeUTF(hash);
+        record.write(output);
+      }
+      java.nio.file.Files.move(tmpFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      writes.incrementAndGet();
+    } catch (IOException caught) {
+      LOG.debug("Unable to write analysis cache entry '{}'", entry, caught);
+      FileUtils.deleteQuietly(tmpFile);
+    }
+  }
+
+  /**
+   * @return Current state of dependency, computed only once per analysis
+   */
+  public String getStamp(int kind, String name) {
+    return stamps.computeIfAbsent(kind + ":" + name, key -> computeStamp(kind, name));
+  }
+
+  private String computeStamp(int kind, String name) {
+    switch (kind) {
+      case Dependency.INCLUDE:
+        File incFile = settings.getProparseSession().findFile3(name);
+        return incFile == null ? "" : incFile.getAbsolutePath() + '|' + hash(incFile);
+      case Dependency.FILE:
+        return hash(new File(name));
+      case Dependency.RCODE:
+        File rcode = settings.getRCode(name);
+        return (rcode == null) || !rcode.exists() ? "" : rcode.getAbsolutePath() + '|' + rcode.lastModified();
+      default:
+        throw new IllegalArgumentException("Invalid dependency kind " + kind);
+    }
+  }
+
+  private boolean isUpToDate(AnalysisRecord record) {
+    for (Dependency dep : record.getDependencies()) {
+      if (!getStamp(dep.getKind(), dep.getName()).equals(dep.getStamp())) {
+        LOG.debug("Analysis cache - Dependency '{}' has changed", dep.getName());
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private File getEntryFile(String kind, String relativePath) {
+    return new File(new File(directory, kind),
+        HASH.hashString(relativePath, StandardCharsets.UTF_8).toString() + ".bin");
+  }
+
+  private static String hash(File file) {
+    if (!file.isFile())
+      return "";
+    try {
+      return Files.asByteSource(file).hash(HASH).toString();
+    } catch (IOException caught) {
+      return "";
+    }
+  }
+
+  /**
+   * Fingerprint of everything having an impact on analysis results, apart from the files themselves
+   */
+  @SuppressWarnings("deprecation")
+  public static String computeFingerprint(SensorContext context, OpenEdgeSettings settings) {
+    Hasher hasher = HASH.newHasher();
+    hasher.putInt(AnalysisRecord.VERSION);
+    hasher.putString(getPluginStamp(), StandardCharsets.UTF_8);
+    // Analysis properties, sorted by key
+    for (Map.Entry<String, String> entry : new TreeMap<>(context.settings().getProperties()).entrySet()) {
+      if (entry.getKey().startsWith("sonar.oe.") || CoreProperties.ENCODING_PROPERTY.equals(entry.getKey())) {
+        hasher.putString(entry.getKey(), StandardCharsets.UTF_8).putChar('=').putString(
+            Strings.nullToEmpty(entry.getValue()), StandardCharsets.UTF_8).putChar('\n');
+      }
+    }
+    hasher.putString(settings.getPropathAsString(), StandardCharsets.UTF_8);
+    hasher.putString(settings.getSchemaFingerprint(), StandardCharsets.UTF_8);
+    // Active rules and their parameters, sorted by rule key
+    List<ActiveRule> rules = new ArrayList<>(context.activeRules().findByLanguage(Constants.LANGUAGE_KEY));
+    rules.sort((rule1, rule2) -> rule1.ruleKey().toString().compareTo(rule2.ruleKey().toString()));
+    for (ActiveRule rule : rules) {
+      hasher.putString(rule.ruleKey().toString(), StandardCharsets.UTF_8).putChar('|');
+      hasher.putString(Strings.nullToEmpty(rule.severity()), StandardCharsets.UTF_8).putChar('|');
+      hasher.putString(Strings.nullToEmpty(rule.templateRuleKey()), StandardCharsets.UTF_8).putChar('|');
+      hasher.putString(Strings.nullToEmpty(rule.internalKey()), StandardCharsets.UTF_8).putChar('|');
+      for (Map.Entry<String, String> param : new TreeMap<>(rule.params()).entrySet()) {
+        hasher.putString(param.getKey(), StandardCharsets.UTF_8).putChar('=').putString(
+            Strings.nullToEmpty(param.getValue()), StandardCharsets.UTF_8).putChar('|');
+      }
+      hasher.putChar('\n');
+    }
+
+    return hasher.hash().toString();
+  }
+
+  /**
+   * @return Size and timestamp of plugin JAR file, so that entries are invalidated on plugin upgrade
+   */
+  private static String getPluginStamp() {
+    CodeSource src = AnalysisCache.class.getProtectionDomain().getCodeSource();
+    if ((src == null) || (src.getLocation() == null))
+      return "";
+    File jar = FileUtils.toFile(src.getLocation());
+    return (jar == null) || !jar.isFile() ? "" : jar.getName() + '|' + jar.length() + '|' + jar.lastModified();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d hits - %d misses - %d writes - %s", hits.get(), misses.get(), writes.get(), directory);
+  }
+}
@@ -0,0 +1,435 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.TextRange;
+import org.sonar.api.batch.measure.Metric;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.cpd.NewCpdTokens;
+import org.sonar.api.batch.sensor.highlighting.NewHighlighting;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.batch.sensor.issue.NewIssue;
+import org.sonar.api.batch.sensor.issue.NewIssueLocation;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.rule.RuleKey;
+
+/**
+ * Results of the analysis of one file (measures, issues, CPD tokens and highlighting) as recorded by
+ * {@link RecordingSensorContext}, and the list of external files used during this analysis. Records are stored on disk
+ * by {@link AnalysisCache}, and replayed on the SensorContext of a later analysis.
+ */
+public class AnalysisRecord {
+  // Increment when storage format changes
+  static final int VERSION = 2;
+
+  private static final Map<String, Metric<?>> METRICS = new HashMap<>();
+  static {
+    for (Metric<?> metric : CoreMetrics.getMetrics()) {
+      METRICS.put(metric.key(), metric);
+    }
+    for (Metric<?> metric : new OpenEdgeMetrics().getMetrics()) {
+      METRICS.put(metric.key(), metric);
+    }
+  }
+
+  private final List<Dependency> dependencies = new ArrayList<>();
+  private final List<Measure> measures = new ArrayList<>();
+  private final List<Issue> issues = new ArrayList<>();
+  private List<Token> cpdTokens;
+  private List<Token> highlighting;
+
+  public List<Dependency> getDependencies() {
+    return Collections.unmodifiableList(dependencies);
+  }
+
+  /**
+   * @param kind See {@link Dependency}
+   * @param name Include file name, absolute file path or class name
+   * @param stamp Current state of the dependency, see {@link AnalysisCache#getStamp(int, String)}
+   */
+  public void addDependency(int kind, String name, String stamp) {
+    dependencies.add(new Dependency(kind, name, stamp));
+  }
+
+  /**
+   * @return Value of measure as an int, or 0 if measure is not recorded
+   */
+  public int getIntMeasure(String metricKey) {
+    for (Measure measure : measures) {
+      if (measure.metric.key().equals(metricKey) && (measure.value instanceof Integer))
+        return (Integer) measure.value;
+    }
+    return 0;
+  }
+
+  /**
+   * Metrics have to be resolved from their key when reading records, so only core and OpenEdge metrics are supported.
+   * Values have to be of a primitive wrapper type or String.
+   */
+  static boolean isSupported(Metric<?> metric, Serializable value) {
+    return (METRICS.get(metric.key()) != null) && ((value instanceof Integer) || (value instanceof Long)
+        || (value instanceof Double) || (value instanceof String) || (value instanceof Boolean));
+  }
+
+  void addMeasure(Metric<?> metric, Serializable value) {
+    measures.add(new Measure(metric, value));
+  }
+
+  void addIssue(Issue issue) {
+    issues.add(issue);
+  }
+
+  void setCpdTokens(List<Token> tokens) {
+    this.cpdTokens = tokens;
+  }
+
+  void setHighlighting(List<Token> tokens) {
+    this.highlighting = tokens;
+  }
+
+  /**
+   * Saves all recorded data on file
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void replay(SensorContext context, InputFile file) {
+    for (Measure measure : measures) {
+      context.newMeasure().on(file).forMetric((Metric) measure.metric).withValue(measure.value).save();
+    }
+    for (Issue issue : issues) {
+      NewIssue newIssue = context.newIssue().forRule(RuleKey.parse(issue.ruleKey));
+      if (issue.gap != null)
+        newIssue.gap(issue.gap);
+      if (issue.severity != null)
+        newIssue.overrideSeverity(Severity.valueOf(issue.severity));
+      newIssue.at(issue.primary.toLocation(newIssue, file));
+      for (Location loc : issue.secondary) {
+        newIssue.addLocation(loc.toLocation(newIssue, file));
+      }
+      newIssue.save();
+    }
+    if (cpdTokens != null) {
+      NewCpdTokens newTokens = context.newCpdTokens().onFile(file);
+      for (Token token : cpdTokens) {
+        newTokens.addToken(token.startLine, token.startOffset, token.endLine, token.endOffset, token.value);
+      }
+      newTokens.save();
+    }
+    if (highlighting != null) {
+      NewHighlighting newHighlighting = context.newHighlighting().onFile(file);
+      for (Token token : highlighting) {
+        newHighlighting.highlight(token.startLine, token.startOffset, token.endLine, token.endOffset,
+            TypeOfText.valueOf(token.value));
+      }
+      newHighlighting.save();
+    }
+  }
+
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(dependencies.size());
+    for (Dependency dep : dependencies) {
+      out.writeByte(dep.kind);
+      out.writeUTF(dep.name);
+      out.writeUTF(dep.stamp);
+    }
+    out.writeInt(measures.size());
+    for (Measure measure : measures) {
+      out.writeUTF(measure.metric.key());
+      writeValue(out, measure.value);
+    }
+    out.writeInt(issues.size());
+    for (Issue issue : issues) {
+      out.writeUTF(issue.ruleKey);
+      out.writeBoolean(issue.gap != null);
+      if (issue.gap != null)
+        out.writeDouble(issue.gap);
+      writeNullableString(out, issue.severity);
+      issue.primary.write(out);
+      out.writeInt(issue.secondary.size());
+      for (Location loc : issue.secondary) {
+        loc.write(out);
+      }
+    }
+    writeTokens(out, cpdTokens);
+    writeTokens(out, highlighting);
+  }
+
+  /**
+   * @return Null if record references an unknown metric
+   */
+  @Nullable
+  static AnalysisRecord read(DataInputStream in) throws IOException {
+    AnalysisRecord record = new AnalysisRecord();
+    int numDeps = in.readInt();
+    for (int zz = 0; zz < numDeps; zz++) {
+      record.dependencies.add(new Dependency(in.readByte(), in.readUTF(), in.readUTF()));
+    }
+    int numMeasures = in.readInt();
+    for (int zz = 0; zz < numMeasures; zz++) {
+      Metric<?> metric = METRICS.get(in.readUTF());
+      Serializable value = readValue(in);
+      if (metric == null)
+        return null;
+      record.measures.add(new Measure(metric, value));
+    }
+    int numIssues = in.readInt();
+    for (int zz = 0; zz < numIssues; zz++) {
+      Issue issue = new Issue(in.readUTF());
+      if (in.readBoolean())
+        issue.gap = in.readDouble();
+      issue.severity = readNullableString(in);
+      issue.primary = Location.read(in);
+      int numLocs = in.readInt();
+      for (int yy = 0; yy < numLocs; yy++) {
+        issue.secondary.add(Location.read(in));
+      }
+      record.issues.add(issue);
+    }
+    record.cpdTokens = readTokens(in);
+    record.highlighting = readTokens(in);
+
+    return record;
+  }
+
+  private static void writeValue(DataOutputStream out, Serializable value) throws IOException {
+    if (value instanceof Integer) {
+      out.writeByte('I');
+      out.writeInt((Integer) value);
+    } else if (value instanceof Long) {
+      out.writeByte('L');
+      out.writeLong((Long) value);
+    } else if (value instanceof Double) {
+      out.writeByte('D');
+      out.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte('B');
+      out.writeBoolean((Boolean) value);
+    } else {
+      out.writeByte('S');
+      out.writeUTF(value.toString());
+    }
+  }
+
+  private static Serializable readValue(DataInputStream in) throws IOException {
+    switch (in.readByte()) {
+      case 'I':
+        return in.readInt();
+      case 'L':
+        return in.readLong();
+      case 'D':
+        return in.readDouble();
+      case 'B':
+        return in.readBoolean();
+      case 'S':
+        return in.readUTF();
+      default:
+        throw new IOException("Invalid measure value");
+    }
+  }
+
+  private static void writeNullableString(DataOutputStream out, @Nullable String str) throws IOException {
+    out.writeBoolean(str != null);
+    if (str != null)
+      out.writeUTF(str);
+  }
+
+  @Nullable
+  private static String readNullableString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeTokens(DataOutputStream out, @Nullable List<Token> tokens) throws IOException {
+    out.writeInt(tokens == null ? -1 : tokens.size());
+    if (tokens == null)
+      return;
+    for (Token token : tokens) {
+      out.writeInt(token.startLine);
+      out.writeInt(token.startOffset);
+      out.writeInt(token.endLine);
+      out.writeInt(token.endOffset);
+      out.writeUTF(token.value);
+    }
+  }
+
+  @Nullable
+  private static List<Token> readTokens(DataInputStream in) throws IOException {
+    int size = in.readInt();
+    if (size < 0)
+      return null;
+    List<Token> tokens = new ArrayList<>(size);
+    for (int zz = 0; zz < size; zz++) {
+      tokens.add(new Token(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readUTF()));
+    }
+    return tokens;
+  }
+
+  /**
+   * External file used during analysis. Stamp is compared with current state of dependency in order to validate record.
+   */
+  public static class Dependency {
+    // Include file, as referenced in source code. Stamp contains path of resolved file and hash of its content
+    public static final int INCLUDE = 1;
+    // Any file (XREF, listing...), referenced by absolute path. Stamp is hash of content
+    public static final int FILE = 2;
+    // Class name, stamp contains path and timestamp of rcode
+    public static final int RCODE = 3;
+
+    private final int kind;
+    private final String name;
+    private final String stamp;
+
+    public Dependency(int kind, String name, String stamp) {
+      this.kind = kind;
+      this.name = name;
+      this.stamp = stamp;
+    }
+
+    public int getKind() {
+      return kind;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getStamp() {
+      return stamp;
+    }
+  }
+
+  private static class Measure {
+    private final Metric<?> metric;
+    private final Serializable value;
+
+    Measure(Metric<?> metric, Serializable value) {
+      this.metric = metric;
+      this.value = value;
+    }
+  }
+
+  static class Issue {
+    private final String ruleKey;
+    private Double gap;
+    private String severity;
+    private Location primary;
+    private final List<Location> secondary = new ArrayList<>();
+
+    Issue(String ruleKey) {
+      this.ruleKey = ruleKey;
+    }
+
+    void setGap(Double gap) {
+      this.gap = gap;
+    }
+
+    void setSeverity(String severity) {
+      this.severity = severity;
+    }
+
+    void setPrimary(Location primary) {
+      this.primary = primary;
+    }
+
+    void addSecondary(Location loc) {
+      secondary.add(loc);
+    }
+  }
+
+  /**
+   * Issue location in the recorded file. Null range means the whole file.
+   */
+  static class Location {
+    private Token range;
+    private String message;
+
+    void setRange(TextRange range) {
+      this.range = new Token(range.start().line(), range.start().lineOffset(), range.end().line(),
+          range.end().lineOffset(), "");
+    }
+
+    void setMessage(String message) {
+      this.message = message;
+    }
+
+    NewIssueLocation toLocation(NewIssue issue, InputFile file) {
+      NewIssueLocation loc = issue.newLocation().on(file);
+      if (range != null)
+        loc.at(file.newRange(range.startLine, range.startOffset, range.endLine, range.endOffset));
+      if (message != null)
+        loc.message(message);
+      return loc;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      out.writeBoolean(range != null);
+      if (range != null) {
+        out.writeInt(range.startLine);
+        out.writeInt(range.startOffset);
+        out.writeInt(range.endLine);
+        out.writeInt(range.endOffset);
+      }
+      writeNullableString(out, message);
+    }
+
+    static Location read(DataInputStream in) throws IOException {
+      Location loc = new Location();
+      if (in.readBoolean())
+        loc.range = new Token(in.readInt(), in.readInt(), in.readInt(), in.readInt(), "");
+      loc.message = readNullableString(in);
+      return loc;
+    }
+  }
+
+  /**
+   * Text range with a value, used for CPD tokens (token image) and highlighting (type of text)
+   */
+  static class Token {
+    private final int startLine;
+    private final int startOffset;
+    private final int endLine;
+    private final int endOffset;
+    private final String value;
+
+    Token(int startLine, int startOffset, int endLine, int endOffset, String value) {
+      this.startLine = startLine;
+      this.startOffset = startOffset;
+      this.endLine = endLine;
+      this.endOffset = endOffset;
+      this.value = value;
+    }
+
+    Token(TextRange range, String value) {
+      this(range.start().line(), range.start().lineOffset(), range.end().line(), range.end().lineOffset(), value);
+    }
+  }
+}
@@ -19,7 +19,6 @@
  */
 package org.sonar.plugins.openedge.foundation;
 
-import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
 
@@ -109,7 +108,8 @@ public class CPDCallback implements ICallback<NewCpdTokens> {
    * @return True if token is right after ANALYZE-SUSPEND _CREATE-WINDOW, meaning that block of code has to be skipped
    */
   private boolean preprocessorLookup(JPNode node) {
-    for (ProToken n : node.getHiddenTokens()) {
+    // Hidden tokens are read backwards, so that no list is allocated
+    for (ProToken n = node.getHiddenBefore(); n != null; n = (ProToken) n.getHiddenBefore()) {
       if ((n.getNodeType() == ABLNodeType.AMPANALYZESUSPEND) && (n.getText().startsWith("&ANALYZE-SUSPEND _CREATE-WINDOW")
           || n.getText().startsWith("&ANALYZE-SUSPEND _UIB-CODE-BLOCK _PROCEDURE adm-create-objects"))) {
         return true;
@@ -143,8 +143,10 @@ public class CPDCallback implements ICallback<NewCpdTokens> {
   }
 
   private void insertFakeNode(JPNode node) {
-    List<JPNode> children = node.getDirectChildren();
-    JPNode lastSibling = children.isEmpty() ? node : children.get(children.size() - 1);
+    JPNode lastSibling = node;
+    for (JPNode child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      lastSibling = child;
+    }
     try {
       TextRange range = file.newRange(node.getLine(), node.getColumn() - 1, lastSibling.getEndLine(), lastSibling.getEndColumn() - 1);
       cpdTokens.addToken(range, UUID.randomUUID().toString());
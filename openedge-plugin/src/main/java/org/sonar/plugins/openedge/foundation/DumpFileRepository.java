@@ -0,0 +1,215 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.sonar.api.SonarProduct;
+import org.sonar.api.SonarRuntime;
+import org.sonar.api.batch.ScannerSide;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputFile.Type;
+import org.sonar.api.utils.PathUtils;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.plugins.openedge.api.Constants;
+import org.sonarsource.api.sonarlint.SonarLintSide;
+
+import eu.rssw.antlr.database.DumpFileUtils;
+import eu.rssw.antlr.database.objects.DatabaseDescription;
+
+/**
+ * Dump files parsed during this analysis, shared by the DB sensors and the schema loader. Each dump file is parsed
+ * once, and its tokens and parse tree are kept until every expected consumer has called
+ * {@link #release(InputFile, Consumer)}. Database descriptions are kept for the whole analysis.
+ */
+@ScannerSide
+@SonarLintSide
+public class DumpFileRepository {
+  private static final Logger LOG = Loggers.get(DumpFileRepository.class);
+
+  public enum Consumer {
+    /** OpenEdgeDBSensor, on main files */
+    METRICS,
+    /** OpenEdgeDBRulesSensor, on main files */
+    RULES,
+    /** OpenEdgeDBColorizer, on all files, only in SonarQube */
+    HIGHLIGHTING
+  }
+
+  // IoC
+  private final FileSystem fileSystem;
+  private final SonarRuntime runtime;
+
+  // Key is absolute path
+  private final Map<String, DumpFile> dumpFiles = new ConcurrentHashMap<>();
+  private final AtomicInteger parseCount = new AtomicInteger();
+
+  public DumpFileRepository(FileSystem fileSystem, SonarRuntime runtime) {
+    this.fileSystem = fileSystem;
+    this.runtime = runtime;
+  }
+
+  /**
+   * @return All tokens of the dump file, including hidden ones
+   */
+  public List<Token> getTokens(InputFile file) throws IOException {
+    DumpFile df = getDumpFile(file);
+    synchronized (df) {
+      return df.parse().tokens;
+    }
+  }
+
+  public ParseTree getParseTree(InputFile file) throws IOException {
+    DumpFile df = getDumpFile(file);
+    synchronized (df) {
+      return df.parse().tree;
+    }
+  }
+
+  public DatabaseDescription getDatabaseDescription(InputFile file, String dbName) throws IOException {
+    DumpFile df = getDumpFile(file);
+    synchronized (df) {
+      return df.getDatabaseDescription(dbName);
+    }
+  }
+
+  /**
+   * Database description of a dump file which is not necessarily part of the analyzed files. Signature matches
+   * {@link eu.rssw.antlr.database.DatabaseSnapshot.DumpFileLoader}.
+   */
+  public DatabaseDescription getDatabaseDescription(File file, String dbName) throws IOException {
+    InputFile inputFile = fileSystem.inputFile(fileSystem.predicates().hasAbsolutePath(file.getAbsolutePath()));
+    if (inputFile != null)
+      return getDatabaseDescription(inputFile, dbName);
+    DumpFile df = dumpFiles.computeIfAbsent(PathUtils.sanitize(file.getAbsolutePath()),
+        key -> new DumpFile(key, null, file, EnumSet.noneOf(Consumer.class)));
+    synchronized (df) {
+      return df.getDatabaseDescription(dbName);
+    }
+  }
+
+  /**
+   * Consumer won't need tokens or parse tree of this file anymore. They're discarded once all consumers are done.
+   */
+  public void release(InputFile file, Consumer consumer) {
+    DumpFile df = dumpFiles.get(InputFileUtils.getAbsolutePath(file));
+    if (df == null)
+      return;
+    synchronized (df) {
+      df.pending.remove(consumer);
+      if (df.pending.isEmpty())
+        df.discard();
+    }
+  }
+
+  /**
+   * @return Number of times a dump file was parsed
+   */
+  public int getParseCount() {
+    return parseCount.get();
+  }
+
+  private DumpFile getDumpFile(InputFile file) {
+    return dumpFiles.computeIfAbsent(InputFileUtils.getAbsolutePath(file),
+        key -> new DumpFile(key, file, InputFileUtils.getFile(file), getConsumers(file)));
+  }
+
+  private EnumSet<Consumer> getConsumers(InputFile file) {
+    EnumSet<Consumer> set = EnumSet.noneOf(Consumer.class);
+    if (!Constants.DB_LANGUAGE_KEY.equals(file.language()))
+      return set;
+    if (file.type() == Type.MAIN) {
+      set.add(Consumer.METRICS);
+      set.add(Consumer.RULES);
+    }
+    if (runtime.getProduct() == SonarProduct.SONARQUBE)
+      set.add(Consumer.HIGHLIGHTING);
+    return set;
+  }
+
+  private class DumpFile {
+    private final String path;
+    @Nullable
+    private final InputFile inputFile;
+    private final File file;
+    private final EnumSet<Consumer> pending;
+    private final Map<String, DatabaseDescription> descriptions = new HashMap<>();
+
+    private List<Token> tokens;
+    private ParseTree tree;
+
+    DumpFile(String path, @Nullable InputFile inputFile, File file, EnumSet<Consumer> pending) {
+      this.path = path;
+      this.inputFile = inputFile;
+      this.file = file;
+      this.pending = pending;
+    }
+
+    DumpFile parse() throws IOException {
+      if (tree != null)
+        return this;
+      LOG.debug("Parsing dump file {}", path);
+      long startTime = System.currentTimeMillis();
+      CommonTokenStream stream;
+      // Encoding of files outside of the project is only read from DF footer
+      try (InputStream input = inputFile == null ? new FileInputStream(file) : inputFile.inputStream()) {
+        stream = DumpFileUtils.getDumpFileTokens(input, inputFile == null ? null : inputFile.charset());
+      }
+      tokens = Collections.unmodifiableList(stream.getTokens());
+      tree = DumpFileUtils.getDumpFileParseTree(stream);
+      parseCount.incrementAndGet();
+      LOG.debug("{} parsed in {} ms", path, System.currentTimeMillis() - startTime);
+      return this;
+    }
+
+    DatabaseDescription getDatabaseDescription(String dbName) throws IOException {
+      DatabaseDescription desc = descriptions.get(dbName);
+      if (desc == null) {
+        desc = DumpFileUtils.getDatabaseDescription(parse().tree, dbName);
+        descriptions.put(dbName, desc);
+        if (pending.isEmpty())
+          discard();
+      }
+      return desc;
+    }
+
+    void discard() {
+      tokens = null;
+      tree = null;
+    }
+  }
+}
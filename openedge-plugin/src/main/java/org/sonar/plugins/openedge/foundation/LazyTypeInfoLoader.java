@@ -0,0 +1,123 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.google.common.base.Suppliers;
+
+import eu.rssw.pct.FileEntry;
+import eu.rssw.pct.PLReader;
+import eu.rssw.pct.RCodeInfo;
+import eu.rssw.pct.RCodeInfo.InvalidRCodeException;
+import eu.rssw.pct.elements.ITypeInfo;
+
+/**
+ * Reads type info of a single class on demand. Class name is mapped to an rcode file in the binaries directories, then
+ * to an entry in the PL libraries. Libraries are indexed on first lookup. Memoization (including classes which can't
+ * be found) is handled by {@link org.prorefactor.refactor.TypeInfoRegistry}.
+ * <p>
+ * Libraries can be memory-mapped, but mappings are only released when garbage collected, and mapped files can't be
+ * replaced on Windows in the meantime. Memory-mapped mode is then not suitable for SonarLint, where PL files are
+ * rebuilt while the IDE is running.
+ */
+public class LazyTypeInfoLoader implements Function<String, ITypeInfo> {
+  private static final Logger LOG = Loggers.get(LazyTypeInfoLoader.class);
+
+  private final List<Path> binariesDirs;
+  private final Supplier<List<PLReader>> libraries;
+
+  public LazyTypeInfoLoader(List<Path> binariesDirs, Collection<File> libraries) {
+    this(binariesDirs, libraries, false);
+  }
+
+  /**
+   * @param memoryMapped If false, each entry is read from disk on lookup, and libraries are never kept open
+   */
+  public LazyTypeInfoLoader(List<Path> binariesDirs, Collection<File> libraries, boolean memoryMapped) {
+    this.binariesDirs = binariesDirs;
+    this.libraries = Suppliers.memoize(() -> openLibraries(libraries, memoryMapped));
+  }
+
+  @Override
+  @Nullable
+  public ITypeInfo apply(String className) {
+    String rcodeName = className.replace('.', '/') + ".r";
+    for (Path binDir : binariesDirs) {
+      File rcode = binDir.resolve(rcodeName).toFile();
+      if (rcode.isFile()) {
+        try (FileInputStream input = new FileInputStream(rcode)) {
+          return getTypeInfo(new RCodeInfo(input), className);
+        } catch (InvalidRCodeException | IOException | RuntimeException caught) {
+          LOG.error("Unable to parse rcode {} - {}", rcode.getAbsolutePath(), caught.getClass().getName());
+          return null;
+        }
+      }
+    }
+    for (PLReader pl : libraries.get()) {
+      FileEntry entry = pl.getEntry(rcodeName);
+      if (entry != null) {
+        try {
+          return getTypeInfo(new RCodeInfo(pl.getByteBuffer(entry)), className);
+        } catch (InvalidRCodeException | IOException | RuntimeException caught) {
+          LOG.error("Unable to parse rcode {} in PL - {}", rcodeName, caught.getClass().getName());
+          return null;
+        }
+      }
+    }
+    LOG.debug("No rcode found for class {}", className);
+    return null;
+  }
+
+  private static ITypeInfo getTypeInfo(RCodeInfo rci, String className) {
+    if (!rci.isClass())
+      return null;
+    LOG.debug("Type info of {} read on demand", className);
+    return rci.getTypeInfo();
+  }
+
+  private static List<PLReader> openLibraries(Collection<File> files, boolean memoryMapped) {
+    List<PLReader> list = new ArrayList<>();
+    for (File file : files) {
+      PLReader pl = new PLReader(file, memoryMapped);
+      try {
+        // Build index now, so that invalid libraries are discarded only once
+        pl.getFileList();
+        list.add(pl);
+      } catch (RuntimeException caught) {
+        LOG.error("Unable to read PL file {}", file.getAbsolutePath(), caught);
+      }
+    }
+    return list;
+  }
+}
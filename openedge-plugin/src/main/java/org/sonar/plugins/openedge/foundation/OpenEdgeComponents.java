@@ -67,6 +67,8 @@ public class OpenEdgeComponents {
   private final CheckRegistrar checkRegistrar = new CheckRegistrar();
   private final LicenseRegistrar licenseRegistrar = new LicenseRegistrar();
   private boolean initialized = false;
+  // Context given to checks, so that their results can be stored in the analysis cache
+  private RecordingSensorContext recorder;
 
   public OpenEdgeComponents() {
     this(null, null);
@@ -126,19 +128,20 @@ public class OpenEdgeComponents {
     if (initialized)
       return;
 
+    recorder = new RecordingSensorContext(context);
     String permId = (context.runtime().getProduct() == SonarProduct.SONARLINT ? "sonarlint-" : "")
         + OpenEdgeProjectHelper.getServerId(context);
 
     // Proparse and XREF rules
     for (ActiveRule rule : context.activeRules().findByLanguage(Constants.LANGUAGE_KEY)) {
-      OpenEdgeCheck<?> lint = initializeCheck(context, rule, permId);
+      OpenEdgeCheck<?> lint = initializeCheck(recorder, rule, permId);
       if ((lint != null) && (lint.getCheckType() == CheckType.PROPARSE)) {
         ppChecksMap.put(rule, (OpenEdgeProparseCheck) lint);
       }
     }
     // DB rules
     for (ActiveRule rule : context.activeRules().findByLanguage(Constants.DB_LANGUAGE_KEY)) {
-      OpenEdgeCheck<?> lint = initializeCheck(context, rule, permId);
+      OpenEdgeCheck<?> lint = initializeCheck(recorder, rule, permId);
       if ((lint != null) && (lint.getCheckType() == CheckType.DUMP_FILE)) {
         dfChecksMap.put(rule, (OpenEdgeDumpFileCheck) lint);
       }
@@ -151,6 +154,13 @@ public class OpenEdgeComponents {
     return Collections.unmodifiableMap(ppChecksMap);  
   }
 
+  /**
+   * @return SensorContext used by all checks, or null if checks are not initialized
+   */
+  public RecordingSensorContext getRecorder() {
+    return recorder;
+  }
+
   public Map<ActiveRule, OpenEdgeDumpFileCheck> getDumpFileRules() {  
     return Collections.unmodifiableMap(dfChecksMap);  
   }
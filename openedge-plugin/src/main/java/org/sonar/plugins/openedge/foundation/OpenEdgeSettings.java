@@ -21,16 +21,17 @@ package org.sonar.plugins.openedge.foundation;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -40,12 +41,16 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
-import org.apache.commons.io.FileUtils;
+import javax.annotation.Nullable;
+
 import org.apache.commons.io.FilenameUtils;
 import org.prorefactor.core.schema.IDatabase;
 import org.prorefactor.core.schema.Schema;
+import org.prorefactor.refactor.IncludeFileCache;
 import org.prorefactor.refactor.RefactorSession;
 import org.prorefactor.refactor.settings.ProparseSettings;
 import org.sonar.api.CoreProperties;
@@ -55,6 +60,7 @@ import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.bootstrap.ProjectDefinition;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -66,10 +72,12 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.google.common.primitives.Ints;
 
-import eu.rssw.antlr.database.DumpFileUtils;
+import eu.rssw.antlr.database.DatabaseSnapshot;
 import eu.rssw.antlr.database.objects.DatabaseDescription;
 import eu.rssw.pct.FileEntry;
 import eu.rssw.pct.PLReader;
@@ -87,6 +95,7 @@ public class OpenEdgeSettings {
   private final Configuration config;
   private final FileSystem fileSystem;
   private final SonarRuntime runtime;
+  private final DumpFileRepository dumpFiles;
 
   // Internal use
   private boolean init = false;
@@ -101,11 +110,19 @@ public class OpenEdgeSettings {
   private final Set<Integer> xrefBytes = new HashSet<>();
 
   private RefactorSession proparseSession;
+  private AnalysisCache analysisCache;
+  private boolean analysisCacheDisabled;
 
   public OpenEdgeSettings(Configuration config, FileSystem fileSystem, SonarRuntime runtime) {
+    this(config, fileSystem, runtime, new DumpFileRepository(fileSystem, runtime));
+  }
+
+  public OpenEdgeSettings(Configuration config, FileSystem fileSystem, SonarRuntime runtime,
+      DumpFileRepository dumpFiles) {
     this.config = config;
     this.fileSystem = fileSystem;
     this.runtime = runtime;
+    this.dumpFiles = dumpFiles;
   }
 
   public final void init() {
@@ -278,23 +295,27 @@ public class OpenEdgeSettings {
     AtomicInteger numClasses = new AtomicInteger(0);
     AtomicInteger numMethods = new AtomicInteger(0);
     AtomicInteger numProperties = new AtomicInteger(0);
+    TypeInfoSnapshot snapshot = getTypeInfoSnapshot();
+    Consumer<Collection<ITypeInfo>> injector = coll -> {
+      for (ITypeInfo info : coll) {
+        numClasses.incrementAndGet();
+        numMethods.addAndGet(TypeInfoSnapshot.getMethodCount(info));
+        numProperties.addAndGet(TypeInfoSnapshot.getPropertyCount(info));
+        proparseSession.injectTypeInfo(info);
+      }
+    };
     // Multi-threaded pool
     long currTime = System.currentTimeMillis();
     AtomicInteger numRCode = new AtomicInteger(0);
-    ExecutorService service = Executors.newFixedThreadPool(4);
+    ExecutorService service = Executors.newFixedThreadPool(getRCodeThreads());
     for (Path binDir : binariesDirs) {
       Files.fileTraverser().depthFirstPreOrder(binDir.toFile()).forEach(f -> {
         if (f.getName().endsWith(".r")) {
           numRCode.incrementAndGet();
-          service.submit(() -> {
+          service.submit(() -> injector.accept(readTypeInfo(snapshot, f, () -> {
             ITypeInfo info = parseRCode(f);
-            if (info != null) {
-              numClasses.incrementAndGet();
-              numMethods.addAndGet(info.getMethods().size());
-              numProperties.addAndGet(info.getProperties().size());
-              proparseSession.injectTypeInfo(info);
-            }
-          });
+            return info == null ? Collections.emptyList() : Collections.singletonList(info);
+          })));
         }
       });
     }
@@ -307,7 +328,7 @@ public class OpenEdgeSettings {
 
       Files.fileTraverser().depthFirstPreOrder(new File(dlc, "gui")).forEach(f -> {
         if (f.getName().endsWith(".pl")) {
-          service.submit(() -> parseLibrary(f));
+          service.submit(() -> injector.accept(readTypeInfo(snapshot, f, () -> parseLibrary(f))));
         }
       });
     }
@@ -320,6 +341,72 @@ public class OpenEdgeSettings {
     }
     LOG.info("{} RCode read in {} ms - {} classes - {} methods - {} properties", numRCode.get(),
         System.currentTimeMillis() - currTime, numClasses.get(), numMethods.get(), numProperties.get());
+    if (snapshot != null) {
+      LOG.info("Type info snapshot: {}", snapshot);
+      if (snapshot.save()) {
+        LOG.debug("Type info snapshot written to {}", snapshot.getFile());
+      }
+    }
+  }
+
+  /**
+   * @return Type info from snapshot if file is unchanged, otherwise from reader (and then stored in snapshot)
+   */
+  private static Collection<ITypeInfo> readTypeInfo(@Nullable TypeInfoSnapshot snapshot, File file,
+      Supplier<Collection<ITypeInfo>> reader) {
+    Collection<ITypeInfo> coll = snapshot == null ? null : snapshot.get(file, reader);
+    if (coll == null) {
+      coll = reader.get();
+      if (snapshot != null)
+        snapshot.put(file, coll);
+    }
+    return coll;
+  }
+
+  /**
+   * @return Null if type info snapshot is disabled
+   */
+  @Nullable
+  private TypeInfoSnapshot getTypeInfoSnapshot() {
+    if (!config.getBoolean(Constants.RCODE_SNAPSHOT).orElse(false) || binariesDirs.isEmpty())
+      return null;
+    return new TypeInfoSnapshot(new File(getPctDir().getParentFile(), TypeInfoSnapshot.FILE_NAME));
+  }
+
+  /**
+   * @return True if rcode is read on demand, when a class is first referenced. Default behavior in SonarLint.
+   */
+  public boolean useLazyTypeResolution() {
+    if (config.getBoolean(Constants.SKIP_RCODE).orElse(false))
+      return false;
+    return config.getBoolean(Constants.RCODE_LAZY).orElse(runtime.getProduct() == SonarProduct.SONARLINT);
+  }
+
+  /**
+   * @return PL files from PROPATH, and from $DLC/gui if DLC is in PROPATH
+   */
+  private List<File> getLibraries() {
+    List<File> libs = new ArrayList<>();
+    for (File entry : propath) {
+      if (entry.getName().toLowerCase(Locale.ENGLISH).endsWith(".pl") && entry.isFile())
+        libs.add(entry);
+    }
+    String dlcInstallDir = config.get(Constants.DLC).orElse(null);
+    boolean dlcInPropath = config.getBoolean(Constants.PROPATH_DLC).orElse(false);
+    if (dlcInPropath && !Strings.isNullOrEmpty(dlcInstallDir)) {
+      File[] guiLibs = new File(dlcInstallDir, "gui").listFiles((dir, name) -> name.endsWith(".pl"));
+      if (guiLibs != null)
+        libs.addAll(Arrays.asList(guiLibs));
+    }
+    return libs;
+  }
+
+  /**
+   * @return Number of threads used to read rcode. Defaults to one thread per core
+   */
+  public int getRCodeThreads() {
+    int numThreads = config.getInt(Constants.RCODE_THREADS).orElse(0);
+    return numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
   }
 
   private ITypeInfo parseRCode(File file) {
@@ -336,21 +423,32 @@ public class OpenEdgeSettings {
     return null;
   }
 
-  private void parseLibrary(File lib) {
+  /**
+   * Memory-mapped PL files stay locked until mapping is garbage collected, which can happen long after the end of the
+   * analysis. They're only used by the scanner, and never in SonarLint where PL files are rebuilt by the developer
+   * while the IDE is still running
+   */
+  private boolean useMemoryMappedLibraries() {
+    return runtime.getProduct() == SonarProduct.SONARQUBE;
+  }
+
+  private Collection<ITypeInfo> parseLibrary(File lib) {
     LOG.debug("Parsing PL " + lib.getAbsolutePath());
-    PLReader pl = new PLReader(lib);
+    Collection<ITypeInfo> coll = new ArrayList<>();
+    PLReader pl = new PLReader(lib, useMemoryMappedLibraries());
     for (FileEntry entry : pl.getFileList()) {
       if (entry.getFileName().endsWith(".r")) {
         try {
-          RCodeInfo rci = new RCodeInfo(pl.getInputStream(entry));
+          RCodeInfo rci = new RCodeInfo(pl.getByteBuffer(entry));
           if (rci.isClass()) {
-            proparseSession.injectTypeInfo(rci.getTypeInfo());
+            coll.add(rci.getTypeInfo());
           }
         } catch (InvalidRCodeException | IOException caught) {
           LOG.error("Unable to open file " + entry.getFileName() + " in PL " + lib.getAbsolutePath(), caught);
         }
       }
     }
+    return coll;
   }
 
   public File getSonarLintXrefDir() {
@@ -515,6 +613,77 @@ public class OpenEdgeSettings {
     return config.getBoolean(Constants.XREF_FILTER).orElse(false);
   }
 
+  /**
+   * @return Number of threads used by the proparse sensor. Zero or negative values mean one thread per core, default
+   *         value is 1 (single-threaded analysis)
+   */
+  public int getProparseThreads() {
+    int numThreads = config.getInt(Constants.PROPARSE_THREADS).orElse(1);
+    return numThreads > 0 ? numThreads : Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * @return True if XREF files have to be loaded as a DOM object (see ParseUnit#getXref()), instead of the default compact
+   *         model
+   */
+  public boolean useXrefDom() {
+    return config.getBoolean(Constants.XREF_DOM).orElse(false);
+  }
+
+  /**
+   * @return Maximum size in bytes of include files cache, from property expressed in megabytes. 0 disables the cache.
+   */
+  public long getIncludeCacheSize() {
+    Optional<Integer> size = config.getInt(Constants.INCLUDE_CACHE_SIZE);
+    return size.isPresent() ? Math.max(size.get(), 0) * 1024L * 1024L : IncludeFileCache.DEFAULT_MAX_SIZE;
+  }
+
+  /**
+   * @return Persistent analysis cache, or null if disabled. Never used in SonarLint, or when debug files have to be
+   *         generated
+   */
+  public synchronized AnalysisCache getAnalysisCache(SensorContext context) {
+    if ((runtime.getProduct() != SonarProduct.SONARQUBE) || !config.getBoolean(Constants.ANALYSIS_CACHE).orElse(false)
+        || useProparseDebug() || useANTLR4())
+      return null;
+    if ((analysisCache == null) && !analysisCacheDisabled) {
+      Optional<String> dir = config.get(Constants.ANALYSIS_CACHE_DIR);
+      File cacheDir = dir.isPresent() ? fileSystem.resolvePath(dir.get()) : getPersistentDir(".oe-analysis-cache");
+      if (cacheDir == null) {
+        LOG.warn("Analysis cache disabled, as {} is not set and there's no {} or {} directory",
+            Constants.ANALYSIS_CACHE_DIR, Constants.BINARIES, Constants.DOTPCT);
+        analysisCacheDisabled = true;
+        return null;
+      }
+      if (isInWorkDir(cacheDir)) {
+        LOG.warn("Analysis cache {} is in the working directory, which is deleted before each analysis",
+            cacheDir.getAbsolutePath());
+      }
+      analysisCache = new AnalysisCache(this, cacheDir, AnalysisCache.computeFingerprint(context, this));
+      LOG.info("Analysis cache in {}", cacheDir.getAbsolutePath());
+    }
+    return analysisCache;
+  }
+
+  /**
+   * @return Hash of the content of all dump files from sonar.oe.databases
+   */
+  public String getSchemaFingerprint() {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (String str : Splitter.on(',').trimResults().omitEmptyStrings().split(
+        config.get(Constants.DATABASES).orElse(""))) {
+      int colonPos = str.lastIndexOf(':');
+      File dfFile = fileSystem.resolvePath(colonPos <= 1 ? str : str.substring(0, colonPos));
+      hasher.putString(str, StandardCharsets.UTF_8);
+      try {
+        hasher.putBytes(Files.asByteSource(dfFile).hash(Hashing.murmur3_128()).asBytes());
+      } catch (IOException caught) {
+        hasher.putInt(0);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
   public boolean useANTLR4() {
     return config.getBoolean(Constants.ANTLR4_TEST).orElse(false);
   }
@@ -523,6 +692,28 @@ public class OpenEdgeSettings {
     return config.getBoolean(Constants.ANTLR4_PROFILER).orElse(false);
   }
 
+  /**
+   * @return True if ANTLR4 parser has to parse a few bundled files before the first source file
+   */
+  public boolean useANTLR4WarmUp() {
+    return config.getBoolean(Constants.ANTLR4_WARMUP).orElse(false);
+  }
+
+  /**
+   * @return True if timing reports have to be written in the working directory. Defaults to true in SonarQube, false
+   *         in SonarLint
+   */
+  public boolean useTelemetry() {
+    return config.getBoolean(Constants.TELEMETRY).orElse(runtime.getProduct() == SonarProduct.SONARQUBE);
+  }
+
+  /**
+   * @return Number of slowest files kept in timing reports, default value is 25
+   */
+  public int getTelemetryTopFiles() {
+    return config.getInt(Constants.TELEMETRY_TOP_FILES).orElse(25);
+  }
+
   /**
    * @return False only if property is present and set to false
    */
@@ -586,9 +777,13 @@ public class OpenEdgeSettings {
       if (skipXCode.isPresent())
         ppSettings.setCustomSkipXCode(skipXCode.get());
 
-      proparseSession = new RefactorSession(ppSettings, sch, encoding());
+      proparseSession = new RefactorSession(ppSettings, sch, encoding(), getIncludeCacheSize());
       proparseSession.injectTypeInfoCollection(ProgressClasses.getProgressClasses());
-      if (runtime.getProduct() == SonarProduct.SONARQUBE) {
+      if (useLazyTypeResolution()) {
+        // Only read rcode of classes referenced by analyzed files
+        proparseSession.setTypeInfoLoader(new LazyTypeInfoLoader(binariesDirs, getLibraries(),
+            useMemoryMappedLibraries()));
+      } else if (runtime.getProduct() == SonarProduct.SONARQUBE) {
         // Parse entire build directory if not in SonarLint
         parseBuildDirectory();
       }
@@ -613,6 +808,7 @@ public class OpenEdgeSettings {
     Collection<IDatabase> dbs = new ArrayList<>();
     String dbList = config.get(Constants.DATABASES).orElse("");
     LOG.info("Using schema : {}", dbList);
+    File snapshotDir = getSchemaSnapshotDir();
 
     for (String str : Splitter.on(',').trimResults().omitEmptyStrings().split(dbList)) {
       String dbName;
@@ -624,33 +820,18 @@ public class OpenEdgeSettings {
         str = str.substring(0, colonPos);
       }
 
-      LOG.debug("Parsing {} with alias {}", fileSystem.resolvePath(str), dbName);
       File dfFile = fileSystem.resolvePath(str);
-      File serFile = new File(fileSystem.baseDir(),
-          ".sonarlint/" + str.replace(':', '_').replace('\\', '_').replace('/', '_') + ".bin");
-      serFile.getParentFile().mkdir();
+      File snapshot = snapshotDir == null ? null
+          : new File(snapshotDir, str.replace(':', '_').replace('\\', '_').replace('/', '_') + ".bin");
+      LOG.debug("Loading {} with alias {} - Snapshot {}", dfFile, dbName, snapshot);
       DatabaseDescription desc = null;
-      if ((runtime.getProduct() == SonarProduct.SONARLINT) && (dfFile.lastModified() < serFile.lastModified())) {
-        LOG.debug("SonarLint side, using serialized file");
-        try (InputStream is = new FileInputStream(serFile)) {
-          desc = DatabaseDescription.deserialize(is, dbName);
-        } catch (IOException caught) {
-          LOG.error("Unable to deserialize from '" + serFile + "', deleting file", caught);
-          FileUtils.deleteQuietly(serFile);
-        }
-      } else {
-        try {
-          desc = DumpFileUtils.getDatabaseDescription(fileSystem.resolvePath(str), dbName);
-        } catch (IOException caught) {
-          LOG.error("Unable to parse " + str, caught);
-        }
-        if ((desc != null) && (runtime.getProduct() == SonarProduct.SONARLINT)) {
-          try (OutputStream os = new FileOutputStream(serFile)) {
-            desc.serialize(os);
-          } catch (IOException caught) {
-            LOG.error("Unable to serialize to '" + serFile + "'", caught);
-          }
-        }
+      long startTime = System.currentTimeMillis();
+      try {
+        desc = snapshot == null ? dumpFiles.getDatabaseDescription(dfFile, dbName)
+            : DatabaseSnapshot.getDatabaseDescription(dfFile, dbName, snapshot, dumpFiles::getDatabaseDescription);
+        LOG.debug("{} loaded in {} ms", dfFile, System.currentTimeMillis() - startTime);
+      } catch (IOException caught) {
+        LOG.error("Unable to parse " + str, caught);
       }
       if (desc != null) {
         dbs.add(new DatabaseWrapper(desc));
@@ -660,6 +841,48 @@ public class OpenEdgeSettings {
     return dbs;
   }
 
+  /**
+   * @return Directory of binary snapshots of dump files, or null if snapshots are disabled. Always .sonarlint in
+   *         SonarLint. In SonarQube, snapshots have to be enabled, and default to a subdirectory of the build directory
+   */
+  @Nullable
+  private File getSchemaSnapshotDir() {
+    if (runtime.getProduct() == SonarProduct.SONARLINT)
+      return new File(fileSystem.baseDir(), ".sonarlint");
+    if (!config.getBoolean(Constants.SCHEMA_SNAPSHOT).orElse(false))
+      return null;
+    Optional<String> dir = config.get(Constants.SCHEMA_CACHE_DIR);
+    if (dir.isPresent())
+      return fileSystem.resolvePath(dir.get());
+    File snapshotDir = getPersistentDir(".oe-schema-cache");
+    if (snapshotDir == null) {
+      LOG.warn("Schema snapshot disabled, as {} is not set and there's no {} or {} directory",
+          Constants.SCHEMA_CACHE_DIR, Constants.BINARIES, Constants.DOTPCT);
+    }
+    return snapshotDir;
+  }
+
+  /**
+   * Working directory is deleted by the scanner before each analysis, so files kept between analyses are stored in
+   * the first build directory (next to the type info snapshot), or in the first .pct directory. Build directories
+   * default to source directories, so nothing is written when they're not explicitly configured.
+   * 
+   * @return Null if there's no build or .pct directory
+   */
+  @Nullable
+  private File getPersistentDir(String name) {
+    if (config.get(Constants.BINARIES).isPresent() && !binariesDirs.isEmpty())
+      return new File(binariesDirs.get(0).toFile(), name);
+    if (config.get(Constants.DOTPCT).isPresent() && !pctDirs.isEmpty())
+      return new File(pctDirs.get(0).toFile(), name);
+    return null;
+  }
+
+  private boolean isInWorkDir(File file) {
+    return file.toPath().toAbsolutePath().normalize().startsWith(
+        fileSystem.workDir().toPath().toAbsolutePath().normalize());
+  }
+
   private Collection<IDatabase> readSchemaFromProp2(Configuration config, FileSystem fileSystem) {
     Collection<IDatabase> dbs = new ArrayList<>();
     for (String str : Splitter.on(',').trimResults().omitEmptyStrings().split(
@@ -0,0 +1,460 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import org.sonar.api.SonarRuntime;
+import org.sonar.api.batch.fs.FileSystem;
+import org.sonar.api.batch.fs.InputComponent;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputModule;
+import org.sonar.api.batch.fs.TextRange;
+import org.sonar.api.batch.measure.Metric;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.rule.Severity;
+import org.sonar.api.batch.sensor.SensorContext;
+import org.sonar.api.batch.sensor.coverage.NewCoverage;
+import org.sonar.api.batch.sensor.cpd.NewCpdTokens;
+import org.sonar.api.batch.sensor.error.NewAnalysisError;
+import org.sonar.api.batch.sensor.highlighting.NewHighlighting;
+import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.batch.sensor.issue.NewIssue;
+import org.sonar.api.batch.sensor.issue.NewIssueLocation;
+import org.sonar.api.batch.sensor.measure.NewMeasure;
+import org.sonar.api.batch.sensor.symbol.NewSymbolTable;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.config.Settings;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.Version;
+import org.sonar.plugins.openedge.foundation.AnalysisRecord.Issue;
+import org.sonar.plugins.openedge.foundation.AnalysisRecord.Location;
+import org.sonar.plugins.openedge.foundation.AnalysisRecord.Token;
+
+/**
+ * SensorContext delegating all calls to another context. Between {@link #startRecording(InputFile)} and
+ * {@link #stopRecording()}, measures, issues, CPD tokens and highlighting saved on this file are also kept in an
+ * {@link AnalysisRecord}. Anything which can't be replayed later (data saved on another component, issue flows, symbol
+ * tables...) discards the record.
+ * 
+ * Not thread-safe, recording has to be done on the sensor thread.
+ */
+public class RecordingSensorContext implements SensorContext {
+  private final SensorContext context;
+
+  private InputFile file;
+  private AnalysisRecord record;
+  private boolean valid;
+
+  public RecordingSensorContext(SensorContext context) {
+    this.context = context;
+  }
+
+  public void startRecording(InputFile file) {
+    this.file = file;
+    this.record = new AnalysisRecord();
+    this.valid = true;
+  }
+
+  /**
+   * @return Recorded data since last call to {@link #startRecording(InputFile)}, or null if not replayable
+   */
+  @Nullable
+  public AnalysisRecord stopRecording() {
+    AnalysisRecord rslt = valid ? record : null;
+    file = null;
+    record = null;
+    valid = false;
+    return rslt;
+  }
+
+  private boolean isRecording() {
+    return file != null;
+  }
+
+  private boolean isRecording(InputComponent component) {
+    if (!isRecording())
+      return false;
+    if (file.equals(component))
+      return true;
+    valid = false;
+    return false;
+  }
+
+  private void discard() {
+    valid = false;
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public Settings settings() {
+    return context.settings();
+  }
+
+  @Override
+  public Configuration config() {
+    return context.config();
+  }
+
+  @Override
+  public FileSystem fileSystem() {
+    return context.fileSystem();
+  }
+
+  @Override
+  public ActiveRules activeRules() {
+    return context.activeRules();
+  }
+
+  @Override
+  public InputModule module() {
+    return context.module();
+  }
+
+  @Override
+  public Version getSonarQubeVersion() {
+    return context.getSonarQubeVersion();
+  }
+
+  @Override
+  public SonarRuntime runtime() {
+    return context.runtime();
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return context.isCancelled();
+  }
+
+  @Override
+  public <G extends Serializable> NewMeasure<G> newMeasure() {
+    return new RecordingMeasure<>(context.<G> newMeasure());
+  }
+
+  @Override
+  public NewIssue newIssue() {
+    return new RecordingIssue(context.newIssue());
+  }
+
+  @Override
+  public NewHighlighting newHighlighting() {
+    return new RecordingHighlighting(context.newHighlighting());
+  }
+
+  @Override
+  public NewSymbolTable newSymbolTable() {
+    discard();
+    return context.newSymbolTable();
+  }
+
+  @Override
+  public NewCoverage newCoverage() {
+    discard();
+    return context.newCoverage();
+  }
+
+  @Override
+  public NewCpdTokens newCpdTokens() {
+    return new RecordingCpdTokens(context.newCpdTokens());
+  }
+
+  @Override
+  public NewAnalysisError newAnalysisError() {
+    discard();
+    return context.newAnalysisError();
+  }
+
+  @Override
+  public void addContextProperty(String key, String value) {
+    context.addContextProperty(key, value);
+  }
+
+  @Override
+  public void markForPublishing(InputFile inputFile) {
+    context.markForPublishing(inputFile);
+  }
+
+  private class RecordingMeasure<G extends Serializable> implements NewMeasure<G> {
+    private final NewMeasure<G> measure;
+    private InputComponent component;
+    private Metric<G> metric;
+    private G value;
+
+    RecordingMeasure(NewMeasure<G> measure) {
+      this.measure = measure;
+    }
+
+    @Override
+    public NewMeasure<G> on(InputComponent component) {
+      this.component = component;
+      measure.on(component);
+      return this;
+    }
+
+    @Override
+    public NewMeasure<G> forMetric(Metric<G> metric) {
+      this.metric = metric;
+      measure.forMetric(metric);
+      return this;
+    }
+
+    @Override
+    public NewMeasure<G> withValue(G value) {
+      this.value = value;
+      measure.withValue(value);
+      return this;
+    }
+
+    @Override
+    public void save() {
+      measure.save();
+      if (isRecording(component)) {
+        if (AnalysisRecord.isSupported(metric, value))
+          record.addMeasure(metric, value);
+        else
+          discard();
+      }
+    }
+  }
+
+  private class RecordingIssue implements NewIssue {
+    private final NewIssue issue;
+    private final List<RecordingIssueLocation> secondary = new ArrayList<>();
+    private RuleKey ruleKey;
+    private Double gap;
+    private Severity severity;
+    private RecordingIssueLocation primary;
+    private boolean hasFlows;
+
+    RecordingIssue(NewIssue issue) {
+      this.issue = issue;
+    }
+
+    @Override
+    public NewIssue forRule(RuleKey ruleKey) {
+      this.ruleKey = ruleKey;
+      issue.forRule(ruleKey);
+      return this;
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public NewIssue effortToFix(Double effortToFix) {
+      this.gap = effortToFix;
+      issue.effortToFix(effortToFix);
+      return this;
+    }
+
+    @Override
+    public NewIssue gap(Double gap) {
+      this.gap = gap;
+      issue.gap(gap);
+      return this;
+    }
+
+    @Override
+    public NewIssue overrideSeverity(Severity severity) {
+      this.severity = severity;
+      issue.overrideSeverity(severity);
+      return this;
+    }
+
+    @Override
+    public NewIssue at(NewIssueLocation location) {
+      this.primary = (RecordingIssueLocation) location;
+      issue.at(primary.location);
+      return this;
+    }
+
+    @Override
+    public NewIssue addLocation(NewIssueLocation location) {
+      RecordingIssueLocation loc = (RecordingIssueLocation) location;
+      secondary.add(loc);
+      issue.addLocation(loc.location);
+      return this;
+    }
+
+    @Override
+    public NewIssue addFlow(Iterable<NewIssueLocation> flowLocations) {
+      hasFlows = true;
+      List<NewIssueLocation> list = new ArrayList<>();
+      for (NewIssueLocation loc : flowLocations) {
+        list.add(((RecordingIssueLocation) loc).location);
+      }
+      issue.addFlow(list);
+      return this;
+    }
+
+    @Override
+    public NewIssueLocation newLocation() {
+      return new RecordingIssueLocation(issue.newLocation());
+    }
+
+    @Override
+    public void save() {
+      issue.save();
+      if (!isRecording() || (primary == null) || !isRecording(primary.component))
+        return;
+      if (hasFlows) {
+        discard();
+        return;
+      }
+      Issue rec = new Issue(ruleKey.toString());
+      rec.setGap(gap);
+      rec.setSeverity(severity == null ? null : severity.name());
+      rec.setPrimary(primary.toLocation());
+      for (RecordingIssueLocation loc : secondary) {
+        if (!isRecording(loc.component))
+          return;
+        rec.addSecondary(loc.toLocation());
+      }
+      record.addIssue(rec);
+    }
+  }
+
+  private static class RecordingIssueLocation implements NewIssueLocation {
+    private final NewIssueLocation location;
+    private InputComponent component;
+    private TextRange range;
+    private String message;
+
+    RecordingIssueLocation(NewIssueLocation location) {
+      this.location = location;
+    }
+
+    @Override
+    public NewIssueLocation on(InputComponent component) {
+      this.component = component;
+      location.on(component);
+      return this;
+    }
+
+    @Override
+    public NewIssueLocation at(TextRange location) {
+      this.range = location;
+      this.location.at(location);
+      return this;
+    }
+
+    @Override
+    public NewIssueLocation message(String message) {
+      this.message = message;
+      location.message(message);
+      return this;
+    }
+
+    Location toLocation() {
+      Location loc = new Location();
+      if (range != null)
+        loc.setRange(range);
+      loc.setMessage(message);
+      return loc;
+    }
+  }
+
+  private class RecordingCpdTokens implements NewCpdTokens {
+    private final NewCpdTokens tokens;
+    private final List<Token> list = new ArrayList<>();
+    private InputFile component;
+
+    RecordingCpdTokens(NewCpdTokens tokens) {
+      this.tokens = tokens;
+    }
+
+    @Override
+    public NewCpdTokens onFile(InputFile inputFile) {
+      this.component = inputFile;
+      tokens.onFile(inputFile);
+      return this;
+    }
+
+    @Override
+    public NewCpdTokens addToken(TextRange range, String image) {
+      list.add(new Token(range, image));
+      tokens.addToken(range, image);
+      return this;
+    }
+
+    @Override
+    public NewCpdTokens addToken(int startLine, int startLineOffset, int endLine, int endLineOffset, String image) {
+      list.add(new Token(startLine, startLineOffset, endLine, endLineOffset, image));
+      tokens.addToken(startLine, startLineOffset, endLine, endLineOffset, image);
+      return this;
+    }
+
+    @Override
+    public void save() {
+      tokens.save();
+      if (isRecording(component))
+        record.setCpdTokens(list);
+    }
+  }
+
+  private class RecordingHighlighting implements NewHighlighting {
+    private final NewHighlighting highlighting;
+    private final List<Token> list = new ArrayList<>();
+    private InputFile component;
+
+    RecordingHighlighting(NewHighlighting highlighting) {
+      this.highlighting = highlighting;
+    }
+
+    @Override
+    public NewHighlighting onFile(InputFile inputFile) {
+      this.component = inputFile;
+      highlighting.onFile(inputFile);
+      return this;
+    }
+
+    @Override
+    public NewHighlighting highlight(int startOffset, int endOffset, TypeOfText typeOfText) {
+      // Global offsets can't be converted back to a text range without the file content
+      discard();
+      highlighting.highlight(startOffset, endOffset, typeOfText);
+      return this;
+    }
+
+    @Override
+    public NewHighlighting highlight(TextRange range, TypeOfText typeOfText) {
+      list.add(new Token(range, typeOfText.name()));
+      highlighting.highlight(range, typeOfText);
+      return this;
+    }
+
+    @Override
+    public NewHighlighting highlight(int startLine, int startLineOffset, int endLine, int endLineOffset,
+        TypeOfText typeOfText) {
+      list.add(new Token(startLine, startLineOffset, endLine, endLineOffset, typeOfText.name()));
+      highlighting.highlight(startLine, startLineOffset, endLine, endLineOffset, typeOfText);
+      return this;
+    }
+
+    @Override
+    public void save() {
+      highlighting.save();
+      if (isRecording(component))
+        record.setHighlighting(list);
+    }
+  }
+}
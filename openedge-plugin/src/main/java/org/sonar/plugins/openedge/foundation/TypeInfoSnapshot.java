@@ -0,0 +1,503 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import com.google.common.io.Files;
+
+import eu.rssw.pct.ByteBufferInputStream;
+import eu.rssw.pct.elements.IBufferElement;
+import eu.rssw.pct.elements.IEventElement;
+import eu.rssw.pct.elements.IMethodElement;
+import eu.rssw.pct.elements.IPropertyElement;
+import eu.rssw.pct.elements.ITableElement;
+import eu.rssw.pct.elements.ITypeInfo;
+import eu.rssw.pct.elements.IVariableElement;
+import eu.rssw.pct.elements.v11.TypeInfoSerializer;
+
+/**
+ * Binary snapshot of type info extracted from rcode files and PL libraries, so that unchanged files don't have to be
+ * read again in the next analysis. One entry per rcode (or PL) file, validated by path, size and timestamp. Snapshot is
+ * read in one heap buffer (never memory-mapped, as the mapping would lock the file until garbage collection, and
+ * prevent {@link #save()} from replacing it on Windows), and type info objects are only deserialized on first access.
+ * Serialized data is checked against a CRC32 before being returned, and rcode is read again if type info can't be
+ * deserialized.
+ * <p>
+ * {@link #get(File)} and {@link #put(File, Collection)} can be called from multiple threads. Snapshot is then rewritten
+ * by {@link #save()} with entries of the current analysis only, so that deleted files are removed from the snapshot.
+ */
+public class TypeInfoSnapshot {
+  private static final Logger LOG = Loggers.get(TypeInfoSnapshot.class);
+  public static final String FILE_NAME = ".typeinfo.bin";
+
+  static final int MAGIC = 0x4F455449;
+  static final int VERSION = 2;
+
+  private final File file;
+  // Entries loaded from disk, by absolute path. Read-only once loaded.
+  private final Map<String, Entry> previous = new HashMap<>();
+  // Entries of the current analysis
+  private final Map<String, Entry> current = new ConcurrentHashMap<>();
+  private final AtomicBoolean modified = new AtomicBoolean(false);
+
+  private final AtomicInteger hits = new AtomicInteger();
+  private final AtomicInteger misses = new AtomicInteger();
+
+  public TypeInfoSnapshot(File file) {
+    this.file = file;
+    if (file.isFile()) {
+      try {
+        load();
+      } catch (IOException | RuntimeException caught) {
+        LOG.info("Unable to read type info snapshot '{}', all rcode will be read", file, caught);
+        previous.clear();
+      }
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public int getHits() {
+    return hits.get();
+  }
+
+  public int getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @param reader Reads type info from rcode or PL file, only used if type info from the snapshot can't be deserialized
+   * @return Type info of all classes in this rcode or PL file, or null if file is not in snapshot, has changed or if
+   *         snapshot entry is corrupt
+   */
+  @Nullable
+  public List<ITypeInfo> get(File rcode, Supplier<Collection<ITypeInfo>> reader) {
+    String path = rcode.getAbsolutePath();
+    Entry entry = previous.get(path);
+    if ((entry != null) && entry.isUpToDate(rcode)) {
+      if (entry.isValid()) {
+        entry.reader = () -> {
+          Collection<ITypeInfo> coll = reader.get();
+          put(rcode, coll);
+          return coll;
+        };
+        current.put(path, entry);
+        hits.incrementAndGet();
+        return Collections.unmodifiableList(entry.types);
+      }
+      LOG.info("Corrupt entry for '{}' in type info snapshot, rcode will be read", rcode);
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * Register type info of this rcode or PL file, read from disk. Empty collection if file doesn't contain any class.
+   */
+  public void put(File rcode, Collection<ITypeInfo> types) {
+    BasicFileAttributes attrs = readAttributes(rcode);
+    if (attrs == null)
+      return;
+    Entry entry = new Entry(attrs.size(), attrs.lastModifiedTime().toMillis());
+    try {
+      for (ITypeInfo info : types) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(baos)) {
+          TypeInfoSerializer.write(info, output);
+        }
+        ByteBuffer data = ByteBuffer.wrap(baos.toByteArray());
+        entry.types.add(new LazyTypeInfo(entry, info.getTypeName(), info.getMethods().size(),
+            info.getProperties().size(), checksum(data), data));
+      }
+    } catch (IOException | RuntimeException caught) {
+      LOG.debug("Unable to serialize type info of '{}'", rcode, caught);
+      return;
+    }
+    current.put(rcode.getAbsolutePath(), entry);
+    modified.set(true);
+  }
+
+  /**
+   * Write snapshot on disk if anything has changed since it was loaded. Snapshot is first written to a temporary file,
+   * so that an interrupted analysis never leaves a truncated snapshot.
+   * 
+   * @return True if snapshot was written
+   */
+  public boolean save() {
+    if (!modified.get() && (current.size() == previous.size()))
+      return false;
+    File tmpFile = new File(file.getPath() + ".tmp");
+    try {
+      Files.createParentDirs(file);
+      try (DataOutputStream output = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(TypeInfoSerializer.VERSION);
+        output.writeInt(current.size());
+        for (Map.Entry<String, Entry> entry : current.entrySet()) {
+          output.writeUTF(entry.getKey());
+          entry.getValue().write(output);
+        }
+      }
+      java.nio.file.Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      return true;
+    } catch (IOException caught) {
+      LOG.warn("Unable to write type info snapshot '{}'", file, caught);
+      FileUtils.deleteQuietly(tmpFile);
+      return false;
+    }
+  }
+
+  private void load() throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(java.nio.file.Files.readAllBytes(file.toPath()));
+    DataInputStream input = new DataInputStream(new ByteBufferInputStream(buffer));
+    if ((input.readInt() != MAGIC) || (input.readInt() != VERSION)
+        || (input.readInt() != TypeInfoSerializer.VERSION)) {
+      LOG.info("Type info snapshot '{}' was created by another version, all rcode will be read", file);
+      return;
+    }
+    for (int zz = input.readInt(); zz > 0; zz--) {
+      String path = input.readUTF();
+      Entry entry = new Entry(input.readLong(), input.readLong());
+      for (int yy = input.readInt(); yy > 0; yy--) {
+        String typeName = input.readUTF();
+        int numMethods = input.readInt();
+        int numProperties = input.readInt();
+        int checksum = input.readInt();
+        int length = input.readInt();
+        // Only keep a view on serialized data, skipped until first access
+        ByteBuffer data = buffer.slice();
+        data.limit(length);
+        buffer.position(buffer.position() + length);
+        entry.types.add(new LazyTypeInfo(entry, typeName, numMethods, numProperties, checksum, data));
+      }
+      previous.put(path, entry);
+    }
+  }
+
+  @Nullable
+  private static BasicFileAttributes readAttributes(File file) {
+    try {
+      return java.nio.file.Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+    } catch (IOException caught) {
+      return null;
+    }
+  }
+
+  private static int checksum(ByteBuffer data) {
+    CRC32 crc = new CRC32();
+    ByteBuffer buf = data.duplicate();
+    buf.rewind();
+    crc.update(buf);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * @return Number of methods, without deserializing type info if it comes from the snapshot
+   */
+  public static int getMethodCount(ITypeInfo info) {
+    return info instanceof LazyTypeInfo ? ((LazyTypeInfo) info).numMethods : info.getMethods().size();
+  }
+
+  /**
+   * @return Number of properties, without deserializing type info if it comes from the snapshot
+   */
+  public static int getPropertyCount(ITypeInfo info) {
+    return info instanceof LazyTypeInfo ? ((LazyTypeInfo) info).numProperties : info.getProperties().size();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d hits - %d misses - %s", hits.get(), misses.get(), file);
+  }
+
+  private static class Entry {
+    private final long size;
+    private final long lastModified;
+    private final List<ITypeInfo> types = new ArrayList<>();
+    // Set when entry is returned by get(), and stores the new type info in the snapshot
+    private volatile Supplier<Collection<ITypeInfo>> reader;
+    private Collection<ITypeInfo> reloaded;
+
+    Entry(long size, long lastModified) {
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+
+    boolean isValid() {
+      for (ITypeInfo info : types) {
+        LazyTypeInfo lazy = (LazyTypeInfo) info;
+        if (checksum(lazy.data) != lazy.checksum)
+          return false;
+      }
+      return true;
+    }
+
+    /**
+     * Read type info from rcode, when it can't be deserialized from the snapshot. Rcode is only read once per entry.
+     */
+    synchronized ITypeInfo reload(String typeName) {
+      if (reloaded == null)
+        reloaded = reader == null ? Collections.emptyList() : reader.get();
+      for (ITypeInfo info : reloaded) {
+        if (typeName.equals(info.getTypeName()))
+          return info;
+      }
+      throw new IllegalStateException("Type info of '" + typeName + "' not found in rcode");
+    }
+
+    boolean isUpToDate(File rcode) {
+      BasicFileAttributes attrs = readAttributes(rcode);
+      return (attrs != null) && (attrs.size() == size) && (attrs.lastModifiedTime().toMillis() == lastModified);
+    }
+
+    void write(DataOutputStream output) throws IOException {
+      output.writeLong(size);
+      output.writeLong(lastModified);
+      output.writeInt(types.size());
+      for (ITypeInfo info : types) {
+        LazyTypeInfo lazy = (LazyTypeInfo) info;
+        output.writeUTF(lazy.typeName);
+        output.writeInt(lazy.numMethods);
+        output.writeInt(lazy.numProperties);
+        output.writeInt(lazy.checksum);
+        ByteBuffer data = lazy.data.duplicate();
+        data.rewind();
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+      }
+    }
+  }
+
+  /**
+   * ITypeInfo deserialized on first access (apart from the class name)
+   */
+  private static class LazyTypeInfo implements ITypeInfo {
+    private final Entry entry;
+    private final String typeName;
+    private final int numMethods;
+    private final int numProperties;
+    private final int checksum;
+    private final ByteBuffer data;
+    private volatile ITypeInfo info;
+
+    LazyTypeInfo(Entry entry, String typeName, int numMethods, int numProperties, int checksum, ByteBuffer data) {
+      this.entry = entry;
+      this.typeName = typeName;
+      this.numMethods = numMethods;
+      this.numProperties = numProperties;
+      this.checksum = checksum;
+      this.data = data;
+    }
+
+    private ITypeInfo getInfo() {
+      ITypeInfo result = info;
+      if (result == null) {
+        synchronized (this) {
+          result = info;
+          if (result == null) {
+            ByteBuffer buf = data.duplicate();
+            buf.rewind();
+            try {
+              result = TypeInfoSerializer.read(new DataInputStream(new ByteBufferInputStream(buf)));
+            } catch (IOException | RuntimeException caught) {
+              LOG.warn("Unable to read type info of '{}' from snapshot, rcode will be read", typeName, caught);
+              result = entry.reload(typeName);
+            }
+            info = result;
+          }
+        }
+      }
+      return result;
+    }
+
+    @Override
+    public String getTypeName() {
+      return typeName;
+    }
+
+    @Override
+    public String getParentTypeName() {
+      return getInfo().getParentTypeName();
+    }
+
+    @Override
+    public String getAssemblyName() {
+      return getInfo().getAssemblyName();
+    }
+
+    @Override
+    public List<String> getInterfaces() {
+      return getInfo().getInterfaces();
+    }
+
+    @Override
+    public boolean isFinal() {
+      return getInfo().isFinal();
+    }
+
+    @Override
+    public boolean isInterface() {
+      return getInfo().isInterface();
+    }
+
+    @Override
+    public boolean hasStatics() {
+      return getInfo().hasStatics();
+    }
+
+    @Override
+    public boolean isBuiltIn() {
+      return getInfo().isBuiltIn();
+    }
+
+    @Override
+    public boolean isHybrid() {
+      return getInfo().isHybrid();
+    }
+
+    @Override
+    public boolean hasDotNetBase() {
+      return getInfo().hasDotNetBase();
+    }
+
+    @Override
+    public boolean isAbstract() {
+      return getInfo().isAbstract();
+    }
+
+    @Override
+    public boolean isSerializable() {
+      return getInfo().isSerializable();
+    }
+
+    @Override
+    public boolean isUseWidgetPool() {
+      return getInfo().isUseWidgetPool();
+    }
+
+    @Override
+    public Collection<IMethodElement> getMethods() {
+      return getInfo().getMethods();
+    }
+
+    @Override
+    public Collection<IPropertyElement> getProperties() {
+      return getInfo().getProperties();
+    }
+
+    @Override
+    public Collection<IEventElement> getEvents() {
+      return getInfo().getEvents();
+    }
+
+    @Override
+    public Collection<IVariableElement> getVariables() {
+      return getInfo().getVariables();
+    }
+
+    @Override
+    public Collection<ITableElement> getTables() {
+      return getInfo().getTables();
+    }
+
+    @Override
+    public Collection<IBufferElement> getBuffers() {
+      return getInfo().getBuffers();
+    }
+
+    @Override
+    public IBufferElement getBuffer(String inName) {
+      return getInfo().getBuffer(inName);
+    }
+
+    @Override
+    public IBufferElement getBufferFor(String name) {
+      return getInfo().getBufferFor(name);
+    }
+
+    @Override
+    public IPropertyElement getProperty(String name) {
+      return getInfo().getProperty(name);
+    }
+
+    @Override
+    public ITableElement getTempTable(String inName) {
+      return getInfo().getTempTable(inName);
+    }
+
+    @Override
+    public boolean hasTempTable(String inName) {
+      return getInfo().hasTempTable(inName);
+    }
+
+    @Override
+    public boolean hasMethod(String name) {
+      return getInfo().hasMethod(name);
+    }
+
+    @Override
+    public boolean hasProperty(String name) {
+      return getInfo().hasProperty(name);
+    }
+
+    @Override
+    public boolean hasBuffer(String inName) {
+      return getInfo().hasBuffer(inName);
+    }
+
+    @Override
+    public String toString() {
+      return getInfo().toString();
+    }
+  }
+}
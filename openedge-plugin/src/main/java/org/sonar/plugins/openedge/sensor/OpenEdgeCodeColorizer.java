@@ -21,15 +21,17 @@ package org.sonar.plugins.openedge.sensor;
 
 import java.io.UncheckedIOException;
 
-import org.antlr.v4.runtime.TokenSource;
 import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.ProparseRuntimeException;
-import org.prorefactor.proparse.antlr4.ProToken;
+import org.prorefactor.core.TokenCapture;
 import org.prorefactor.proparse.antlr4.XCodedFileException;
 import org.prorefactor.refactor.RefactorSession;
 import org.prorefactor.treeparser.ParseUnit;
 import org.sonar.api.SonarProduct;
+import org.sonar.api.batch.fs.FilePredicate;
+import org.sonar.api.batch.fs.FilePredicates;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.InputFile.Type;
 import org.sonar.api.batch.fs.TextPointer;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
@@ -39,11 +41,19 @@ import org.sonar.api.batch.sensor.highlighting.TypeOfText;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.openedge.api.Constants;
+import org.sonar.plugins.openedge.foundation.AnalysisCache;
+import org.sonar.plugins.openedge.foundation.AnalysisRecord;
 import org.sonar.plugins.openedge.foundation.InputFileUtils;
 import org.sonar.plugins.openedge.foundation.OpenEdgeSettings;
+import org.sonar.plugins.openedge.foundation.RecordingSensorContext;
 
+/**
+ * Syntax highlighting of files not analyzed by {@link OpenEdgeProparseSensor}. That sensor highlights main files
+ * itself, from the tokens captured during its own lexer pass.
+ */
 public class OpenEdgeCodeColorizer implements Sensor {
   private static final Logger LOG = Loggers.get(OpenEdgeCodeColorizer.class);
+  private static final String CACHE_KIND = "highlighting";
 
   // IoC
   private final OpenEdgeSettings settings;
@@ -63,13 +73,33 @@ public class OpenEdgeCodeColorizer implements Sensor {
       return;
     settings.init();
     RefactorSession session = settings.getProparseSession();
+    // Highlighting only depends on file content, as include files are not expanded
+    AnalysisCache cache = settings.getAnalysisCache(context);
+    RecordingSensorContext recorder = new RecordingSensorContext(context);
+    FilePredicates predicates = context.fileSystem().predicates();
+    FilePredicate filePredicate = predicates.hasLanguage(Constants.LANGUAGE_KEY);
+    if (!settings.skipProparseSensor())
+      filePredicate = predicates.and(filePredicate, predicates.not(predicates.hasType(Type.MAIN)));
+
+    for (InputFile file : context.fileSystem().inputFiles(filePredicate)) {
+      String hash = cache == null ? null : AnalysisCache.hash(file);
+      String relPath = InputFileUtils.getRelativePath(file, context.fileSystem());
+      AnalysisRecord record = hash == null ? null : cache.get(CACHE_KIND, relPath, hash);
+      if (record != null) {
+        record.replay(context, file);
+        continue;
+      }
 
-    for (InputFile file : context.fileSystem().inputFiles(
-        context.fileSystem().predicates().hasLanguage(Constants.LANGUAGE_KEY))) {
       LOG.debug("Syntax highlight on {}", file);
+      if (hash != null)
+        recorder.startRecording(file);
       try {
-        highlightFile(context, session, file);
+        highlightFile(hash == null ? context : recorder, session, file);
+        record = recorder.stopRecording();
+        if (record != null)
+          cache.put(CACHE_KIND, relPath, hash, record);
       } catch (UncheckedIOException | ProparseRuntimeException caught) {
+        recorder.stopRecording();
         if (caught.getCause() instanceof XCodedFileException) {
           LOG.error("Unable to highlight xcode'd file '{}", file);
         } else {
@@ -80,47 +110,52 @@ public class OpenEdgeCodeColorizer implements Sensor {
   }
 
   private void highlightFile(SensorContext context, RefactorSession session, InputFile file) {
-    TokenSource stream = new ParseUnit(InputFileUtils.getInputStream(file), InputFileUtils.getRelativePath(file, context.fileSystem()), session).lex4();
+    ParseUnit unit = new ParseUnit(InputFileUtils.getInputStream(file),
+        InputFileUtils.getRelativePath(file, context.fileSystem()), session);
+    highlight(context, file, unit.lexAndCaptureTokens());
+  }
 
-    ProToken tok = (ProToken) stream.nextToken();
-    ProToken nextTok = (ProToken) stream.nextToken();
+  static void highlight(SensorContext context, InputFile file, TokenCapture capture) {
     NewHighlighting highlighting = context.newHighlighting().onFile(file);
 
-    while (tok.getNodeType() != ABLNodeType.EOF_ANTLR4) {
+    for (int zz = 0; zz < capture.size(); zz++) {
+      ABLNodeType type = capture.getNodeType(zz);
       TypeOfText textType = null;
-      if (tok.getNodeType() == ABLNodeType.QSTRING) {
+      if (type == ABLNodeType.QSTRING) {
         textType = TypeOfText.STRING;
-      } else if (tok.getNodeType() == ABLNodeType.COMMENT) {
+      } else if (type == ABLNodeType.COMMENT) {
         textType = TypeOfText.COMMENT;
-      } else if (tok.getNodeType().isKeyword()) {
+      } else if (type.isKeyword()) {
         textType = TypeOfText.KEYWORD;
-      } else if ((tok.getNodeType() == ABLNodeType.INCLUDEDIRECTIVE) || tok.getNodeType().isPreprocessor()) {
+      } else if ((type == ABLNodeType.INCLUDEDIRECTIVE) || type.isPreprocessor()) {
         textType = TypeOfText.PREPROCESS_DIRECTIVE;
-      } else if ((tok.getNodeType() == ABLNodeType.NUMBER) || (tok.getNodeType() == ABLNodeType.QUESTION)) {
+      } else if ((type == ABLNodeType.NUMBER) || (type == ABLNodeType.QUESTION)) {
         textType = TypeOfText.CONSTANT;
-      } else if (tok.getNodeType() == ABLNodeType.ANNOTATION) {
+      } else if (type == ABLNodeType.ANNOTATION) {
         textType = TypeOfText.ANNOTATION;
       }
 
       if (textType != null) {
         try {
-          TextPointer start = file.newPointer(tok.getLine(), tok.getCharPositionInLine() - 1);
-          int maxChar = file.selectLine(tok.getEndLine()).end().lineOffset();
-          TextPointer end = file.newPointer(tok.getEndLine(),
-              maxChar < tok.getEndCharPositionInLine() ? maxChar - 1 : tok.getEndCharPositionInLine());
+          TextPointer start = file.newPointer(capture.getLine(zz), capture.getColumn(zz) - 1);
+          int maxChar = file.selectLine(capture.getEndLine(zz)).end().lineOffset();
+          TextPointer end = file.newPointer(capture.getEndLine(zz),
+              maxChar < capture.getEndColumn(zz) ? maxChar - 1 : capture.getEndColumn(zz));
 
           highlighting.highlight(file.newRange(start, end), textType);
         } catch (IllegalArgumentException caught) {
           LOG.error("File {} - Unable to highlight token type {} - Start {}:{} - End {}:{} - Remaining tokens skipped",
-              file, textType, tok.getLine(), tok.getCharPositionInLine(), tok.getEndLine(),
-              tok.getEndCharPositionInLine());
+              file, textType, capture.getLine(zz), capture.getColumn(zz), capture.getEndLine(zz),
+              capture.getEndColumn(zz));
           return;
         }
       }
-
-      tok = nextTok;
-      nextTok = (ProToken) stream.nextToken();
     }
-    highlighting.save();
+    try {
+      highlighting.save();
+    } catch (IllegalStateException caught) {
+      // Overlapping ranges, e.g. when a token is split by an include file reference
+      LOG.error("File {} - Unable to save syntax highlighting - {}", file, caught.getMessage());
+    }
   }
 }
@@ -20,8 +20,8 @@
 package org.sonar.plugins.openedge.sensor;
 
 import java.io.IOException;
+import java.util.List;
 
-import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.Token;
 import org.sonar.api.SonarProduct;
 import org.sonar.api.batch.fs.InputFile;
@@ -34,12 +34,20 @@ import org.sonar.api.batch.sensor.highlighting.TypeOfText;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.openedge.api.Constants;
+import org.sonar.plugins.openedge.foundation.DumpFileRepository;
 
 import eu.rssw.antlr.database.DumpFileGrammarLexer;
 
 public class OpenEdgeDBColorizer implements Sensor {
   private static final Logger LOG = Loggers.get(OpenEdgeDBColorizer.class);
 
+  // IoC
+  private final DumpFileRepository repository;
+
+  public OpenEdgeDBColorizer(DumpFileRepository repository) {
+    this.repository = repository;
+  }
+
   @Override
   public void describe(SensorDescriptor descriptor) {
     descriptor.onlyOnLanguage(Constants.DB_LANGUAGE_KEY).name(getClass().getSimpleName());
@@ -57,18 +65,20 @@ public class OpenEdgeDBColorizer implements Sensor {
         highlightFile(context, file);
       } catch (RuntimeException | IOException caught) {
         LOG.error("Unable to lex file " + file, caught);
+      } finally {
+        repository.release(file, DumpFileRepository.Consumer.HIGHLIGHTING);
       }
     }
   }
 
   private void highlightFile(SensorContext context, InputFile file) throws IOException {
-    DumpFileGrammarLexer lexer = new DumpFileGrammarLexer(CharStreams.fromStream(file.inputStream()));
+    // Last token is always EOF
+    List<Token> tokens = repository.getTokens(file);
     NewHighlighting highlighting = context.newHighlighting().onFile(file);
 
-    Token tok = lexer.nextToken();
-    Token nextTok = lexer.nextToken();
-
-    while (tok.getType() != Token.EOF) {
+    for (int zz = 0; zz < tokens.size() - 1; zz++) {
+      Token tok = tokens.get(zz);
+      Token nextTok = tokens.get(zz + 1);
       if (tok.getChannel() != Token.HIDDEN_CHANNEL) {
         // No whitespaces or new lines
         TypeOfText textType = null;
@@ -93,8 +103,6 @@ public class OpenEdgeDBColorizer implements Sensor {
         }
         highlighting.highlight(file.newRange(start, end), textType);
       }
-      tok = nextTok;
-      nextTok = lexer.nextToken();
     }
     highlighting.save();
   }
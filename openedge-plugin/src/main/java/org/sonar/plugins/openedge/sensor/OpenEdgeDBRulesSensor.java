@@ -36,18 +36,19 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.openedge.api.Constants;
 import org.sonar.plugins.openedge.api.checks.OpenEdgeDumpFileCheck;
+import org.sonar.plugins.openedge.foundation.DumpFileRepository;
 import org.sonar.plugins.openedge.foundation.OpenEdgeComponents;
 
-import eu.rssw.antlr.database.DumpFileUtils;
-
 public class OpenEdgeDBRulesSensor implements Sensor {
   private static final Logger LOG = Loggers.get(OpenEdgeDBRulesSensor.class);
 
   // IoC
   private final OpenEdgeComponents components;
+  private final DumpFileRepository repository;
 
-  public OpenEdgeDBRulesSensor(OpenEdgeComponents components) {
+  public OpenEdgeDBRulesSensor(OpenEdgeComponents components, DumpFileRepository repository) {
     this.components = components;
+    this.repository = repository;
   }
 
   @Override
@@ -71,7 +72,7 @@ public class OpenEdgeDBRulesSensor implements Sensor {
       try {
         LOG.debug("Generating ParseTree for dump file {}", file);
         long time = System.currentTimeMillis();
-        ParseTree tree = DumpFileUtils.getDumpFileParseTree(file.inputStream(), file.charset());
+        ParseTree tree = repository.getParseTree(file);
         parseTime += (System.currentTimeMillis() - time);
 
         for (Map.Entry<ActiveRule, OpenEdgeDumpFileCheck> entry : components.getDumpFileRules().entrySet()) {
@@ -85,6 +86,8 @@ public class OpenEdgeDBRulesSensor implements Sensor {
 
       } catch (IOException caught) {
         LOG.error("Unable to analyze {}", file, caught);
+      } finally {
+        repository.release(file, DumpFileRepository.Consumer.RULES);
       }
     }
 
@@ -31,11 +31,11 @@ import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.openedge.api.Constants;
+import org.sonar.plugins.openedge.foundation.DumpFileRepository;
 import org.sonar.plugins.openedge.foundation.OpenEdgeMetrics;
 
 import com.google.common.io.Files;
 
-import eu.rssw.antlr.database.DumpFileUtils;
 import eu.rssw.antlr.database.objects.DatabaseDescription;
 import eu.rssw.antlr.database.objects.Field;
 import eu.rssw.antlr.database.objects.Table;
@@ -43,6 +43,13 @@ import eu.rssw.antlr.database.objects.Table;
 public class OpenEdgeDBSensor implements Sensor {
   private static final Logger LOG = Loggers.get(OpenEdgeDBSensor.class);
 
+  // IoC
+  private final DumpFileRepository repository;
+
+  public OpenEdgeDBSensor(DumpFileRepository repository) {
+    this.repository = repository;
+  }
+
   @Override
   public void describe(SensorDescriptor descriptor) {
     descriptor.onlyOnLanguage(Constants.DB_LANGUAGE_KEY).name(getClass().getSimpleName());
@@ -61,7 +68,7 @@ public class OpenEdgeDBSensor implements Sensor {
       try {
         LOG.info("Analyzing {}", file);
 
-        DatabaseDescription desc = DumpFileUtils.getDatabaseDescription(file.inputStream(), file.charset(),
+        DatabaseDescription desc = repository.getDatabaseDescription(file,
             Files.getNameWithoutExtension(file.filename()));
         sensorContext.newMeasure().on(file).forMetric((Metric) OpenEdgeMetrics.NUM_TABLES).withValue(
             desc.getTables().size()).save();
@@ -84,6 +91,8 @@ public class OpenEdgeDBSensor implements Sensor {
         sensorContext.newMeasure().on(file).forMetric((Metric) OpenEdgeMetrics.NUM_TRIGGERS).withValue(numTriggers).save();
       } catch (IOException caught) {
         LOG.error("Can not analyze file", caught);
+      } finally {
+        repository.release(file, DumpFileRepository.Consumer.METRICS);
       }
     }
   }
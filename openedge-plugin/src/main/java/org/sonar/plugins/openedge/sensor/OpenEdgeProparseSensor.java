@@ -19,6 +19,7 @@
  */
 package org.sonar.plugins.openedge.sensor;
 
+import java.io.BufferedInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -30,42 +31,56 @@ import java.io.PrintWriter;
 import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
-import org.antlr.v4.runtime.BailErrorStrategy;
-import org.antlr.v4.runtime.BufferedTokenStream;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.atn.ParseInfo;
-import org.antlr.v4.runtime.atn.PredictionMode;
-import org.antlr.v4.runtime.misc.ParseCancellationException;
-import org.antlr.v4.runtime.tree.ParseTree;
 import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.IConstants;
 import org.prorefactor.core.JPNode;
 import org.prorefactor.core.JsonNodeLister;
 import org.prorefactor.core.ProparseRuntimeException;
+import org.prorefactor.core.TokenCapture;
 import org.prorefactor.core.TreeNodeLister;
 import org.prorefactor.core.nodetypes.ProgramRootNode;
+import org.prorefactor.macrolevel.IncludeRef;
+import org.prorefactor.macrolevel.MacroEvent;
+import org.prorefactor.macrolevel.MacroRef;
 import org.prorefactor.proparse.ParserSupport;
 import org.prorefactor.proparse.ProParserTokenTypes;
-import org.prorefactor.proparse.antlr4.DescriptiveErrorListener;
 import org.prorefactor.proparse.antlr4.IncludeFileNotFoundException;
 import org.prorefactor.proparse.antlr4.JPNodeVisitor;
 import org.prorefactor.proparse.antlr4.ProgressLexer;
 import org.prorefactor.proparse.antlr4.Proparse;
-import org.prorefactor.proparse.antlr4.ProparseErrorStrategy;
+import org.prorefactor.proparse.antlr4.TwoStageParser;
 import org.prorefactor.proparse.antlr4.XCodedFileException;
 import org.prorefactor.refactor.RefactorSession;
 import org.prorefactor.treeparser.ParseUnit;
 import org.prorefactor.treeparser.TreeParserSymbolScope;
+import org.prorefactor.xref.CrossReference;
+import org.prorefactor.xref.XrefReader;
 import org.sonar.api.SonarProduct;
 import org.sonar.api.batch.fs.FilePredicates;
 import org.sonar.api.batch.fs.InputFile;
@@ -84,7 +99,11 @@ import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.plugins.openedge.api.Constants;
+import org.sonar.plugins.openedge.api.checks.OpenEdgeCheck;
 import org.sonar.plugins.openedge.api.checks.OpenEdgeProparseCheck;
+import org.sonar.plugins.openedge.foundation.AnalysisCache;
+import org.sonar.plugins.openedge.foundation.AnalysisRecord;
+import org.sonar.plugins.openedge.foundation.AnalysisRecord.Dependency;
 import org.sonar.plugins.openedge.foundation.CPDCallback;
 import org.sonar.plugins.openedge.foundation.InputFileUtils;
 import org.sonar.plugins.openedge.foundation.OpenEdgeComponents;
@@ -92,21 +111,29 @@ import org.sonar.plugins.openedge.foundation.OpenEdgeMetrics;
 import org.sonar.plugins.openedge.foundation.OpenEdgeProjectHelper;
 import org.sonar.plugins.openedge.foundation.OpenEdgeRulesDefinition;
 import org.sonar.plugins.openedge.foundation.OpenEdgeSettings;
+import org.sonar.plugins.openedge.foundation.RecordingSensorContext;
+import org.sonar.plugins.openedge.sensor.SensorTelemetry.FileTimings;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.base.Throwables;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 
 import antlr.ANTLRException;
 import antlr.RecognitionException;
 import eu.rssw.listing.CodeBlock;
+import eu.rssw.pct.elements.ITypeInfo;
 import eu.rssw.listing.ListingParser;
 
 public class OpenEdgeProparseSensor implements Sensor {
   private static final Logger LOG = Loggers.get(OpenEdgeProparseSensor.class);
+  private static final Set<ABLNodeType> COMPLEXITY_NODE_TYPES = Collections.unmodifiableSet(
+      EnumSet.of(ABLNodeType.IF, ABLNodeType.REPEAT, ABLNodeType.FOR, ABLNodeType.WHEN, ABLNodeType.AND, ABLNodeType.OR,
+          ABLNodeType.RETURN, ABLNodeType.PROCEDURE, ABLNodeType.FUNCTION, ABLNodeType.METHOD, ABLNodeType.ENUM));
+  private static final String CACHE_KIND = "proparse";
 
   // IoC
   private final OpenEdgeSettings settings;
@@ -114,24 +141,32 @@ public class OpenEdgeProparseSensor implements Sensor {
 
   // Internal use
   private final DocumentBuilderFactory dbFactory;
-  private final DocumentBuilder dBuilder;
+  // DocumentBuilder is not thread-safe
+  private final ThreadLocal<DocumentBuilder> dBuilder;
+  private final XrefReader xrefReader = new XrefReader();
+  // Analysis cache, null if disabled. Checks use the recorder as their SensorContext
+  private AnalysisCache cache;
+  private RecordingSensorContext recorder;
 
   // File statistics
-  private int numFiles;
-  private int numXREF;
-  private int numListings;
-  private int numFailures;
-  private int ncLocs;
+  private final AtomicInteger numFiles = new AtomicInteger();
+  private final AtomicInteger numXREF = new AtomicInteger();
+  private final AtomicInteger numListings = new AtomicInteger();
+  private final AtomicInteger numFailures = new AtomicInteger();
+  private final AtomicInteger numCached = new AtomicInteger();
+  private final AtomicInteger ncLocs = new AtomicInteger();
 
   // Timing statistics
-  private Map<String, Long> ruleTime = new HashMap<>();
-  private long parseTime = 0L;
-  private long parse4Time = 0L;
-  private long parse4Tree = 0L;
-  private long xmlParseTime = 0L;
-  private long maxParseTime = 0L;
-  private Map<Integer, Long> decisionTime = new HashMap<>();
-  private Map<Integer, Long> maxK = new HashMap<>();
+  private final Map<String, Long> ruleTime = new ConcurrentHashMap<>();
+  private final AtomicLong parseTime = new AtomicLong();
+  private final AtomicLong parse4Time = new AtomicLong();
+  private final AtomicLong parse4Tree = new AtomicLong();
+  private final AtomicLong xmlParseTime = new AtomicLong();
+  private final AtomicLong maxParseTime = new AtomicLong();
+  private final Map<Integer, Long> decisionTime = new ConcurrentHashMap<>();
+  private final Map<Integer, Long> maxK = new ConcurrentHashMap<>();
+  // Nanosecond histograms per phase and per rule, and slowest files
+  private SensorTelemetry telemetry;
 
   // Proparse debug
   List<String> debugFiles = new ArrayList<>();
@@ -141,11 +176,13 @@ public class OpenEdgeProparseSensor implements Sensor {
     this.components = components;
 
     this.dbFactory = DocumentBuilderFactory.newInstance();
-    try {
-      this.dBuilder = dbFactory.newDocumentBuilder();
-    } catch (ParserConfigurationException caught) {
-      throw new IllegalStateException(caught);
-    }
+    this.dBuilder = ThreadLocal.withInitial(() -> {
+      try {
+        return dbFactory.newDocumentBuilder();
+      } catch (ParserConfigurationException caught) {
+        throw new IllegalStateException(caught);
+      }
+    });
   }
 
   @Override
@@ -164,69 +201,287 @@ public class OpenEdgeProparseSensor implements Sensor {
       ruleTime.put(entry.getKey().ruleKey().toString(), 0L);
     }
     RefactorSession session = settings.getProparseSession();
+    telemetry = new SensorTelemetry(settings.getTelemetryTopFiles());
+    cache = getAnalysisCache(context);
+    recorder = components.getRecorder();
+    if (settings.useANTLR4() && settings.useANTLR4WarmUp())
+      session.getTwoStageParser().warmUp();
 
     FilePredicates predicates = context.fileSystem().predicates();
-    for (InputFile file : context.fileSystem().inputFiles(
-        predicates.and(predicates.hasLanguage(Constants.LANGUAGE_KEY), predicates.hasType(Type.MAIN)))) {
-      LOG.debug("Parsing {}", file);
-      numFiles++;
-
-      if (settings.isIncludeFile(file.filename())) {
-        parseIncludeFile(context, file, session);
-      } else {
-        parseMainFile(context, file, session);
-        if (settings.useANTLR4())
-          testAntlr4(context, file, session);
+    Iterable<InputFile> files = context.fileSystem().inputFiles(
+        predicates.and(predicates.hasLanguage(Constants.LANGUAGE_KEY), predicates.hasType(Type.MAIN)));
+    int numThreads = settings.getProparseThreads();
+    // SonarLint injects type info for each file, so parsing can't be done in parallel
+    if ((numThreads > 1) && (context.runtime().getProduct() == SonarProduct.SONARQUBE)) {
+      executeMultiThreaded(context, session, files, numThreads);
+    } else {
+      for (InputFile file : files) {
+        LOG.debug("Parsing {}", file);
+        numFiles.incrementAndGet();
+        saveParseResult(context, parseFile(context, file, session), session);
       }
     }
 
     executeAnalytics(context);
     logStatistics();
+    writeTelemetry(context);
     generateProparseDebugIndex();
   }
 
-  @SuppressWarnings({"unchecked", "rawtypes"})
-  private void parseIncludeFile(SensorContext context, InputFile file, RefactorSession session) {
-    long startTime = System.currentTimeMillis();
-    ParseUnit lexUnit = null;
+  private AnalysisCache getAnalysisCache(SensorContext context) {
+    AnalysisCache analysisCache = settings.getAnalysisCache(context);
+    if (analysisCache == null)
+      return null;
+    // Results of rules aggregating data from all files can't be replayed
+    for (OpenEdgeProparseCheck check : components.getProparseRules().values()) {
+      if (hasPostJob(check)) {
+        LOG.info("Analysis cache can't be used with rule {}", check.getRuleKey());
+        return null;
+      }
+    }
+    return analysisCache;
+  }
+
+  private static boolean hasPostJob(OpenEdgeProparseCheck check) {
+    try {
+      return check.getClass().getMethod("postJob").getDeclaringClass() != OpenEdgeCheck.class;
+    } catch (NoSuchMethodException caught) {
+      return true;
+    }
+  }
+
+  /**
+   * Lexer, parser and TreeParser01 are executed in a bounded pool of worker threads. Results are consumed on the
+   * sensor thread in the same order as the input files, as checks and SensorContext are not thread-safe. The number of
+   * results waiting to be consumed is limited, so that only a few ASTs are kept in memory.
+   */
+  private void executeMultiThreaded(SensorContext context, RefactorSession session, Iterable<InputFile> files,
+      int numThreads) {
+    LOG.info("Parsing files with {} threads", numThreads);
+    ExecutorService service = Executors.newFixedThreadPool(numThreads);
+    Deque<Future<ParseResult>> pending = new ArrayDeque<>();
     try {
-      lexUnit = new ParseUnit(InputFileUtils.getInputStream(file),
+      for (InputFile file : files) {
+        numFiles.incrementAndGet();
+        pending.add(service.submit(() -> {
+          LOG.debug("Parsing {}", file);
+          return parseFile(context, file, session);
+        }));
+        if (pending.size() >= numThreads * 2) {
+          saveParseResult(context, getParseResult(pending.poll()), session);
+        }
+      }
+      while (!pending.isEmpty()) {
+        saveParseResult(context, getParseResult(pending.poll()), session);
+      }
+    } catch (InterruptedException caught) {
+      LOG.error("Proparse sensor was interrupted", caught);
+      Thread.currentThread().interrupt();
+    } finally {
+      service.shutdownNow();
+    }
+  }
+
+  private static ParseResult getParseResult(Future<ParseResult> future) throws InterruptedException {
+    try {
+      return future.get();
+    } catch (ExecutionException caught) {
+      // Exceptions are already caught in parseFile, so only errors can be thrown from here
+      Throwables.throwIfUnchecked(caught.getCause());
+      throw new IllegalStateException(caught.getCause());
+    }
+  }
+
+  /**
+   * Lexes or parses file, without any interaction with the SensorContext. Can be executed from any thread. Nothing is
+   * lexed or parsed if a valid entry is found in the analysis cache.
+   */
+  private ParseResult parseFile(SensorContext context, InputFile file, RefactorSession session) {
+    boolean includeFile = settings.isIncludeFile(file.filename());
+    String hash = cache == null ? null : AnalysisCache.hash(file);
+    if (hash != null) {
+      AnalysisRecord record = cache.get(CACHE_KIND, InputFileUtils.getRelativePath(file, context.fileSystem()), hash);
+      if (record != null) {
+        ParseResult result = new ParseResult(file, includeFile);
+        result.record = record;
+        return result;
+      }
+    }
+
+    ParseResult result = includeFile ? parseIncludeFile(context, file, session)
+        : parseMainFile(context, file, session);
+    result.hash = hash;
+    return result;
+  }
+
+  /**
+   * Saves metrics, CPD tokens and issues of a file. Always executed from the sensor thread.
+   */
+  private void saveParseResult(SensorContext context, ParseResult result, RefactorSession session) {
+    if (result.record != null) {
+      result.record.replay(context, result.file);
+      numCached.incrementAndGet();
+      ncLocs.addAndGet(result.record.getIntMeasure(CoreMetrics.NCLOC_KEY));
+      return;
+    }
+
+    // Only successful analysis are stored in the cache
+    boolean recording = (result.hash != null) && (result.error == null) && (recorder != null);
+    if (recording)
+      recorder.startRecording(result.file);
+    boolean complete = true;
+    AnalysisRecord record;
+    try {
+      saveHighlighting(recording ? recorder : context, result);
+      if (result.includeFile) {
+        saveIncludeFile(recording ? recorder : context, result);
+      } else {
+        complete = saveMainFile(recording ? recorder : context, result);
+        if (settings.useANTLR4())
+          testAntlr4(context, result, session);
+      }
+    } finally {
+      record = recording ? recorder.stopRecording() : null;
+    }
+    if ((record != null) && complete) {
+      if (!result.includeFile)
+        addDependencies(record, result.file, result.unit, session);
+      cache.put(CACHE_KIND, InputFileUtils.getRelativePath(result.file, context.fileSystem()), result.hash, record);
+    }
+    telemetry.fileComplete(result.timings);
+  }
+
+  /**
+   * Include files (as referenced in the macro graph), XREF and listing files, and rcode of classes referenced in the
+   * main file and their hierarchy
+   */
+  private void addDependencies(AnalysisRecord record, InputFile file, ParseUnit unit, RefactorSession session) {
+    Set<String> includes = new TreeSet<>();
+    Deque<MacroRef> refs = new ArrayDeque<>();
+    if (unit.getMacroGraph() != null)
+      refs.add(unit.getMacroGraph());
+    while (!refs.isEmpty()) {
+      for (MacroEvent event : refs.poll().macroEventList) {
+        if (event instanceof IncludeRef) {
+          IncludeRef ref = (IncludeRef) event;
+          if (ref.getFileIndex() > 0)
+            includes.add(unit.getIncludeFileName(ref.getFileIndex()));
+        }
+        if (event instanceof MacroRef)
+          refs.add((MacroRef) event);
+      }
+    }
+    for (String str : includes) {
+      record.addDependency(Dependency.INCLUDE, str, cache.getStamp(Dependency.INCLUDE, str));
+    }
+
+    for (File f : new File[] {settings.getXrefFile(file), settings.getListingFile(file)}) {
+      if (f != null)
+        record.addDependency(Dependency.FILE, f.getAbsolutePath(), cache.getStamp(Dependency.FILE, f.getAbsolutePath()));
+    }
+
+    Set<String> classes = new TreeSet<>();
+    Deque<String> pending = new ArrayDeque<>();
+    if (!Strings.isNullOrEmpty(unit.getRootScope().getClassName()))
+      pending.add(unit.getRootScope().getClassName());
+    for (JPNode node : unit.getNodeTypeIndex().getNodes()) {
+      String clsName = node.attrGetS(IConstants.QUALIFIED_CLASS_INT);
+      if (!Strings.isNullOrEmpty(clsName))
+        pending.add(clsName);
+    }
+    while (!pending.isEmpty()) {
+      String clsName = pending.poll();
+      if (!classes.add(clsName))
+        continue;
+      ITypeInfo info = session.getTypeInfo(clsName);
+      if (info != null) {
+        if (info.getParentTypeName() != null)
+          pending.add(info.getParentTypeName());
+        pending.addAll(info.getInterfaces());
+      }
+    }
+    for (String str : classes) {
+      record.addDependency(Dependency.RCODE, str, cache.getStamp(Dependency.RCODE, str));
+    }
+  }
+
+  private ParseResult parseIncludeFile(SensorContext context, InputFile file, RefactorSession session) {
+    ParseResult result = new ParseResult(file, true);
+    result.timings = telemetry.newFile(InputFileUtils.getRelativePath(file, context.fileSystem()));
+    long startTime = System.nanoTime();
+    try {
+      ParseUnit lexUnit = new ParseUnit(InputFileUtils.getInputStream(file),
           InputFileUtils.getRelativePath(file, context.fileSystem()), session);
-      lexUnit.lexAndGenerateMetrics();
-    } catch (UncheckedIOException caught) {
-      numFailures++;
-      if (caught.getCause() instanceof XCodedFileException) {
+      // Include files are not parsed, so this lexer pass generates both metrics and highlighting
+      if (context.runtime().getProduct() == SonarProduct.SONARQUBE)
+        result.capture = lexUnit.lexAndCaptureTokens();
+      else
+        lexUnit.lexAndGenerateMetrics();
+      result.timings.record(SensorTelemetry.LEX, System.nanoTime() - startTime);
+      result.unit = lexUnit;
+    } catch (UncheckedIOException | ProparseRuntimeException caught) {
+      result.error = caught;
+      return result;
+    }
+    updateParseTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+    return result;
+  }
+
+  /**
+   * Syntax highlighting from the tokens captured in {@link #parseFile(SensorContext, InputFile, RefactorSession)}, so
+   * that {@link OpenEdgeCodeColorizer} doesn't have to lex the file again
+   */
+  private void saveHighlighting(SensorContext context, ParseResult result) {
+    if (result.capture != null) {
+      OpenEdgeCodeColorizer.highlight(context, result.file, result.capture);
+    } else if (result.captureError != null) {
+      if (result.captureError.getCause() instanceof XCodedFileException) {
+        LOG.error("Unable to highlight xcode'd file '{}", result.file);
+      } else {
+        LOG.error("Unable to lex file '{}'", result.file, result.captureError);
+      }
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void saveIncludeFile(SensorContext context, ParseResult result) {
+    InputFile file = result.file;
+    if (result.error instanceof UncheckedIOException) {
+      numFailures.incrementAndGet();
+      if (result.error.getCause() instanceof XCodedFileException) {
         LOG.error("Unable to generate file metrics for xcode'd file '{}", file);
       } else {
-        LOG.error("Unable to generate file metrics for file '" + file + "'", caught);
+        LOG.error("Unable to generate file metrics for file '" + file + "'", result.error);
       }
       return;
-    } catch (ProparseRuntimeException caught) {
-      LOG.error("Unable to generate file metrics for file '" + file + "'", caught);
+    } else if (result.error != null) {
+      LOG.error("Unable to generate file metrics for file '" + file + "'", result.error);
       return;
     }
-    updateParseTime(System.currentTimeMillis() - startTime);
 
-    if (lexUnit.getMetrics() != null) {
+    if (result.unit.getMetrics() != null) {
       // Saving LOC and COMMENTS metrics
       context.newMeasure().on(file).forMetric((Metric) CoreMetrics.NCLOC).withValue(
-          lexUnit.getMetrics().getLoc()).save();
-      ncLocs += lexUnit.getMetrics().getLoc();
+          result.unit.getMetrics().getLoc()).save();
+      ncLocs.addAndGet(result.unit.getMetrics().getLoc());
       context.newMeasure().on(file).forMetric((Metric) CoreMetrics.COMMENT_LINES).withValue(
-          lexUnit.getMetrics().getComments()).save();
+          result.unit.getMetrics().getComments()).save();
     }
   }
 
-  private Document parseXREF(File xrefFile) {
+  private Document parseXREF(File xrefFile, FileTimings timings) {
     Document doc = null;
     if ((xrefFile != null) && xrefFile.exists()) {
       LOG.debug("Parsing XML XREF file {}", xrefFile.getAbsolutePath());
       try (InputStream inpStream = new FileInputStream(xrefFile)) {
-        long startTime = System.currentTimeMillis();
-         doc = dBuilder.parse(
+        long startTime = System.nanoTime();
+        doc = dBuilder.get().parse(
             settings.useXrefFilter() ? new InvalidXMLFilterStream(settings.getXrefBytes(), inpStream) : inpStream);
-        xmlParseTime += (System.currentTimeMillis() - startTime);
-        numXREF++;
+        long elapsed = System.nanoTime() - startTime;
+        xmlParseTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        timings.record(SensorTelemetry.XREF, elapsed);
+        numXREF.incrementAndGet();
       } catch (SAXException | IOException caught) {
         LOG.error("Unable to parse XREF file " + xrefFile.getAbsolutePath(), caught);
       }
@@ -234,24 +489,55 @@ public class OpenEdgeProparseSensor implements Sensor {
     return doc;
   }
 
-  private void parseMainFile(SensorContext context, InputFile file, RefactorSession session) {
-    Document doc = null;
+  private CrossReference readXREF(File xrefFile, FileTimings timings) {
+    CrossReference xref = null;
+    if ((xrefFile != null) && xrefFile.exists()) {
+      LOG.debug("Reading XML XREF file {}", xrefFile.getAbsolutePath());
+      try (InputStream inpStream = new BufferedInputStream(new FileInputStream(xrefFile))) {
+        long startTime = System.nanoTime();
+        xref = xrefReader.read(
+            settings.useXrefFilter() ? new InvalidXMLFilterStream(settings.getXrefBytes(), inpStream) : inpStream);
+        long elapsed = System.nanoTime() - startTime;
+        xmlParseTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        timings.record(SensorTelemetry.XREF, elapsed);
+        numXREF.incrementAndGet();
+      } catch (XMLStreamException | IOException caught) {
+        LOG.error("Unable to parse XREF file " + xrefFile.getAbsolutePath(), caught);
+      }
+    }
+    return xref;
+  }
+
+  private ParseResult parseMainFile(SensorContext context, InputFile file, RefactorSession session) {
+    ParseResult result = new ParseResult(file, false);
+    result.timings = telemetry.newFile(InputFileUtils.getRelativePath(file, context.fileSystem()));
+    File xrefFile = null;
     if (context.runtime().getProduct() == SonarProduct.SONARQUBE) {
-      doc = parseXREF(settings.getXrefFile(file));
+      xrefFile = settings.getXrefFile(file);
     } else if (context.runtime().getProduct() == SonarProduct.SONARLINT) {
-      doc = parseXREF(settings.getSonarlintXrefFile(file));
-      settings.parseHierarchy(file);
+      xrefFile = settings.getSonarlintXrefFile(file);
+      if (!settings.useLazyTypeResolution())
+        settings.parseHierarchy(file);
+    }
+    Document doc = null;
+    CrossReference xref = null;
+    if (settings.useXrefDom()) {
+      doc = parseXREF(xrefFile, result.timings);
+    } else {
+      xref = readXREF(xrefFile, result.timings);
     }
 
     File listingFile = settings.getListingFile(file);
     List<Integer> trxBlocks = new ArrayList<>();
     if ((listingFile != null) && listingFile.exists() && (listingFile.getAbsolutePath().indexOf(' ') == -1)) {
       try {
+        long startTime = System.nanoTime();
         ListingParser parser = new ListingParser(listingFile, InputFileUtils.getRelativePath(file, context.fileSystem()));
         for (CodeBlock block : parser.getTransactionBlocks()) {
           trxBlocks.add(block.getLineNumber());
         }
-        numListings++;
+        result.timings.record(SensorTelemetry.LISTING, System.nanoTime() - startTime);
+        numListings.incrementAndGet();
       } catch (IOException caught) {
         LOG.error("Unable to parse listing file for " + file, caught);
       }
@@ -259,23 +545,66 @@ public class OpenEdgeProparseSensor implements Sensor {
       LOG.debug("Listing file for '{}' not found or contains space character - Was looking for '{}'", file,
           listingFile);
     }
-    context.newMeasure().on(file).forMetric((Metric) OpenEdgeMetrics.TRANSACTIONS).withValue(
-        Joiner.on(",").join(trxBlocks)).save();
-    context.newMeasure().on(file).forMetric((Metric) OpenEdgeMetrics.NUM_TRANSACTIONS).withValue(
-        trxBlocks.size()).save();
+    result.trxBlocks = trxBlocks;
 
+    long startTime = System.nanoTime();
     ParseUnit unit = null;
-    long startTime = System.currentTimeMillis();
-
     try {
       unit = new ParseUnit(InputFileUtils.getInputStream(file), InputFileUtils.getRelativePath(file, context.fileSystem()), session);
+      // Tokens are captured while the parser reads them, so the file is only lexed once
+      if (context.runtime().getProduct() == SonarProduct.SONARQUBE)
+        unit.enableTokenCapture();
+      // Lexer and preprocessor are executed on demand by the parser, and only time themselves for telemetry reports
+      if (settings.useTelemetry())
+        unit.enableTimings();
+      long phaseStartTime = System.nanoTime();
+      unit.parse();
+      long parseTime = System.nanoTime() - phaseStartTime;
+      if (settings.useTelemetry()) {
+        result.timings.record(SensorTelemetry.LEX, unit.getLexerTime());
+        result.timings.record(SensorTelemetry.PREPROCESS, unit.getPreprocessorTime());
+      }
+      result.timings.record(SensorTelemetry.PARSE,
+          Math.max(0, parseTime - unit.getLexerTime() - unit.getPreprocessorTime()));
+      result.capture = unit.getTokenCapture();
+      phaseStartTime = System.nanoTime();
       unit.treeParser01();
+      result.timings.record(SensorTelemetry.TREE_PARSER, System.nanoTime() - phaseStartTime);
       unit.attachXref(doc);
+      unit.attachXref(xref);
       unit.attachTransactionBlocks(trxBlocks);
       unit.attachTypeInfo(session.getTypeInfo(unit.getRootScope().getClassName()));
-      updateParseTime(System.currentTimeMillis() - startTime);
-    } catch (UncheckedIOException caught) {
-      numFailures++;
+      updateParseTime(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+      result.unit = unit;
+    } catch (RuntimeException | ANTLRException caught) {
+      result.error = caught;
+      if ((unit != null) && (unit.getTokenCapture() != null) && (result.capture == null)) {
+        // Parser stopped before the end of the file, so the file is lexed again in order to be fully highlighted
+        try {
+          result.capture = unit.lexAndCaptureTokens();
+        } catch (UncheckedIOException | ProparseRuntimeException caught2) {
+          result.captureError = caught2;
+        }
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * @return False if an error occured, or if a rule failed
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private boolean saveMainFile(SensorContext context, ParseResult result) {
+    InputFile file = result.file;
+    context.newMeasure().on(file).forMetric((Metric) OpenEdgeMetrics.TRANSACTIONS).withValue(
+        Joiner.on(",").join(result.trxBlocks)).save();
+    context.newMeasure().on(file).forMetric((Metric) OpenEdgeMetrics.NUM_TRANSACTIONS).withValue(
+        result.trxBlocks.size()).save();
+
+    if (result.error instanceof UncheckedIOException) {
+      numFailures.incrementAndGet();
+      UncheckedIOException caught = (UncheckedIOException) result.error;
       if ((caught.getCause() != null) && (caught.getCause() instanceof XCodedFileException)) {
         XCodedFileException cause = (XCodedFileException) caught.getCause();
         LOG.error("Unable to parse {} - Can't read xcode'd file {}", file, cause.getFileName());
@@ -285,11 +614,12 @@ public class OpenEdgeProparseSensor implements Sensor {
       } else {
         LOG.error("Unable to parse " + file + " - IOException was caught - Please report this issue", caught);
       }
-      return;
-    } catch (RecognitionException caught) {
+      return false;
+    } else if (result.error instanceof RecognitionException) {
+      RecognitionException caught = (RecognitionException) result.error;
       LOG.error("Error during code parsing for " + file + " at position " + caught.getFilename() + ":"
           + caught.getLine() + ":" + caught.getColumn(), (settings.displayStackTraceOnError() ? caught : null));
-      numFailures++;
+      numFailures.incrementAndGet();
 
       TextPointer strt = null;
       TextPointer end = null;
@@ -321,23 +651,34 @@ public class OpenEdgeProparseSensor implements Sensor {
         issue.save();
       }
 
-      return;
-    } catch (RuntimeException | ANTLRException caught) {
-      LOG.error("Error during code parsing for " + InputFileUtils.getRelativePath(file, context.fileSystem()), caught);
-      numFailures++;
+      return false;
+    } else if (result.error != null) {
+      LOG.error("Error during code parsing for " + InputFileUtils.getRelativePath(file, context.fileSystem()), result.error);
+      numFailures.incrementAndGet();
       NewIssue issue = context.newIssue();
       issue.forRule(RuleKey.of(Constants.STD_REPOSITORY_KEY, OpenEdgeRulesDefinition.PROPARSE_ERROR_RULEKEY)).at(
-          issue.newLocation().on(file).message(Strings.nullToEmpty(caught.getMessage()))).save();
-      return;
+          issue.newLocation().on(file).message(Strings.nullToEmpty(result.error.getMessage()))).save();
+      return false;
     }
+    ParseUnit unit = result.unit;
+    // One single traversal, then metrics and rules read nodes from the index
+    unit.getNodeTypeIndex();
     if (settings.useANTLR4())
       generateProparseFlatFiles(unit.getTopNode(), unit.getSupport(), false, InputFileUtils.getRelativePath(file, context.fileSystem()));
 
     if (context.runtime().getProduct() == SonarProduct.SONARQUBE) {
+      long startTime = System.nanoTime();
       computeCpd(context, file, unit);
+      result.timings.record(SensorTelemetry.CPD, System.nanoTime() - startTime);
+      startTime = System.nanoTime();
       computeSimpleMetrics(context, file, unit);
+      result.timings.record(SensorTelemetry.METRIC_PREFIX + "simple", System.nanoTime() - startTime);
+      startTime = System.nanoTime();
       computeCommonMetrics(context, file, unit);
+      result.timings.record(SensorTelemetry.METRIC_PREFIX + "common", System.nanoTime() - startTime);
+      startTime = System.nanoTime();
       computeComplexity(context, file, unit);
+      result.timings.record(SensorTelemetry.METRIC_PREFIX + "complexity", System.nanoTime() - startTime);
     }
 
     if (settings.useProparseDebug()) {
@@ -348,22 +689,23 @@ public class OpenEdgeProparseSensor implements Sensor {
       for (Map.Entry<ActiveRule, OpenEdgeProparseCheck> entry : components.getProparseRules().entrySet()) {
         LOG.debug("ActiveRule - Internal key {} - Repository {} - Rule {}", entry.getKey().internalKey(),
             entry.getKey().ruleKey().repository(), entry.getKey().ruleKey().rule());
-        startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         entry.getValue().sensorExecute(file, unit);
-        ruleTime.put(entry.getKey().ruleKey().toString(),
-            ruleTime.get(entry.getKey().ruleKey().toString()) + System.currentTimeMillis() - startTime);
+        long elapsed = System.nanoTime() - startTime;
+        ruleTime.merge(entry.getKey().ruleKey().toString(), TimeUnit.NANOSECONDS.toMillis(elapsed), Long::sum);
+        result.timings.record(SensorTelemetry.RULE_PREFIX + entry.getKey().ruleKey().toString(), elapsed);
       }
     } catch (RuntimeException caught) {
       LOG.error("Error during rule execution for " + file, caught);
+      return false;
     }
+    return true;
   }
 
   private void updateParseTime(long elapsedTime) {
     LOG.debug("{} milliseconds to generate ParseUnit", elapsedTime);
-    parseTime += elapsedTime;
-    if (maxParseTime < elapsedTime) {
-      maxParseTime = elapsedTime;
-    }
+    parseTime.addAndGet(elapsedTime);
+    maxParseTime.accumulateAndGet(elapsedTime, Math::max);
   }
 
   private void executeAnalytics(SensorContext context) {
@@ -372,8 +714,9 @@ public class OpenEdgeProparseSensor implements Sensor {
 
     StringBuilder data = new StringBuilder(String.format( // NOSONAR Influx requires LF
         "proparse,product=%1$s,sid=%2$s files=%3$d,failures=%4$d,parseTime=%5$d,maxParseTime=%6$d,version=\"%7$s\",ncloc=%8$d\n",
-        context.runtime().getProduct().toString().toLowerCase(), OpenEdgeProjectHelper.getServerId(context), numFiles,
-        numFailures, parseTime, maxParseTime, context.runtime().getApiVersion().toString(), ncLocs));
+        context.runtime().getProduct().toString().toLowerCase(), OpenEdgeProjectHelper.getServerId(context), numFiles.get(),
+        numFailures.get(), parseTime.get(), maxParseTime.get(), context.runtime().getApiVersion().toString(),
+        ncLocs.get()));
     for (Entry<String, Long> entry : ruleTime.entrySet()) {
       data.append(String.format("rule,product=%1$s,sid=%2$s,rulename=%3$s ruleTime=%4$d\n", // NOSONAR
           context.runtime().getProduct().toString().toLowerCase(), OpenEdgeProjectHelper.getServerId(context),
@@ -396,13 +739,35 @@ public class OpenEdgeProparseSensor implements Sensor {
     }
   }
 
+  private void writeTelemetry(SensorContext context) {
+    if (!settings.useTelemetry())
+      return;
+    File workDir = context.fileSystem().workDir();
+    try {
+      telemetry.writeReports(workDir);
+      LOG.info("Telemetry reports written in {}", workDir.getAbsolutePath());
+    } catch (IOException caught) {
+      LOG.error("Unable to write telemetry reports", caught);
+    }
+  }
+
   private void logStatistics() {
-    LOG.info("{} files proparse'd, {} XML files, {} listing files, {} failure(s), {} NCLOCs", numFiles, numXREF,
-        numListings, numFailures, ncLocs);
-    LOG.info("AST Generation | time={} ms", parseTime);
-    LOG.info("XML Parsing    | time={} ms", xmlParseTime);
-    LOG.info("AST4Generation | time={} ms", parse4Time);
-    LOG.info("AST4Tree       | time={} ms", parse4Tree);
+    LOG.info("{} files proparse'd, {} XML files, {} listing files, {} failure(s), {} NCLOCs", numFiles.get(),
+        numXREF.get(), numListings.get(), numFailures.get(), ncLocs.get());
+    if (cache != null)
+      LOG.info("Analysis cache | {} files replayed - {}", numCached.get(), cache);
+    LOG.info("AST Generation | time={} ms", parseTime.get());
+    LOG.info("XML Parsing    | time={} ms", xmlParseTime.get());
+    LOG.info("AST4Generation | time={} ms", parse4Time.get());
+    LOG.info("AST4Tree       | time={} ms", parse4Tree.get());
+    if (settings.useANTLR4()) {
+      TwoStageParser parser4 = settings.getProparseSession().getTwoStageParser();
+      LOG.info("AST4Parser     | {}", parser4);
+      parser4.getFallbackTriggers().forEach((trigger, count) -> LOG.info("LL fallback | {} | {} files", trigger, count));
+    }
+    LOG.info("Type info      | {}", settings.getProparseSession().getTypeInfoRegistry());
+    LOG.info("Include files  | {}", settings.getProparseSession().getIncludeFileCache());
+    LOG.info("Propath        | {}", settings.getProparseSession().getPropathIndex());
     // Sort entries by rule name
     ruleTime.entrySet().stream().sorted(
         (Entry<String, Long> obj1, Entry<String, Long> obj2) -> obj1.getKey().compareTo(obj2.getKey())).forEach(
@@ -424,37 +789,28 @@ public class OpenEdgeProparseSensor implements Sensor {
   }
 
   // TEMP-ANTLR4
-  private void testAntlr4(SensorContext context, InputFile file, RefactorSession session) {
-    long startTime = System.currentTimeMillis();
+  private void testAntlr4(SensorContext context, ParseResult parseResult, RefactorSession session) {
+    InputFile file = parseResult.file;
+    long startTime = System.nanoTime();
     try (InputStream stream = InputFileUtils.getInputStream(file)) {
       ByteSource src = ByteSource.wrap(ByteStreams.toByteArray(stream));
       ProgressLexer lexer = new ProgressLexer(session, src, InputFileUtils.getRelativePath(file, context.fileSystem()), false);
       lexer.setMergeNameDotInId(true);
-      Proparse parser = new Proparse(new CommonTokenStream(lexer));
-      parser.initAntlr4(session, lexer.getFilenameList());
-      if (settings.useANTLR4Profiler())
-        parser.setProfile(true);
-      parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
-      parser.setErrorHandler(new BailErrorStrategy());
-
-      ParseTree tree;
-      try {
-        tree = parser.program();
-      } catch (ParseCancellationException caught) {
-        LOG.warn("Parser switching to LL prediction mode for {}", InputFileUtils.getRelativePath(file, context.fileSystem()));
-        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
-        parser.setErrorHandler(new ProparseErrorStrategy());
-        parser.removeErrorListeners();
-        parser.addErrorListener(new DescriptiveErrorListener());
-        tree = parser.program();
-      }
+      TwoStageParser.Result result = session.getTwoStageParser().parse(lexer, settings.useANTLR4Profiler());
+      Proparse parser = result.getParser();
+      if (result.isFallback())
+        LOG.warn("Parser switched to LL prediction mode for {}", InputFileUtils.getRelativePath(file, context.fileSystem()));
 
-      long time1 = System.currentTimeMillis() - startTime;
-      parse4Time += time1;
-      JPNodeVisitor visitor = new JPNodeVisitor(parser.getParserSupport(), (BufferedTokenStream) parser.getInputStream());
-      org.prorefactor.proparse.antlr4.nodetypes.ProgramRootNode root4 = (org.prorefactor.proparse.antlr4.nodetypes.ProgramRootNode) visitor.visit(tree).build(parser.getParserSupport());
-      long time2 = System.currentTimeMillis() - startTime - time1;
-      parse4Tree += time2;
+      long nanos1 = System.nanoTime() - startTime;
+      long time1 = TimeUnit.NANOSECONDS.toMillis(nanos1);
+      parse4Time.addAndGet(time1);
+      parseResult.timings.record(SensorTelemetry.ANTLR4_PARSE, nanos1);
+      JPNodeVisitor visitor = new JPNodeVisitor(result.getParserSupport(), result.getTokenStream());
+      org.prorefactor.proparse.antlr4.nodetypes.ProgramRootNode root4 = visitor.buildTree(result.getTree());
+      long nanos2 = System.nanoTime() - startTime - nanos1;
+      long time2 = TimeUnit.NANOSECONDS.toMillis(nanos2);
+      parse4Tree.addAndGet(time2);
+      parseResult.timings.record(SensorTelemetry.ANTLR4_TREE, nanos2);
 
       generateProparseFlatFiles(root4, parser.getParserSupport(), true, InputFileUtils.getRelativePath(file, context.fileSystem()));
       generateAntlr4Stats(InputFileUtils.getRelativePath(file, context.fileSystem()), time1, time2, parser.getParseInfo());
@@ -521,13 +877,10 @@ public class OpenEdgeProparseSensor implements Sensor {
                     decision.SLL_MaxLook, decision.ambiguities.size(), decision.errors.size(),
                     Proparse.ruleNames[Proparse._ATN.getDecisionState(decision.decision).ruleIndex])));
         // MaxK + prediction time stats
-        Arrays.stream(info.getDecisionInfo()).filter(decision -> decision.SLL_MaxLook > 0).forEach(decision -> {
-          if ((maxK.get(decision.decision) == null) || (maxK.get(decision.decision) < decision.SLL_MaxLook))
-            maxK.put(decision.decision, decision.SLL_MaxLook);
-        });
+        Arrays.stream(info.getDecisionInfo()).filter(decision -> decision.SLL_MaxLook > 0).forEach(
+            decision -> maxK.merge(decision.decision, decision.SLL_MaxLook, Math::max));
         Arrays.stream(info.getDecisionInfo()).filter(decision -> decision.timeInPrediction > 0).forEach(
-            decision -> decisionTime.put(decision.decision, (decision.timeInPrediction / 1000000) 
-                + (decisionTime.get(decision.decision) == null ? 0 : decisionTime.get(decision.decision))));
+            decision -> decisionTime.merge(decision.decision, decision.timeInPrediction / 1000000, Long::sum));
       }
     } catch (IOException caught) {
       LOG.error("Unable to write proparse debug file", caught);
@@ -585,7 +938,7 @@ public class OpenEdgeProparseSensor implements Sensor {
   private void computeSimpleMetrics(SensorContext context, InputFile file, ParseUnit unit) {
     // Saving LOC and COMMENTS metrics
     context.newMeasure().on(file).forMetric((Metric) CoreMetrics.NCLOC).withValue(unit.getMetrics().getLoc()).save();
-    ncLocs += unit.getMetrics().getLoc();
+    ncLocs.addAndGet(unit.getMetrics().getLoc());
     context.newMeasure().on(file).forMetric((Metric) CoreMetrics.COMMENT_LINES).withValue(
         unit.getMetrics().getComments()).save();
   }
@@ -593,7 +946,7 @@ public class OpenEdgeProparseSensor implements Sensor {
   @SuppressWarnings({"unchecked", "rawtypes"})
   private void computeCommonMetrics(SensorContext context, InputFile file, ParseUnit unit) {
     context.newMeasure().on(file).forMetric((Metric) CoreMetrics.STATEMENTS).withValue(
-        unit.getTopNode().queryStateHead().size()).save();
+        unit.getNodeTypeIndex().queryStateHead().size()).save();
     int numProcs = 0;
     int numFuncs = 0;
     int numMethds = 0;
@@ -648,14 +1001,35 @@ public class OpenEdgeProparseSensor implements Sensor {
       complexityWithInc++;
     }
 
-    complexity += unit.getTopNode().queryMainFile(ABLNodeType.IF, ABLNodeType.REPEAT, ABLNodeType.FOR, ABLNodeType.WHEN,
-        ABLNodeType.AND, ABLNodeType.OR, ABLNodeType.RETURN, ABLNodeType.PROCEDURE, ABLNodeType.FUNCTION, ABLNodeType.METHOD,
-        ABLNodeType.ENUM).size();
-    complexityWithInc += unit.getTopNode().query(ABLNodeType.IF, ABLNodeType.REPEAT, ABLNodeType.FOR, ABLNodeType.WHEN,
-        ABLNodeType.AND, ABLNodeType.OR, ABLNodeType.RETURN, ABLNodeType.PROCEDURE, ABLNodeType.FUNCTION, ABLNodeType.METHOD,
-        ABLNodeType.ENUM).size();
+    for (JPNode node : unit.getNodeTypeIndex().query(COMPLEXITY_NODE_TYPES)) {
+      complexityWithInc++;
+      if (node.getFileIndex() == 0)
+        complexity++;
+    }
     context.newMeasure().on(file).forMetric((Metric) CoreMetrics.COMPLEXITY).withValue(complexity).save();
     context.newMeasure().on(file).forMetric((Metric) OpenEdgeMetrics.COMPLEXITY).withValue(complexityWithInc).save();
   }
 
+  private static class ParseResult {
+    private final InputFile file;
+    private final boolean includeFile;
+    private List<Integer> trxBlocks;
+    private ParseUnit unit;
+    private Exception error;
+    // Hash of file content, null if analysis cache is disabled
+    private String hash;
+    // Not null if found in analysis cache
+    private AnalysisRecord record;
+    // Main file tokens, for syntax highlighting
+    private TokenCapture capture;
+    private Exception captureError;
+    // Time spent in each phase, null for files found in analysis cache
+    private FileTimings timings;
+
+    public ParseResult(InputFile file, boolean includeFile) {
+      this.file = file;
+      this.includeFile = includeFile;
+    }
+  }
+
 }
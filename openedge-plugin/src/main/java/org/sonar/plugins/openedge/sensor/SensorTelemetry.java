@@ -0,0 +1,367 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.sensor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timing statistics of the Proparse sensor, kept locally. Each phase (and each rule) has a histogram of elapsed times
+ * in nanoseconds, with power-of-two buckets. The slowest files are also kept, with the time spent in each phase.
+ * Reports are written as JSON and in the Prometheus text format (as expected by the textfile collector of
+ * node_exporter).
+ * <p>
+ * Histograms can be updated from any thread. A {@link FileTimings} object has to be used by one thread at a time.
+ */
+public class SensorTelemetry {
+  public static final String XREF = "xref";
+  public static final String LISTING = "listing";
+  public static final String LEX = "lex";
+  public static final String PREPROCESS = "preprocess";
+  public static final String PARSE = "parse";
+  public static final String TREE_PARSER = "treeparser01";
+  public static final String CPD = "cpd";
+  public static final String ANTLR4_PARSE = "antlr4.parse";
+  public static final String ANTLR4_TREE = "antlr4.tree";
+  public static final String METRIC_PREFIX = "metric.";
+  public static final String RULE_PREFIX = "rule.";
+
+  public static final String JSON_REPORT = "proparse-telemetry.json";
+  public static final String PROMETHEUS_REPORT = "proparse-telemetry.prom";
+
+  private final int maxFiles;
+  private final Map<String, Histogram> phases = new ConcurrentHashMap<>();
+  private final Map<String, Histogram> rules = new ConcurrentHashMap<>();
+  // Min-heap on total time, so that fastest file is removed first
+  private final PriorityQueue<FileTimings> slowestFiles = new PriorityQueue<>(
+      Comparator.comparingLong(FileTimings::getTotal));
+  private final AtomicLong numFiles = new AtomicLong();
+
+  /**
+   * @param maxFiles Number of slowest files kept in the report
+   */
+  public SensorTelemetry(int maxFiles) {
+    this.maxFiles = maxFiles;
+  }
+
+  public FileTimings newFile(String fileName) {
+    return new FileTimings(this, fileName);
+  }
+
+  /**
+   * Record elapsed time of a phase which is not attached to a specific file
+   */
+  public void record(String phase, long nanos) {
+    getHistogram(phase).add(nanos);
+  }
+
+  /**
+   * File is completely analyzed, and is kept in the report if it's one of the slowest files
+   */
+  public void fileComplete(FileTimings file) {
+    numFiles.incrementAndGet();
+    if (maxFiles <= 0)
+      return;
+    synchronized (slowestFiles) {
+      if (slowestFiles.size() < maxFiles) {
+        slowestFiles.add(file);
+      } else if (slowestFiles.peek().getTotal() < file.getTotal()) {
+        slowestFiles.poll();
+        slowestFiles.add(file);
+      }
+    }
+  }
+
+  public long getNumFiles() {
+    return numFiles.get();
+  }
+
+  /**
+   * @return Histogram of phase or rule, null if nothing was recorded
+   */
+  public Histogram getHistogram(String phase, boolean create) {
+    boolean rule = phase.startsWith(RULE_PREFIX);
+    Map<String, Histogram> map = rule ? rules : phases;
+    String key = rule ? phase.substring(RULE_PREFIX.length()) : phase;
+    return create ? map.computeIfAbsent(key, k -> new Histogram()) : map.get(key);
+  }
+
+  private Histogram getHistogram(String phase) {
+    return getHistogram(phase, true);
+  }
+
+  /**
+   * @return Slowest files, slowest first
+   */
+  public List<FileTimings> getSlowestFiles() {
+    List<FileTimings> list;
+    synchronized (slowestFiles) {
+      list = new ArrayList<>(slowestFiles);
+    }
+    list.sort(Comparator.comparingLong(FileTimings::getTotal).reversed());
+    return list;
+  }
+
+  /**
+   * Write JSON and Prometheus reports in this directory. Files are first written under a temporary name, then renamed,
+   * so that a collector never reads an incomplete file.
+   */
+  public void writeReports(File dir) throws IOException {
+    Files.createDirectories(dir.toPath());
+    writeAtomically(new File(dir, JSON_REPORT), this::writeJson);
+    writeAtomically(new File(dir, PROMETHEUS_REPORT), this::writePrometheus);
+  }
+
+  public void writeJson(Writer writer) throws IOException {
+    writer.write("{\n  \"files\": " + numFiles.get() + ",\n  \"phases\": ");
+    writeJsonHistograms(writer, phases);
+    writer.write(",\n  \"rules\": ");
+    writeJsonHistograms(writer, rules);
+    writer.write(",\n  \"slowestFiles\": [");
+    boolean first = true;
+    for (FileTimings file : getSlowestFiles()) {
+      writer.write(first ? "\n" : ",\n");
+      first = false;
+      writer.write("    { \"file\": " + jsonString(file.getFileName()) + ", \"totalNanos\": " + file.getTotal()
+          + ", \"phases\": {");
+      boolean firstPhase = true;
+      for (Map.Entry<String, Long> entry : file.getPhases().entrySet()) {
+        writer.write((firstPhase ? " " : ", ") + jsonString(entry.getKey()) + ": " + entry.getValue());
+        firstPhase = false;
+      }
+      writer.write(" } }");
+    }
+    writer.write("\n  ]\n}\n");
+  }
+
+  private static void writeJsonHistograms(Writer writer, Map<String, Histogram> map) throws IOException {
+    writer.write('{');
+    boolean first = true;
+    for (Map.Entry<String, Histogram> entry : new TreeMap<>(map).entrySet()) {
+      Histogram histo = entry.getValue();
+      writer.write(first ? "\n" : ",\n");
+      first = false;
+      writer.write("    " + jsonString(entry.getKey()) + ": { \"count\": " + histo.getCount() + ", \"sumNanos\": "
+          + histo.getSum() + ", \"maxNanos\": " + histo.getMax() + ", \"p50Nanos\": " + histo.getPercentile(0.5)
+          + ", \"p90Nanos\": " + histo.getPercentile(0.9) + ", \"p99Nanos\": " + histo.getPercentile(0.99)
+          + ", \"buckets\": {");
+      boolean firstBucket = true;
+      for (int zz = 0; zz <= Histogram.NUM_BUCKETS; zz++) {
+        long count = histo.getBucketCount(zz);
+        if (count == 0)
+          continue;
+        String bound = zz == Histogram.NUM_BUCKETS ? "+Inf" : Long.toString(Histogram.getUpperBound(zz));
+        writer.write((firstBucket ? " \"" : ", \"") + bound + "\": " + count);
+        firstBucket = false;
+      }
+      writer.write(" } }");
+    }
+    writer.write(first ? "}" : "\n  }");
+  }
+
+  public void writePrometheus(Writer writer) throws IOException {
+    writer.write("# HELP openedge_proparse_files_total Number of files analyzed by the Proparse sensor\n");
+    writer.write("# TYPE openedge_proparse_files_total counter\n");
+    writer.write("openedge_proparse_files_total " + numFiles.get() + "\n");
+    writePrometheusHistograms(writer, "openedge_proparse_phase_duration_seconds", "phase",
+        "Time spent in each phase of the Proparse sensor", phases);
+    writePrometheusHistograms(writer, "openedge_proparse_rule_duration_seconds", "rule",
+        "Time spent in each rule, per file", rules);
+  }
+
+  private static void writePrometheusHistograms(Writer writer, String name, String label, String help,
+      Map<String, Histogram> map) throws IOException {
+    writer.write("# HELP " + name + " " + help + "\n");
+    writer.write("# TYPE " + name + " histogram\n");
+    for (Map.Entry<String, Histogram> entry : new TreeMap<>(map).entrySet()) {
+      String lbl = label + "=\"" + prometheusLabel(entry.getKey()) + "\"";
+      Histogram histo = entry.getValue();
+      long cumulative = 0;
+      for (int zz = 0; zz < Histogram.NUM_BUCKETS; zz++) {
+        cumulative += histo.getBucketCount(zz);
+        writer.write(name + "_bucket{" + lbl + ",le=\"" + seconds(Histogram.getUpperBound(zz)) + "\"} " + cumulative
+            + "\n");
+      }
+      writer.write(name + "_bucket{" + lbl + ",le=\"+Inf\"} " + histo.getCount() + "\n");
+      writer.write(name + "_sum{" + lbl + "} " + seconds(histo.getSum()) + "\n");
+      writer.write(name + "_count{" + lbl + "} " + histo.getCount() + "\n");
+    }
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+  }
+
+  private static String prometheusLabel(String str) {
+    return str.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static String jsonString(String str) {
+    StringBuilder sb = new StringBuilder(str.length() + 2).append('"');
+    for (char c : str.toCharArray()) {
+      if ((c == '"') || (c == '\\')) {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private static void writeAtomically(File file, ReportWriter report) throws IOException {
+    File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+    try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+      report.write(writer);
+    }
+    try {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException caught) {
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  @FunctionalInterface
+  private interface ReportWriter {
+    void write(Writer writer) throws IOException;
+  }
+
+  /**
+   * Thread-safe histogram of elapsed times. Bucket <i>n</i> counts values up to 2^(n+10) nanoseconds (from 1 µs to
+   * around 68 seconds), and last bucket counts larger values.
+   */
+  public static class Histogram {
+    static final int NUM_BUCKETS = 27;
+    private static final int MIN_SHIFT = 10;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void add(long nanos) {
+      long value = Math.max(nanos, 0);
+      buckets.incrementAndGet(getBucket(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+      max.accumulateAndGet(value, Math::max);
+    }
+
+    static int getBucket(long nanos) {
+      if (nanos <= (1L << MIN_SHIFT))
+        return 0;
+      // Ceiling of log2
+      int shift = 64 - Long.numberOfLeadingZeros(nanos - 1);
+      return Math.min(shift - MIN_SHIFT, NUM_BUCKETS);
+    }
+
+    static long getUpperBound(int bucket) {
+      return 1L << (bucket + MIN_SHIFT);
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getSum() {
+      return sum.get();
+    }
+
+    public long getMax() {
+      return max.get();
+    }
+
+    public long getBucketCount(int bucket) {
+      return buckets.get(bucket);
+    }
+
+    /**
+     * @return Upper bound of the bucket containing this percentile (or max value if lower), 0 if histogram is empty
+     */
+    public long getPercentile(double percentile) {
+      long total = count.get();
+      if (total == 0)
+        return 0;
+      long target = (long) Math.ceil(percentile * total);
+      long cumulative = 0;
+      for (int zz = 0; zz < NUM_BUCKETS; zz++) {
+        cumulative += buckets.get(zz);
+        if (cumulative >= target)
+          return Math.min(getUpperBound(zz), max.get());
+      }
+      return max.get();
+    }
+  }
+
+  /**
+   * Time spent in each phase for one file. Each call to {@link #record(String, long)} also updates the global
+   * histogram of the phase.
+   */
+  public static class FileTimings {
+    private final SensorTelemetry telemetry;
+    private final String fileName;
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private long total;
+
+    private FileTimings(SensorTelemetry telemetry, String fileName) {
+      this.telemetry = telemetry;
+      this.fileName = fileName;
+    }
+
+    public void record(String phase, long nanos) {
+      telemetry.record(phase, nanos);
+      phases.merge(phase, nanos, Long::sum);
+      total += nanos;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public long getTotal() {
+      return total;
+    }
+
+    /**
+     * @return Time spent in each phase, in nanoseconds, in order of execution
+     */
+    public Map<String, Long> getPhases() {
+      return Collections.unmodifiableMap(phases);
+    }
+  }
+}
@@ -0,0 +1,209 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.BASEDIR;
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.CLASS1;
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE1;
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE2;
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE3;
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE4;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.sonar.api.SonarQubeSide;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.rule.ActiveRules;
+import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.batch.sensor.issue.Issue;
+import org.sonar.api.batch.sensor.issue.NewIssue;
+import org.sonar.api.internal.SonarRuntimeImpl;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.Version;
+import org.sonar.plugins.openedge.api.CheckRegistration;
+import org.sonar.plugins.openedge.api.Constants;
+import org.sonar.plugins.openedge.checks.ClumsySyntax;
+import org.sonar.plugins.openedge.sensor.OpenEdgeCodeColorizer;
+import org.sonar.plugins.openedge.sensor.OpenEdgeProparseSensor;
+import org.sonar.plugins.openedge.utils.TestProjectSensorContext;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+public class AnalysisCacheTest {
+  private static final Version VERSION = Version.parse("7.5");
+  private static final String[] FILES = {FILE1, FILE2, FILE3, FILE4, CLASS1};
+
+  private File cacheDir;
+
+  @BeforeMethod
+  public void createCacheDir() {
+    cacheDir = Files.createTempDir();
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    SensorContextTester context1 = createContext();
+    context1.setActiveRules(createRules());
+    AnalysisCache cache1 = analyze(context1);
+    assertEquals(cache1.getHits(), 0);
+
+    SensorContextTester context2 = createContext();
+    context2.setActiveRules(createRules());
+    AnalysisCache cache2 = analyze(context2);
+    // Highlighting of main files is done by the proparse sensor
+    assertEquals(cache2.getHits(), FILES.length);
+    assertEquals(cache2.getMisses(), 0);
+    assertEquals(context2.allIssues().size(), context1.allIssues().size());
+    for (String str : FILES) {
+      String key = BASEDIR + ":" + str;
+      assertEquals(context2.measure(key, CoreMetrics.NCLOC_KEY).value(), context1.measure(key, CoreMetrics.NCLOC_KEY).value());
+      assertEquals(context2.measure(key, CoreMetrics.COMMENT_LINES_KEY).value(),
+          context1.measure(key, CoreMetrics.COMMENT_LINES_KEY).value());
+      assertEquals(context2.highlightingTypeAt(key, 1, 1), context1.highlightingTypeAt(key, 1, 1));
+    }
+    for (String str : new String[] {FILE1, FILE2, FILE3, CLASS1}) {
+      String key = BASEDIR + ":" + str;
+      assertEquals(context2.cpdTokens(key).size(), context1.cpdTokens(key).size());
+      assertEquals(context2.measure(key, CoreMetrics.COMPLEXITY_KEY).value(),
+          context1.measure(key, CoreMetrics.COMPLEXITY_KEY).value());
+      assertEquals(context2.measure(key, OpenEdgeMetrics.NUM_TRANSACTIONS_KEY).value(),
+          context1.measure(key, OpenEdgeMetrics.NUM_TRANSACTIONS_KEY).value());
+    }
+  }
+
+  @Test
+  public void testIncludeFileChanged() throws Exception {
+    analyze(createContext());
+
+    File incFile = new File(BASEDIR, FILE4);
+    String content = Files.toString(incFile, StandardCharsets.UTF_8);
+    try {
+      Files.append("/* Comment */\n", incFile, StandardCharsets.UTF_8);
+      AnalysisCache cache = analyze(createContext());
+      // Include file itself and the main file including it have to be analyzed again
+      assertEquals(cache.getMisses(), 2);
+      assertEquals(cache.getHits(), FILES.length - 2);
+    } finally {
+      Files.write(content, incFile, StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void testFingerprint() throws Exception {
+    analyze(createContext());
+
+    // Different rule set
+    SensorContextTester context = createContext();
+    context.setActiveRules(createRules());
+    AnalysisCache cache = analyze(context);
+    assertEquals(cache.getHits(), 0);
+  }
+
+  @Test
+  public void testIssues() throws Exception {
+    SensorContextTester context = createContext();
+    InputFile file = context.fileSystem().inputFile(context.fileSystem().predicates().hasRelativePath(FILE1));
+    RuleKey ruleKey = RuleKey.of(Constants.STD_REPOSITORY_KEY, ClumsySyntax.class.getCanonicalName());
+    RecordingSensorContext recorder = new RecordingSensorContext(context);
+    recorder.startRecording(file);
+    NewIssue issue = recorder.newIssue().forRule(ruleKey).gap(2.0);
+    issue.at(issue.newLocation().on(file).at(file.selectLine(2)).message("Message")).save();
+    AnalysisRecord record = recorder.stopRecording();
+    assertNotNull(record);
+    AnalysisCache cache = new AnalysisCache(null, cacheDir, "fingerprint");
+    cache.put("test", FILE1, "hash", record);
+    assertNull(cache.get("test", FILE1, "otherHash"));
+    assertNull(new AnalysisCache(null, cacheDir, "otherFingerprint").get("test", FILE1, "hash"));
+
+    SensorContextTester context2 = createContext();
+    InputFile file2 = context2.fileSystem().inputFile(context2.fileSystem().predicates().hasRelativePath(FILE1));
+    cache.get("test", FILE1, "hash").replay(context2, file2);
+    assertEquals(context2.allIssues().size(), 1);
+    Issue replayed = context2.allIssues().iterator().next();
+    assertEquals(replayed.ruleKey(), ruleKey);
+    assertEquals(replayed.gap(), 2.0);
+    assertEquals(replayed.primaryLocation().message(), "Message");
+    assertEquals(replayed.primaryLocation().textRange(), file2.selectLine(2));
+
+    // Issue on another file can't be replayed
+    InputFile file3 = context.fileSystem().inputFile(context.fileSystem().predicates().hasRelativePath(FILE2));
+    recorder.startRecording(file);
+    NewIssue issue2 = recorder.newIssue().forRule(ruleKey);
+    issue2.at(issue2.newLocation().on(file3).message("Message")).save();
+    assertNull(recorder.stopRecording());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    OpenEdgeSettings settings = new OpenEdgeSettings(context.config(), context.fileSystem(),
+        SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
+    assertNull(settings.getAnalysisCache(context));
+
+    SensorContextTester context2 = createContext();
+    OpenEdgeSettings settings2 = new OpenEdgeSettings(context2.config(), context2.fileSystem(),
+        SonarRuntimeImpl.forSonarLint(VERSION));
+    assertNull(settings2.getAnalysisCache(context2));
+
+    // Never written in source directories
+    SensorContextTester context3 = TestProjectSensorContext.createContext();
+    context3.settings().setProperty(Constants.ANALYSIS_CACHE, "true");
+    context3.settings().removeProperty(Constants.BINARIES);
+    OpenEdgeSettings settings3 = new OpenEdgeSettings(context3.config(), context3.fileSystem(),
+        SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
+    settings3.init();
+    assertNull(settings3.getAnalysisCache(context3));
+  }
+
+  @SuppressWarnings("deprecation")
+  private SensorContextTester createContext() throws Exception {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    context.settings().setProperty(Constants.ANALYSIS_CACHE, "true");
+    context.settings().setProperty(Constants.ANALYSIS_CACHE_DIR, cacheDir.getAbsolutePath());
+    return context;
+  }
+
+  private static ActiveRules createRules() {
+    ActiveRulesBuilder rulesBuilder = new ActiveRulesBuilder();
+    rulesBuilder.create(RuleKey.of(Constants.STD_REPOSITORY_KEY, ClumsySyntax.class.getCanonicalName())).setLanguage(
+        Constants.LANGUAGE_KEY).activate();
+    return rulesBuilder.build();
+  }
+
+  private static AnalysisCache analyze(SensorContextTester context) {
+    OpenEdgeSettings settings = new OpenEdgeSettings(context.config(), context.fileSystem(),
+        SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
+    new OpenEdgeCodeColorizer(settings).execute(context);
+    OpenEdgeComponents components = new OpenEdgeComponents(new CheckRegistration[] {new BasicChecksRegistration()},
+        null);
+    new OpenEdgeProparseSensor(settings, components).execute(context);
+    AnalysisCache cache = settings.getAnalysisCache(context);
+    assertNotNull(cache);
+    return cache;
+  }
+}
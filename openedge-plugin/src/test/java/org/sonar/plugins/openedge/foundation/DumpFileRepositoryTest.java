@@ -0,0 +1,110 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.BASEDIR;
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.DF1;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.prorefactor.refactor.RefactorSession;
+import org.sonar.api.SonarQubeSide;
+import org.sonar.api.SonarRuntime;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.internal.SonarRuntimeImpl;
+import org.sonar.api.utils.Version;
+import org.sonar.plugins.openedge.foundation.DumpFileRepository.Consumer;
+import org.sonar.plugins.openedge.sensor.OpenEdgeDBColorizer;
+import org.sonar.plugins.openedge.sensor.OpenEdgeDBRulesSensor;
+import org.sonar.plugins.openedge.sensor.OpenEdgeDBSensor;
+import org.sonar.plugins.openedge.utils.TestProjectSensorContext;
+import org.testng.annotations.Test;
+
+import eu.rssw.antlr.database.objects.DatabaseDescription;
+
+public class DumpFileRepositoryTest {
+  private static final Version VERSION = Version.parse("7.5");
+  private static final SonarRuntime SQ_RUNTIME = SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER);
+  private static final SonarRuntime SL_RUNTIME = SonarRuntimeImpl.forSonarLint(VERSION);
+
+  @Test
+  public void testRelease() throws IOException {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    InputFile df = context.fileSystem().inputFile(context.fileSystem().predicates().hasRelativePath(DF1));
+    DumpFileRepository repository = new DumpFileRepository(context.fileSystem(), SQ_RUNTIME);
+
+    ParseTree tree = repository.getParseTree(df);
+    assertNotNull(tree);
+    assertSame(repository.getParseTree(df), tree);
+    assertFalse(repository.getTokens(df).isEmpty());
+    DatabaseDescription desc = repository.getDatabaseDescription(df, "sp2k");
+    assertEquals(desc.getTables().size(), 25);
+    // Same file, from schema loader
+    assertSame(repository.getDatabaseDescription(new File(BASEDIR, DF1), "sp2k"), desc);
+    assertEquals(repository.getParseCount(), 1);
+
+    repository.release(df, Consumer.METRICS);
+    repository.release(df, Consumer.RULES);
+    assertSame(repository.getParseTree(df), tree);
+    repository.release(df, Consumer.HIGHLIGHTING);
+    // Description is kept, tree has to be generated again
+    assertSame(repository.getDatabaseDescription(df, "sp2k"), desc);
+    assertEquals(repository.getParseCount(), 1);
+    assertNotSame(repository.getParseTree(df), tree);
+    assertEquals(repository.getParseCount(), 2);
+  }
+
+  @Test
+  public void testSonarLint() throws IOException {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    InputFile df = context.fileSystem().inputFile(context.fileSystem().predicates().hasRelativePath(DF1));
+    DumpFileRepository repository = new DumpFileRepository(context.fileSystem(), SL_RUNTIME);
+
+    ParseTree tree = repository.getParseTree(df);
+    repository.release(df, Consumer.METRICS);
+    repository.release(df, Consumer.RULES);
+    // No highlighting in SonarLint
+    assertNotSame(repository.getParseTree(df), tree);
+    assertEquals(repository.getParseCount(), 2);
+  }
+
+  @Test
+  public void testSensors() throws IOException {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    DumpFileRepository repository = new DumpFileRepository(context.fileSystem(), SQ_RUNTIME);
+    OpenEdgeSettings settings = new OpenEdgeSettings(context.config(), context.fileSystem(), SQ_RUNTIME, repository);
+    OpenEdgeComponents components = new OpenEdgeComponents();
+
+    new OpenEdgeDBColorizer(repository).execute(context);
+    new OpenEdgeDBSensor(repository).execute(context);
+    new OpenEdgeDBRulesSensor(components, repository).execute(context);
+    RefactorSession session = settings.getProparseSession();
+    assertNotNull(session.getSchema().lookupDatabase("sp2k"));
+    assertEquals(repository.getParseCount(), 1);
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import org.testng.annotations.Test;
+
+import eu.rssw.pct.elements.ITypeInfo;
+
+public class LazyTypeInfoLoaderTest {
+  private static final String BUILD_DIR = "src/test/resources/project1/build";
+  private static final File ABLUNIT_PL = new File("../rcode-reader/src/test/resources/ablunit.pl");
+
+  @Test
+  public void testBinariesDir() {
+    LazyTypeInfoLoader loader = new LazyTypeInfoLoader(Collections.singletonList(Paths.get(BUILD_DIR)),
+        Collections.<File> emptyList());
+    ITypeInfo info = loader.apply("rssw.testclass");
+    assertNotNull(info);
+    assertEquals(info.getTypeName(), "rssw.testclass");
+    // Not found, and procedure rcode
+    assertNull(loader.apply("rssw.notfound"));
+    assertNull(loader.apply("test1"));
+  }
+
+  @Test
+  public void testLibrary() {
+    for (boolean memoryMapped : new boolean[] {false, true}) {
+      LazyTypeInfoLoader loader = new LazyTypeInfoLoader(Collections.emptyList(),
+          Collections.singletonList(ABLUNIT_PL), memoryMapped);
+      ITypeInfo info = loader.apply("OpenEdge.ABLUnit.Reflection.ClassAnnotationInfo");
+      assertNotNull(info);
+      assertEquals(info.getTypeName(), "OpenEdge.ABLUnit.Reflection.ClassAnnotationInfo");
+      assertNull(loader.apply("rssw.testclass"));
+    }
+  }
+
+  @Test
+  public void testInvalidLibrary() {
+    LazyTypeInfoLoader loader = new LazyTypeInfoLoader(Collections.emptyList(),
+        Collections.singletonList(new File(BUILD_DIR, "test1.r")));
+    assertNull(loader.apply("rssw.testclass"));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.foundation;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+import eu.rssw.pct.RCodeInfo;
+import eu.rssw.pct.RCodeInfo.InvalidRCodeException;
+import eu.rssw.pct.elements.ITypeInfo;
+import eu.rssw.pct.elements.v11.TypeInfoSerializer;
+
+public class TypeInfoSnapshotTest {
+  private static final String BUILD_DIR = "src/test/resources/project1/build";
+
+  private File tmpDir;
+  private File snapshotFile;
+
+  @BeforeMethod
+  public void createDir() throws IOException {
+    tmpDir = Files.createTempDir();
+    for (String str : new String[] {"test1.r", "test2.r", "rssw/testclass.r"}) {
+      File target = new File(tmpDir, str);
+      Files.createParentDirs(target);
+      Files.copy(new File(BUILD_DIR, str), target);
+    }
+    snapshotFile = new File(tmpDir, TypeInfoSnapshot.FILE_NAME);
+  }
+
+  @Test
+  public void testSnapshot() throws IOException, InvalidRCodeException {
+    File clsFile = new File(tmpDir, "rssw/testclass.r");
+    File procFile = new File(tmpDir, "test1.r");
+    ITypeInfo info = readRCode(clsFile);
+    assertNotNull(info);
+
+    TypeInfoSnapshot snapshot1 = new TypeInfoSnapshot(snapshotFile);
+    assertNull(snapshot1.get(clsFile, reader(clsFile)));
+    snapshot1.put(clsFile, Collections.singletonList(info));
+    snapshot1.put(procFile, Collections.emptyList());
+    assertTrue(snapshot1.save());
+    assertTrue(snapshotFile.exists());
+
+    TypeInfoSnapshot snapshot2 = new TypeInfoSnapshot(snapshotFile);
+    List<ITypeInfo> list = snapshot2.get(clsFile, reader(clsFile));
+    assertNotNull(list);
+    assertEquals(list.size(), 1);
+    ITypeInfo info2 = list.get(0);
+    assertEquals(info2.getTypeName(), info.getTypeName());
+    assertEquals(TypeInfoSnapshot.getMethodCount(info2), info.getMethods().size());
+    assertEquals(TypeInfoSnapshot.getPropertyCount(info2), info.getProperties().size());
+    // Deserialized on first access
+    assertEquals(info2.getParentTypeName(), info.getParentTypeName());
+    assertEquals(info2.getMethods().size(), info.getMethods().size());
+    assertEquals(info2.getProperties().size(), info.getProperties().size());
+    assertEquals(snapshot2.get(procFile, reader(procFile)).size(), 0);
+    assertEquals(snapshot2.getHits(), 2);
+    // Nothing changed
+    assertFalse(snapshot2.save());
+  }
+
+  @Test
+  public void testModifiedFile() throws IOException, InvalidRCodeException {
+    File clsFile = new File(tmpDir, "rssw/testclass.r");
+    File procFile = new File(tmpDir, "test2.r");
+    TypeInfoSnapshot snapshot1 = new TypeInfoSnapshot(snapshotFile);
+    snapshot1.put(clsFile, Collections.singletonList(readRCode(clsFile)));
+    snapshot1.put(procFile, Collections.emptyList());
+    assertTrue(snapshot1.save());
+
+    assertTrue(clsFile.setLastModified(clsFile.lastModified() - 10000));
+    TypeInfoSnapshot snapshot2 = new TypeInfoSnapshot(snapshotFile);
+    assertNull(snapshot2.get(clsFile, reader(clsFile)));
+    assertNotNull(snapshot2.get(procFile, reader(procFile)));
+    assertEquals(snapshot2.getMisses(), 1);
+    // Only procFile is kept
+    assertTrue(snapshot2.save());
+
+    TypeInfoSnapshot snapshot3 = new TypeInfoSnapshot(snapshotFile);
+    assertNull(snapshot3.get(clsFile, reader(clsFile)));
+    assertNotNull(snapshot3.get(procFile, reader(procFile)));
+  }
+
+  @Test
+  public void testInvalidSnapshot() throws IOException {
+    Files.write(new byte[] {1, 2, 3}, snapshotFile);
+    TypeInfoSnapshot snapshot = new TypeInfoSnapshot(snapshotFile);
+    File procFile = new File(tmpDir, "test1.r");
+    assertNull(snapshot.get(procFile, reader(procFile)));
+  }
+
+  @Test
+  public void testCorruptEntry() throws IOException, InvalidRCodeException {
+    File clsFile = new File(tmpDir, "rssw/testclass.r");
+    TypeInfoSnapshot snapshot1 = new TypeInfoSnapshot(snapshotFile);
+    snapshot1.put(clsFile, Collections.singletonList(readRCode(clsFile)));
+    assertTrue(snapshot1.save());
+
+    // Last byte of serialized type info
+    byte[] bytes = Files.toByteArray(snapshotFile);
+    bytes[bytes.length - 1] ^= 0xFF;
+    Files.write(bytes, snapshotFile);
+    TypeInfoSnapshot snapshot2 = new TypeInfoSnapshot(snapshotFile);
+    assertNull(snapshot2.get(clsFile, reader(clsFile)));
+    assertEquals(snapshot2.getMisses(), 1);
+  }
+
+  @Test
+  public void testUnreadableEntry() throws IOException, InvalidRCodeException {
+    File clsFile = new File(tmpDir, "rssw/testclass.r");
+    ITypeInfo info = readRCode(clsFile);
+    // Valid checksum, but type info can't be deserialized
+    byte[] data = new byte[] {1, 2, 3};
+    CRC32 crc = new CRC32();
+    crc.update(data);
+    BasicFileAttributes attrs = java.nio.file.Files.readAttributes(clsFile.toPath(), BasicFileAttributes.class);
+    try (DataOutputStream output = new DataOutputStream(new FileOutputStream(snapshotFile))) {
+      output.writeInt(TypeInfoSnapshot.MAGIC);
+      output.writeInt(TypeInfoSnapshot.VERSION);
+      output.writeInt(TypeInfoSerializer.VERSION);
+      output.writeInt(1);
+      output.writeUTF(clsFile.getAbsolutePath());
+      output.writeLong(attrs.size());
+      output.writeLong(attrs.lastModifiedTime().toMillis());
+      output.writeInt(1);
+      output.writeUTF(info.getTypeName());
+      output.writeInt(info.getMethods().size());
+      output.writeInt(info.getProperties().size());
+      output.writeInt((int) crc.getValue());
+      output.writeInt(data.length);
+      output.write(data);
+    }
+
+    AtomicInteger numReads = new AtomicInteger();
+    TypeInfoSnapshot snapshot1 = new TypeInfoSnapshot(snapshotFile);
+    List<ITypeInfo> list = snapshot1.get(clsFile, () -> {
+      numReads.incrementAndGet();
+      return reader(clsFile).get();
+    });
+    assertNotNull(list);
+    assertEquals(numReads.get(), 0);
+    // Rcode is read on first access, and replaces the snapshot entry
+    assertEquals(list.get(0).getParentTypeName(), info.getParentTypeName());
+    assertEquals(list.get(0).getMethods().size(), info.getMethods().size());
+    assertEquals(numReads.get(), 1);
+    assertTrue(snapshot1.save());
+
+    TypeInfoSnapshot snapshot2 = new TypeInfoSnapshot(snapshotFile);
+    List<ITypeInfo> list2 = snapshot2.get(clsFile, () -> {
+      throw new IllegalStateException("Rcode should not be read");
+    });
+    assertNotNull(list2);
+    assertEquals(list2.get(0).getParentTypeName(), info.getParentTypeName());
+  }
+
+  private static Supplier<Collection<ITypeInfo>> reader(File file) {
+    return () -> {
+      try {
+        ITypeInfo info = readRCode(file);
+        return info == null ? Collections.emptyList() : Collections.singletonList(info);
+      } catch (IOException | InvalidRCodeException caught) {
+        throw new IllegalStateException(caught);
+      }
+    };
+  }
+
+  private static ITypeInfo readRCode(File file) throws IOException, InvalidRCodeException {
+    try (FileInputStream input = new FileInputStream(file)) {
+      return new RCodeInfo(input).getTypeInfo();
+    }
+  }
+}
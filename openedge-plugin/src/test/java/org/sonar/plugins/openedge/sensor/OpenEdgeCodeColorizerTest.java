@@ -29,6 +29,8 @@ import org.sonar.api.batch.sensor.highlighting.TypeOfText;
 import org.sonar.api.batch.sensor.internal.SensorContextTester;
 import org.sonar.api.internal.SonarRuntimeImpl;
 import org.sonar.api.utils.Version;
+import org.sonar.plugins.openedge.api.Constants;
+import org.sonar.plugins.openedge.foundation.OpenEdgeComponents;
 import org.sonar.plugins.openedge.foundation.OpenEdgeSettings;
 import org.sonar.plugins.openedge.utils.TestProjectSensorContext;
 import org.testng.Assert;
@@ -40,10 +42,28 @@ public class OpenEdgeCodeColorizerTest {
   @Test
   public void testSp2k() throws Exception {
     SensorContextTester context = TestProjectSensorContext.createContext();
+    context.settings().setProperty(Constants.SKIP_PROPARSE_PROPERTY, true);
     OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
     OpenEdgeCodeColorizer sensor = new OpenEdgeCodeColorizer(oeSettings);
     sensor.execute(context);
 
+    checkHighlighting(context);
+  }
+
+  @Test
+  public void testProparseSensor() throws Exception {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
+    // Main files are skipped by the colorizer, and highlighted by the proparse sensor
+    new OpenEdgeCodeColorizer(oeSettings).execute(context);
+    Assert.assertEquals(context.highlightingTypeAt(BASEDIR + ":" + FILE1, 1, 10).size(), 0);
+    OpenEdgeComponents components = new OpenEdgeComponents(null, null);
+    new OpenEdgeProparseSensor(oeSettings, components).execute(context);
+
+    checkHighlighting(context);
+  }
+
+  private static void checkHighlighting(SensorContextTester context) {
     // Comments
     Assert.assertNotNull(context.highlightingTypeAt(BASEDIR + ":" + FILE1 , 1, 10));
     Assert.assertEquals(context.highlightingTypeAt(BASEDIR + ":" + FILE1, 1, 10).size(), 1);
@@ -22,18 +22,25 @@ package org.sonar.plugins.openedge.sensor;
 import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.BASEDIR;
 import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.DF1;
 
+import org.sonar.api.SonarQubeSide;
+import org.sonar.api.SonarRuntime;
 import org.sonar.api.batch.sensor.internal.SensorContextTester;
+import org.sonar.api.internal.SonarRuntimeImpl;
+import org.sonar.api.utils.Version;
+import org.sonar.plugins.openedge.foundation.DumpFileRepository;
 import org.sonar.plugins.openedge.foundation.OpenEdgeMetrics;
 import org.sonar.plugins.openedge.utils.TestProjectSensorContext;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 public class OpenEdgeDBSensorTest {
+  private static final SonarRuntime SQ_RUNTIME = SonarRuntimeImpl.forSonarQube(Version.parse("7.5"),
+      SonarQubeSide.SCANNER);
 
   @Test
   public void testSp2k() throws Exception {
     SensorContextTester context = TestProjectSensorContext.createContext();
-    OpenEdgeDBSensor sensor = new OpenEdgeDBSensor();
+    OpenEdgeDBSensor sensor = new OpenEdgeDBSensor(new DumpFileRepository(context.fileSystem(), SQ_RUNTIME));
     sensor.execute(context);
 
     Assert.assertEquals(context.measure(BASEDIR + ":" + DF1, OpenEdgeMetrics.NUM_TABLES_KEY).value(), 25,
@@ -24,16 +24,21 @@ import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.CLASS1;
 import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE1;
 import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE2;
 import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE3;
+import static org.sonar.plugins.openedge.utils.TestProjectSensorContext.FILE4;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.io.File;
+import java.nio.file.Files;
+
 import org.prorefactor.refactor.settings.ProparseSettings.OperatingSystem;
 import org.sonar.api.SonarQubeSide;
 import org.sonar.api.batch.rule.internal.ActiveRulesBuilder;
 import org.sonar.api.batch.sensor.internal.SensorContextTester;
 import org.sonar.api.internal.SonarRuntimeImpl;
+import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.Version;
 import org.sonar.plugins.openedge.api.CheckRegistration;
@@ -98,6 +103,53 @@ public class OpenEdgeProparseSensorTest {
         "Wrong number of transactions");
   }
 
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testMultiThreaded() throws Exception {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    context.settings().setProperty(Constants.PROPARSE_THREADS, "3");
+    OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
+    assertEquals(oeSettings.getProparseThreads(), 3);
+    OpenEdgeComponents components = new OpenEdgeComponents(null, null);
+    OpenEdgeProparseSensor sensor = new OpenEdgeProparseSensor(oeSettings, components);
+    sensor.execute(context);
+
+    assertEquals(context.measure(BASEDIR + ":" + FILE1, OpenEdgeMetrics.NUM_TRANSACTIONS_KEY).value(), 1,
+        "Wrong number of transactions");
+    assertNotNull(context.measure(BASEDIR + ":" + FILE4, CoreMetrics.NCLOC_KEY));
+
+    // Same results as single-threaded analysis
+    SensorContextTester context2 = TestProjectSensorContext.createContext();
+    OpenEdgeSettings oeSettings2 = new OpenEdgeSettings(context2.config(), context2.fileSystem(), SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
+    new OpenEdgeProparseSensor(oeSettings2, new OpenEdgeComponents(null, null)).execute(context2);
+    for (String str : new String[] {FILE1, FILE2, FILE3, CLASS1}) {
+      assertEquals(context.cpdTokens(BASEDIR + ":" + str).size(), context2.cpdTokens(BASEDIR + ":" + str).size());
+      assertEquals(context.measure(BASEDIR + ":" + str, CoreMetrics.NCLOC_KEY).value(),
+          context2.measure(BASEDIR + ":" + str, CoreMetrics.NCLOC_KEY).value());
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  @Test
+  public void testTelemetry() throws Exception {
+    SensorContextTester context = TestProjectSensorContext.createContext();
+    File workDir = context.fileSystem().workDir();
+    context.settings().setProperty(Constants.TELEMETRY_TOP_FILES, "2");
+    OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER));
+    assertTrue(oeSettings.useTelemetry());
+    OpenEdgeComponents components = new OpenEdgeComponents(null, null);
+    OpenEdgeProparseSensor sensor = new OpenEdgeProparseSensor(oeSettings, components);
+    sensor.execute(context);
+
+    assertTrue(new File(workDir, SensorTelemetry.PROMETHEUS_REPORT).exists());
+    String json = new String(Files.readAllBytes(new File(workDir, SensorTelemetry.JSON_REPORT).toPath()), "UTF-8");
+    assertTrue(json.contains("\"" + SensorTelemetry.TREE_PARSER + "\": { \"count\": "));
+    assertTrue(json.contains("\"" + SensorTelemetry.LISTING + "\": { \"count\": "));
+    // Lexer and preprocessor are timed during the parser pass
+    assertTrue(json.contains("\"" + SensorTelemetry.LEX + "\": { \"count\": "));
+    assertTrue(json.contains("\"" + SensorTelemetry.PREPROCESS + "\": { \"count\": "));
+  }
+
   @SuppressWarnings("deprecation")
   @Test
   public void testPreprocessorSettings01() throws Exception {
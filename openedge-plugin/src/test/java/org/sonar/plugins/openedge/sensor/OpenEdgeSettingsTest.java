@@ -19,12 +19,15 @@
  */
 package org.sonar.plugins.openedge.sensor;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 import org.prorefactor.refactor.RefactorSession;
 import org.sonar.api.SonarQubeSide;
@@ -38,6 +41,9 @@ import org.sonar.plugins.openedge.foundation.OpenEdgeSettings;
 import org.sonar.plugins.openedge.utils.TestProjectSensorContext;
 import org.testng.annotations.Test;
 
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
 public class OpenEdgeSettingsTest {
   private static final Version VERSION = Version.parse("7.5");
   private static final SonarRuntime SQ_RUNTIME = SonarRuntimeImpl.forSonarQube(VERSION, SonarQubeSide.SCANNER);
@@ -69,6 +75,7 @@ public class OpenEdgeSettingsTest {
 
     SensorContextTester context = SensorContextTester.create(new File(TestProjectSensorContext.BASEDIR));
     context.setSettings(settings);
+    context.fileSystem().setWorkDir(Files.createTempDirectory("workdir"));
 
     OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SQ_RUNTIME);
     RefactorSession ppSess = oeSettings.getProparseSession();
@@ -93,6 +100,7 @@ public class OpenEdgeSettingsTest {
 
     SensorContextTester context = SensorContextTester.create(new File(TestProjectSensorContext.BASEDIR));
     context.setSettings(settings);
+    context.fileSystem().setWorkDir(Files.createTempDirectory("workdir"));
 
     OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SQ_RUNTIME);
     RefactorSession ppSess = oeSettings.getProparseSession();
@@ -118,6 +126,7 @@ public class OpenEdgeSettingsTest {
 
     SensorContextTester context = SensorContextTester.create(new File(TestProjectSensorContext.BASEDIR));
     context.setSettings(settings);
+    context.fileSystem().setWorkDir(Files.createTempDirectory("workdir"));
 
     OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SQ_RUNTIME);
     RefactorSession ppSess = oeSettings.getProparseSession();
@@ -137,6 +146,97 @@ public class OpenEdgeSettingsTest {
     assertNull(ppSess.getSchema().lookupTable("abcdef"));
   }
 
+  @Test
+  public void testSonarDatabasesFromSonarQube05() throws Exception {
+    // Binary snapshot written on first analysis, and used on second one
+    File snapshotDir = Files.createTempDirectory("schema").toFile();
+    MapSettings settings = new MapSettings();
+    settings.setProperty(Constants.DATABASES, "src/schema/sp2k.df:rssw");
+    settings.setProperty(Constants.SCHEMA_SNAPSHOT, "true");
+    settings.setProperty(Constants.SCHEMA_CACHE_DIR, snapshotDir.getAbsolutePath());
+    settings.setProperty("sonar.sources", "src");
+
+    SensorContextTester context = SensorContextTester.create(new File(TestProjectSensorContext.BASEDIR));
+    context.setSettings(settings);
+
+    OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SQ_RUNTIME);
+    assertNotNull(oeSettings.getProparseSession().getSchema().lookupTable("rssw", "item"));
+    File snapshot = new File(snapshotDir, "src_schema_sp2k.df.bin");
+    assertTrue(snapshot.exists());
+    long lastModified = snapshot.lastModified();
+
+    OpenEdgeSettings oeSettings2 = new OpenEdgeSettings(context.config(), context.fileSystem(), SQ_RUNTIME);
+    RefactorSession ppSess = oeSettings2.getProparseSession();
+    assertNotNull(ppSess.getSchema().lookupTable("rssw", "item"));
+    assertNotNull(ppSess.getSchema().lookupTable("benefits"));
+    assertEquals(snapshot.lastModified(), lastModified);
+  }
+
+  @Test
+  public void testSonarDatabasesFromSonarQube06() throws Exception {
+    // Default snapshot directory has to survive deletion of the working directory between two analyses
+    File baseDir = createProject();
+    File workDir = new File(baseDir, ".scannerwork");
+    MapSettings settings = new MapSettings();
+    settings.setProperty(Constants.DATABASES, "src/schema/sp2k.df:rssw");
+    settings.setProperty(Constants.SCHEMA_SNAPSHOT, "true");
+    settings.setProperty(Constants.BINARIES, "build");
+    settings.setProperty("sonar.sources", "src");
+
+    OpenEdgeSettings oeSettings = createSettings(baseDir, workDir, settings);
+    assertNotNull(oeSettings.getProparseSession().getSchema().lookupTable("rssw", "item"));
+    File snapshot = new File(baseDir, "build/.oe-schema-cache/src_schema_sp2k.df.bin");
+    assertTrue(snapshot.exists());
+    long lastModified = snapshot.lastModified();
+
+    // Scanner deletes working directory before each analysis
+    MoreFiles.deleteRecursively(workDir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+    assertFalse(workDir.exists());
+
+    RefactorSession ppSess = createSettings(baseDir, workDir, settings).getProparseSession();
+    assertNotNull(ppSess.getSchema().lookupTable("rssw", "item"));
+    assertNotNull(ppSess.getSchema().lookupTable("benefits"));
+    assertEquals(snapshot.lastModified(), lastModified);
+  }
+
+  @Test
+  public void testSonarDatabasesFromSonarQube07() throws Exception {
+    // No snapshot in source directories, and snapshot is disabled by default
+    File baseDir = createProject();
+    File workDir = new File(baseDir, ".scannerwork");
+    MapSettings settings = new MapSettings();
+    settings.setProperty(Constants.DATABASES, "src/schema/sp2k.df:rssw");
+    settings.setProperty(Constants.SCHEMA_SNAPSHOT, "true");
+    settings.setProperty("sonar.sources", "src");
+    assertNotNull(createSettings(baseDir, workDir, settings).getProparseSession().getSchema().lookupTable("rssw",
+        "item"));
+    assertFalse(new File(baseDir, "src/.oe-schema-cache").exists());
+
+    settings.removeProperty(Constants.SCHEMA_SNAPSHOT);
+    settings.setProperty(Constants.BINARIES, "build");
+    assertNotNull(createSettings(baseDir, workDir, settings).getProparseSession().getSchema().lookupTable("rssw",
+        "item"));
+    assertFalse(new File(baseDir, "build/.oe-schema-cache").exists());
+  }
+
+  private static File createProject() throws IOException {
+    File baseDir = Files.createTempDirectory("project").toFile();
+    File dfFile = new File(baseDir, "src/schema/sp2k.df");
+    com.google.common.io.Files.createParentDirs(dfFile);
+    com.google.common.io.Files.copy(new File(TestProjectSensorContext.BASEDIR, "src/schema/sp2k.df"), dfFile);
+    return baseDir;
+  }
+
+  private static OpenEdgeSettings createSettings(File baseDir, File workDir, MapSettings settings)
+      throws IOException {
+    SensorContextTester context = SensorContextTester.create(baseDir);
+    context.setSettings(settings);
+    context.fileSystem().setWorkDir(Files.createDirectories(workDir.toPath()));
+    OpenEdgeSettings oeSettings = new OpenEdgeSettings(context.config(), context.fileSystem(), SQ_RUNTIME);
+    oeSettings.init();
+    return oeSettings;
+  }
+
   @Test
   public void testSonarDatabasesFromSonarLint01() throws Exception {
     // Simple sports2000 database schema on SonarLint - This schema doesn't include table 'Benefits'
@@ -172,8 +272,9 @@ public class OpenEdgeSettingsTest {
     settings.setProperty(Constants.DATABASES, "src/schema/sp2k.df:rssw");
     settings.setProperty("sonar.sources", "src");
 
+    // Snapshot from a previous run
     File cache = new File(TestProjectSensorContext.BASEDIR, ".sonarlint/src_schema_sp2k.df.bin");
-    assertFalse(cache.exists());
+    Files.deleteIfExists(cache.toPath());
 
     SensorContextTester context = SensorContextTester.create(new File(TestProjectSensorContext.BASEDIR));
     context.setSettings(settings);
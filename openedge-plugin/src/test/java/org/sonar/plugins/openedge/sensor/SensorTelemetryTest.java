@@ -0,0 +1,125 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.plugins.openedge.sensor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.sonar.plugins.openedge.sensor.SensorTelemetry.FileTimings;
+import org.sonar.plugins.openedge.sensor.SensorTelemetry.Histogram;
+import org.testng.annotations.Test;
+
+public class SensorTelemetryTest {
+
+  @Test
+  public void testBuckets() {
+    assertEquals(Histogram.getBucket(0), 0);
+    assertEquals(Histogram.getBucket(1024), 0);
+    assertEquals(Histogram.getBucket(1025), 1);
+    assertEquals(Histogram.getBucket(2048), 1);
+    assertEquals(Histogram.getBucket(1_000_000), 10);
+    assertEquals(Histogram.getBucket(Long.MAX_VALUE), Histogram.NUM_BUCKETS);
+    assertTrue(Histogram.getUpperBound(10) >= 1_000_000);
+    assertTrue(Histogram.getUpperBound(9) < 1_000_000);
+  }
+
+  @Test
+  public void testHistogram() {
+    Histogram histo = new Histogram();
+    assertEquals(histo.getPercentile(0.5), 0);
+    for (int zz = 0; zz < 99; zz++) {
+      histo.add(1_000);
+    }
+    histo.add(5_000_000_000L);
+    assertEquals(histo.getCount(), 100);
+    assertEquals(histo.getSum(), 99_000 + 5_000_000_000L);
+    assertEquals(histo.getMax(), 5_000_000_000L);
+    assertEquals(histo.getBucketCount(0), 99);
+    assertEquals(histo.getPercentile(0.5), 1_024);
+    assertEquals(histo.getPercentile(0.99), 1_024);
+    assertEquals(histo.getPercentile(1), 5_000_000_000L);
+  }
+
+  @Test
+  public void testSlowestFiles() {
+    SensorTelemetry telemetry = new SensorTelemetry(2);
+    for (int zz = 1; zz <= 5; zz++) {
+      FileTimings file = telemetry.newFile("file" + zz + ".p");
+      file.record(SensorTelemetry.PARSE, zz * 1000L);
+      file.record(SensorTelemetry.RULE_PREFIX + "rule1", zz * 10L);
+      file.record(SensorTelemetry.PARSE, 1L);
+      telemetry.fileComplete(file);
+    }
+    assertEquals(telemetry.getNumFiles(), 5);
+    List<FileTimings> list = telemetry.getSlowestFiles();
+    assertEquals(list.size(), 2);
+    assertEquals(list.get(0).getFileName(), "file5.p");
+    assertEquals(list.get(0).getTotal(), 5051L);
+    assertEquals(list.get(0).getPhases().get(SensorTelemetry.PARSE).longValue(), 5001L);
+    assertEquals(list.get(1).getFileName(), "file4.p");
+
+    assertEquals(telemetry.getHistogram(SensorTelemetry.PARSE, false).getCount(), 10);
+    assertEquals(telemetry.getHistogram(SensorTelemetry.RULE_PREFIX + "rule1", false).getCount(), 5);
+    assertNull(telemetry.getHistogram(SensorTelemetry.LEX, false));
+  }
+
+  @Test
+  public void testReports() throws IOException {
+    SensorTelemetry telemetry = new SensorTelemetry(10);
+    FileTimings file = telemetry.newFile("dir/\"quoted\".p");
+    file.record(SensorTelemetry.LEX, 2_000_000);
+    file.record(SensorTelemetry.RULE_PREFIX + "eu.rssw:rule", 3_000);
+    telemetry.fileComplete(file);
+    telemetry.record(SensorTelemetry.XREF, 500);
+
+    StringWriter json = new StringWriter();
+    telemetry.writeJson(json);
+    assertTrue(json.toString().contains("\"files\": 1,"));
+    assertTrue(json.toString().contains("\"lex\": { \"count\": 1, \"sumNanos\": 2000000, \"maxNanos\": 2000000"));
+    assertTrue(json.toString().contains("\"eu.rssw:rule\": { \"count\": 1"));
+    assertTrue(json.toString().contains("{ \"file\": \"dir/\\\"quoted\\\".p\", \"totalNanos\": 2003000"));
+
+    StringWriter prom = new StringWriter();
+    telemetry.writePrometheus(prom);
+    assertTrue(prom.toString().contains("openedge_proparse_files_total 1\n"));
+    assertTrue(prom.toString().contains("# TYPE openedge_proparse_phase_duration_seconds histogram\n"));
+    assertTrue(prom.toString().contains(
+        "openedge_proparse_phase_duration_seconds_bucket{phase=\"xref\",le=\"0.000001024\"} 1\n"));
+    assertTrue(prom.toString().contains(
+        "openedge_proparse_phase_duration_seconds_bucket{phase=\"lex\",le=\"+Inf\"} 1\n"));
+    assertTrue(prom.toString().contains("openedge_proparse_phase_duration_seconds_sum{phase=\"lex\"} 0.002000000\n"));
+    assertTrue(prom.toString().contains("openedge_proparse_rule_duration_seconds_count{rule=\"eu.rssw:rule\"} 1\n"));
+
+    File dir = Files.createTempDirectory("telemetry").toFile();
+    telemetry.writeReports(new File(dir, "subdir"));
+    File jsonFile = new File(dir, "subdir/" + SensorTelemetry.JSON_REPORT);
+    assertEquals(new String(Files.readAllBytes(jsonFile.toPath()), StandardCharsets.UTF_8), json.toString());
+    assertTrue(new File(dir, "subdir/" + SensorTelemetry.PROMETHEUS_REPORT).exists());
+    assertEquals(new File(dir, "subdir").list().length, 2);
+  }
+}
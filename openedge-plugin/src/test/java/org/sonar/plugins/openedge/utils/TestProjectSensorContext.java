@@ -53,6 +53,7 @@ public class TestProjectSensorContext {
 
     SensorContextTester context = SensorContextTester.create(new File(BASEDIR));
     context.setSettings(settings);
+    context.fileSystem().setWorkDir(Files.createTempDir().toPath());
 
     context.fileSystem().add(
         new TestInputFileBuilder(BASEDIR, DF1).setLanguage(Constants.DB_LANGUAGE_KEY).setType(
@@ -15,8 +15,6 @@
 package org.prorefactor.core;
 
 import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.antlr.v4.runtime.Token;
 import org.prorefactor.proparse.ProParser;
@@ -1516,9 +1514,11 @@ public enum ABLNodeType {
   YESNOCANCEL(ProParserTokenTypes.YESNOCANCEL, "yes-no-cancel", NodeTypesOption.KEYWORD),
   YOF(ProParserTokenTypes.YOF, "y-of", NodeTypesOption.KEYWORD);
 
-  private static final String ERR_INIT = "Error while initializing typeMap - Duplicate key ";
-  private static Map<String, ABLNodeType> literalsMap = new HashMap<>();
-  private static Map<Integer, ABLNodeType> typeMap = new HashMap<>();
+  private static final String ERR_INIT = "Error while initializing node types - Duplicate key ";
+  private static final KeywordTrie keywords = new KeywordTrie();
+  // Indexed by type number, shifted by typeOffset as some type numbers are negative
+  private static final ABLNodeType[] typeArray;
+  private static final int typeOffset;
 
   // Private attributes
   private int typeNum;
@@ -1681,40 +1681,47 @@ public enum ABLNodeType {
 
 
   static {
+    int minType = 0;
+    int maxType = 0;
+    for (ABLNodeType e : ABLNodeType.values()) {
+      minType = Math.min(minType, e.typeNum);
+      maxType = Math.max(maxType, e.typeNum);
+    }
+    typeOffset = -minType;
+    typeArray = new ABLNodeType[maxType + typeOffset + 1];
     for (ABLNodeType e : ABLNodeType.values()) {
       // No duplicates allowed in definition
-      if (typeMap.put(e.typeNum, e) != null)
+      if (typeArray[e.typeNum + typeOffset] != null)
         throw new IllegalStateException(ERR_INIT + e.typeNum);
+      typeArray[e.typeNum + typeOffset] = e;
 
       if (e.options.contains(NodeTypesOption.KEYWORD)) {
-        // Full-text map is only filled with keywords
-        for (int zz = e.abbrMain; zz <= e.text.length(); zz++) {
-          if (literalsMap.put(e.text.substring(0, zz).toLowerCase(), e) != null)
-            throw new IllegalStateException(ERR_INIT + e.text.substring(0, zz));
-        }
-        if (e.alt1 != null) {
-          for (int zz = e.abbrAlt1; zz <= e.alt1.length(); zz++) {
-            if (literalsMap.put(e.alt1.substring(0, zz), e) != null)
-              throw new IllegalStateException(ERR_INIT + e.alt1.substring(0, zz));
-          }
-        }
-        if (e.alt2 != null) {
-          for (int zz = e.abbrAlt2; zz <= e.alt2.length(); zz++) {
-            if (literalsMap.put(e.alt2.substring(0, zz), e) != null)
-              throw new IllegalStateException(ERR_INIT + e.alt2.substring(0, zz));
-          }
-        }
+        // Keywords trie is only filled with keywords
+        keywords.add(e.text, e.abbrMain, e);
+        if (e.alt1 != null)
+          keywords.add(e.alt1, e.abbrAlt1, e);
+        if (e.alt2 != null)
+          keywords.add(e.alt2, e.abbrAlt2, e);
       }
     }
+    keywords.compact();
   }
 
   public static ABLNodeType getNodeType(int type) {
-    ABLNodeType nodeType = typeMap.get(type);
+    ABLNodeType nodeType = typeOf(type);
     return nodeType == null ? INVALID_NODE : nodeType;
   }
 
   static boolean isValidType(int type) {
-    return typeMap.keySet().contains(type);
+    return typeOf(type) != null;
+  }
+
+  /**
+   * @return Node type for this type number, or null
+   */
+  private static ABLNodeType typeOf(int type) {
+    int idx = type + typeOffset;
+    return (idx >= 0) && (idx < typeArray.length) ? typeArray[idx] : null;
   }
 
   /**
@@ -1722,7 +1729,7 @@ public enum ABLNodeType {
    * Returns empty string if there's no text for the type.
    */
   public static String getFullText(int type) {
-    ABLNodeType e = typeMap.get(type);
+    ABLNodeType e = typeOf(type);
     if (e == null)
       return null;
     if (e.options.contains(NodeTypesOption.PLACEHOLDER))
@@ -1732,14 +1739,20 @@ public enum ABLNodeType {
     return Strings.nullToEmpty(e.text).toUpperCase();
   }
 
-  public static ABLNodeType getLiteral(String text) {
+  public static ABLNodeType getLiteral(CharSequence text) {
     return getLiteral(text, null);
   }
 
-  public static ABLNodeType getLiteral(String text, ABLNodeType defaultType) {
+  /**
+   * Case-insensitive lookup of a keyword or one of its abbreviations. Doesn't allocate any object, so that it can be
+   * called directly on the lexer's buffer.
+   * 
+   * @return Node type, or defaultType if text is not a keyword
+   */
+  public static ABLNodeType getLiteral(CharSequence text, ABLNodeType defaultType) {
     if (text == null)
       return defaultType;
-    ABLNodeType type = literalsMap.get(text.toLowerCase());
+    ABLNodeType type = keywords.get(text);
     if (type == null)
       return defaultType;
     return type;
@@ -1748,7 +1761,7 @@ public enum ABLNodeType {
   public static String getFullText(String text) {
     if (text == null)
       return "";
-    ABLNodeType type = literalsMap.get(text.toLowerCase());
+    ABLNodeType type = keywords.get(text);
     if (type == null)
       return "";
     return type.text.toUpperCase();
@@ -1765,11 +1778,11 @@ public enum ABLNodeType {
       return -1;
     if (s.startsWith("_"))
       return -1;
-    ABLNodeType ret = literalsMap.get(s.toLowerCase());
+    ABLNodeType ret = keywords.get(s);
     if (ret == null) {
       // It's possible that we've been passed a token type name which needs
       // to have the _KW suffix added to it.
-      ret = literalsMap.get(s.toLowerCase() + "_KW");
+      ret = keywords.get(s + "_KW");
     }
     if (ret == null)
       return -1;
@@ -1777,7 +1790,7 @@ public enum ABLNodeType {
   }
 
   public static boolean isKeywordType(int nodeType) {
-    ABLNodeType type = typeMap.get(nodeType);
+    ABLNodeType type = typeOf(nodeType);
     if (type == null)
       return false;
     return type.isKeyword();
@@ -1787,35 +1800,35 @@ public enum ABLNodeType {
    * @return True if node type can't be used as a variable name or field name among other things
    */
   public static boolean isReserved(int nodeType) {
-    ABLNodeType type = typeMap.get(nodeType);
+    ABLNodeType type = typeOf(nodeType);
     if (type == null)
       return false;
     return type.isReservedKeyword();
   }
 
   static boolean isUnreservedKeywordType(int nodeType) {
-    ABLNodeType type = typeMap.get(nodeType);
+    ABLNodeType type = typeOf(nodeType);
     if (type == null)
       return false;
     return type.isUnreservedKeywordType();
   }
 
   public static boolean isSystemHandleName(int nodeType) {
-    ABLNodeType type = typeMap.get(nodeType);
+    ABLNodeType type = typeOf(nodeType);
     if (type == null)
       return false;
     return type.isSystemHandleName();
   }
 
   static boolean mayBeNoArgFunc(int nodeType) {
-    ABLNodeType type = typeMap.get(nodeType);
+    ABLNodeType type = typeOf(nodeType);
     if (type == null)
       return false;
     return type.mayBeNoArgFunc();
   }
 
   static boolean mayBeRegularFunc(int nodeType) {
-    ABLNodeType type = typeMap.get(nodeType);
+    ABLNodeType type = typeOf(nodeType);
     if (type == null)
       return false;
     return type.mayBeRegularFunc();
@@ -17,6 +17,7 @@ package org.prorefactor.core;
 
 import java.nio.CharBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -45,10 +46,19 @@ public class JPNode implements AST {
   private JPNode left;
   private JPNode up;
 
-  private Map<Integer, Integer> attrMap;
+  // Boolean attributes set to TRUE, one bit per AttributeKey ordinal
+  private int flags;
+  // Other integer attributes, as (key, value) pairs
+  private int[] attrs;
+  // Links and string attributes, as parallel arrays. String attributes keys are tagged with STRING_ATTR
+  private int[] linkKeys;
+  private Object[] linkValues;
   private Map<String, String> attrMapStrings;
-  private Map<Integer, Object> linkMap;
-  private Map<Integer, String> stringAttributes;
+
+  // Attribute keys are positive, link keys are negative
+  private static final int STRING_ATTR = 0x40000000;
+  private static final int[] EMPTY_INTS = new int[0];
+  private static final Object[] EMPTY_OBJECTS = new Object[0];
 
   private static final BiMap<Integer, String> attrStrEqs;
 
@@ -65,6 +75,9 @@ public class JPNode implements AST {
 
   public JPNode(ProToken t) {
     this.token = t;
+    this.attrs = EMPTY_INTS;
+    this.linkKeys = EMPTY_INTS;
+    this.linkValues = EMPTY_OBJECTS;
     setType(t.getType());
   }
 
@@ -537,8 +550,11 @@ public class JPNode implements AST {
   // *****************************
 
   public int attrGet(int key) {
-    if ((attrMap != null) && attrMap.containsKey(key)) {
-      return attrMap.get(key);
+    if ((flags & flagOf(key)) != 0)
+      return IConstants.TRUE;
+    for (int zz = 0; zz < attrs.length; zz += 2) {
+      if (attrs[zz] == key)
+        return attrs[zz + 1];
     }
     switch (key) {
       case IConstants.ABBREVIATED:
@@ -553,10 +569,8 @@ public class JPNode implements AST {
   public String attrGetS(int attrNum) {
     if (attrNum != IConstants.QUALIFIED_CLASS_INT)
       throw new IllegalArgumentException("Invalid value " + attrNum);
-    if ((stringAttributes != null) && stringAttributes.containsKey(attrNum)) {
-      return stringAttributes.get(attrNum);
-    }
-    return "";
+    String str = (String) getLink0(attrNum | STRING_ATTR);
+    return str == null ? "" : str;
   }
 
   public String attrGetS(String attrName) {
@@ -574,15 +588,57 @@ public class JPNode implements AST {
   }
 
   public void attrSet(int key, String value) {
-    if (stringAttributes == null)
-      stringAttributes = new HashMap<>();
-    stringAttributes.put(key, value);
+    setLink0(key | STRING_ATTR, value);
   }
 
   public void attrSet(Integer key, int val) {
-    if (attrMap == null)
-      initAttrMap();
-    attrMap.put(key, val);
+    int flag = flagOf(key);
+    if ((flag != 0) && (val == IConstants.TRUE)) {
+      flags |= flag;
+      removeAttr(key);
+      return;
+    }
+    flags &= ~flag;
+    for (int zz = 0; zz < attrs.length; zz += 2) {
+      if (attrs[zz] == key) {
+        attrs[zz + 1] = val;
+        return;
+      }
+    }
+    int[] newAttrs = Arrays.copyOf(attrs, attrs.length + 2);
+    newAttrs[attrs.length] = key;
+    newAttrs[attrs.length + 1] = val;
+    attrs = newAttrs;
+  }
+
+  private void removeAttr(int key) {
+    for (int zz = 0; zz < attrs.length; zz += 2) {
+      if (attrs[zz] == key) {
+        int[] newAttrs = new int[attrs.length - 2];
+        System.arraycopy(attrs, 0, newAttrs, 0, zz);
+        System.arraycopy(attrs, zz + 2, newAttrs, zz, attrs.length - zz - 2);
+        attrs = newAttrs;
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return Bit used in flags for boolean attributes, 0 if attribute is not stored in flags
+   */
+  private static int flagOf(int key) {
+    switch (key) {
+      case IConstants.OPERATOR:
+        return 1 << AttributeKey.OPERATOR.ordinal();
+      case IConstants.STATEHEAD:
+        return 1 << AttributeKey.STATEHEAD.ordinal();
+      case IConstants.ABBREVIATED:
+        return 1 << AttributeKey.ABBREVIATED.ordinal();
+      case IConstants.INLINE_VAR_DEF:
+        return 1 << AttributeKey.INLINE_VAR_DEF.ordinal();
+      default:
+        return 0;
+    }
   }
 
   public void attrSetS(String key, String value) {
@@ -595,23 +651,35 @@ public class JPNode implements AST {
    * Mark a node as "operator"
    */
   public void setOperator() {
-    attrSet(IConstants.OPERATOR, IConstants.TRUE);
+    flags |= 1 << AttributeKey.OPERATOR.ordinal();
+  }
+
+  public boolean isOperator() {
+    return (flags & (1 << AttributeKey.OPERATOR.ordinal())) != 0;
   }
 
   /**
    * Get a link to an arbitrary object. Integers from -200 through -499 are reserved for Joanju.
    */
   public Object getLink(Integer key) {
-    if (linkMap == null)
-      return null;
-    return linkMap.get(key);
+    return getLink0(key);
+  }
+
+  private Object getLink0(int key) {
+    for (int zz = 0; zz < linkKeys.length; zz++) {
+      if (linkKeys[zz] == key)
+        return linkValues[zz];
+    }
+    return null;
+  }
+
+  private static boolean isStringAttr(int key) {
+    return (key & 0xC0000000) == STRING_ATTR;
   }
 
   /** If this AST was constructed from another, then get the original. */
   public JPNode getOriginal() {
-    if (linkMap == null)
-      return null;
-    return (JPNode) linkMap.get(IConstants.ORIGINAL);
+    return (JPNode) getLink0(IConstants.ORIGINAL);
   }
 
   public int getState2() {
@@ -625,12 +693,12 @@ public class JPNode implements AST {
 
   /** Mark a node as a "statement head" */
   public void setStatementHead() {
-    attrSet(IConstants.STATEHEAD, IConstants.TRUE);
+    flags |= 1 << AttributeKey.STATEHEAD.ordinal();
   }
 
   /** Mark a node as a "statement head" */
   public void setStatementHead(int state2) {
-    attrSet(IConstants.STATEHEAD, IConstants.TRUE);
+    flags |= 1 << AttributeKey.STATEHEAD.ordinal();
     if (state2 != 0)
       attrSet(IConstants.STATE2, state2);
   }
@@ -797,18 +865,6 @@ public class JPNode implements AST {
 
 
 
-  private void initAttrMap() {
-    if (attrMap == null) {
-      attrMap = new HashMap<>();
-    }
-  }
-
-  private void initLinkMap() {
-    if (linkMap == null) {
-      linkMap = new HashMap<>();
-    }
-  }
-
   public boolean isAbbreviated() {
     return token.getNodeType().isAbbreviated(getText());
   }
@@ -829,7 +885,7 @@ public class JPNode implements AST {
 
   /** Does this node have the Proparse STATEHEAD attribute? */
   public boolean isStateHead() {
-    return attrGet(IConstants.STATEHEAD) == IConstants.TRUE;
+    return (flags & (1 << AttributeKey.STATEHEAD.ordinal())) != 0;
   }
 
 
@@ -854,9 +910,21 @@ public class JPNode implements AST {
 
   /** @see #getLink(Integer) */
   public void setLink(Integer key, Object value) {
-    if (linkMap == null)
-      initLinkMap();
-    linkMap.put(key, value);
+    setLink0(key, value);
+  }
+
+  private void setLink0(int key, Object value) {
+    for (int zz = 0; zz < linkKeys.length; zz++) {
+      if (linkKeys[zz] == key) {
+        linkValues[zz] = value;
+        return;
+      }
+    }
+    int len = linkKeys.length;
+    linkKeys = Arrays.copyOf(linkKeys, len + 1);
+    linkValues = Arrays.copyOf(linkValues, len + 1);
+    linkKeys[len] = key;
+    linkValues[len] = value;
   }
 
   /** Assigned by the tree parser. */
@@ -895,7 +963,7 @@ public class JPNode implements AST {
    */
   public int size() {
     int sz = 1;
-    for (JPNode node : getDirectChildren()) {
+    for (JPNode node = down; node != null; node = node.right) {
       sz += node.size();
     }
     return sz;
@@ -906,7 +974,7 @@ public class JPNode implements AST {
    */
   public int naturalSize() {
     int sz = isNatural() ? 1 : 0;
-    for (JPNode node : getDirectChildren()) {
+    for (JPNode node = down; node != null; node = node.right) {
       sz += node.naturalSize();
     }
     return sz;
@@ -932,12 +1000,17 @@ public class JPNode implements AST {
     }
 
     // On attributes
-    if (attrMap != null) {
-      for (Map.Entry<Integer,Integer> entry : attrMap.entrySet()) {
-        if (!entry.getValue().equals(other.attrGet(entry.getKey()))) {
-          System.err.println(CharBuffer.allocate(level).toString().replace('\0', ' ') + " -- AttrMap[" + entry.getKey() + "]: " + entry.getValue() + " -- " + other.attrGet(entry.getKey()));
-          return 7;
-        }
+    for (AttributeKey key : AttributeKey.values()) {
+      int flag = flagOf(key.getKey());
+      if (((flags & flag) != 0) && (other.attrGet(key.getKey()) != IConstants.TRUE)) {
+        System.err.println(CharBuffer.allocate(level).toString().replace('\0', ' ') + " -- AttrMap[" + key.getKey() + "]: " + IConstants.TRUE + " -- " + other.attrGet(key.getKey()));
+        return 7;
+      }
+    }
+    for (int zz = 0; zz < attrs.length; zz += 2) {
+      if (attrs[zz + 1] != other.attrGet(attrs[zz])) {
+        System.err.println(CharBuffer.allocate(level).toString().replace('\0', ' ') + " -- AttrMap[" + attrs[zz] + "]: " + attrs[zz + 1] + " -- " + other.attrGet(attrs[zz]));
+        return 7;
       }
     }
     if (attrMapStrings != null) {
@@ -948,12 +1021,13 @@ public class JPNode implements AST {
         }
       }
     }
-    if (stringAttributes != null) {
-      for (Map.Entry<Integer, String> entry : stringAttributes.entrySet()) {
-        if (!entry.getValue().equals(other.attrGetS(entry.getKey()))) {
-          System.err.println(CharBuffer.allocate(level).toString().replace('\0', ' ') + " -- StringAttributes[" + entry.getKey() + "]: " + entry.getValue() + " -- " + other.attrGetS(entry.getKey()));
-          return 9;
-        }
+    for (int zz = 0; zz < linkKeys.length; zz++) {
+      if (!isStringAttr(linkKeys[zz]))
+        continue;
+      int key = linkKeys[zz] & ~STRING_ATTR;
+      if (!linkValues[zz].equals(other.attrGetS(key))) {
+        System.err.println(CharBuffer.allocate(level).toString().replace('\0', ' ') + " -- StringAttributes[" + key + "]: " + linkValues[zz] + " -- " + other.attrGetS(key));
+        return 9;
       }
     }
 
@@ -1011,20 +1085,11 @@ public class JPNode implements AST {
 
   /**
    * Walk down the tree from the input node
+   * 
+   * @see JPNodeWalker
    */
   public void walk(ICallback<?> callback) {
-    if (attrGet(IConstants.OPERATOR) == IConstants.TRUE) {
-      // Assuming OPERATORs only have two children (which should be the case)
-      getFirstChild().walk(callback);
-      callback.visitNode(this);
-      getFirstChild().getNextSibling().walk(callback);
-    } else {
-      if (callback.visitNode(this)) {
-        for (JPNode child : getDirectChildren()) {
-          child.walk(callback);
-        }
-      }
-    }
+    JPNodeWalker.create().walk(this, callback::visitNode);
   }
 
   public String allLeadingHiddenText() {
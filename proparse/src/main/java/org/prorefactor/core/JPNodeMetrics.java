@@ -14,13 +14,60 @@
  ********************************************************************************/
 package org.prorefactor.core;
 
+import java.util.BitSet;
+
+/**
+ * Line metrics of the main file, computed by the lexer. Each line is classified as {@link LineType#PREPROCESSOR} if it
+ * contains a preprocessor directive, then as {@link LineType#CODE} if it contains any other token, then as
+ * {@link LineType#COMMENT} if it contains a comment, and finally as {@link LineType#BLANK}.
+ */
 public class JPNodeMetrics {
+  private static final BitSet EMPTY = new BitSet();
+
   private final int loc;
   private final int comments;
 
+  private final int numLines;
+  private final BitSet codeLines;
+  private final BitSet commentLines;
+  private final BitSet preproLines;
+  // Number of lines of each type, indexed by ordinal
+  private final int[] counts = new int[LineType.values().length];
+
+  public enum LineType {
+    BLANK, CODE, COMMENT, PREPROCESSOR;
+  }
+
+  /**
+   * Line types are not available with this constructor, all lines are reported as blank
+   */
   public JPNodeMetrics(int loc, int comments) {
     this.loc = loc;
     this.comments = comments;
+    this.numLines = 0;
+    this.codeLines = EMPTY;
+    this.commentLines = EMPTY;
+    this.preproLines = EMPTY;
+  }
+
+  /**
+   * @param loc Number of lines where a token which is not a comment starts
+   * @param codeLines Lines containing at least part of a token which is not a comment (including preprocessor
+   *          directives and multi-line strings)
+   * @param commentLines Lines containing at least part of a comment
+   * @param preproLines Lines containing at least part of a preprocessor directive
+   * @param numLines Number of lines in the file, last line being empty if file ends with a newline
+   */
+  public JPNodeMetrics(int loc, BitSet codeLines, BitSet commentLines, BitSet preproLines, int numLines) {
+    this.loc = loc;
+    this.comments = commentLines.cardinality();
+    this.numLines = numLines;
+    this.codeLines = (BitSet) codeLines.clone();
+    this.commentLines = (BitSet) commentLines.clone();
+    this.preproLines = (BitSet) preproLines.clone();
+    for (int line = 1; line <= numLines; line++) {
+      counts[getLineType(line).ordinal()]++;
+    }
   }
 
   public int getLoc() {
@@ -30,4 +77,32 @@ public class JPNodeMetrics {
   public int getComments() {
     return comments;
   }
-}
\ No newline at end of file
+
+  /**
+   * @return Number of lines in the file (same value as InputFile#lines() in SonarQube, i.e. number of line breaks plus
+   *         one), or zero if line types are not available
+   */
+  public int getNumLines() {
+    return numLines;
+  }
+
+  /**
+   * @param line Line number, starting at 1
+   */
+  public LineType getLineType(int line) {
+    if (preproLines.get(line))
+      return LineType.PREPROCESSOR;
+    if (codeLines.get(line))
+      return LineType.CODE;
+    if (commentLines.get(line))
+      return LineType.COMMENT;
+    return LineType.BLANK;
+  }
+
+  /**
+   * @return Number of lines classified with this type
+   */
+  public int getLines(LineType type) {
+    return counts[type.ordinal()];
+  }
+}
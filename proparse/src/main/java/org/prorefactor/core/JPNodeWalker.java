@@ -0,0 +1,111 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Iterative depth-first traversal of a JPNode tree. Nodes are visited in the same order as the recursive version of
+ * {@link JPNode#walk(ICallback)} : OPERATOR nodes are visited between their two operands, and children of other nodes
+ * are skipped when visitor returns false. Generic over the node type, so that the same walker is used for
+ * {@link JPNode} and {@link org.prorefactor.proparse.antlr4.JPNode} trees.
+ *
+ * Pending nodes are kept in an explicit stack, which is reused between calls, so that no object is allocated per
+ * visited node and deeply nested trees don't overflow the call stack. Parent links are not used, so the tree doesn't
+ * have to be back-linked. Instances are neither thread-safe nor reentrant.
+ */
+public class JPNodeWalker<N> {
+  // Visit node, then its children
+  private static final byte ENTER = 0;
+  // Same as ENTER, then next sibling
+  private static final byte ENTER_SIBLINGS = 1;
+  // Only visit node (OPERATOR node, after first operand)
+  private static final byte VISIT = 2;
+
+  private final UnaryOperator<N> firstChild;
+  private final UnaryOperator<N> nextSibling;
+  private final Predicate<N> isOperator;
+
+  private Object[] nodes = new Object[32];
+  private byte[] actions = new byte[32];
+  private int size;
+
+  public JPNodeWalker(UnaryOperator<N> firstChild, UnaryOperator<N> nextSibling, Predicate<N> isOperator) {
+    this.firstChild = firstChild;
+    this.nextSibling = nextSibling;
+    this.isOperator = isOperator;
+  }
+
+  /**
+   * @return Walker of {@link JPNode} trees
+   */
+  public static JPNodeWalker<JPNode> create() {
+    return new JPNodeWalker<>(JPNode::getFirstChild, JPNode::getNextSibling, JPNode::isOperator);
+  }
+
+  /**
+   * Walk down the tree from the input node. Siblings of the input node are not visited.
+   * 
+   * @param visitor Returns false if children of the node have to be skipped
+   */
+  @SuppressWarnings("unchecked")
+  public void walk(N root, Predicate<? super N> visitor) {
+    size = 0;
+    push(root, ENTER);
+    try {
+      while (size > 0) {
+        size--;
+        N node = (N) nodes[size];
+        byte action = actions[size];
+        nodes[size] = null;
+        if (action == VISIT) {
+          visitor.test(node);
+          continue;
+        }
+        N sibling = nextSibling.apply(node);
+        if ((action == ENTER_SIBLINGS) && (sibling != null)) {
+          push(sibling, ENTER_SIBLINGS);
+        }
+        if (isOperator.test(node)) {
+          // Assuming OPERATORs only have two children (which should be the case)
+          N first = firstChild.apply(node);
+          N second = nextSibling.apply(first);
+          if (second != null)
+            push(second, ENTER);
+          push(node, VISIT);
+          push(first, ENTER);
+        } else if (visitor.test(node) && (firstChild.apply(node) != null)) {
+          push(firstChild.apply(node), ENTER_SIBLINGS);
+        }
+      }
+    } finally {
+      // Don't keep references to the tree if callback failed
+      Arrays.fill(nodes, 0, size, null);
+      size = 0;
+    }
+  }
+
+  private void push(N node, byte action) {
+    if (size == nodes.length) {
+      nodes = Arrays.copyOf(nodes, size * 2);
+      actions = Arrays.copyOf(actions, size * 2);
+    }
+    nodes[size] = node;
+    actions[size] = action;
+    size++;
+  }
+}
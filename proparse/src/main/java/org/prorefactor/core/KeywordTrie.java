@@ -0,0 +1,120 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core;
+
+import java.util.Arrays;
+
+/**
+ * Case-insensitive prefix tree of keywords and their abbreviations. Children of each node are stored in a dense table
+ * indexed by character (keywords only use ASCII letters, digits, hyphens and underscores), so that a lookup is one
+ * array access per character, directly on the lexer's buffer, without creating any string. Read-only once built, so it
+ * can be shared between threads.
+ */
+final class KeywordTrie {
+  private static final int NO_CHILD = 0;
+  // Position of each character in children table, -1 if character can't be part of a keyword
+  private static final byte[] CHAR_INDEX = new byte[128];
+  private static final int NUM_CHARS;
+
+  static {
+    Arrays.fill(CHAR_INDEX, (byte) -1);
+    byte idx = 0;
+    for (char ch = 'a'; ch <= 'z'; ch++) {
+      CHAR_INDEX[ch] = idx;
+      CHAR_INDEX[Character.toUpperCase(ch)] = idx++;
+    }
+    for (char ch = '0'; ch <= '9'; ch++) {
+      CHAR_INDEX[ch] = idx++;
+    }
+    CHAR_INDEX['-'] = idx++;
+    CHAR_INDEX['_'] = idx++;
+    NUM_CHARS = idx;
+  }
+
+  // Children of node N are in children[N * NUM_CHARS .. (N + 1) * NUM_CHARS[, root node is 0
+  private int[] children = new int[1024 * NUM_CHARS];
+  private ABLNodeType[] values = new ABLNodeType[1024];
+  private int numNodes = 1;
+  private int maxLength;
+
+  /**
+   * Add node type for keyword and all its abbreviations
+   * 
+   * @param keyword Full keyword
+   * @param minLength Shortest abbreviation
+   * @throws IllegalStateException If keyword or abbreviation is already used by another node type, or if keyword
+   *           contains invalid characters
+   */
+  void add(String keyword, int minLength, ABLNodeType type) {
+    int node = 0;
+    for (int zz = 0; zz < keyword.length(); zz++) {
+      int idx = charIndex(keyword.charAt(zz));
+      if (idx < 0)
+        throw new IllegalStateException("Invalid character in keyword " + keyword);
+      int pos = node * NUM_CHARS + idx;
+      if (children[pos] == NO_CHILD) {
+        // Children array may be reallocated by newNode()
+        int child = newNode();
+        children[pos] = child;
+      }
+      node = children[pos];
+      if (zz + 1 >= minLength) {
+        if (values[node] != null)
+          throw new IllegalStateException("Duplicate keyword " + keyword.substring(0, zz + 1));
+        values[node] = type;
+      }
+    }
+    maxLength = Math.max(maxLength, keyword.length());
+  }
+
+  /**
+   * Trim internal arrays, once all keywords have been added
+   */
+  void compact() {
+    children = Arrays.copyOf(children, numNodes * NUM_CHARS);
+    values = Arrays.copyOf(values, numNodes);
+  }
+
+  /**
+   * @return Node type matching this keyword or abbreviation, or null
+   */
+  ABLNodeType get(CharSequence text) {
+    int len = text.length();
+    if ((len == 0) || (len > maxLength))
+      return null;
+    int node = 0;
+    for (int zz = 0; zz < len; zz++) {
+      int idx = charIndex(text.charAt(zz));
+      if (idx < 0)
+        return null;
+      node = children[node * NUM_CHARS + idx];
+      if (node == NO_CHILD)
+        return null;
+    }
+    return values[node];
+  }
+
+  private static int charIndex(char ch) {
+    return ch < 128 ? CHAR_INDEX[ch] : -1;
+  }
+
+  private int newNode() {
+    if (numNodes == values.length) {
+      values = Arrays.copyOf(values, numNodes * 2);
+      children = Arrays.copyOf(children, numNodes * 2 * NUM_CHARS);
+    }
+    return numNodes++;
+  }
+}
@@ -0,0 +1,161 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Index of all nodes of a tree by node type, built with one single traversal. Nodes are kept in the same order as
+ * {@link JPNode#walk(ICallback)}, so that results of {@link #query(Collection)} are identical to
+ * {@link JPNode#query(ABLNodeType, ABLNodeType...)} on the root node. Tree must not be modified once index is built.
+ */
+public class NodeTypeIndex {
+  private static final int[] EMPTY = new int[0];
+
+  // All nodes, in walk order
+  private final JPNode[] nodes;
+  // For each ABLNodeType ordinal, position of nodes of this type in the nodes array
+  private final int[][] positions;
+
+  public NodeTypeIndex(JPNode root) {
+    NodeCollector collector = new NodeCollector();
+    JPNodeWalker.create().walk(root, collector::visitNode);
+    nodes = collector.getResult().toArray(new JPNode[collector.getResult().size()]);
+
+    int numTypes = ABLNodeType.values().length;
+    int[] counts = new int[numTypes];
+    for (JPNode node : nodes) {
+      counts[node.getNodeType().ordinal()]++;
+    }
+    positions = new int[numTypes][];
+    for (int zz = 0; zz < numTypes; zz++) {
+      positions[zz] = counts[zz] == 0 ? EMPTY : new int[counts[zz]];
+      counts[zz] = 0;
+    }
+    for (int zz = 0; zz < nodes.length; zz++) {
+      int ord = nodes[zz].getNodeType().ordinal();
+      positions[ord][counts[ord]++] = zz;
+    }
+  }
+
+  /**
+   * @return Total number of nodes
+   */
+  public int size() {
+    return nodes.length;
+  }
+
+  /**
+   * @return Read-only list of all nodes, in walk order
+   */
+  public List<JPNode> getNodes() {
+    return Collections.unmodifiableList(Arrays.asList(nodes));
+  }
+
+  /**
+   * @return Number of nodes of this type
+   */
+  public int count(ABLNodeType type) {
+    return positions[type.ordinal()].length;
+  }
+
+  public List<JPNode> query(ABLNodeType type, ABLNodeType... types) {
+    return query(asList(type, types), false, false);
+  }
+
+  public List<JPNode> query(Collection<ABLNodeType> types) {
+    return query(types, false, false);
+  }
+
+  public List<JPNode> queryMainFile(ABLNodeType type, ABLNodeType... types) {
+    return query(asList(type, types), true, false);
+  }
+
+  public List<JPNode> queryStateHead(ABLNodeType type, ABLNodeType... types) {
+    return query(asList(type, types), false, true);
+  }
+
+  /**
+   * @return All statement head nodes
+   */
+  public List<JPNode> queryStateHead() {
+    List<JPNode> list = new ArrayList<>();
+    for (JPNode node : nodes) {
+      if (node.isStateHead())
+        list.add(node);
+    }
+    return list;
+  }
+
+  private List<JPNode> query(Collection<ABLNodeType> types, boolean mainFileOnly, boolean stateHeadOnly) {
+    int[] pos;
+    if (types.size() == 1) {
+      pos = positions[types.iterator().next().ordinal()];
+    } else {
+      // Merge positions, so that walk order is kept
+      int total = 0;
+      for (ABLNodeType type : types) {
+        total += positions[type.ordinal()].length;
+      }
+      pos = new int[total];
+      int offset = 0;
+      for (ABLNodeType type : types) {
+        int[] src = positions[type.ordinal()];
+        System.arraycopy(src, 0, pos, offset, src.length);
+        offset += src.length;
+      }
+      Arrays.sort(pos);
+    }
+
+    List<JPNode> list = new ArrayList<>(pos.length);
+    for (int idx : pos) {
+      JPNode node = nodes[idx];
+      if ((!mainFileOnly || (node.getFileIndex() == 0)) && (!stateHeadOnly || node.isStateHead()))
+        list.add(node);
+    }
+    return list;
+  }
+
+  private static Collection<ABLNodeType> asList(ABLNodeType type, ABLNodeType... types) {
+    if (types.length == 0)
+      return Collections.singletonList(type);
+    List<ABLNodeType> list = new ArrayList<>(types.length + 1);
+    list.add(type);
+    for (ABLNodeType t : types) {
+      if (!list.contains(t))
+        list.add(t);
+    }
+    return list;
+  }
+
+  private static class NodeCollector implements ICallback<List<JPNode>> {
+    private final List<JPNode> list = new ArrayList<>();
+
+    @Override
+    public List<JPNode> getResult() {
+      return list;
+    }
+
+    @Override
+    public boolean visitNode(JPNode node) {
+      list.add(node);
+      return true;
+    }
+  }
+}
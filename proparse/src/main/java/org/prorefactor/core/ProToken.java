@@ -30,14 +30,15 @@ public class ProToken extends CommonHiddenStreamToken implements Serializable {
 
   private ABLNodeType nodeType;
   private final boolean synthetic;
-  private final int fileIndex;
-  private final String fileName;
-  private final int macroSourceNum;
-  private final int endFile;
-  private final int endLine;
-  private final int endColumn;
-  private final String analyzeSuspend;
-  private final boolean macroExpansion;
+  // Other fields can be updated by the lexer, until the token is sent to the parser
+  private int fileIndex;
+  private String fileName;
+  private int macroSourceNum;
+  private int endFile;
+  private int endLine;
+  private int endColumn;
+  private String analyzeSuspend;
+  private boolean macroExpansion;
 
   public ProToken(ABLNodeType type, String txt) {
     this(type, txt, 0, "", 0, 0, 0, 0, 0, 0, "", true, false);
@@ -78,19 +79,38 @@ public class ProToken extends CommonHiddenStreamToken implements Serializable {
     return nodeType;
   }
 
+  public void setNodeType(ABLNodeType type) {
+    if (type == null)
+      throw new IllegalArgumentException("Invalid type number " + type);
+    this.nodeType = type;
+  }
+
   public int getFileIndex() {
     return fileIndex;
   }
 
+  public void setFileIndex(int fileIndex) {
+    this.fileIndex = fileIndex;
+  }
+
   public int getMacroSourceNum() {
     return macroSourceNum;
   }
 
+  public void setMacroSourceNum(int macroSourceNum) {
+    this.macroSourceNum = macroSourceNum;
+  }
+
   @Override
   public String getFilename() {
     return fileName;
   }
 
+  @Override
+  public void setFilename(String fileName) {
+    this.fileName = fileName;
+  }
+
   /**
    * Convenience method for (ProToken) getHiddenAfter()
    */
@@ -122,6 +142,10 @@ public class ProToken extends CommonHiddenStreamToken implements Serializable {
     return endLine;
   }
 
+  public void setEndLine(int endLine) {
+    this.endLine = endLine;
+  }
+
   /**
    * @return Ending column of token. Not guaranteed to be greater than start column, as some tokens may include the
    *         newline character
@@ -130,6 +154,10 @@ public class ProToken extends CommonHiddenStreamToken implements Serializable {
     return endColumn;
   }
 
+  public void setEndColumn(int endColumn) {
+    this.endColumn = endColumn;
+  }
+
   /**
    * @return File number of end of token. Not guaranteed to be identical to file index, as a token can be spread over
    *         two different files, thanks to the magic of the preprocessor
@@ -138,6 +166,10 @@ public class ProToken extends CommonHiddenStreamToken implements Serializable {
     return endFile;
   }
 
+  public void setEndFileIndex(int endFile) {
+    this.endFile = endFile;
+  }
+
   /**
    * @return Comma-separated list of &amp;ANALYZE-SUSPEND options. Null for code not managed by AppBuilder.
    */
@@ -145,6 +177,10 @@ public class ProToken extends CommonHiddenStreamToken implements Serializable {
     return analyzeSuspend;
   }
 
+  public void setAnalyzeSuspend(String analyzeSuspend) {
+    this.analyzeSuspend = analyzeSuspend;
+  }
+
   /**
    * @see org.prorefactor.proparse.antlr4.ProToken#isMacroExpansion()
    */
@@ -152,6 +188,10 @@ public class ProToken extends CommonHiddenStreamToken implements Serializable {
     return macroExpansion;
   }
 
+  public void setMacroExpansion(boolean macroExpansion) {
+    this.macroExpansion = macroExpansion;
+  }
+
   /**
    * @return True if token is part of an editable section in AppBuilder managed code
    */
@@ -0,0 +1,101 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core;
+
+import java.util.Arrays;
+
+/**
+ * Type and position of all tokens of the main file, as generated by the lexer. Tokens from include files and from
+ * preprocessor expansions are skipped, and include references are kept as {@link ABLNodeType#INCLUDEDIRECTIVE}. Kept in
+ * one single int array, so that syntax highlighting can be computed without lexing the file again. When the
+ * preprocessor is used, tokens are not necessarily stored in source order.
+ */
+public class TokenCapture {
+  private static final ABLNodeType[] TYPES = ABLNodeType.values();
+  // Type ordinal, line, column, end line, end column
+  private static final int FIELDS = 5;
+
+  private int[] data = new int[FIELDS * 256];
+  private int size;
+  private JPNodeMetrics metrics;
+
+  public void add(ProToken tok) {
+    if ((tok.getFileIndex() != 0) || tok.isMacroExpansion() || (tok.getNodeType() == ABLNodeType.EOF_ANTLR4))
+      return;
+    add(tok.getNodeType(), tok.getLine(), tok.getColumn(), tok.getEndLine(), tok.getEndColumn());
+  }
+
+  public void add(ABLNodeType type, int line, int column, int endLine, int endColumn) {
+    if (data.length < (size + 1) * FIELDS)
+      data = Arrays.copyOf(data, data.length * 2);
+    int offset = size * FIELDS;
+    data[offset] = type.ordinal();
+    data[offset + 1] = line;
+    data[offset + 2] = column;
+    data[offset + 3] = endLine;
+    data[offset + 4] = endColumn;
+    size++;
+  }
+
+  public void setMetrics(JPNodeMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * @return LOC and comment lines, computed by the lexer
+   */
+  public JPNodeMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * @return Number of tokens
+   */
+  public int size() {
+    return size;
+  }
+
+  public ABLNodeType getNodeType(int index) {
+    return TYPES[data[checkIndex(index) * FIELDS]];
+  }
+
+  public int getLine(int index) {
+    return data[checkIndex(index) * FIELDS + 1];
+  }
+
+  /**
+   * @return Column of first character, starting at 1
+   */
+  public int getColumn(int index) {
+    return data[checkIndex(index) * FIELDS + 2];
+  }
+
+  public int getEndLine(int index) {
+    return data[checkIndex(index) * FIELDS + 3];
+  }
+
+  /**
+   * @return Column of last character, starting at 1
+   */
+  public int getEndColumn(int index) {
+    return data[checkIndex(index) * FIELDS + 4];
+  }
+
+  private int checkIndex(int index) {
+    if ((index < 0) || (index >= size))
+      throw new IndexOutOfBoundsException("Index " + index + " - Size " + size);
+    return index;
+  }
+}
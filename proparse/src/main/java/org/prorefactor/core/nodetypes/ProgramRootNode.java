@@ -15,13 +15,51 @@
  ********************************************************************************/
 package org.prorefactor.core.nodetypes;
 
+import java.util.List;
+
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.JPNode;
+import org.prorefactor.core.NodeTypeIndex;
 import org.prorefactor.core.ProToken;
 
 public class ProgramRootNode extends BlockNode {
+  private NodeTypeIndex nodeTypeIndex;
+
   public ProgramRootNode(ProToken t) {
     super(t);
   }
 
+  /**
+   * Index of all nodes by type, built on first call. Once built, queries on this node are answered by the index. Only
+   * to be called when the tree won't be modified anymore.
+   */
+  public NodeTypeIndex getNodeTypeIndex() {
+    if (nodeTypeIndex == null)
+      nodeTypeIndex = new NodeTypeIndex(this);
+    return nodeTypeIndex;
+  }
+
+  @Override
+  public List<JPNode> query(ABLNodeType type, ABLNodeType... findTypes) {
+    if (nodeTypeIndex == null)
+      return super.query(type, findTypes);
+    return nodeTypeIndex.query(type, findTypes);
+  }
+
+  @Override
+  public List<JPNode> queryMainFile(ABLNodeType type, ABLNodeType... findTypes) {
+    if (nodeTypeIndex == null)
+      return super.queryMainFile(type, findTypes);
+    return nodeTypeIndex.queryMainFile(type, findTypes);
+  }
+
+  @Override
+  public List<JPNode> queryStateHead(ABLNodeType type, ABLNodeType... findTypes) {
+    if (nodeTypeIndex == null)
+      return super.queryStateHead(type, findTypes);
+    return nodeTypeIndex.queryStateHead(type, findTypes);
+  }
+
   /**
    * Call after tree has been created, in order to deal with tree traversing and trailing nodes
    */
@@ -0,0 +1,111 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core.schema;
+
+import java.util.Arrays;
+
+/**
+ * Case-insensitive prefix tree of names. Each node keeps the first value added with a name starting with this prefix,
+ * and the number of values added with such a name, so that ABL abbreviations are resolved (and tested for uniqueness)
+ * in a single walk down the tree. Values have to be added in the expected lookup order. Read-only once built, so it can
+ * be shared between threads.
+ */
+class NameTrie<T> {
+  private final Node<T> root = new Node<>();
+
+  /**
+   * Add value for name and all of its prefixes
+   */
+  void add(String name, T value) {
+    Node<T> node = root;
+    node.visit(value);
+    for (int zz = 0; zz < name.length(); zz++) {
+      node = node.getOrCreateChild(Character.toLowerCase(name.charAt(zz)));
+      node.visit(value);
+    }
+  }
+
+  /**
+   * @return Node for this name or prefix, null if no value was added with such a name
+   */
+  Node<T> find(String prefix) {
+    Node<T> node = root;
+    for (int zz = 0; (zz < prefix.length()) && (node != null); zz++) {
+      node = node.getChild(Character.toLowerCase(prefix.charAt(zz)));
+    }
+    return node;
+  }
+
+  /**
+   * @return First value added with a name starting with this prefix, or null
+   */
+  T getFirst(String prefix) {
+    Node<T> node = find(prefix);
+    return node == null ? null : node.getFirst();
+  }
+
+  static class Node<T> {
+    private static final char[] NO_KEYS = new char[0];
+
+    // Sorted keys of children
+    private char[] keys = NO_KEYS;
+    private Node<T>[] children;
+    private int size;
+    private T first;
+    private int count;
+
+    T getFirst() {
+      return first;
+    }
+
+    /**
+     * @return Number of values added with a name starting with this prefix
+     */
+    int getCount() {
+      return count;
+    }
+
+    private void visit(T value) {
+      if (first == null)
+        first = value;
+      count++;
+    }
+
+    private Node<T> getChild(char ch) {
+      int pos = Arrays.binarySearch(keys, 0, size, ch);
+      return pos < 0 ? null : children[pos];
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<T> getOrCreateChild(char ch) {
+      int pos = Arrays.binarySearch(keys, 0, size, ch);
+      if (pos >= 0)
+        return children[pos];
+      pos = -pos - 1;
+      if (size == keys.length) {
+        int newSize = size == 0 ? 2 : size * 2;
+        keys = Arrays.copyOf(keys, newSize);
+        children = children == null ? new Node[newSize] : Arrays.copyOf(children, newSize);
+      }
+      System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+      System.arraycopy(children, pos, children, pos + 1, size - pos);
+      Node<T> node = new Node<>();
+      keys[pos] = ch;
+      children[pos] = node;
+      size++;
+      return node;
+    }
+  }
+}
@@ -20,8 +20,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -59,6 +61,8 @@ public class Schema implements ISchema {
   private final Map<String, String> aliases = new HashMap<>();
   private final SortedSet<IDatabase> dbSet = new TreeSet<>(Constants.DB_NAME_ORDER);
   private final SortedSet<ITable> allTables = new TreeSet<>(ALLTABLES_ORDER);
+  // Lookup structures, rebuilt each time tables are loaded
+  private volatile SchemaIndex index;
 
   public Schema(String file) throws IOException {
     this(file, false);
@@ -68,6 +72,8 @@ public class Schema implements ISchema {
     loadSchema(file);
     if (injectMetaSchema) {
       injectMetaSchema();
+    } else {
+      index = new SchemaIndex(dbSet, allTables);
     }
   }
 
@@ -131,6 +137,7 @@ public class Schema implements ISchema {
         LOGGER.error("Unable to open file 'meta.txt'", caught);
       }
     }
+    index = new SchemaIndex(dbSet, allTables);
   }
 
   private final void loadSchema(File file) throws IOException {
@@ -176,7 +183,7 @@ public class Schema implements ISchema {
         return firstTry;
       return lookupMetaTable(inName);
     }
-    return lookupTableCheckName(allTables.tailSet(new Table(inName)), inName);
+    return lookupTableCheckName(index.tables, index.exactTables, inName);
   }
 
   @Override
@@ -184,51 +191,45 @@ public class Schema implements ISchema {
     IDatabase db = lookupDatabase(dbName);
     if (db == null)
       return null;
-    return lookupTableCheckName(db.getTableSet().tailSet(new Table(tableName)), tableName);
+    return lookupTableCheckName(db, tableName);
   }
 
   @Override
   public IField lookupUnqualifiedField(String name) {
-    IField field;
-    for (ITable table : allTables) {
-      field = table.lookupField(name);
-      if (field != null)
-        return field;
-    }
-    return null;
+    // First table (in allTables order) with a field starting with this name
+    ITable table = index.fields.getFirst(name);
+    return table == null ? null : table.lookupField(name);
   }
 
   /**
    * Lookup Database by name. Called twice by lookupDatabase().
    */
   private IDatabase lookupDatabase2(String inName) {
-    SortedSet<IDatabase> dbTailSet = dbSet.tailSet(new Database(inName));
-    if (dbTailSet.isEmpty())
-      return null;
-    IDatabase db = dbTailSet.first();
-    if (db == null || db.getName().compareToIgnoreCase(inName) != 0)
-      return null;
-    return db;
+    return index.databases.get(inName.toLowerCase(Locale.ENGLISH));
+  }
+
+  private ITable lookupTableCheckName(IDatabase db, String name) {
+    NameTrie<ITable> trie = index.dbTables.get(db);
+    return trie == null ? null : lookupTableCheckName(trie, null, name);
   }
 
   // It turns out that we *do* have to test for uniqueness - we can't just leave
   // that job to the compiler. That's because when looking up schema names for
   // a DEF..LIKE x, if x is non-unique in schema, then we move on to temp/work/buffer names.
-  private ITable lookupTableCheckName(SortedSet<ITable> set, String name) {
-    String lname = name.toLowerCase();
-    Iterator<ITable> it = set.iterator();
-    if (!it.hasNext())
-      return null;
-    ITable table = it.next();
-    // test that we got a match
-    if (!table.getName().toLowerCase().startsWith(lname))
+  private static ITable lookupTableCheckName(NameTrie<ITable> trie, Map<String, ITable> exactNames, String name) {
+    // Exact match always wins, even if there are longer names with the same prefix
+    if (exactNames != null) {
+      ITable table = exactNames.get(name.toLowerCase(Locale.ENGLISH));
+      if (table != null)
+        return table;
+    }
+    NameTrie.Node<ITable> node = trie.find(name);
+    if ((node == null) || (node.getFirst() == null))
       return null;
+    ITable table = node.getFirst();
     // test that we got a unique match
-    if (lname.length() < table.getName().length() && it.hasNext()) {
-      ITable next = it.next();
-      if (next.getName().toLowerCase().startsWith(lname))
-        return null;
-    }
+    if ((name.length() < table.getName().length()) && (node.getCount() > 1))
+      return null;
     return table;
   }
 
@@ -254,7 +255,45 @@ public class Schema implements ISchema {
     if ((db == null) || (parts[1] == null) || (!parts[1].startsWith("_"))) {
       return null;
     }
-    return lookupTableCheckName(db.getTableSet().tailSet(new Table(parts[1])), parts[1]);
+    return lookupTableCheckName(db, parts[1]);
+  }
+
+  /**
+   * Read-only lookup structures, built once all tables are loaded
+   */
+  private static class SchemaIndex {
+    // Lowercase database name to database
+    private final Map<String, IDatabase> databases = new HashMap<>();
+    // Lowercase table name to first table with this name (in allTables order)
+    private final Map<String, ITable> exactTables = new HashMap<>();
+    // Abbreviations of all table names
+    private final NameTrie<ITable> tables;
+    // Abbreviations of table names, per database
+    private final Map<IDatabase, NameTrie<ITable>> dbTables = new IdentityHashMap<>();
+    // Abbreviations of all field names, to first table containing such a field
+    private final NameTrie<ITable> fields = new NameTrie<>();
+
+    SchemaIndex(Collection<IDatabase> dbSet, Collection<ITable> allTables) {
+      for (IDatabase db : dbSet) {
+        databases.put(db.getName().toLowerCase(Locale.ENGLISH), db);
+        dbTables.put(db, createTableTrie(db.getTableSet()));
+      }
+      tables = createTableTrie(allTables);
+      for (ITable table : allTables) {
+        exactTables.putIfAbsent(table.getName().toLowerCase(Locale.ENGLISH), table);
+        for (IField field : table.getFieldPosOrder()) {
+          fields.add(field.getName(), table);
+        }
+      }
+    }
+
+    static NameTrie<ITable> createTableTrie(Collection<ITable> tables) {
+      NameTrie<ITable> trie = new NameTrie<>();
+      for (ITable table : tables) {
+        trie.add(table.getName(), table);
+      }
+      return trie;
+    }
   }
 
   private class SchemaLineProcessor implements LineProcessor<Void> {
@@ -23,7 +23,6 @@ import java.util.Map;
 
 import org.antlr.v4.runtime.RuleContext;
 import org.antlr.v4.runtime.tree.ParseTreeProperty;
-import org.antlr.v4.runtime.tree.RuleNode;
 import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.IConstants;
 import org.prorefactor.core.JPNode;
@@ -69,7 +68,6 @@ public class ParserSupport {
   private String lastFieldIDStr;
 
   private ParseTreeProperty<FieldType> recordExpressions = new ParseTreeProperty<>();
-  private ParseTreeProperty<org.prorefactor.proparse.antlr4.JPNode> nodes = new ParseTreeProperty<>();
 
   // TEMP-ANTLR4
   private List<SymbolScope> innerScopes = new ArrayList<>();
@@ -302,10 +300,6 @@ public class ParserSupport {
     return (schemaTablePriority ? isTableSchemaFirst(recname.toLowerCase()) : isTable(recname.toLowerCase())) != null;
   }
 
-  public void pushNode(RuleNode ctx, org.prorefactor.proparse.antlr4.JPNode node) {
-    nodes.put(ctx, node);
-  }
-
   public void pushRecordExpression(RuleContext ctx, String recName) {
     recordExpressions.put(ctx, schemaTablePriority ? currentScope.isTableSchemaFirst(recName.toLowerCase())
         : currentScope.isTable(recName.toLowerCase()));
@@ -315,6 +309,15 @@ public class ParserSupport {
     return recordExpressions.get(ctx);
   }
 
+  /**
+   * Drop all references to ANTLR4 parse tree nodes. To be called once JPNode tree has been generated, as the parse tree
+   * can't be garbage collected as long as those maps are alive.
+   */
+  public void releaseParseTree() {
+    recordExpressions = new ParseTreeProperty<>();
+    innerScopesMap = new HashMap<>();
+  }
+
   public FieldType isTable(String inName) {
     return currentScope.isTable(inName);
   }
@@ -22,6 +22,7 @@ import java.util.Set;
 
 import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.refactor.RefactorSession;
+import org.prorefactor.refactor.ResolvedTypeInfo;
 
 import eu.rssw.pct.elements.ITypeInfo;
 
@@ -53,15 +54,8 @@ public class RootSymbolScope extends SymbolScope {
       return true;
 
     // Then look through rcode
-    ITypeInfo info = typeInfo;
-    while (info != null) {
-      if (info.hasProperty(name)) {
-        return true;
-      }
-      info = getSession().getTypeInfo(info.getParentTypeName());
-    }
-
-    return false;
+    ResolvedTypeInfo info = getSession().getResolvedTypeInfo(typeInfo);
+    return (info != null) && info.hasProperty(name);
   }
 
   @Override
@@ -73,12 +67,9 @@ public class RootSymbolScope extends SymbolScope {
     }
 
     // Then look through rcode
-    ITypeInfo info = typeInfo;
-    while (info != null) {
-      if (info.hasBuffer(inName)) {
-        return FieldType.TTABLE;
-      }
-      info = getSession().getTypeInfo(info.getParentTypeName());
+    ResolvedTypeInfo info = getSession().getResolvedTypeInfo(typeInfo);
+    if ((info != null) && info.hasBuffer(inName)) {
+      return FieldType.TTABLE;
     }
 
     return null;
@@ -93,12 +84,9 @@ public class RootSymbolScope extends SymbolScope {
     String lname = name.toLowerCase();
     // Methods take precedent over built-in functions. The compiler (10.2b)
     // does not seem to try recognize by function/method signature.
-    ITypeInfo info = typeInfo;
-    while (info != null) {
-      if (info.hasMethod(name)) {
-        return ABLNodeType.LOCAL_METHOD_REF.getType();
-      }
-      info = getSession().getTypeInfo(info.getParentTypeName());
+    ResolvedTypeInfo info = getSession().getResolvedTypeInfo(typeInfo);
+    if ((info != null) && info.hasMethod(name)) {
+      return ABLNodeType.LOCAL_METHOD_REF.getType();
     }
 
     if (functionSet.contains(lname))
@@ -23,6 +23,7 @@ import java.nio.charset.Charset;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 
+import org.prorefactor.refactor.IncludeFileCache.IncludeFileContent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -113,6 +114,26 @@ public class InputSource {
       currPos++;
   }
 
+  public InputSource(int sourceNum, String fileName, IncludeFileContent content, int fileIndex, boolean skipXCode,
+      boolean isPrimary) throws XCodedFileException {
+    LOGGER.trace("New InputSource object for cached file '{}'", fileName);
+    this.sourceNum = sourceNum;
+    this.primaryInput = isPrimary;
+    this.fileIndex = fileIndex;
+    this.macroExpansion = false;
+    if (content.isXCoded()) {
+      if (skipXCode)
+        this.fileContent = " ";
+      else
+        throw new XCodedFileException(fileName);
+    } else {
+      this.fileContent = content.getContent();
+    }
+    // Skip first character if it's a BOM
+    if (!fileContent.isEmpty() && fileContent.charAt(0) == 0xFEFF)
+      currPos++;
+  }
+
   public int get() {
     // We use nextLine and nextCol - that way '\n' can have a column number at the end of the line it's on, rather than
     // at column 0 of the following line.
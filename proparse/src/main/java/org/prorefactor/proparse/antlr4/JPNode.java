@@ -14,18 +14,19 @@
  ********************************************************************************/
 package org.prorefactor.proparse.antlr4;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
-import org.antlr.v4.runtime.tree.RuleNode;
 import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.AttributeKey;
 import org.prorefactor.core.AttributeValue;
 import org.prorefactor.core.IConstants;
-import org.prorefactor.proparse.ParserSupport;
 import org.prorefactor.proparse.SymbolScope.FieldType;
 import org.prorefactor.proparse.antlr4.nodetypes.BlockNode;
 import org.prorefactor.proparse.antlr4.nodetypes.FieldRefNode;
@@ -48,10 +49,19 @@ public class JPNode implements AST {
   private JPNode left;
   private JPNode up;
 
-  private Map<Integer, Integer> attrMap;
+  // Boolean attributes set to TRUE, one bit per AttributeKey ordinal
+  private int flags;
+  // Other integer attributes, as (key, value) pairs
+  private int[] attrs;
+  // Links and string attributes, as parallel arrays. String attributes keys are tagged with STRING_ATTR
+  private int[] linkKeys;
+  private Object[] linkValues;
   private Map<String, String> attrMapStrings;
-  private Map<Integer, Object> linkMap;
-  private Map<Integer, String> stringAttributes;
+
+  // Attribute keys are positive, link keys are negative
+  private static final int STRING_ATTR = 0x40000000;
+  private static final int[] EMPTY_INTS = new int[0];
+  private static final Object[] EMPTY_OBJECTS = new Object[0];
 
   private static final BiMap<Integer, String> attrStrEqs;
 
@@ -69,6 +79,9 @@ public class JPNode implements AST {
 
   protected JPNode(ProToken t) {
     this.token = t;
+    this.attrs = EMPTY_INTS;
+    this.linkKeys = EMPTY_INTS;
+    this.linkValues = EMPTY_OBJECTS;
   }
 
   // *************
@@ -359,8 +372,11 @@ public class JPNode implements AST {
   // *****************************
 
   public int attrGet(int key) {
-    if ((attrMap != null) && attrMap.containsKey(key)) {
-      return attrMap.get(key);
+    if ((flags & flagOf(key)) != 0)
+      return IConstants.TRUE;
+    for (int zz = 0; zz < attrs.length; zz += 2) {
+      if (attrs[zz] == key)
+        return attrs[zz + 1];
     }
     switch (key) {
       case IConstants.ABBREVIATED:
@@ -375,10 +391,8 @@ public class JPNode implements AST {
   public String attrGetS(int attrNum) {
     if (attrNum != IConstants.QUALIFIED_CLASS_INT)
       throw new IllegalArgumentException("Invalid value " + attrNum);
-    if ((stringAttributes != null) && stringAttributes.containsKey(attrNum)) {
-      return stringAttributes.get(attrNum);
-    }
-    return "";
+    String str = (String) getLink0(attrNum | STRING_ATTR);
+    return str == null ? "" : str;
   }
 
   public String attrGetS(String attrName) {
@@ -396,15 +410,57 @@ public class JPNode implements AST {
   }
 
   public void attrSet(int key, String value) {
-    if (stringAttributes == null)
-      stringAttributes = new HashMap<>();
-    stringAttributes.put(key, value);
+    setLink0(key | STRING_ATTR, value);
   }
 
   public void attrSet(Integer key, int val) {
-    if (attrMap == null)
-      initAttrMap();
-    attrMap.put(key, val);
+    int flag = flagOf(key);
+    if ((flag != 0) && (val == IConstants.TRUE)) {
+      flags |= flag;
+      removeAttr(key);
+      return;
+    }
+    flags &= ~flag;
+    for (int zz = 0; zz < attrs.length; zz += 2) {
+      if (attrs[zz] == key) {
+        attrs[zz + 1] = val;
+        return;
+      }
+    }
+    int[] newAttrs = Arrays.copyOf(attrs, attrs.length + 2);
+    newAttrs[attrs.length] = key;
+    newAttrs[attrs.length + 1] = val;
+    attrs = newAttrs;
+  }
+
+  private void removeAttr(int key) {
+    for (int zz = 0; zz < attrs.length; zz += 2) {
+      if (attrs[zz] == key) {
+        int[] newAttrs = new int[attrs.length - 2];
+        System.arraycopy(attrs, 0, newAttrs, 0, zz);
+        System.arraycopy(attrs, zz + 2, newAttrs, zz, attrs.length - zz - 2);
+        attrs = newAttrs;
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return Bit used in flags for boolean attributes, 0 if attribute is not stored in flags
+   */
+  private static int flagOf(int key) {
+    switch (key) {
+      case IConstants.OPERATOR:
+        return 1 << AttributeKey.OPERATOR.ordinal();
+      case IConstants.STATEHEAD:
+        return 1 << AttributeKey.STATEHEAD.ordinal();
+      case IConstants.ABBREVIATED:
+        return 1 << AttributeKey.ABBREVIATED.ordinal();
+      case IConstants.INLINE_VAR_DEF:
+        return 1 << AttributeKey.INLINE_VAR_DEF.ordinal();
+      default:
+        return 0;
+    }
   }
 
   public void attrSetS(String key, String value) {
@@ -417,23 +473,31 @@ public class JPNode implements AST {
    * Mark a node as "operator"
    */
   public void setOperator() {
-    attrSet(IConstants.OPERATOR, IConstants.TRUE);
+    flags |= 1 << AttributeKey.OPERATOR.ordinal();
+  }
+
+  public boolean isOperator() {
+    return (flags & (1 << AttributeKey.OPERATOR.ordinal())) != 0;
   }
 
   /**
    * Get a link to an arbitrary object. Integers from -200 through -499 are reserved for Joanju.
    */
   public Object getLink(Integer key) {
-    if (linkMap == null)
-      return null;
-    return linkMap.get(key);
+    return getLink0(key);
+  }
+
+  private Object getLink0(int key) {
+    for (int zz = 0; zz < linkKeys.length; zz++) {
+      if (linkKeys[zz] == key)
+        return linkValues[zz];
+    }
+    return null;
   }
 
   /** If this AST was constructed from another, then get the original. */
   public JPNode getOriginal() {
-    if (linkMap == null)
-      return null;
-    return (JPNode) linkMap.get(IConstants.ORIGINAL);
+    return (JPNode) getLink0(IConstants.ORIGINAL);
   }
 
   public int getState2() {
@@ -447,12 +511,12 @@ public class JPNode implements AST {
 
   /** Mark a node as a "statement head" */
   public void setStatementHead() {
-    attrSet(IConstants.STATEHEAD, IConstants.TRUE);
+    flags |= 1 << AttributeKey.STATEHEAD.ordinal();
   }
 
   /** Mark a node as a "statement head" */
   public void setStatementHead(int state2) {
-    attrSet(IConstants.STATEHEAD, IConstants.TRUE);
+    flags |= 1 << AttributeKey.STATEHEAD.ordinal();
     if (state2 != 0)
       attrSet(IConstants.STATE2, state2);
   }
@@ -558,18 +622,6 @@ public class JPNode implements AST {
 
 
 
-  private void initAttrMap() {
-    if (attrMap == null) {
-      attrMap = new HashMap<>();
-    }
-  }
-
-  private void initLinkMap() {
-    if (linkMap == null) {
-      linkMap = new HashMap<>();
-    }
-  }
-
   public boolean isAbbreviated() {
     return token.getNodeType().isAbbreviated(getText());
   }
@@ -593,7 +645,7 @@ public class JPNode implements AST {
 
   /** Does this node have the Proparse STATEHEAD attribute? */
   public boolean isStateHead() {
-    return attrGet(IConstants.STATEHEAD) == IConstants.TRUE;
+    return (flags & (1 << AttributeKey.STATEHEAD.ordinal())) != 0;
   }
 
 
@@ -618,9 +670,21 @@ public class JPNode implements AST {
 
   /** @see #getLink(Integer) */
   public void setLink(Integer key, Object value) {
-    if (linkMap == null)
-      initLinkMap();
-    linkMap.put(key, value);
+    setLink0(key, value);
+  }
+
+  private void setLink0(int key, Object value) {
+    for (int zz = 0; zz < linkKeys.length; zz++) {
+      if (linkKeys[zz] == key) {
+        linkValues[zz] = value;
+        return;
+      }
+    }
+    int len = linkKeys.length;
+    linkKeys = Arrays.copyOf(linkKeys, len + 1);
+    linkValues = Arrays.copyOf(linkValues, len + 1);
+    linkKeys[len] = key;
+    linkValues[len] = value;
   }
 
   /** Assigned by the tree parser. */
@@ -633,7 +697,7 @@ public class JPNode implements AST {
    */
   public int size() {
     int sz = 1;
-    for (JPNode node : getDirectChildren()) {
+    for (JPNode node = down; node != null; node = node.right) {
       sz += node.size();
     }
     return sz;
@@ -644,7 +708,7 @@ public class JPNode implements AST {
    */
   public int naturalSize() {
     int sz = isNatural() ? 1 : 0;
-    for (JPNode node : getDirectChildren()) {
+    for (JPNode node = down; node != null; node = node.right) {
       sz += node.naturalSize();
     }
     return sz;
@@ -659,21 +723,13 @@ public class JPNode implements AST {
   }
 
   /**
-   * Walk the tree from the input node down
+   * Walk down the tree from the input node
+   * 
+   * @see org.prorefactor.core.JPNodeWalker
    */
   public void walk(ICallback<?> callback) {
-    if (attrGet(IConstants.OPERATOR) == IConstants.TRUE) {
-      getFirstChild().walk(callback);
-      callback.visitNode(this);
-      getFirstChild().getNextSibling().walk(callback);
-    } else {
-      boolean visitChildren = callback.visitNode(this);
-      if (visitChildren) {
-        for (JPNode child : getDirectChildren()) {
-          child.walk(callback);
-        }
-      }
-    }
+    new org.prorefactor.core.JPNodeWalker<JPNode>(JPNode::getFirstChild, JPNode::getNextSibling,
+        JPNode::isOperator).walk(this, callback::visitNode);
   }
 
   public String allLeadingHiddenText() {
@@ -681,9 +737,13 @@ public class JPNode implements AST {
     return null;
   }
 
+  /**
+   * Lightweight and mutable version of JPNode, used by {@link JPNodeVisitor} while the tree is being shaped. Builders are
+   * converted to JPNode objects by {@link #build()}, or statement by statement by {@link #buildStatements()}, and can't
+   * be used anymore once converted.
+   */
   public static class Builder {
     private ProToken tok;
-    private RuleNode ctx;
     private Builder right;
     private Builder down;
     private boolean stmt;
@@ -692,6 +752,8 @@ public class JPNode implements AST {
     private FieldType tabletype;
     private String className;
     private boolean inline;
+    // Not null when node has already been created (with its children) by buildStatements()
+    private JPNode node;
 
     public Builder(ProToken tok) {
       this.tok = tok;
@@ -705,17 +767,13 @@ public class JPNode implements AST {
       this(new ProToken(type, text));
     }
 
-    public Builder setRuleNode(RuleNode ctx) {
-      this.ctx = ctx;
-      return this;
-    }
-
     public Builder setRight(Builder right) {
       this.right = right;
       return this;
     }
 
     public Builder setDown(Builder down) {
+      checkNotBuilt();
       this.down = down;
       return this;
     }
@@ -734,33 +792,40 @@ public class JPNode implements AST {
     }
 
     public Builder getLast() {
-      if (right == null)
-        return this;
-      return right.getLast();
+      Builder last = this;
+      while (last.right != null) {
+        last = last.right;
+      }
+      return last;
     }
 
     public Builder setStatement() {
+      checkNotBuilt();
       this.stmt = true;
       return this;
     }
 
     public Builder setStatement(ABLNodeType stmt2) {
+      checkNotBuilt();
       this.stmt = true;
       this.stmt2 = stmt2;
       return this;
     }
 
     public Builder setOperator() {
+      checkNotBuilt();
       this.operator = true;
       return this;
     }
 
     public Builder setStoreType(FieldType tabletype) {
+      checkNotBuilt();
       this.tabletype = tabletype;
       return this;
     }
 
     public Builder setClassname(String name) {
+      checkNotBuilt();
       this.className = name;
       return this;
     }
@@ -770,6 +835,7 @@ public class JPNode implements AST {
     }
 
     public Builder setInlineVar() {
+      checkNotBuilt();
       this.inline = true;
       return this;
     }
@@ -791,6 +857,7 @@ public class JPNode implements AST {
     public Builder moveRightToDown() {
       if (this.right == null)
         throw new NullPointerException();
+      checkNotBuilt();
       if (this.down == null) {
         this.down = this.right;
         this.right = this.down.right;
@@ -808,59 +875,106 @@ public class JPNode implements AST {
       return this;
     }
 
-    public JPNode build(ParserSupport support) {
-      JPNode node;
+    /**
+     * Create JPNode objects of this builder and its siblings, with all their children. Only the sibling chain is kept,
+     * so that it can still be attached to the enclosing block. Used on complete statements, so that builder objects
+     * don't accumulate until the end of the visitor.
+     */
+    public Builder buildStatements() {
+      for (Builder b = this; b != null; b = b.right) {
+        if (b.node != null)
+          continue;
+        b.node = b.createNode();
+        if (b.down != null) {
+          JPNode child = b.down.build();
+          b.down = null;
+          b.node.down = child;
+          child.up = b.node;
+        }
+      }
+      return this;
+    }
+
+    /**
+     * Create JPNode tree from this builder, its children and its siblings. Builder links are cleared while nodes are
+     * created, so that builder objects can be garbage collected before the end of the conversion. Deep or long
+     * trees are converted without recursion.
+     */
+    public JPNode build() {
+      JPNode root = node == null ? createNode() : node;
+      node = root;
+      Deque<Builder> stack = new ArrayDeque<>();
+      stack.push(this);
+      while (!stack.isEmpty()) {
+        Builder b = stack.pop();
+        JPNode n = b.node;
+        if (b.down != null) {
+          n.down = b.down.node == null ? b.down.createNode() : b.down.node;
+          n.down.up = n;
+          b.down.node = n.down;
+          stack.push(b.down);
+        }
+        if (b.right != null) {
+          n.right = b.right.node == null ? b.right.createNode() : b.right.node;
+          n.right.left = n;
+          b.right.node = n.right;
+          stack.push(b.right);
+        }
+        b.down = null;
+        b.right = null;
+        b.node = null;
+      }
+      return root;
+    }
+
+    private JPNode createNode() {
+      JPNode n;
       switch (tok.getNodeType()) {
         case FIELD_REF:
-          node = new FieldRefNode(tok);
+          n = new FieldRefNode(tok);
           break;
         case PROGRAM_ROOT:
-          node = new ProgramRootNode(tok);
+          n = new ProgramRootNode(tok);
           break;
 
         case PROPERTY_GETTER:
         case PROPERTY_SETTER:
-          node = new BlockNode(tok);
+          n = new BlockNode(tok);
           break;
         default:
-          node = new JPNode(tok);
+          n = new JPNode(tok);
           break;
       }
       if (className != null)
-        node.attrSet(IConstants.QUALIFIED_CLASS_INT, className);
+        n.attrSet(IConstants.QUALIFIED_CLASS_INT, className);
       if (stmt)
-        node.setStatementHead(stmt2 == null ? 0 : stmt2.getType());
+        n.setStatementHead(stmt2 == null ? 0 : stmt2.getType());
       if (operator)
-        node.setOperator();
+        n.setOperator();
       if (inline)
-        node.attrSet(IConstants.INLINE_VAR_DEF, IConstants.TRUE);
+        n.attrSet(IConstants.INLINE_VAR_DEF, IConstants.TRUE);
       if (tabletype != null) {
         switch (tabletype) {
           case DBTABLE:
-            node.attrSet(IConstants.STORETYPE, IConstants.ST_DBTABLE);
+            n.attrSet(IConstants.STORETYPE, IConstants.ST_DBTABLE);
             break;
           case TTABLE:
-            node.attrSet(IConstants.STORETYPE, IConstants.ST_TTABLE);
+            n.attrSet(IConstants.STORETYPE, IConstants.ST_TTABLE);
             break;
           case WTABLE:
-            node.attrSet(IConstants.STORETYPE, IConstants.ST_WTABLE);
+            n.attrSet(IConstants.STORETYPE, IConstants.ST_WTABLE);
             break;
           case VARIABLE:
             // Never happens
             break;
         }
       }
-      if (down != null) {
-        node.down = down.build(support);
-        node.down.up = node;
-      }
-      if (right != null) {
-        node.right = right.build(support);
-        node.right.left = node;
-      }
-      if (ctx != null)
-        support.pushNode(ctx, node);
-      return node;
+      return n;
+    }
+
+    private void checkNotBuilt() {
+      if (node != null)
+        throw new IllegalStateException("JPNode already built");
     }
   }
 
@@ -16,12 +16,14 @@ package org.prorefactor.proparse.antlr4;
 
 import org.antlr.v4.runtime.BufferedTokenStream;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.RuleNode;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.proparse.ParserSupport;
 import org.prorefactor.proparse.antlr4.JPNode.Builder;
 import org.prorefactor.proparse.antlr4.Proparse.*;
+import org.prorefactor.proparse.antlr4.nodetypes.ProgramRootNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,11 +38,36 @@ public class JPNodeVisitor extends ProparseBaseVisitor<JPNode.Builder> {
     this.stream = stream;
   }
 
+  /**
+   * Generate JPNode tree from the parse tree. Once this method returns, nothing in ParserSupport references the parse
+   * tree anymore, which can then be released by the caller.
+   */
+  public ProgramRootNode buildTree(ParseTree tree) {
+    try {
+      return (ProgramRootNode) visit(tree).build();
+    } finally {
+      support.releaseParseTree();
+    }
+  }
+
   @Override
   public JPNode.Builder visitProgram(ProgramContext ctx) {
     return createTree(ctx, ABLNodeType.PROGRAM_ROOT, ABLNodeType.PROGRAM_TAIL);
   }
 
+  @Override
+  public JPNode.Builder visitBlockorstate(BlockorstateContext ctx) {
+    // Statement is complete, JPNode objects can be created right now
+    JPNode.Builder node = createNode(ctx);
+    return node == null ? null : node.buildStatements();
+  }
+
+  @Override
+  public JPNode.Builder visitClass_blockorstate(Class_blockorstateContext ctx) {
+    JPNode.Builder node = createNode(ctx);
+    return node == null ? null : node.buildStatements();
+  }
+
   @Override
   public JPNode.Builder visitCode_block(Code_blockContext ctx) {
     support.visitorEnterScope(ctx.getParent());
@@ -2770,7 +2797,6 @@ public class JPNodeVisitor extends ProparseBaseVisitor<JPNode.Builder> {
       }
     }
     node.setDown(firstChild);
-    node.setRuleNode(ctx);
     return node;
   }
 
@@ -2805,7 +2831,6 @@ public class JPNodeVisitor extends ProparseBaseVisitor<JPNode.Builder> {
     for (int zz = 3; zz < ctx.getChildCount(); zz++) {
       lastNode = lastNode.setRight(visit(ctx.getChild(zz))).getLast();
     }
-    node.setRuleNode(ctx);
     return node;
   }
 
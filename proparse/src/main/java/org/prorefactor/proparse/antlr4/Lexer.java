@@ -14,11 +14,12 @@
  ********************************************************************************/
 package org.prorefactor.proparse.antlr4;
 
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.Locale;
-import java.util.Set;
 
 import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.JPNodeMetrics;
+import org.prorefactor.core.TokenCapture;
 import org.prorefactor.macrolevel.MacroDef;
 import org.prorefactor.proparse.ProParserTokenTypes;
 import org.slf4j.Logger;
@@ -45,6 +46,7 @@ public class Lexer  {
   private StringBuilder currText = new StringBuilder();
 
   private final ProgressLexer prepro;
+  private final TokenCapture capture;
 
   private boolean mergeNameDotInId = false;
   private boolean gettingAmpIfDefArg = false;
@@ -60,17 +62,29 @@ public class Lexer  {
   private int textStartCol;
   private int textStartSource;
 
-  private Set<Integer> comments = new HashSet<>();
-  private Set<Integer> loc = new HashSet<>();
+  // Line numbers of the main file, by content
+  private final BitSet comments = new BitSet();
+  private final BitSet loc = new BitSet();
+  private final BitSet codeLines = new BitSet();
+  private final BitSet preproLines = new BitSet();
+  private int numLines;
 
   Lexer(ProgressLexer prepro) {
     this.prepro = prepro;
+    this.capture = prepro.getTokenCapture();
     getChar(); // We always assume "currChar" is available.
   }
 
 
   //////////////// Lexical productions listed first, support functions follow.
   public ProToken nextToken() {
+    ProToken tok = lexToken();
+    if (capture != null)
+      capture.add(tok);
+    return tok;
+  }
+
+  private ProToken lexToken() {
     LOGGER.trace("Entering nextToken()");
     for (;;) {
 
@@ -831,7 +845,7 @@ public class Lexer  {
     }
     // See if it's a keyword
     if (ttype == ABLNodeType.ID)
-      ttype = ABLNodeType.getLiteral(currText.toString(), ttype);
+      ttype = ABLNodeType.getLiteral(currText, ttype);
     return makeToken(ttype);
   }
 
@@ -1092,12 +1106,24 @@ public class Lexer  {
   ProToken makeToken(ABLNodeType type, String text) {
     // Counting lines of code and commented lines only in the main file (textStartFile set to 0)
     if ((textStartFile == 0) && (type == ABLNodeType.COMMENT)) {
-      int numLines = currText.toString().length() - currText.toString().replace("\n", "").length();
-      for (int zz = textStartLine; zz <= textStartLine + numLines; zz++) {
-        comments.add(zz);
+      int numLines = 0;
+      for (int zz = 0; zz < currText.length(); zz++) {
+        if (currText.charAt(zz) == '\n')
+          numLines++;
       }
+      comments.set(textStartLine, textStartLine + numLines + 1);
     } else if ((textStartFile == 0) && (type != ABLNodeType.WS) && (type != ABLNodeType.EOF_ANTLR4) && (textStartLine > 0)) {
-      loc.add(textStartLine);
+      loc.set(textStartLine);
+      // Strings and directives can span multiple lines
+      int endLine = prevFile == 0 ? Math.max(prevLine, textStartLine) : textStartLine;
+      codeLines.set(textStartLine, endLine + 1);
+      if (type.isPreprocessor()) {
+        preproLines.set(textStartLine, endLine + 1);
+      }
+    }
+    if (textStartFile == 0) {
+      // EOF is on the last line of the file, which is empty if file ends with a newline
+      numLines = Math.max(numLines, prevFile == 0 ? Math.max(prevLine, textStartLine) : textStartLine);
     }
     ProToken tok = new ProToken(type, text);
     tok.setText(text);
@@ -1118,11 +1144,18 @@ public class Lexer  {
    * Returns number of lines of code in the main file (i.e. including any line where there's a non-comment and non-whitespace token
    */
   public int getLoc() {
-    return loc.size();
+    return loc.cardinality();
   }
 
   public int getCommentedLines() {
-    return comments.size();
+    return comments.cardinality();
+  }
+
+  /**
+   * Returns line metrics of the main file, see {@link JPNodeMetrics}
+   */
+  public JPNodeMetrics getMetrics() {
+    return new JPNodeMetrics(loc.cardinality(), codeLines, comments, preproLines, numLines);
   }
 
   void preserveCurrent() {
@@ -25,6 +25,7 @@ import org.antlr.v4.runtime.IntStream;
 import org.antlr.v4.runtime.ListTokenSource;
 import org.antlr.v4.runtime.TokenFactory;
 import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.misc.IntegerList;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.ProparseRuntimeException;
@@ -39,7 +40,6 @@ public class PostLexer implements TokenSource {
 
   private final Lexer lexer;
   private final ProgressLexer prepro;
-  private final PreproEval eval;
 
   private final LinkedList<PreproIfState> preproIfVec = new LinkedList<>();
   private ProToken currToken;
@@ -47,7 +47,6 @@ public class PostLexer implements TokenSource {
   public PostLexer(Lexer lexer) {
     this.lexer = lexer;
     this.prepro = lexer.getPreprocessor();
-    this.eval = new PreproEval(prepro.getProparseSettings());
   }
 
   @Override
@@ -59,25 +58,22 @@ public class PostLexer implements TokenSource {
 
         switch (currToken.getType()) {
 
-          case PreprocessorParser.AMPIF:
-            preproIf();
-            break; // loop again
-
           case PreprocessorParser.AMPTHEN:
             // &then are consumed by preproIf()
             throwMessage("Unexpected &THEN");
             break;
 
+          case PreprocessorParser.AMPIF:
           case PreprocessorParser.AMPELSEIF:
-            preproElseif();
-            break; // loop again
-
           case PreprocessorParser.AMPELSE:
-            preproElse();
-            break; // loop again
-
           case PreprocessorParser.AMPENDIF:
-            preproEndif();
+            // Conditions and discarded code are timed as preprocessor work
+            prepro.enterPreprocessor();
+            try {
+              preproDirective();
+            } finally {
+              prepro.exitPreprocessor();
+            }
             break; // loop again
 
           default:
@@ -87,7 +83,26 @@ public class PostLexer implements TokenSource {
       }
   }
 
-  private ProToken defined() {
+  private void preproDirective() {
+    switch (currToken.getType()) {
+      case PreprocessorParser.AMPIF:
+        preproIf();
+        break;
+      case PreprocessorParser.AMPELSEIF:
+        preproElseif();
+        break;
+      case PreprocessorParser.AMPELSE:
+        preproElse();
+        break;
+      case PreprocessorParser.AMPENDIF:
+        preproEndif();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private String defined() {
     LOGGER.trace("Entering defined()");
     // Progress DEFINED() returns a single digit: 0,1,2, or 3.
     // The text between the parens can be pretty arbitrary, and can
@@ -101,7 +116,7 @@ public class PostLexer implements TokenSource {
     getNextToken();
     if (currToken.getType() != PreprocessorParser.RIGHTPAREN)
       throwMessage("Bad DEFINED function in &IF preprocessor condition");
-    return new ProToken(ABLNodeType.NUMBER, prepro.defined(argToken.getText().trim().toLowerCase()));
+    return argToken.getText().trim().toLowerCase();
   }
 
   private void getNextToken() {
@@ -225,6 +240,10 @@ public class PostLexer implements TokenSource {
     // That allows us to simply use a global flag to watch for &THEN.
 
     List<ProToken> tokenVector = new ArrayList<>();
+    // Cache key, DEFINED() calls are kept with their argument
+    StringBuilder key = new StringBuilder();
+    IntegerList definedTokens = new IntegerList();
+    IntegerList definedValues = new IntegerList();
     boolean done = false;
     while (!done) {
       getNextToken();
@@ -236,36 +255,56 @@ public class PostLexer implements TokenSource {
           done = true;
           break;
         case PreprocessorParser.DEFINED:
-          if (evaluate)
+          if (evaluate) {
             // If not evaluating, just discard
-            tokenVector.add(defined());
+            String argName = defined();
+            String value = prepro.defined(argName);
+            appendKey(key, PreprocessorParser.DEFINED, argName);
+            definedTokens.add(tokenVector.size());
+            definedValues.add(Integer.parseInt(value));
+            tokenVector.add(new ProToken(ABLNodeType.NUMBER, value));
+          }
           break;
         case PreprocessorParser.COMMENT:
         case PreprocessorParser.WS:
         case PreprocessorParser.PREPROCESSTOKEN:
           break;
         default:
-          if (evaluate)
+          if (evaluate) {
             // If not evaluating, just discard
+            appendKey(key, currToken.getType(), currToken.getText());
             tokenVector.add(currToken);
+          }
       }
     }
 
     // If it's blank or the the evaluate argument is false, we don't evaluate
     if (tokenVector.isEmpty() || !evaluate)
       return false;
-    else {
+
+    PreproConditionCache cache = prepro.getPreproConditionCache();
+    String cacheKey = key.toString();
+    PreproCondition condition = cache.get(cacheKey);
+    if (condition == null) {
       CommonTokenStream cts = new CommonTokenStream(new ListTokenSource(tokenVector));
       PreprocessorParser parser = new PreprocessorParser(cts);
       parser.setErrorHandler(new BailErrorStrategy());
       parser.removeErrorListeners();
       parser.addErrorListener(new PreprocessorErrorListener(prepro, tokenVector));
       try {
-        return eval.visitPreproIfEval(parser.preproIfEval());
+        condition = new PreproCondition(parser.preproIfEval(), definedTokens.toArray());
       } catch (ParseCancellationException caught) {
+        // Not cached, so that syntax errors are reported in each file
         return false;
       }
+      cache.put(cacheKey, condition);
     }
+    return condition.evaluate(prepro.getProparseSettings(), definedValues.toArray());
+  }
+
+  private static void appendKey(StringBuilder key, int type, String text) {
+    // Length prefix, as text can contain any character
+    key.append(type).append(':').append(text.length()).append(':').append(text);
   }
 
   private void throwMessage(String msg) {
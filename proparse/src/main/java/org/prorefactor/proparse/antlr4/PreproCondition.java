@@ -0,0 +1,450 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.proparse.antlr4;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import org.prorefactor.proparse.antlr4.PreprocessorParser.AndContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.AtomContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.AtomExprContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.ComparisonContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.ExprContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.ExprInParenContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.FalseExprContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.NotContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.NumberContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.OrContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.PlusContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.PreproIfEvalContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.QuotedStringContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.StringOpContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.TrueExprContext;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.UnaryMinusContext;
+import org.prorefactor.refactor.settings.IProparseSettings;
+
+/**
+ * Compiled form of an &amp;IF / &amp;ELSEIF condition. The only inputs of a condition (once macros have been expanded)
+ * are the results of its DEFINED() calls, so the result of the last evaluation is kept and reused as long as those
+ * values don't change.
+ * 
+ * Conditions only made of literals, DEFINED(), comparisons, BEGINS, MATCHES, NOT, AND, OR and integer or string
+ * additions are compiled to a tree of typed nodes, evaluated without boxing. Any other condition is evaluated by
+ * {@link PreproEval} on the parse tree, which is kept so that the expression is never parsed twice. Thread-safe.
+ */
+class PreproCondition {
+  private static final int TYPE_INT = 0;
+  private static final int TYPE_STRING = 1;
+  private static final int TYPE_LOGICAL = 2;
+
+  private final PreproIfEvalContext tree;
+  // For each token index in the condition, position of the DEFINED() value, or -1
+  private final int[] definedSlots;
+  // Null if condition can't be compiled
+  private final Expr compiled;
+  private volatile Memo last;
+
+  /**
+   * @param tree Parse tree of the condition
+   * @param definedTokens Token index of the NUMBER tokens standing for DEFINED() values, in the same order as the
+   *          values passed to {@link #evaluate(IProparseSettings, int[])}
+   */
+  PreproCondition(PreproIfEvalContext tree, int[] definedTokens) {
+    this.tree = tree;
+    int max = -1;
+    for (int idx : definedTokens) {
+      max = Math.max(max, idx);
+    }
+    this.definedSlots = new int[max + 1];
+    Arrays.fill(definedSlots, -1);
+    for (int zz = 0; zz < definedTokens.length; zz++) {
+      definedSlots[definedTokens[zz]] = zz;
+    }
+    this.compiled = compile(tree.expr());
+  }
+
+  boolean isCompiled() {
+    return compiled != null;
+  }
+
+  /**
+   * @param defined Values of DEFINED() calls, in source order
+   */
+  boolean evaluate(IProparseSettings settings, int[] defined) {
+    Memo memo = last;
+    if ((memo != null) && Arrays.equals(memo.defined, defined))
+      return memo.result;
+    boolean result;
+    if (compiled != null)
+      result = compiled.test(defined);
+    else
+      result = new BoundPreproEval(settings, definedSlots, defined).visitPreproIfEval(tree);
+    last = new Memo(defined, result);
+    return result;
+  }
+
+  // ***********
+  // Compilation
+  // ***********
+
+  @Nullable
+  private Expr compile(ExprContext ctx) {
+    if (ctx instanceof AtomExprContext)
+      return compileAtom(((AtomExprContext) ctx).atom());
+    if (ctx instanceof NotContext) {
+      Expr expr = compile(((NotContext) ctx).expr());
+      return expr == null ? null : new Not(expr);
+    }
+    if ((ctx instanceof AndContext) || (ctx instanceof OrContext)) {
+      Expr left = compile(ctx.getChild(ExprContext.class, 0));
+      Expr right = compile(ctx.getChild(ExprContext.class, 1));
+      if ((left == null) || (right == null))
+        return null;
+      return new Logical(left, right, ctx instanceof AndContext);
+    }
+    if (ctx instanceof ComparisonContext) {
+      ComparisonContext cmp = (ComparisonContext) ctx;
+      Expr left = compile(cmp.expr(0));
+      Expr right = compile(cmp.expr(1));
+      // Mixed data types raise an error, left to PreproEval
+      if ((left == null) || (right == null) || (left.type != right.type))
+        return null;
+      return new Comparison(left, right, cmp.op.getType());
+    }
+    if (ctx instanceof StringOpContext) {
+      StringOpContext op = (StringOpContext) ctx;
+      Expr left = compile(op.expr(0));
+      Expr right = compile(op.expr(1));
+      if ((left == null) || (right == null) || (left.type != TYPE_STRING) || (right.type != TYPE_STRING))
+        return null;
+      return new StringOp(left, right, op.op.getType() == PreprocessorParser.MATCHES);
+    }
+    if (ctx instanceof PlusContext) {
+      PlusContext plus = (PlusContext) ctx;
+      Expr left = compile(plus.expr(0));
+      Expr right = compile(plus.expr(1));
+      if ((left == null) || (right == null) || (left.type != right.type))
+        return null;
+      boolean isPlus = plus.op.getType() == PreprocessorParser.PLUS;
+      if (left.type == TYPE_INT)
+        return new IntArithmetic(left, right, isPlus);
+      if ((left.type == TYPE_STRING) && isPlus)
+        return new Concat(left, right);
+      return null;
+    }
+    if (ctx instanceof UnaryMinusContext) {
+      Expr expr = compile(((UnaryMinusContext) ctx).expr());
+      return (expr == null) || (expr.type != TYPE_INT) ? null : new IntArithmetic(new IntConst(0), expr, false);
+    }
+    return null;
+  }
+
+  @Nullable
+  private Expr compileAtom(AtomContext ctx) {
+    if (ctx instanceof NumberContext) {
+      int idx = ((NumberContext) ctx).NUMBER().getSymbol().getTokenIndex();
+      if ((idx >= 0) && (idx < definedSlots.length) && (definedSlots[idx] >= 0))
+        return new Defined(definedSlots[idx]);
+      Number nbr;
+      try {
+        nbr = PreproEval.getNumber(ctx.getText());
+      } catch (ProEvalException caught) {
+        return null;
+      }
+      return nbr instanceof Integer ? new IntConst(nbr.intValue()) : null;
+    }
+    if (ctx instanceof QuotedStringContext)
+      return new StringConst(StringFuncs.qstringStrip(ctx.getText()));
+    if (ctx instanceof TrueExprContext)
+      return new LogicalConst(true);
+    if (ctx instanceof FalseExprContext)
+      return new LogicalConst(false);
+    if (ctx instanceof ExprInParenContext)
+      return compile(((ExprInParenContext) ctx).expr());
+    // Unknown value
+    return null;
+  }
+
+  // **********
+  // Evaluation
+  // **********
+
+  private static class Memo {
+    private final int[] defined;
+    private final boolean result;
+
+    Memo(int[] defined, boolean result) {
+      this.defined = defined;
+      this.result = result;
+    }
+  }
+
+  /**
+   * PreproEval reading DEFINED() values from an array instead of the tokens of the parse tree
+   */
+  private static class BoundPreproEval extends PreproEval {
+    private final int[] slots;
+    private final int[] values;
+
+    BoundPreproEval(IProparseSettings settings, int[] slots, int[] values) {
+      super(settings);
+      this.slots = slots;
+      this.values = values;
+    }
+
+    @Override
+    public Object visitNumber(NumberContext ctx) {
+      int idx = ctx.NUMBER().getSymbol().getTokenIndex();
+      if ((idx >= 0) && (idx < slots.length) && (slots[idx] >= 0))
+        return values[slots[idx]];
+      return super.visitNumber(ctx);
+    }
+  }
+
+  /**
+   * Typed expression node. Only the accessor matching {@link #type} can be called.
+   */
+  private abstract static class Expr {
+    final int type;
+
+    Expr(int type) {
+      this.type = type;
+    }
+
+    int intValue(int[] defined) {
+      throw new IllegalStateException();
+    }
+
+    String stringValue(int[] defined) {
+      throw new IllegalStateException();
+    }
+
+    boolean logicalValue(int[] defined) {
+      throw new IllegalStateException();
+    }
+
+    /**
+     * Implicit conversion to logical, same rules as {@link PreproEval#getBool(Object)}
+     */
+    final boolean test(int[] defined) {
+      switch (type) {
+        case TYPE_INT:
+          return intValue(defined) != 0;
+        case TYPE_STRING:
+          return !stringValue(defined).isEmpty();
+        default:
+          return logicalValue(defined);
+      }
+    }
+  }
+
+  private static class IntConst extends Expr {
+    private final int value;
+
+    IntConst(int value) {
+      super(TYPE_INT);
+      this.value = value;
+    }
+
+    @Override
+    int intValue(int[] defined) {
+      return value;
+    }
+  }
+
+  private static class Defined extends Expr {
+    private final int slot;
+
+    Defined(int slot) {
+      super(TYPE_INT);
+      this.slot = slot;
+    }
+
+    @Override
+    int intValue(int[] defined) {
+      return defined[slot];
+    }
+  }
+
+  private static class StringConst extends Expr {
+    private final String value;
+
+    StringConst(String value) {
+      super(TYPE_STRING);
+      this.value = value;
+    }
+
+    @Override
+    String stringValue(int[] defined) {
+      return value;
+    }
+  }
+
+  private static class LogicalConst extends Expr {
+    private final boolean value;
+
+    LogicalConst(boolean value) {
+      super(TYPE_LOGICAL);
+      this.value = value;
+    }
+
+    @Override
+    boolean logicalValue(int[] defined) {
+      return value;
+    }
+  }
+
+  private static class Not extends Expr {
+    private final Expr expr;
+
+    Not(Expr expr) {
+      super(TYPE_LOGICAL);
+      this.expr = expr;
+    }
+
+    @Override
+    boolean logicalValue(int[] defined) {
+      return !expr.test(defined);
+    }
+  }
+
+  private static class Logical extends Expr {
+    private final Expr left;
+    private final Expr right;
+    private final boolean and;
+
+    Logical(Expr left, Expr right, boolean and) {
+      super(TYPE_LOGICAL);
+      this.left = left;
+      this.right = right;
+      this.and = and;
+    }
+
+    @Override
+    boolean logicalValue(int[] defined) {
+      // Both operands are always evaluated, as in PreproEval
+      boolean b1 = left.test(defined);
+      boolean b2 = right.test(defined);
+      return and ? b1 && b2 : b1 || b2;
+    }
+  }
+
+  private static class Comparison extends Expr {
+    private final Expr left;
+    private final Expr right;
+    private final int op;
+
+    Comparison(Expr left, Expr right, int op) {
+      super(TYPE_LOGICAL);
+      this.left = left;
+      this.right = right;
+      this.op = op;
+    }
+
+    @Override
+    boolean logicalValue(int[] defined) {
+      int result;
+      if (left.type == TYPE_INT)
+        result = Integer.compare(left.intValue(defined), right.intValue(defined));
+      else if (left.type == TYPE_STRING)
+        result = PreproEval.compareStringHelper(left.stringValue(defined)).compareTo(
+            PreproEval.compareStringHelper(right.stringValue(defined)));
+      else
+        result = Boolean.compare(left.logicalValue(defined), right.logicalValue(defined));
+
+      switch (op) {
+        case PreprocessorParser.EQ:
+        case PreprocessorParser.EQUAL:
+          return result == 0;
+        case PreprocessorParser.GTORLT:
+        case PreprocessorParser.NE:
+          return result != 0;
+        case PreprocessorParser.RIGHTANGLE:
+        case PreprocessorParser.GTHAN:
+          return result > 0;
+        case PreprocessorParser.LEFTANGLE:
+        case PreprocessorParser.LTHAN:
+          return result < 0;
+        case PreprocessorParser.GTOREQUAL:
+        case PreprocessorParser.GE:
+          return result >= 0;
+        case PreprocessorParser.LTOREQUAL:
+        case PreprocessorParser.LE:
+          return result <= 0;
+        default:
+          // Unknown value
+          return false;
+      }
+    }
+  }
+
+  private static class StringOp extends Expr {
+    private final Expr left;
+    private final Expr right;
+    private final boolean matches;
+
+    StringOp(Expr left, Expr right, boolean matches) {
+      super(TYPE_LOGICAL);
+      this.left = left;
+      this.right = right;
+      this.matches = matches;
+    }
+
+    @Override
+    boolean logicalValue(int[] defined) {
+      String s1 = left.stringValue(defined);
+      String s2 = right.stringValue(defined);
+      if (matches)
+        return PreproEval.matches(s1, s2);
+      else
+        return s1.toLowerCase().startsWith(s2.toLowerCase());
+    }
+  }
+
+  private static class IntArithmetic extends Expr {
+    private final Expr left;
+    private final Expr right;
+    private final boolean plus;
+
+    IntArithmetic(Expr left, Expr right, boolean plus) {
+      super(TYPE_INT);
+      this.left = left;
+      this.right = right;
+      this.plus = plus;
+    }
+
+    @Override
+    int intValue(int[] defined) {
+      return plus ? left.intValue(defined) + right.intValue(defined) : left.intValue(defined) - right.intValue(defined);
+    }
+  }
+
+  private static class Concat extends Expr {
+    private final Expr left;
+    private final Expr right;
+
+    Concat(Expr left, Expr right) {
+      super(TYPE_STRING);
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    String stringValue(int[] defined) {
+      return left.stringValue(defined) + right.stringValue(defined);
+    }
+  }
+}
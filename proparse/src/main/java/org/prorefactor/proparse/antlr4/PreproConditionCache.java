@@ -0,0 +1,71 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.proparse.antlr4;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Session-level cache of compiled &amp;IF / &amp;ELSEIF conditions, keyed on the text of the condition once macros
+ * have been expanded, and with DEFINED() calls kept as their argument. The same conditions are usually found in many
+ * include files, and each one is then only parsed once per session. Thread-safe.
+ */
+public class PreproConditionCache {
+  /**
+   * Default maximum number of conditions
+   */
+  public static final long DEFAULT_MAX_SIZE = 10000;
+
+  private final Cache<String, PreproCondition> cache;
+
+  public PreproConditionCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public PreproConditionCache(long maxSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).recordStats().build();
+  }
+
+  @Nullable
+  PreproCondition get(String key) {
+    return cache.getIfPresent(key);
+  }
+
+  void put(String key, PreproCondition condition) {
+    cache.put(key, condition);
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public String toString() {
+    CacheStats stats = cache.stats();
+    return String.format("PreproConditionCache - %d entries - %d hits - %d misses - %d evictions", cache.size(),
+        stats.hitCount(), stats.missCount(), stats.evictionCount());
+  }
+}
@@ -19,37 +19,18 @@ import org.antlr.v4.runtime.TokenSource;
 import org.antlr.v4.runtime.WritableToken;
 import org.prorefactor.core.ABLNodeType;
 
-public class ProToken implements WritableToken {
+/**
+ * Token generated by the lexer. As it's also an ANTLR2 token, it can be sent to both parsers without being copied.
+ */
+public class ProToken extends org.prorefactor.core.ProToken implements WritableToken {
+  private static final long serialVersionUID = -2185297145733946571L;
   private static final String INVALID_TYPE = "Invalid type number ";
 
-  /**
-   * This is the backing field for {@link #getType} and {@link #setType}.
-   */
-  private ABLNodeType type;
-
-  /**
-   * This is the backing field for {@link #getLine} and {@link #setLine}.
-   */
-  private int line;
-
-  /**
-   * This is the backing field for {@link #getCharPositionInLine} and {@link #setCharPositionInLine}.
-   */
-  private int charPositionInLine = -1; // set to invalid position
-
   /**
    * This is the backing field for {@link #getChannel} and {@link #setChannel}.
    */
   private int channel = DEFAULT_CHANNEL;
 
-  /**
-   * This is the backing field for {@link #getText} when the token text is explicitly set in the constructor or via
-   * {@link #setText}.
-   *
-   * @see #getText()
-   */
-  private String text;
-
   /**
    * This is the backing field for {@link #getTokenIndex} and {@link #setTokenIndex}.
    */
@@ -65,120 +46,28 @@ public class ProToken implements WritableToken {
    */
   private int stop;
 
-  private int fileIndex;
-  private int endFileIndex;
-  private int endLine;
-  private int endCharPositionInLine;
-  private int macroSourceNum;
-
-  private String analyzeSuspend = null;
-  private ProToken hiddenBefore = null;
-  private boolean macroExpansion;
-
   public ProToken(ABLNodeType type, String text) {
-    this.type = type;
-    this.channel = DEFAULT_CHANNEL;
-    this.text = text;
-    this.fileIndex = 0;
-    this.charPositionInLine = 0;
+    super(type, text, 0, "", 0, 0, 0, 0, 0, 0, null, false, false);
   }
 
   public ProToken(int type, int channel, int start, int stop, int line, int col) {
-    this.type = ABLNodeType.getNodeType(type);
-    if (this.type == null)
-      throw new IllegalArgumentException(INVALID_TYPE + type);
+    super(checkType(type), null, 0, "", line, col, 0, 0, 0, 0, null, false, false);
     this.channel = channel;
     this.start = start;
     this.stop = stop;
-    this.line = line;
-    this.charPositionInLine = col;
-  }
-
-  public int getEndFileIndex() {
-    return endFileIndex;
-  }
-
-  public void setEndFileIndex(int endFileIndex) {
-    this.endFileIndex = endFileIndex;
-  }
-
-  public int getEndLine() {
-    return endLine;
-  }
-
-  public void setEndLine(int endLine) {
-    this.endLine = endLine;
   }
 
   public int getEndCharPositionInLine() {
-    return endCharPositionInLine;
+    return getEndColumn();
   }
 
   public void setEndCharPositionInLine(int endCharPositionInLine) {
-    this.endCharPositionInLine = endCharPositionInLine;
-  }
-
-  public int getMacroSourceNum() {
-    return macroSourceNum;
-  }
-
-  public void setMacroSourceNum(int macroSourceNum) {
-    this.macroSourceNum = macroSourceNum;
-  }
-
-  public int getFileIndex() {
-    return fileIndex;
-  }
-
-  public void setFileIndex(int fileIndex) {
-    this.fileIndex = fileIndex;
-  }
-
-  public void setAnalyzeSuspend(String analyzeSuspend) {
-    this.analyzeSuspend = analyzeSuspend;
-  }
-
-  public void setMacroExpansion(boolean macroExpansion) {
-    this.macroExpansion = macroExpansion;
-  }
-
-  /**
-   * Returns true if last character of token was generated from a macro expansion, i.e. {&amp;SOMETHING}.
-   * This doesn't mean that all characters were generated from a macro, e.g. {&amp;prefix}VarName will return false
-   */
-  public boolean isMacroExpansion() {
-    return macroExpansion;
-  }
-
-  /**
-   * @return Comma-separated list of &amp;ANALYZE-SUSPEND options. Null for code not managed by AppBuilder.
-   */
-  public String getAnalyzeSuspend() {
-    return analyzeSuspend;
-  }
-
-  @Override
-  public String getText() {
-    return text;
-  }
-
-  @Override
-  public int getType() {
-    return type.getType();
-  }
-
-  public ABLNodeType getNodeType() {
-    return type;
-  }
-
-  @Override
-  public int getLine() {
-    return line;
+    setEndColumn(endCharPositionInLine);
   }
 
   @Override
   public int getCharPositionInLine() {
-    return charPositionInLine;
+    return getColumn();
   }
 
   @Override
@@ -211,32 +100,9 @@ public class ProToken implements WritableToken {
     return null;
   }
 
-  @Override
-  public void setText(String text) {
-    this.text = text;
-  }
-
-  @Override
-  public void setType(int type) {
-    this.type = ABLNodeType.getNodeType(type);
-    if (this.type == null)
-      throw new IllegalArgumentException(INVALID_TYPE + type);
-  }
-
-  public void setNodeType(ABLNodeType type) {
-    if (type == null)
-      throw new IllegalArgumentException(INVALID_TYPE + type);
-    this.type = type;
-  }
-
-  @Override
-  public void setLine(int line) {
-    this.line = line;
-  }
-
   @Override
   public void setCharPositionInLine(int pos) {
-    this.charPositionInLine = pos;
+    setColumn(pos);
   }
 
   @Override
@@ -249,14 +115,17 @@ public class ProToken implements WritableToken {
     this.index = index;
   }
 
-  public void setHiddenBefore(ProToken hiddenBefore) {
-    this.hiddenBefore = hiddenBefore;
-  }
-
   @Override
   public String toString() {
-    return "[\"" + text.replace('\r', ' ').replace('\n', ' ') + "\",<" + type + ">,macro=" + macroSourceNum + ",start="
-        + fileIndex + ":" + line + ":" + charPositionInLine + ",end=" + endFileIndex + ":" + endLine + ":"
-        + endCharPositionInLine + "]";
+    return "[\"" + getText().replace('\r', ' ').replace('\n', ' ') + "\",<" + getNodeType() + ">,macro="
+        + getMacroSourceNum() + ",start=" + getFileIndex() + ":" + getLine() + ":" + getColumn() + ",end="
+        + getEndFileIndex() + ":" + getEndLine() + ":" + getEndColumn() + "]";
+  }
+
+  private static ABLNodeType checkType(int type) {
+    ABLNodeType nodeType = ABLNodeType.getNodeType(type);
+    if (nodeType == null)
+      throw new IllegalArgumentException(INVALID_TYPE + type);
+    return nodeType;
   }
 }
@@ -18,14 +18,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.Token;
@@ -35,6 +38,7 @@ import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.JPNodeMetrics;
 import org.prorefactor.core.ProToken;
 import org.prorefactor.core.ProparseRuntimeException;
+import org.prorefactor.core.TokenCapture;
 import org.prorefactor.macrolevel.IPreprocessorEventListener;
 import org.prorefactor.macrolevel.IncludeRef;
 import org.prorefactor.macrolevel.PreprocessorEventListener;
@@ -49,7 +53,6 @@ import com.google.common.base.Strings;
 import com.google.common.io.ByteSource;
 
 import antlr.TokenStream;
-import antlr.TokenStreamHiddenTokenFilter;
 
 /**
  * A preprocessor contains one or more IncludeFiles.
@@ -82,6 +85,11 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
   public static final int PROPARSE_DIRECTIVE = -101;
   public static final int INCLUDE_DIRECTIVE = -102;
 
+  // Tokens not sent to the ANTLR2 parser, but attached to the visible tokens
+  private static final Set<ABLNodeType> HIDDEN_TOKENS = EnumSet.of(ABLNodeType.WS, ABLNodeType.COMMENT,
+      ABLNodeType.AMPMESSAGE, ABLNodeType.AMPANALYZESUSPEND, ABLNodeType.AMPANALYZERESUME, ABLNodeType.AMPGLOBALDEFINE,
+      ABLNodeType.AMPSCOPEDDEFINE, ABLNodeType.AMPUNDEFINE, ABLNodeType.PROPARSEDIRECTIVE);
+
   private final IProparseSettings ppSettings;
   // Do we only read tokens ?
   private final boolean lexOnly;
@@ -133,6 +141,17 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
   private Lexer lexer;
   private final RefactorSession session;
   private TokenSource wrapper;
+  // Tokens of the main file, or null if not captured
+  private final TokenCapture capture;
+  // Depth of nested macro references being read
+  private int macroRefDepth = 0;
+  // Lexer and preprocessor are only timed on demand, as System.nanoTime() would be called for every token
+  private final boolean timed;
+  // Elapsed time in nanoseconds, while tokens are read from the ANTLR2 token stream
+  private long streamTime;
+  private long preprocessorTime;
+  private long preprocessorStart;
+  private int preprocessorDepth = 0;
 
   /**
    * An existing reference to the input stream is required for construction. The caller is responsible for closing that
@@ -145,11 +164,35 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
    * @throws UncheckedIOException
    */
   public ProgressLexer(RefactorSession session, ByteSource src, String fileName, boolean lexOnly) {
+    this(session, src, fileName, lexOnly, null);
+  }
+
+  /**
+   * Same as {@link #ProgressLexer(RefactorSession, ByteSource, String, boolean)}, and type and position of main file
+   * tokens are stored in <code>capture</code> while tokens are read
+   * 
+   * @throws UncheckedIOException
+   */
+  public ProgressLexer(RefactorSession session, ByteSource src, String fileName, boolean lexOnly,
+      @Nullable TokenCapture capture) {
+    this(session, src, fileName, lexOnly, capture, false);
+  }
+
+  /**
+   * Same as {@link #ProgressLexer(RefactorSession, ByteSource, String, boolean, TokenCapture)}, and time spent in lexer
+   * and preprocessor is measured if <code>timed</code> is true
+   * 
+   * @throws UncheckedIOException
+   */
+  public ProgressLexer(RefactorSession session, ByteSource src, String fileName, boolean lexOnly,
+      @Nullable TokenCapture capture, boolean timed) {
     LOGGER.trace("New ProgressLexer instance {}", fileName);
     this.filenameList = new IntegerIndex<>();
     this.ppSettings = session.getProparseSettings();
     this.session = session;
     this.lexOnly = lexOnly;
+    this.capture = capture;
+    this.timed = timed;
 
     // Create input source with flag isPrimaryInput=true
     try {
@@ -424,7 +467,12 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
           if (doingComment)
             return currChar;
           else {
-            macroReference();
+            enterPreprocessor();
+            try {
+              macroReference();
+            } finally {
+              exitPreprocessor();
+            }
             if ((currChar == PROPARSE_DIRECTIVE) || (currChar == INCLUDE_DIRECTIVE))
               return currChar;
             // else do another loop
@@ -447,6 +495,11 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
     return lexOnly;
   }
 
+  @CheckForNull
+  TokenCapture getTokenCapture() {
+    return capture;
+  }
+
   int getColumn() {
     return currCol;
   }
@@ -670,16 +723,24 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
     // Preserve the macro reference start point, because textStart get messed with if this macro reference itself contains any macro references.
     FilePos refPos = new FilePos(textStart.file, textStart.line, textStart.col, textStart.sourceNum);
 
+    // Include references in the main file are kept in token capture, as they don't generate any token
+    boolean captureRef = (capture != null) && (macroRefDepth == 0) && (refPos.file == 0) && !currMacroExpansion;
+
     // Gather the macro reference text
     // Do not stop on escaped '}'
     StringBuilder refTextBldr = new StringBuilder("{");
+    macroRefDepth++;
     char macroChar = (char) getChar();
     while ((macroChar != '}' || wasEscape) && macroChar != EOF_CHAR) {
       refTextBldr.append(macroChar);
       macroChar = (char) getChar();
     }
+    macroRefDepth--;
     if (macroChar == EOF_CHAR)
       lexicalThrow("Unmatched curly brace");
+    int endFile = currFile;
+    int endLine = currLine;
+    int endCol = currCol;
     refTextBldr.append(macroChar); // should be '}'
     String refText = refTextBldr.toString();
     CharPos cp = new CharPos(refText.toCharArray(), 0);
@@ -814,7 +875,9 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
         currChar = INCLUDE_DIRECTIVE;
         includeDirectiveText = refText.trim();
         return;
-      } else 
+      }
+      if (captureRef && (endFile == 0))
+        capture.add(ABLNodeType.INCLUDEDIRECTIVE, refPos.line, refPos.col, endLine, endCol);
       // newInclude() returns false if filename is blank or currently
       // "consuming" due to &IF FALSE.
       // newInclude() will throw() if file not found or cannot be opened.
@@ -852,7 +915,9 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
       throw new UncheckedIOException(new IncludeFileNotFoundException(getFilename(), referencedWithName));
     }
     try {
-      currentInput = new InputSource(++sourceCounter, ff, session.getCharset(), addFilename(fName), ppSettings.getSkipXCode(), false);
+      currentInput = new InputSource(++sourceCounter, ff.getName(),
+          session.getIncludeFileCache().get(ff, session.getCharset()), addFilename(fName), ppSettings.getSkipXCode(),
+          false);
     } catch (IOException caught) {
       throw new UncheckedIOException(caught);
     }
@@ -995,6 +1060,35 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
     consuming--;
   }
 
+  /**
+   * Start of preprocessor work (macro reference, include file, &amp;IF condition). Calls can be nested, only the
+   * outermost one is timed.
+   */
+  void enterPreprocessor() {
+    if (timed && (preprocessorDepth++ == 0))
+      preprocessorStart = System.nanoTime();
+  }
+
+  void exitPreprocessor() {
+    if (timed && (--preprocessorDepth == 0))
+      preprocessorTime += System.nanoTime() - preprocessorStart;
+  }
+
+  /**
+   * @return Time spent in the lexer, in nanoseconds, while tokens were read from
+   *         {@link #getANTLR2TokenStream(boolean)}. Preprocessor time is excluded. Always 0 if lexer is not timed.
+   */
+  public long getLexerTime() {
+    return Math.max(0, streamTime - preprocessorTime);
+  }
+
+  /**
+   * @return Time spent in preprocessor, in nanoseconds. Always 0 if lexer is not timed.
+   */
+  public long getPreprocessorTime() {
+    return preprocessorTime;
+  }
+
   public FilePos getTextStart() {
     return textStart;
   }
@@ -1004,7 +1098,7 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
   }
 
   public JPNodeMetrics getMetrics() {
-    return new JPNodeMetrics(lexer.getLoc(), lexer.getCommentedLines());
+    return lexer.getMetrics();
   }
 
   public IncludeRef getMacroGraph() {
@@ -1015,6 +1109,10 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
     return ppSettings;
   }
 
+  PreproConditionCache getPreproConditionCache() {
+    return session.getPreproConditionCache();
+  }
+
   public boolean isAppBuilderCode() {
     return ((PreprocessorEventListener) lstListener).isAppBuilderCode();
   }
@@ -1085,38 +1183,81 @@ public class ProgressLexer implements TokenSource, IPreprocessor {
     }
   }
 
+  /**
+   * Returns tokens of this lexer as an ANTLR2 TokenStream. Tokens are not copied, as lexer tokens are also
+   * ANTLR2 tokens.
+   * 
+   * @param hideNonDefaultChannel If true, whitespaces, comments and preprocessor statements are not returned, but
+   *          attached to the previous and next tokens (same behavior as ANTLR2 TokenStreamHiddenTokenFilter)
+   */
   public TokenStream getANTLR2TokenStream(boolean hideNonDefaultChannel) {
-    TokenStream stream = new ANTRL2TokenStreamWrapper();
-    if (hideNonDefaultChannel) {
-      TokenStreamHiddenTokenFilter filter = new TokenStreamHiddenTokenFilter(stream); 
-      filter.hide(ABLNodeType.WS.getType());
-      filter.hide(ABLNodeType.COMMENT.getType());
-      filter.hide(ABLNodeType.AMPMESSAGE.getType());
-      filter.hide(ABLNodeType.AMPANALYZESUSPEND.getType());
-      filter.hide(ABLNodeType.AMPANALYZERESUME.getType());
-      filter.hide(ABLNodeType.AMPGLOBALDEFINE.getType());
-      filter.hide(ABLNodeType.AMPSCOPEDDEFINE.getType());
-      filter.hide(ABLNodeType.AMPUNDEFINE.getType());
-      filter.hide(ABLNodeType.PROPARSEDIRECTIVE.getType());
-      stream = filter;
-    }
-
-    return stream;
+    return new ANTLR2TokenStream(hideNonDefaultChannel);
   }
 
-  private class ANTRL2TokenStreamWrapper implements TokenStream {
+  private class ANTLR2TokenStream implements TokenStream {
+    private final boolean hideTokens;
+    // Next visible token, already read from the lexer
+    private ProToken lookahead;
+    // Last hidden token in front of lookahead
+    private ProToken lastHiddenToken;
+
+    ANTLR2TokenStream(boolean hideTokens) {
+      this.hideTokens = hideTokens;
+    }
 
     @Override
     public antlr.Token nextToken() {
-      return convertToken((org.prorefactor.proparse.antlr4.ProToken) wrapper.nextToken());
+      if (!hideTokens)
+        return next();
+      if (lookahead == null) {
+        // Hidden tokens at the beginning of the stream
+        ProToken prev = null;
+        lookahead = next();
+        while (HIDDEN_TOKENS.contains(lookahead.getNodeType())) {
+          if (prev != null) {
+            prev.setHiddenAfter(lookahead);
+            lookahead.setHiddenBefore(prev);
+          }
+          prev = lastHiddenToken = lookahead;
+          lookahead = next();
+        }
+      }
+
+      ProToken monitored = lookahead;
+      monitored.setHiddenBefore(lastHiddenToken);
+      lastHiddenToken = null;
+      // Hidden tokens are chained, the first one being attached to the visible token (but not the other way around)
+      ProToken prev = monitored;
+      lookahead = next();
+      while (HIDDEN_TOKENS.contains(lookahead.getNodeType())) {
+        prev.setHiddenAfter(lookahead);
+        if (prev != monitored)
+          lookahead.setHiddenBefore(prev);
+        prev = lastHiddenToken = lookahead;
+        lookahead = next();
+      }
+
+      return monitored;
     }
 
-    private antlr.Token convertToken(org.prorefactor.proparse.antlr4.ProToken tok) {
-      // Value of EOF is different in ANTLR2 and ANTLR4
-      return new ProToken(tok.getNodeType() == ABLNodeType.EOF_ANTLR4 ? ABLNodeType.EOF : tok.getNodeType(),
-          tok.getText(), tok.getFileIndex(), Strings.nullToEmpty(filenameList.getValue(tok.getFileIndex())),
-          tok.getLine(), tok.getCharPositionInLine(), tok.getEndFileIndex(), tok.getEndLine(),
-          tok.getEndCharPositionInLine(), tok.getMacroSourceNum(), tok.getAnalyzeSuspend(), false, tok.isMacroExpansion());
+    private ProToken next() {
+      ProToken tok;
+      if (timed) {
+        long startTime = System.nanoTime();
+        tok = (ProToken) wrapper.nextToken();
+        streamTime += System.nanoTime() - startTime;
+      } else {
+        tok = (ProToken) wrapper.nextToken();
+      }
+      String fileName = Strings.nullToEmpty(filenameList.getValue(tok.getFileIndex()));
+      if (tok.getNodeType() == ABLNodeType.EOF_ANTLR4) {
+        // Value of EOF is different in ANTLR2 and ANTLR4. As EOF token can be sent more than once, it's not modified.
+        return new ProToken(ABLNodeType.EOF, tok.getText(), tok.getFileIndex(), fileName, tok.getLine(),
+            tok.getColumn(), tok.getEndFileIndex(), tok.getEndLine(), tok.getEndColumn(), tok.getMacroSourceNum(),
+            tok.getAnalyzeSuspend(), false, tok.isMacroExpansion());
+      }
+      tok.setFilename(fileName);
+      return tok;
     }
   }
 
@@ -0,0 +1,239 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.proparse.antlr4;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.atn.ATNState;
+import org.antlr.v4.runtime.atn.DecisionState;
+import org.antlr.v4.runtime.atn.ParserATNSimulator;
+import org.antlr.v4.runtime.atn.PredictionContextCache;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.dfa.DFA;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.prorefactor.proparse.ParserSupport;
+import org.prorefactor.refactor.RefactorSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.io.Resources;
+
+/**
+ * Session-level ANTLR4 front end. Each file is first parsed with SLL prediction and {@link BailErrorStrategy}, which is
+ * fast and enough for nearly all files, then again with full LL prediction and {@link ProparseErrorStrategy} if SLL
+ * failed. All parsers created by this object share the same DFA, so that adaptive prediction computed for one file is
+ * reused by the next ones, and the DFA can be filled in advance with {@link #warmUp()}. Thread-safe, as the DFA is
+ * synchronized by the ANTLR runtime.
+ */
+public class TwoStageParser {
+  private static final Logger LOG = LoggerFactory.getLogger(TwoStageParser.class);
+  private static final String[] WARMUP_FILES = {"warmup/procedure.p", "warmup/SampleClass.cls"};
+
+  private final RefactorSession session;
+  private final DFA[] decisionToDFA;
+  private final PredictionContextCache contextCache = new PredictionContextCache();
+
+  private final LongAdder numParses = new LongAdder();
+  private final LongAdder numFallbacks = new LongAdder();
+  // Rule and decision number which made SLL fail
+  private final Map<String, LongAdder> fallbackTriggers = new ConcurrentHashMap<>();
+
+  public TwoStageParser(RefactorSession session) {
+    this.session = session;
+    this.decisionToDFA = new DFA[Proparse._ATN.getNumberOfDecisions()];
+    clearDFA();
+  }
+
+  /**
+   * Parse all tokens of the lexer
+   */
+  public Result parse(ProgressLexer lexer) {
+    return parse(lexer, false);
+  }
+
+  /**
+   * Parse all tokens of the lexer
+   * 
+   * @param profile Collect profiling information, available from {@link Proparse#getParseInfo()}
+   */
+  public Result parse(ProgressLexer lexer, boolean profile) {
+    numParses.increment();
+    CommonTokenStream tokens = new CommonTokenStream(lexer);
+    Proparse parser = new Proparse(tokens);
+    parser.setInterpreter(new ParserATNSimulator(parser, Proparse._ATN, decisionToDFA, contextCache));
+    if (profile)
+      parser.setProfile(true);
+    parser.initAntlr4(session, lexer.getFilenameList());
+    parser.removeErrorListeners();
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    parser.setErrorHandler(new BailErrorStrategy());
+
+    try {
+      return new Result(parser.program(), parser, false);
+    } catch (ParseCancellationException caught) {
+      String trigger = getTrigger(caught, parser);
+      LOG.debug("Parser switching to LL prediction mode for {} - {}", lexer.getFilename(0), trigger);
+      numFallbacks.increment();
+      fallbackTriggers.computeIfAbsent(trigger, key -> new LongAdder()).increment();
+    }
+
+    // Rewind token stream. Parser support holds symbols defined during first stage, so it has to be created again
+    parser.reset();
+    parser.initAntlr4(session, lexer.getFilenameList());
+    parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+    parser.setErrorHandler(new ProparseErrorStrategy());
+    parser.addErrorListener(new DescriptiveErrorListener());
+
+    return new Result(parser.program(), parser, true);
+  }
+
+  /**
+   * Parse a set of files bundled with Proparse, so that the most common decisions are already in the DFA when parsing
+   * the first real files. Parser errors are ignored.
+   * 
+   * @return Number of files parsed
+   */
+  public int warmUp() {
+    long startTime = System.currentTimeMillis();
+    int numFiles = 0;
+    for (String fileName : WARMUP_FILES) {
+      URL url = TwoStageParser.class.getResource(fileName);
+      if (url == null)
+        continue;
+      try {
+        ProgressLexer lexer = new ProgressLexer(session, Resources.asByteSource(url), fileName, false);
+        lexer.setMergeNameDotInId(true);
+        parse(lexer);
+        numFiles++;
+      } catch (RuntimeException caught) {
+        LOG.debug("Unable to parse warm-up file " + fileName, caught);
+      }
+    }
+    // Warm-up files are not part of the statistics
+    numParses.reset();
+    numFallbacks.reset();
+    fallbackTriggers.clear();
+    LOG.debug("ANTLR4 warm-up - {} files parsed in {} ms", numFiles, System.currentTimeMillis() - startTime);
+
+    return numFiles;
+  }
+
+  /**
+   * Discard DFA, for example to release memory. Shouldn't be called during a parse.
+   */
+  public final void clearDFA() {
+    for (int zz = 0; zz < decisionToDFA.length; zz++) {
+      decisionToDFA[zz] = new DFA(Proparse._ATN.getDecisionState(zz), zz);
+    }
+  }
+
+  /**
+   * @return Number of states in DFA
+   */
+  public int getDFASize() {
+    int size = 0;
+    for (DFA dfa : decisionToDFA) {
+      size += dfa.states.size();
+    }
+    return size;
+  }
+
+  public long getParseCount() {
+    return numParses.sum();
+  }
+
+  /**
+   * @return Number of files parsed in LL mode
+   */
+  public long getFallbackCount() {
+    return numFallbacks.sum();
+  }
+
+  /**
+   * @return Number of LL fallbacks by rule and decision which made SLL fail
+   */
+  public Map<String, Long> getFallbackTriggers() {
+    Map<String, Long> map = new TreeMap<>();
+    for (Map.Entry<String, LongAdder> entry : fallbackTriggers.entrySet()) {
+      map.put(entry.getKey(), entry.getValue().sum());
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("TwoStageParser - %d files - %d LL fallbacks - %d DFA states", getParseCount(),
+        getFallbackCount(), getDFASize());
+  }
+
+  private static String getTrigger(ParseCancellationException caught, Proparse parser) {
+    int stateNumber = parser.getState();
+    if (caught.getCause() instanceof RecognitionException)
+      stateNumber = ((RecognitionException) caught.getCause()).getOffendingState();
+    if ((stateNumber < 0) || (stateNumber >= Proparse._ATN.states.size()))
+      return "unknown";
+    ATNState state = Proparse._ATN.states.get(stateNumber);
+    if (state instanceof DecisionState)
+      return Proparse.ruleNames[state.ruleIndex] + " (decision " + ((DecisionState) state).decision + ")";
+    return Proparse.ruleNames[state.ruleIndex];
+  }
+
+  public static class Result {
+    private final ParseTree tree;
+    private final Proparse parser;
+    private final boolean fallback;
+
+    private Result(ParseTree tree, Proparse parser, boolean fallback) {
+      this.tree = tree;
+      this.parser = parser;
+      this.fallback = fallback;
+    }
+
+    public ParseTree getTree() {
+      return tree;
+    }
+
+    public Proparse getParser() {
+      return parser;
+    }
+
+    public ParserSupport getParserSupport() {
+      return parser.getParserSupport();
+    }
+
+    /**
+     * @return Tokens consumed by the parser, as expected by {@link JPNodeVisitor}
+     */
+    public CommonTokenStream getTokenStream() {
+      return (CommonTokenStream) parser.getInputStream();
+    }
+
+    /**
+     * @return True if file had to be parsed in LL mode
+     */
+    public boolean isFallback() {
+      return fallback;
+    }
+  }
+}
@@ -0,0 +1,173 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.refactor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Session-level cache of decoded include files. Entries are keyed by absolute path, last modification time and size, so
+ * that a modified file is never served from the cache. Memory usage is bounded (estimated as two bytes per character),
+ * least recently used entries are evicted first. Thread-safe.
+ */
+public class IncludeFileCache {
+  /**
+   * Default maximum size, in bytes
+   */
+  public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+  private final Cache<Key, IncludeFileContent> cache;
+  private final boolean enabled;
+
+  public IncludeFileCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param maxSize Maximum size in bytes. Zero or negative value disables the cache
+   */
+  public IncludeFileCache(long maxSize) {
+    this.enabled = maxSize > 0;
+    this.cache = CacheBuilder.newBuilder().maximumWeight(Math.max(maxSize, 0)).weigher(
+        (Key key, IncludeFileContent value) -> value.getWeight()).recordStats().build();
+  }
+
+  /**
+   * Returns content of file, decoded with specified charset. File is read only if not already in cache, or if it has
+   * been modified since then.
+   *
+   * @throws UncheckedIOException If file can't be read
+   */
+  public IncludeFileContent get(File file, Charset charset) {
+    if (!enabled)
+      return read(file, charset);
+    Key key = new Key(file.getAbsolutePath(), file.lastModified(), file.length(), charset);
+    try {
+      return cache.get(key, () -> read(file, charset));
+    } catch (ExecutionException | UncheckedExecutionException caught) {
+      // Only UncheckedIOException can be thrown by read()
+      Throwables.throwIfUnchecked(caught.getCause());
+      throw new IllegalStateException(caught.getCause());
+    }
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public CacheStats getStats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    CacheStats stats = cache.stats();
+    return String.format("IncludeFileCache - %d entries - %d hits - %d misses - %d evictions", cache.size(),
+        stats.hitCount(), stats.missCount(), stats.evictionCount());
+  }
+
+  private static IncludeFileContent read(File file, Charset charset) {
+    try {
+      ByteSource src = ByteSource.wrap(Files.toByteArray(file));
+      if (IncludeFileContent.isXCoded(src))
+        return new IncludeFileContent(null, true);
+      return new IncludeFileContent(src.asCharSource(charset).read(), false);
+    } catch (IOException caught) {
+      throw new UncheckedIOException(caught);
+    }
+  }
+
+  /**
+   * Decoded content of an include file
+   */
+  public static class IncludeFileContent {
+    private final String content;
+    private final boolean xcoded;
+
+    public IncludeFileContent(String content, boolean xcoded) {
+      this.content = content;
+      this.xcoded = xcoded;
+    }
+
+    /**
+     * @return Decoded content, or null if file is xcode'd
+     */
+    public String getContent() {
+      return content;
+    }
+
+    public boolean isXCoded() {
+      return xcoded;
+    }
+
+    int getWeight() {
+      return content == null ? 64 : 64 + content.length() * 2;
+    }
+
+    /**
+     * XCode'd files start with byte 0x11 or 0x13
+     */
+    public static boolean isXCoded(ByteSource src) throws IOException {
+      byte[] b = src.slice(0, 1).read();
+      return (b.length > 0) && ((b[0] == 0x11) || (b[0] == 0x13));
+    }
+  }
+
+  private static class Key {
+    private final String path;
+    private final long lastModified;
+    private final long length;
+    private final Charset charset;
+
+    Key(String path, long lastModified, long length, Charset charset) {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.length = length;
+      this.charset = charset;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, lastModified, length, charset);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if ((obj == null) || (obj.getClass() != this.getClass()))
+        return false;
+      Key other = (Key) obj;
+      return path.equals(other.path) && (lastModified == other.lastModified) && (length == other.length)
+          && charset.equals(other.charset);
+    }
+  }
+}
@@ -0,0 +1,147 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.refactor;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory index of propath directories. Each directory is listed only once (when first needed), and file lookups
+ * are then answered from memory instead of checking for file existence in every propath entry. Lookup results (found
+ * or not found) are also cached. Thread-safe.
+ *
+ * Directory content is supposed to be stable during the lifetime of this object, which is the lifetime of the
+ * RefactorSession (one analysis, in SonarQube and in SonarLint) ; {@link #invalidate()} has to be called when that's
+ * not the case.
+ */
+public class PropathIndex {
+  private static final int NOT_FOUND = -1;
+  private static final boolean CASE_SENSITIVE = isCaseSensitive();
+
+  private final List<String> propath;
+  // Key is the directory full path, value is the set of file names (lower-case on case-insensitive file systems)
+  private final Map<String, Set<String>> listings = new ConcurrentHashMap<>();
+  // Key is the file name as requested, value is the index of propath entry where it was found (or NOT_FOUND)
+  private final Map<String, Integer> results = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public PropathIndex(List<String> propath) {
+    this.propath = propath;
+  }
+
+  /**
+   * Search for a relative file name in propath
+   *
+   * @return Full path of file (propath entry + separator + file name), or null if not found
+   */
+  public String find(String fileName) {
+    Integer idx = results.get(fileName);
+    if (idx == null) {
+      misses.increment();
+      idx = results.computeIfAbsent(fileName, this::lookup);
+    } else {
+      hits.increment();
+    }
+    return idx == NOT_FOUND ? null : propath.get(idx) + File.separatorChar + fileName;
+  }
+
+  /**
+   * Discard all directory listings and lookup results
+   */
+  public void invalidate() {
+    results.clear();
+    listings.clear();
+  }
+
+  public long getHits() {
+    return hits.longValue();
+  }
+
+  public long getMisses() {
+    return misses.longValue();
+  }
+
+  /**
+   * @return Number of directory listings in memory
+   */
+  public int getDirectoryCount() {
+    return listings.size();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("PropathIndex - %d directories - %d hits - %d misses", listings.size(), hits.longValue(),
+        misses.longValue());
+  }
+
+  private int lookup(String fileName) {
+    int lastSep = Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\'));
+    String dirName = lastSep == -1 ? "" : fileName.substring(0, lastSep);
+    String name = fileName.substring(lastSep + 1);
+    boolean useListing = isSimplePath(dirName) && !name.isEmpty() && !".".equals(name) && !"..".equals(name);
+
+    for (int zz = 0; zz < propath.size(); zz++) {
+      String entry = propath.get(zz);
+      if (useListing) {
+        String dir = dirName.isEmpty() ? entry : entry + File.separatorChar + dirName;
+        if (listings.computeIfAbsent(dir, PropathIndex::list).contains(normalize(name)))
+          return zz;
+      } else if (new File(entry + File.separatorChar + fileName).exists()) {
+        // Relative segments or empty segments: rely on file system
+        return zz;
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  private static boolean isSimplePath(String dirName) {
+    if (dirName.isEmpty())
+      return true;
+    for (String segment : dirName.split("[/\\\\]", -1)) {
+      if (segment.isEmpty() || ".".equals(segment) || "..".equals(segment))
+        return false;
+    }
+    return true;
+  }
+
+  private static Set<String> list(String dir) {
+    String[] names = new File(dir).list();
+    if (names == null)
+      return Collections.emptySet();
+    Set<String> set = new HashSet<>(names.length * 2);
+    for (String str : names) {
+      set.add(normalize(str));
+    }
+    return set;
+  }
+
+  private static String normalize(String name) {
+    return CASE_SENSITIVE ? name : name.toLowerCase(Locale.ENGLISH);
+  }
+
+  private static boolean isCaseSensitive() {
+    String os = System.getProperty("os.name", "").toLowerCase(Locale.ENGLISH);
+    return !os.startsWith("windows") && !os.startsWith("mac");
+  }
+}
@@ -18,17 +18,17 @@ package org.prorefactor.refactor;
 import java.io.File;
 import java.nio.charset.Charset;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.function.Function;
 
 import javax.annotation.Nullable;
 
 import org.prorefactor.core.schema.ISchema;
+import org.prorefactor.proparse.antlr4.PreproConditionCache;
+import org.prorefactor.proparse.antlr4.TwoStageParser;
 import org.prorefactor.refactor.settings.IProparseSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Strings;
 import com.google.inject.Inject;
 
 import eu.rssw.pct.elements.ITypeInfo;
@@ -45,7 +45,15 @@ public class RefactorSession {
   private final Charset charset;
 
   // Structure from rcode
-  private final Map<String, ITypeInfo> typeInfoMap = new HashMap<>();
+  private final TypeInfoRegistry typeInfoRegistry = new TypeInfoRegistry();
+  // Content of include files
+  private final IncludeFileCache includeFileCache;
+  // Content of propath directories
+  private final PropathIndex propathIndex;
+  // Compiled preprocessor conditions
+  private final PreproConditionCache preproConditionCache = new PreproConditionCache();
+  // ANTLR4 parser, created on first use as loading its ATN is expensive
+  private TwoStageParser twoStageParser;
 
   @Inject
   public RefactorSession(IProparseSettings proparseSettings, ISchema schema) {
@@ -54,9 +62,18 @@ public class RefactorSession {
 
   public RefactorSession(IProparseSettings proparseSettings, ISchema schema,
       Charset charset) {
+    this(proparseSettings, schema, charset, IncludeFileCache.DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   * @param includeCacheSize Maximum size (in bytes) of include files cache. Zero to disable cache.
+   */
+  public RefactorSession(IProparseSettings proparseSettings, ISchema schema, Charset charset, long includeCacheSize) {
     this.proparseSettings = proparseSettings;
     this.schema = schema;
     this.charset = charset;
+    this.includeFileCache = new IncludeFileCache(includeCacheSize);
+    this.propathIndex = new PropathIndex(proparseSettings.getPropathAsList());
   }
 
   public Charset getCharset() {
@@ -79,7 +96,7 @@ public class RefactorSession {
     if (clz == null) {
       return null;
     }
-    ITypeInfo info = typeInfoMap.get(clz);
+    ITypeInfo info = typeInfoRegistry.get(clz);
     if (info == null) {
       LOG.debug("No TypeInfo found for {}", clz);
     }
@@ -87,16 +104,60 @@ public class RefactorSession {
     return info;
   }
 
+  /**
+   * Thread-safe. Members of this class and its super-classes.
+   */
+  @Nullable
+  public ResolvedTypeInfo getResolvedTypeInfo(@Nullable ITypeInfo info) {
+    return typeInfoRegistry.resolve(info);
+  }
+
+  /**
+   * Thread-safe
+   */
   public void injectTypeInfoCollection(Collection<ITypeInfo> units) {
-    for (ITypeInfo info : units) {
-      injectTypeInfo(info);
-    }
+    typeInfoRegistry.putAll(units);
   }
 
+  /**
+   * Thread-safe
+   */
   public void injectTypeInfo(ITypeInfo unit) {
-    if ((unit == null) || Strings.isNullOrEmpty(unit.getTypeName()))
-      return;
-    typeInfoMap.put(unit.getTypeName(), unit);
+    typeInfoRegistry.put(unit);
+  }
+
+  /**
+   * Thread-safe. Read classes on first access, instead of injecting them up front.
+   * 
+   * @see TypeInfoRegistry#setLoader(Function)
+   */
+  public void setTypeInfoLoader(@Nullable Function<String, ITypeInfo> loader) {
+    typeInfoRegistry.setLoader(loader);
+  }
+
+  public TypeInfoRegistry getTypeInfoRegistry() {
+    return typeInfoRegistry;
+  }
+
+  public IncludeFileCache getIncludeFileCache() {
+    return includeFileCache;
+  }
+
+  public PreproConditionCache getPreproConditionCache() {
+    return preproConditionCache;
+  }
+
+  /**
+   * @return ANTLR4 parser shared by all files of this session
+   */
+  public synchronized TwoStageParser getTwoStageParser() {
+    if (twoStageParser == null)
+      twoStageParser = new TwoStageParser(this);
+    return twoStageParser;
+  }
+
+  public PropathIndex getPropathIndex() {
+    return propathIndex;
   }
 
   public File findFile3(String fileName) {
@@ -113,13 +174,8 @@ public class RefactorSession {
         return new File(fileName);
     }
 
-    for (String p : proparseSettings.getPropathAsList()) {
-      String tryPath = p + File.separatorChar + fileName;
-      if (new File(tryPath).exists())
-        return new File(tryPath);
-    }
-
-    return null;
+    String path = propathIndex.find(fileName);
+    return path == null ? null : new File(path);
   }
 
   public String findFile(String fileName) {
@@ -135,13 +191,8 @@ public class RefactorSession {
         return fileName;
     }
 
-    for (String p : proparseSettings.getPropathAsList()) {
-      String tryPath = p + File.separatorChar + fileName;
-      if (new File(tryPath).exists())
-        return tryPath;
-    }
-
-    return "";
+    String path = propathIndex.find(fileName);
+    return path == null ? "" : path;
   }
 
   /**
@@ -161,14 +212,8 @@ public class RefactorSession {
         return inFile;
       return null;
     }
-    String propath = proparseSettings.getPropath();
-    String[] parts = propath.split(",");
-    for (String part : parts) {
-      File retFile = new File(part + File.separator + filename);
-      if (retFile.exists())
-        return retFile;
-    }
-    return null;
+    String path = propathIndex.find(filename);
+    return path == null ? null : new File(path);
   } // findFile
 
   /**
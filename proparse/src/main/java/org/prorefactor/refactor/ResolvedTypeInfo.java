@@ -0,0 +1,151 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.refactor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import eu.rssw.pct.elements.IBufferElement;
+import eu.rssw.pct.elements.IMethodElement;
+import eu.rssw.pct.elements.IPropertyElement;
+import eu.rssw.pct.elements.ITableElement;
+import eu.rssw.pct.elements.ITypeInfo;
+
+/**
+ * Members of a class and all of its super-classes, indexed by lowercase name. Members of a class take precedence over
+ * members with the same name in super-classes, so that lookups give the same result as walking up the hierarchy with
+ * {@link ITypeInfo#getParentTypeName()}. Instances are immutable, and are created (and invalidated) by
+ * {@link TypeInfoRegistry#resolve(ITypeInfo)}.
+ */
+public class ResolvedTypeInfo {
+  private final ITypeInfo typeInfo;
+  private final List<ITypeInfo> hierarchy;
+  private final Set<String> methods;
+  private final Map<String, IPropertyElement> properties;
+  // Public and protected properties
+  private final Set<String> visibleProperties;
+  private final Map<String, IBufferElement> buffers;
+  private final Map<String, ITableElement> tempTables;
+
+  ResolvedTypeInfo(ITypeInfo typeInfo, @Nullable ResolvedTypeInfo parent) {
+    this.typeInfo = typeInfo;
+
+    List<ITypeInfo> list = new ArrayList<>();
+    list.add(typeInfo);
+    Set<String> mthds = new HashSet<>();
+    Map<String, IPropertyElement> props = new HashMap<>();
+    Set<String> visibleProps = new HashSet<>();
+    Map<String, IBufferElement> bufs = new HashMap<>();
+    Map<String, ITableElement> tts = new HashMap<>();
+
+    for (IMethodElement mthd : typeInfo.getMethods()) {
+      if (mthd.getName() != null)
+        mthds.add(lowercase(mthd.getName()));
+    }
+    for (IPropertyElement prop : typeInfo.getProperties()) {
+      if (prop.getName() == null)
+        continue;
+      props.putIfAbsent(lowercase(prop.getName()), prop);
+      if (prop.isPublic() || prop.isProtected())
+        visibleProps.add(lowercase(prop.getName()));
+    }
+    for (IBufferElement buf : typeInfo.getBuffers()) {
+      if (buf.getName() != null)
+        bufs.putIfAbsent(lowercase(buf.getName()), buf);
+    }
+    for (ITableElement tbl : typeInfo.getTables()) {
+      if (tbl.getName() != null)
+        tts.putIfAbsent(lowercase(tbl.getName()), tbl);
+    }
+
+    if (parent != null) {
+      list.addAll(parent.hierarchy);
+      mthds.addAll(parent.methods);
+      visibleProps.addAll(parent.visibleProperties);
+      parent.properties.forEach(props::putIfAbsent);
+      parent.buffers.forEach(bufs::putIfAbsent);
+      parent.tempTables.forEach(tts::putIfAbsent);
+    }
+
+    this.hierarchy = Collections.unmodifiableList(list);
+    this.methods = mthds;
+    this.properties = props;
+    this.visibleProperties = visibleProps;
+    this.buffers = bufs;
+    this.tempTables = tts;
+  }
+
+  public ITypeInfo getTypeInfo() {
+    return typeInfo;
+  }
+
+  /**
+   * @return This class, then all super-classes found in the registry
+   */
+  public List<ITypeInfo> getHierarchy() {
+    return hierarchy;
+  }
+
+  public boolean hasMethod(String name) {
+    return methods.contains(lowercase(name));
+  }
+
+  /**
+   * Only public and protected properties are taken into account, as in {@link ITypeInfo#hasProperty(String)}
+   */
+  public boolean hasProperty(String name) {
+    return visibleProperties.contains(lowercase(name));
+  }
+
+  @Nullable
+  public IPropertyElement getProperty(String name) {
+    return properties.get(lowercase(name));
+  }
+
+  public boolean hasBuffer(String name) {
+    return buffers.containsKey(lowercase(name));
+  }
+
+  @Nullable
+  public IBufferElement getBuffer(String name) {
+    return buffers.get(lowercase(name));
+  }
+
+  public boolean hasTempTable(String name) {
+    return tempTables.containsKey(lowercase(name));
+  }
+
+  @Nullable
+  public ITableElement getTempTable(String name) {
+    return tempTables.get(lowercase(name));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Resolved type info %s - %d levels", typeInfo.getTypeName(), hierarchy.size());
+  }
+
+  private static String lowercase(String str) {
+    return str.toLowerCase(Locale.ENGLISH);
+  }
+}
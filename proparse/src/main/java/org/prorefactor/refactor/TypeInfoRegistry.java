@@ -0,0 +1,182 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.refactor;
+
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Strings;
+
+import eu.rssw.pct.elements.ITypeInfo;
+
+/**
+ * Thread-safe registry of ITypeInfo objects, indexed by class name. Reads are lock-free, and rcode can be injected
+ * from multiple threads at the same time. ABL class names being case-insensitive, objects are indexed by lowercase
+ * class name, and the original name is available from {@link ITypeInfo#getTypeName()}.
+ * <p>
+ * An optional loader can be attached, so that classes are only read when they're first needed. Results of the loader
+ * are memoized, including classes which can't be found.
+ * <p>
+ * Members of class hierarchies are flattened in {@link ResolvedTypeInfo} objects, built on first request. Those objects
+ * are discarded as soon as a class is injected in the registry.
+ */
+public class TypeInfoRegistry {
+  // Stop resolving super-classes at this depth (only reached with circular references)
+  private static final int MAX_DEPTH = 64;
+
+  // Indexed by lowercase class name
+  private final Map<String, ITypeInfo> types = new ConcurrentHashMap<>();
+  // Lowercase names of classes not found by the loader
+  private final Set<String> unknownTypes = ConcurrentHashMap.newKeySet();
+  private volatile Function<String, ITypeInfo> loader;
+  // Replaced (not cleared) on injection, so that views being built at the same time are not cached anymore
+  private volatile Map<String, ResolvedTypeInfo> resolved = new ConcurrentHashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+
+  /**
+   * Returns ITypeInfo object for this class name (case-insensitive)
+   */
+  @Nullable
+  public ITypeInfo get(String className) {
+    if (className == null)
+      return null;
+    ITypeInfo info = types.get(className.toLowerCase(Locale.ENGLISH));
+    if ((info == null) && (loader != null))
+      info = load(className);
+    if (info == null)
+      misses.increment();
+    else
+      hits.increment();
+
+    return info;
+  }
+
+  /**
+   * Attach loader, called when class name is not yet registered. Loader returns null if class can't be found, and may
+   * be called concurrently (and more than once for the same class).
+   */
+  public void setLoader(@Nullable Function<String, ITypeInfo> loader) {
+    this.loader = loader;
+    unknownTypes.clear();
+  }
+
+  private ITypeInfo load(String className) {
+    String key = className.toLowerCase(Locale.ENGLISH);
+    if (unknownTypes.contains(key))
+      return null;
+    ITypeInfo info = loader.apply(className);
+    if ((info == null) || (info.getTypeName() == null)
+        || !key.equals(info.getTypeName().toLowerCase(Locale.ENGLISH))) {
+      unknownTypes.add(key);
+      return null;
+    }
+    // No need to invalidate resolved views, as a view can't reference an unknown class
+    register(info);
+    loads.increment();
+    return info;
+  }
+
+  /**
+   * Register ITypeInfo object, replacing any previous object with the same class name (whatever the case)
+   */
+  public void put(ITypeInfo info) {
+    if ((info == null) || Strings.isNullOrEmpty(info.getTypeName()))
+      return;
+    register(info);
+    resolved = new ConcurrentHashMap<>();
+  }
+
+  private void register(ITypeInfo info) {
+    types.put(info.getTypeName().toLowerCase(Locale.ENGLISH), info);
+  }
+
+  public void putAll(Collection<ITypeInfo> coll) {
+    for (ITypeInfo info : coll) {
+      put(info);
+    }
+  }
+
+  /**
+   * Returns members of this class and all its super-classes. Result is cached, unless this ITypeInfo object is not
+   * registered.
+   */
+  @Nullable
+  public ResolvedTypeInfo resolve(@Nullable ITypeInfo info) {
+    return resolve(info, resolved, 0);
+  }
+
+  private ResolvedTypeInfo resolve(ITypeInfo info, Map<String, ResolvedTypeInfo> cache, int depth) {
+    if ((info == null) || Strings.isNullOrEmpty(info.getTypeName()))
+      return null;
+    String key = info.getTypeName().toLowerCase(Locale.ENGLISH);
+    ResolvedTypeInfo view = cache.get(key);
+    if ((view != null) && (view.getTypeInfo() == info))
+      return view;
+
+    ResolvedTypeInfo parent = depth < MAX_DEPTH ? resolve(get(info.getParentTypeName()), cache, depth + 1) : null;
+    view = new ResolvedTypeInfo(info, parent);
+    if (types.get(key) == info)
+      cache.put(key, view);
+    return view;
+  }
+
+  public boolean contains(String className) {
+    return (className != null) && types.containsKey(className.toLowerCase(Locale.ENGLISH));
+  }
+
+  /**
+   * @return Number of registered classes
+   */
+  public int size() {
+    return types.size();
+  }
+
+  /**
+   * @return Number of successful lookups
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * @return Number of failed lookups
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * @return Number of classes read by the loader
+   */
+  public long getLoads() {
+    return loads.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("TypeInfoRegistry - %d entries - %d hits - %d misses - %d loaded", size(), getHits(),
+        getMisses(), getLoads());
+  }
+}
@@ -20,13 +20,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.util.Collections;
 import java.util.List;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import org.antlr.v4.runtime.TokenSource;
+import org.prorefactor.core.ABLNodeType;
 import org.prorefactor.core.JPNodeMetrics;
+import org.prorefactor.core.NodeTypeIndex;
+import org.prorefactor.core.ProToken;
+import org.prorefactor.core.TokenCapture;
 import org.prorefactor.core.nodetypes.ProgramRootNode;
 import org.prorefactor.macrolevel.IncludeRef;
 import org.prorefactor.macrolevel.MacroLevel;
@@ -41,6 +46,8 @@ import org.prorefactor.refactor.RefactorSession;
 import org.prorefactor.treeparser01.ITreeParserAction;
 import org.prorefactor.treeparser01.TP01Support;
 import org.prorefactor.treeparser01.TreeParser01;
+import org.prorefactor.xref.CrossReference;
+import org.prorefactor.xref.CrossReference.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -66,6 +73,8 @@ public class ParseUnit {
   private final File file;
   private final InputStream input;
   private final String relativeName;
+  // Content of main file, only read once
+  private ByteSource byteSource;
 
   private IntegerIndex<String> fileNameList;
   private ProgramRootNode topNode;
@@ -75,8 +84,14 @@ public class ParseUnit {
   private TreeParserRootSymbolScope rootScope;
   private JPNodeMetrics metrics;
   private Document xref = null;
+  private CrossReference crossReference = null;
   private ITypeInfo typeInfo = null;
   private List<Integer> trxBlocks;
+  private TokenCapture tokenCapture;
+  private boolean timed;
+  // Elapsed time in parse(), in nanoseconds
+  private long lexerTime;
+  private long preprocessorTime;
   // TEMP-ANTLR4
   private ParserSupport support;
 
@@ -111,6 +126,15 @@ public class ParseUnit {
     return topNode;
   }
 
+  /**
+   * Index of syntax tree nodes by type, built on first call. Queries on top node are then answered from the index.
+   * 
+   * @see ProgramRootNode#getNodeTypeIndex()
+   */
+  public NodeTypeIndex getNodeTypeIndex() {
+    return topNode.getNodeTypeIndex();
+  }
+
   public JPNodeMetrics getMetrics() {
     return metrics;
   }
@@ -190,10 +214,54 @@ public class ParseUnit {
     LOGGER.trace("Exiting ParseUnit#lex()");
   }
 
+  /**
+   * Lex main file and keep type and position of each token. Metrics are also generated, as in
+   * {@link #lexAndGenerateMetrics()}. Only for files which are not parsed, as {@link #parse()} can capture tokens in
+   * its own lexer pass.
+   * 
+   * @throws UncheckedIOException If main file can't be opened
+   */
+  public TokenCapture lexAndCaptureTokens() {
+    LOGGER.trace("Entering ParseUnit#lexAndCaptureTokens()");
+    tokenCapture = new TokenCapture();
+    ProgressLexer lexer = new ProgressLexer(session, getByteSource(), relativeName, true, tokenCapture);
+    ProToken tok = (ProToken) lexer.nextToken();
+    while (tok.getNodeType() != ABLNodeType.EOF_ANTLR4) {
+      tok = (ProToken) lexer.nextToken();
+    }
+    this.metrics = lexer.getMetrics();
+    tokenCapture.setMetrics(metrics);
+    LOGGER.trace("Exiting ParseUnit#lexAndCaptureTokens()");
+    return tokenCapture;
+  }
+
+  /**
+   * Keep type and position of main file tokens read by the lexer during {@link #parse()}, so that syntax highlighting
+   * doesn't require another lexer pass. Has to be called before parse().
+   */
+  public void enableTokenCapture() {
+    tokenCapture = new TokenCapture();
+  }
+
+  /**
+   * @return Tokens captured during {@link #parse()} or {@link #lexAndCaptureTokens()}, or null if capture is not
+   *         enabled. Tokens are incomplete if parsing failed.
+   */
+  public @Nullable TokenCapture getTokenCapture() {
+    return tokenCapture;
+  }
+
+  /**
+   * Measure time spent in lexer and preprocessor during {@link #parse()}. Has to be called before parse().
+   */
+  public void enableTimings() {
+    timed = true;
+  }
+
   public void parse() throws ANTLRException {
     LOGGER.trace("Entering ParseUnit#parse()");
 
-    ProgressLexer lexer = new ProgressLexer(session, getByteSource(), relativeName, false);
+    ProgressLexer lexer = new ProgressLexer(session, getByteSource(), relativeName, false, tokenCapture, timed);
     ProParser parser = new ProParser(lexer.getANTLR2TokenStream(true));
     parser.initAntlr4(session, lexer.getFilenameList());
     parser.program();
@@ -205,12 +273,32 @@ public class ParseUnit {
     appBuilderCode = ((PreprocessorEventListener) lexer.getLstListener()).isAppBuilderCode();
     sections = ((PreprocessorEventListener) lexer.getLstListener()).getEditableCodeSections();
     metrics = lexer.getMetrics();
+    if (tokenCapture != null)
+      tokenCapture.setMetrics(metrics);
+    lexerTime = lexer.getLexerTime();
+    preprocessorTime = lexer.getPreprocessorTime();
     topNode = (ProgramRootNode) parser.getAST();
     support = parser.support;
 
     LOGGER.trace("Exiting ParseUnit#parse()");
   }
 
+  /**
+   * @return Time spent in the lexer during {@link #parse()}, in nanoseconds. Preprocessor time is excluded. Always 0
+   *         if {@link #enableTimings()} was not called.
+   */
+  public long getLexerTime() {
+    return lexerTime;
+  }
+
+  /**
+   * @return Time spent in preprocessor during {@link #parse()}, in nanoseconds. Preprocessor is executed on demand, as
+   *         the parser reads tokens. Always 0 if {@link #enableTimings()} was not called.
+   */
+  public long getPreprocessorTime() {
+    return preprocessorTime;
+  }
+
   /**
    * Run any IJPTreeParser against the AST. This will call parse() if the JPNode AST has not already been built.
    */
@@ -250,6 +338,10 @@ public class ParseUnit {
     this.xref = xref;
   }
 
+  public void attachXref(CrossReference xref) {
+    this.crossReference = xref;
+  }
+
   public void attachTypeInfo(ITypeInfo unit) {
     this.typeInfo = unit;
   }
@@ -258,11 +350,48 @@ public class ParseUnit {
     this.trxBlocks = blocks;
   }
 
+  /**
+   * @return XREF as a DOM object, only available when XREF has been loaded in DOM mode
+   * @see #getCrossReference()
+   */
   @Nullable
   public Document getXref() {
     return xref;
   }
 
+  /**
+   * @return Compact XREF model, or null if XREF has not been loaded or loaded in DOM mode
+   */
+  @Nullable
+  public CrossReference getCrossReference() {
+    return crossReference;
+  }
+
+  /**
+   * @return True if XREF is available, either as a DOM or a compact model
+   */
+  public boolean hasXref() {
+    return (xref != null) || (crossReference != null);
+  }
+
+  /**
+   * @return All references of this type (e.g. 'NEW-SHR-VARIABLE') from the compact XREF model. Empty list if not
+   *         available
+   */
+  @Nonnull
+  public List<Reference> getXrefReferences(String referenceType) {
+    if (crossReference == null)
+      return Collections.emptyList();
+    return crossReference.getReferences(referenceType);
+  }
+
+  /**
+   * @return Number of references of this type from the compact XREF model, 0 if not available
+   */
+  public int countXrefReferences(String referenceType) {
+    return crossReference == null ? 0 : crossReference.count(referenceType);
+  }
+
   @Nullable
   public ITypeInfo getTypeInfo() {
     return typeInfo;
@@ -296,8 +425,11 @@ public class ParseUnit {
   }
 
   private ByteSource getByteSource() {
+    if (byteSource != null)
+      return byteSource;
     try (InputStream stream = input == null ? new FileInputStream(file) : input) {
-      return ByteSource.wrap(ByteStreams.toByteArray(stream));
+      byteSource = ByteSource.wrap(ByteStreams.toByteArray(stream));
+      return byteSource;
     } catch (IOException caught) {
       throw new UncheckedIOException(caught);
     }
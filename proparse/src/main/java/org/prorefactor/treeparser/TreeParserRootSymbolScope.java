@@ -24,6 +24,7 @@ import org.prorefactor.core.schema.IField;
 import org.prorefactor.core.schema.ITable;
 import org.prorefactor.core.schema.Table;
 import org.prorefactor.refactor.RefactorSession;
+import org.prorefactor.refactor.ResolvedTypeInfo;
 import org.prorefactor.treeparser.symbols.Dataset;
 import org.prorefactor.treeparser.symbols.FieldBuffer;
 import org.prorefactor.treeparser.symbols.Routine;
@@ -34,6 +35,7 @@ import org.sonar.plugins.openedge.api.objects.RCodeTTWrapper;
 import com.google.common.base.Strings;
 
 import eu.rssw.pct.elements.IBufferElement;
+import eu.rssw.pct.elements.ITableElement;
 import eu.rssw.pct.elements.ITypeInfo;
 
 /**
@@ -157,12 +159,9 @@ public class TreeParserRootSymbolScope extends TreeParserSymbolScope {
       return var;
     }
 
-    ITypeInfo info = typeInfo;
-    while (info != null) {
-      if (info.hasProperty(name)) {
-        return new Variable(name, this);
-      }
-      info = refSession.getTypeInfo(info.getParentTypeName());
+    ResolvedTypeInfo info = refSession.getResolvedTypeInfo(typeInfo);
+    if ((info != null) && info.hasProperty(name)) {
+      return new Variable(name, this);
     }
     return null;
   }
@@ -195,23 +194,20 @@ public class TreeParserRootSymbolScope extends TreeParserSymbolScope {
       return buff;
     }
 
-    ITypeInfo info = typeInfo;
-    while (info != null) {
-      if (info.hasBuffer(name)) {
-        IBufferElement elem = info.getBuffer(name);
-        ITable tbl = null;
-        if (!Strings.isNullOrEmpty(elem.getDatabaseName())) {
-          tbl = refSession.getSchema().lookupTable(elem.getDatabaseName(), elem.getTableName());
-        } else {
-          tbl = lookupTempTable(elem.getTableName()).getTable();
-        }
-        if (tbl == null) {
-          // Defaults to fake temp-table
-          tbl = new Table(name, IConstants.ST_TTABLE);
-        }
-        return new TableBuffer(name, this, tbl);
+    ResolvedTypeInfo info = refSession.getResolvedTypeInfo(typeInfo);
+    IBufferElement elem = info == null ? null : info.getBuffer(name);
+    if (elem != null) {
+      ITable tbl = null;
+      if (!Strings.isNullOrEmpty(elem.getDatabaseName())) {
+        tbl = refSession.getSchema().lookupTable(elem.getDatabaseName(), elem.getTableName());
+      } else {
+        tbl = lookupTempTable(elem.getTableName()).getTable();
+      }
+      if (tbl == null) {
+        // Defaults to fake temp-table
+        tbl = new Table(name, IConstants.ST_TTABLE);
       }
-      info = refSession.getTypeInfo(info.getParentTypeName());
+      return new TableBuffer(name, this, tbl);
     }
     return null;
   }
@@ -222,12 +218,10 @@ public class TreeParserRootSymbolScope extends TreeParserSymbolScope {
     if (buff != null) {
       return buff;
     }
-    ITypeInfo info = typeInfo;
-    while (info != null) {
-      if (info.hasTempTable(name)) {
-        return new TableBuffer(name, this, new RCodeTTWrapper(info.getTempTable(name)));
-      }
-      info = refSession.getTypeInfo(info.getParentTypeName());
+    ResolvedTypeInfo info = refSession.getResolvedTypeInfo(typeInfo);
+    ITableElement tt = info == null ? null : info.getTempTable(name);
+    if (tt != null) {
+      return new TableBuffer(name, this, new RCodeTTWrapper(tt));
     }
     return null;
   }
@@ -0,0 +1,228 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.xref;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Compact in-memory representation of an XML XREF file. References are grouped by Reference-type, and attributes are
+ * stored in primitive arrays. {@link Reference} objects are only created when requested.
+ */
+public class CrossReference {
+  private static final ReferenceList EMPTY = new ReferenceList(new String[] {});
+
+  private final String[] sourceFiles;
+  private final Map<String, ReferenceList> references;
+
+  private CrossReference(String[] sourceFiles, Map<String, ReferenceList> references) {
+    this.sourceFiles = sourceFiles;
+    this.references = references;
+  }
+
+  /**
+   * @return Set of all Reference-type found in XREF file
+   */
+  public Set<String> getReferenceTypes() {
+    return Collections.unmodifiableSet(references.keySet());
+  }
+
+  /**
+   * @return Number of references of this type
+   */
+  public int count(String referenceType) {
+    return references.getOrDefault(referenceType, EMPTY).size;
+  }
+
+  /**
+   * @return Read-only list of references of this type, possibly empty. Reference objects are created on each call to
+   *         {@link List#get(int)}
+   */
+  @Nonnull
+  public List<Reference> getReferences(String referenceType) {
+    return new ReferenceView(referenceType, references.getOrDefault(referenceType, EMPTY));
+  }
+
+  /**
+   * One Reference element of the XREF file
+   */
+  public static class Reference {
+    private final String referenceType;
+    private final String sourceFile;
+    private final int fileNum;
+    private final int lineNum;
+    private final String objectIdentifier;
+
+    public Reference(String referenceType, String sourceFile, int fileNum, int lineNum, String objectIdentifier) {
+      this.referenceType = referenceType;
+      this.sourceFile = sourceFile;
+      this.fileNum = fileNum;
+      this.lineNum = lineNum;
+      this.objectIdentifier = objectIdentifier;
+    }
+
+    public String getReferenceType() {
+      return referenceType;
+    }
+
+    /**
+     * @return File-name attribute of the enclosing Source element
+     */
+    public String getSourceFile() {
+      return sourceFile;
+    }
+
+    /**
+     * @return File-num element, 1 being the main file
+     */
+    public int getFileNum() {
+      return fileNum;
+    }
+
+    public int getLineNum() {
+      return lineNum;
+    }
+
+    public String getObjectIdentifier() {
+      return objectIdentifier;
+    }
+
+    @Override
+    public String toString() {
+      return referenceType + " " + objectIdentifier + " in " + sourceFile + ":" + lineNum;
+    }
+  }
+
+  private class ReferenceView extends AbstractList<Reference> {
+    private final String referenceType;
+    private final ReferenceList list;
+
+    ReferenceView(String referenceType, ReferenceList list) {
+      this.referenceType = referenceType;
+      this.list = list;
+    }
+
+    @Override
+    public Reference get(int index) {
+      if ((index < 0) || (index >= list.size))
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + list.size);
+      return new Reference(referenceType, sourceFiles[list.sourceIndex[index]], list.fileNum[index],
+          list.lineNum[index], list.objectIds[list.objectIndex[index]]);
+    }
+
+    @Override
+    public int size() {
+      return list.size;
+    }
+  }
+
+  /**
+   * Columnar storage of all references of a given type
+   */
+  private static class ReferenceList {
+    private final String[] objectIds;
+    private int size;
+    private int[] sourceIndex;
+    private int[] fileNum;
+    private int[] lineNum;
+    private int[] objectIndex;
+
+    ReferenceList(String[] objectIds) {
+      this.objectIds = objectIds;
+      this.sourceIndex = new int[0];
+      this.fileNum = new int[0];
+      this.lineNum = new int[0];
+      this.objectIndex = new int[0];
+    }
+  }
+
+  /**
+   * Not thread-safe
+   */
+  public static class Builder {
+    private final List<String> sourceFiles = new ArrayList<>();
+    private final Map<String, GrowableList> references = new HashMap<>();
+    // Object identifiers are shared between all reference types
+    private final Map<String, Integer> objectIds = new HashMap<>();
+    private final List<String> objectIdsList = new ArrayList<>();
+
+    /**
+     * @return Index of this source file, to be used in {@link #addReference(String, int, int, int, String)}
+     */
+    public int addSourceFile(String fileName) {
+      sourceFiles.add(fileName);
+      return sourceFiles.size() - 1;
+    }
+
+    public Builder addReference(String referenceType, int sourceIndex, int fileNum, int lineNum,
+        String objectIdentifier) {
+      Integer objIdx = objectIds.get(objectIdentifier);
+      if (objIdx == null) {
+        objIdx = objectIdsList.size();
+        objectIds.put(objectIdentifier, objIdx);
+        objectIdsList.add(objectIdentifier);
+      }
+      references.computeIfAbsent(referenceType, key -> new GrowableList()).add(sourceIndex, fileNum, lineNum, objIdx);
+      return this;
+    }
+
+    public CrossReference build() {
+      String[] ids = objectIdsList.toArray(new String[objectIdsList.size()]);
+      Map<String, ReferenceList> map = new HashMap<>();
+      for (Map.Entry<String, GrowableList> entry : references.entrySet()) {
+        GrowableList src = entry.getValue();
+        ReferenceList list = new ReferenceList(ids);
+        list.size = src.size;
+        list.sourceIndex = Arrays.copyOf(src.sourceIndex, src.size);
+        list.fileNum = Arrays.copyOf(src.fileNum, src.size);
+        list.lineNum = Arrays.copyOf(src.lineNum, src.size);
+        list.objectIndex = Arrays.copyOf(src.objectIndex, src.size);
+        map.put(entry.getKey(), list);
+      }
+      return new CrossReference(sourceFiles.toArray(new String[sourceFiles.size()]), map);
+    }
+  }
+
+  private static class GrowableList {
+    private int size = 0;
+    private int[] sourceIndex = new int[16];
+    private int[] fileNum = new int[16];
+    private int[] lineNum = new int[16];
+    private int[] objectIndex = new int[16];
+
+    void add(int srcIdx, int fNum, int lNum, int objIdx) {
+      if (size == sourceIndex.length) {
+        int newSize = size * 2;
+        sourceIndex = Arrays.copyOf(sourceIndex, newSize);
+        fileNum = Arrays.copyOf(fileNum, newSize);
+        lineNum = Arrays.copyOf(lineNum, newSize);
+        objectIndex = Arrays.copyOf(objectIndex, newSize);
+      }
+      sourceIndex[size] = srcIdx;
+      fileNum[size] = fNum;
+      lineNum[size] = lNum;
+      objectIndex[size] = objIdx;
+      size++;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.xref;
+
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.common.base.Strings;
+import com.google.common.primitives.Ints;
+
+/**
+ * StAX reader of XML XREF files (as generated by COMPILE ... XREF-XML). Only Source and Reference elements are kept,
+ * in a {@link CrossReference} object. Thread-safe.
+ */
+public class XrefReader {
+  private static final String SOURCE_ELEMENT = "Source";
+  private static final String REFERENCE_ELEMENT = "Reference";
+  private static final String FILE_NAME_ATTR = "File-name";
+  private static final String REFERENCE_TYPE_ATTR = "Reference-type";
+  private static final String OBJECT_ID_ATTR = "Object-identifier";
+  private static final String FILE_NUM_ELEMENT = "File-num";
+  private static final String LINE_NUM_ELEMENT = "Line-num";
+
+  private final XMLInputFactory factory;
+
+  public XrefReader() {
+    factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+  }
+
+  /**
+   * Stream is not closed by this method
+   */
+  public CrossReference read(InputStream input) throws XMLStreamException {
+    CrossReference.Builder builder = new CrossReference.Builder();
+    XMLStreamReader reader = factory.createXMLStreamReader(input);
+    try {
+      int sourceIndex = -1;
+      int depth = 0;
+      // Depth of current Reference element, -1 if not in a Reference element
+      int refDepth = -1;
+      String refType = null;
+      String objId = null;
+      int fileNum = 0;
+      int lineNum = 0;
+
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+          String name = reader.getLocalName();
+          if ((refDepth == -1) && SOURCE_ELEMENT.equals(name)) {
+            sourceIndex = builder.addSourceFile(Strings.nullToEmpty(reader.getAttributeValue(null, FILE_NAME_ATTR)));
+          } else if ((refDepth == -1) && REFERENCE_ELEMENT.equals(name)) {
+            refDepth = depth;
+            refType = Strings.nullToEmpty(reader.getAttributeValue(null, REFERENCE_TYPE_ATTR));
+            objId = Strings.nullToEmpty(reader.getAttributeValue(null, OBJECT_ID_ATTR));
+            fileNum = 0;
+            lineNum = 0;
+          } else if ((refDepth != -1) && (depth == refDepth + 1) && FILE_NUM_ELEMENT.equals(name)) {
+            fileNum = parseInt(reader.getElementText());
+            depth--;
+          } else if ((refDepth != -1) && (depth == refDepth + 1) && LINE_NUM_ELEMENT.equals(name)) {
+            lineNum = parseInt(reader.getElementText());
+            depth--;
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          if (depth == refDepth) {
+            if (sourceIndex == -1)
+              sourceIndex = builder.addSourceFile("");
+            builder.addReference(refType, sourceIndex, fileNum, lineNum, objId);
+            refDepth = -1;
+          }
+          depth--;
+        }
+      }
+    } finally {
+      reader.close();
+    }
+
+    return builder.build();
+  }
+
+  private static int parseInt(String str) {
+    Integer val = Ints.tryParse(str.trim());
+    return val == null ? 0 : val;
+  }
+}
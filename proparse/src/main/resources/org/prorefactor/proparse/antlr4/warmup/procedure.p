@@ -0,0 +1,104 @@
+/* Common statements, used to fill ANTLR4 DFA before parsing real files */
+&SCOPED-DEFINE MAX_ROWS 10
+
+DEFINE INPUT  PARAMETER ipcName   AS CHARACTER NO-UNDO.
+DEFINE OUTPUT PARAMETER opiCount  AS INTEGER   NO-UNDO INITIAL 0.
+
+DEFINE VARIABLE cText   AS CHARACTER NO-UNDO FORMAT "x(20)" LABEL "Text".
+DEFINE VARIABLE iLoop   AS INTEGER   NO-UNDO.
+DEFINE VARIABLE dAmount AS DECIMAL   NO-UNDO DECIMALS 2 EXTENT 3.
+DEFINE VARIABLE lFlag   AS LOGICAL   NO-UNDO INITIAL TRUE.
+DEFINE VARIABLE hQuery  AS HANDLE    NO-UNDO.
+DEFINE VARIABLE oObject AS Progress.Lang.Object NO-UNDO.
+
+DEFINE TEMP-TABLE ttItem NO-UNDO
+  FIELD itemNum  AS INTEGER
+  FIELD itemName AS CHARACTER
+  FIELD price    AS DECIMAL
+  INDEX ix1 IS PRIMARY UNIQUE itemNum
+  INDEX ix2 itemName.
+DEFINE TEMP-TABLE ttLine NO-UNDO LIKE ttItem
+  FIELD qty AS INTEGER.
+DEFINE BUFFER bItem FOR ttItem.
+DEFINE QUERY qItem FOR ttItem SCROLLING.
+DEFINE DATASET dsItem FOR ttItem, ttLine
+  DATA-RELATION drItem FOR ttItem, ttLine RELATION-FIELDS (itemNum, itemNum).
+DEFINE STREAM sOut.
+DEFINE FRAME fMain cText iLoop WITH SIDE-LABELS.
+
+FUNCTION getLabel RETURNS CHARACTER (INPUT ipiNum AS INTEGER) FORWARD.
+
+DO iLoop = 1 TO {&MAX_ROWS}:
+  CREATE ttItem.
+  ASSIGN ttItem.itemNum  = iLoop
+         ttItem.itemName = SUBSTITUTE("Item &1", iLoop)
+         ttItem.price    = iLoop * 1.5.
+END.
+
+FOR EACH ttItem NO-LOCK WHERE ttItem.price > 2 AND ttItem.itemName BEGINS "I" BY ttItem.itemName DESCENDING:
+  opiCount = opiCount + 1.
+  IF ttItem.itemNum MODULO 2 = 0 THEN
+    NEXT.
+  ELSE IF ttItem.itemNum > 8 THEN
+    LEAVE.
+  dAmount[1] = dAmount[1] + ttItem.price.
+END.
+
+FIND FIRST bItem WHERE bItem.itemNum = 1 NO-ERROR.
+IF AVAILABLE bItem THEN
+  DISPLAY bItem.itemName bItem.price WITH FRAME fMain.
+FIND bItem WHERE bItem.itemNum = 2 EXCLUSIVE-LOCK NO-WAIT NO-ERROR.
+
+OPEN QUERY qItem FOR EACH ttItem NO-LOCK.
+GET FIRST qItem.
+DO WHILE AVAILABLE ttItem:
+  GET NEXT qItem.
+END.
+CLOSE QUERY qItem.
+
+CREATE QUERY hQuery.
+hQuery:SET-BUFFERS(BUFFER ttItem:HANDLE).
+hQuery:QUERY-PREPARE("FOR EACH ttItem").
+hQuery:QUERY-OPEN().
+hQuery:GET-FIRST().
+DELETE OBJECT hQuery.
+
+CASE ipcName:
+  WHEN "A" OR WHEN "B" THEN cText = "AB".
+  WHEN "C" THEN DO:
+    cText = getLabel(3).
+  END.
+  OTHERWISE cText = ?.
+END CASE.
+
+REPEAT TRANSACTION ON ERROR UNDO, LEAVE:
+  RUN internalProc (INPUT 1, OUTPUT cText).
+  LEAVE.
+END.
+
+OUTPUT STREAM sOut TO VALUE(SESSION:TEMP-DIRECTORY + "out.txt").
+PUT STREAM sOut UNFORMATTED cText SKIP.
+EXPORT STREAM sOut DELIMITER ";" iLoop lFlag.
+OUTPUT STREAM sOut CLOSE.
+
+MESSAGE "Count:" opiCount STRING(TODAY, "99/99/9999") VIEW-AS ALERT-BOX INFORMATION.
+oObject = NEW Progress.Lang.Object().
+IF VALID-OBJECT(oObject) THEN DELETE OBJECT oObject.
+
+CATCH e AS Progress.Lang.Error:
+  MESSAGE e:GetMessage(1).
+END CATCH.
+FINALLY:
+  EMPTY TEMP-TABLE ttItem.
+END FINALLY.
+
+PROCEDURE internalProc PRIVATE:
+  DEFINE INPUT  PARAMETER ipiNum AS INTEGER   NO-UNDO.
+  DEFINE OUTPUT PARAMETER opcTxt AS CHARACTER NO-UNDO.
+  opcTxt = TRIM(STRING(ipiNum)) + ENTRY(1, "a,b,c").
+  RETURN.
+END PROCEDURE.
+
+FUNCTION getLabel RETURNS CHARACTER (INPUT ipiNum AS INTEGER):
+  RETURN IF ipiNum > 0 THEN "Positive" ELSE "Negative".
+END FUNCTION.
@@ -0,0 +1,157 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.File;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.ProToken;
+import org.prorefactor.core.unittest.util.UnitTestModule;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+import org.prorefactor.refactor.RefactorSession;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import antlr.TokenStream;
+import antlr.TokenStreamException;
+import antlr.TokenStreamHiddenTokenFilter;
+
+/**
+ * Compares token stream sent to the ANTLR2 parser with the previous implementation (one copy of each token, then
+ * TokenStreamHiddenTokenFilter). Allocations are measured in the benchmarks module.
+ */
+public class ANTLR2TokenStreamTest {
+  private static final String SRC_DIR = "src/test/resources/data/bugsfixed";
+  // Files referencing missing include files
+  private static final Set<String> UNLEXABLE = ImmutableSet.of("escape_char2.p", "lex.p");
+
+  private RefactorSession session;
+  private List<File> files;
+
+  @BeforeTest
+  public void setUp() {
+    Injector injector = Guice.createInjector(new UnitTestModule());
+    session = injector.getInstance(RefactorSession.class);
+    files = new ArrayList<>();
+    for (File f : new File(SRC_DIR).listFiles()) {
+      if (f.getName().endsWith(".p") || f.getName().endsWith(".cls"))
+        files.add(f);
+    }
+  }
+
+  @Test
+  public void testCorpus() throws TokenStreamException {
+    int numFiles = 0;
+    for (File f : files) {
+      if (UNLEXABLE.contains(f.getName())) {
+        assertLexingFails(f, true);
+        assertLexingFails(f, false);
+        continue;
+      }
+      List<ProToken> expected = readAll(legacyStream(createLexer(f)));
+      List<ProToken> actual = readAll(createLexer(f).getANTLR2TokenStream(true));
+      numFiles++;
+      assertEquals(actual.size(), expected.size(), f.getName());
+      for (int zz = 0; zz < actual.size(); zz++) {
+        ProToken tok1 = expected.get(zz);
+        ProToken tok2 = actual.get(zz);
+        assertEquals(tok2.getNodeType(), tok1.getNodeType());
+        assertEquals(tok2.getText(), tok1.getText());
+        assertEquals(tok2.getFilename(), tok1.getFilename());
+        assertEquals(tok2.isSynthetic(), tok1.isSynthetic());
+        assertEquals(tok2, tok1);
+        assertSameChain(tok2.getPrev(), tok1.getPrev(), true);
+        assertSameChain(tok2.getNext(), tok1.getNext(), false);
+      }
+    }
+    assertTrue(numFiles > 10);
+  }
+
+  private void assertLexingFails(File file, boolean legacy) throws TokenStreamException {
+    try {
+      ProgressLexer lexer = createLexer(file);
+      readAll(legacy ? legacyStream(lexer) : lexer.getANTLR2TokenStream(true));
+      fail("Lexing " + file.getName() + " should fail");
+    } catch (UncheckedIOException expected) {
+      // Include file not found
+    }
+  }
+
+  private ProgressLexer createLexer(File file) {
+    return new ProgressLexer(session, Files.asByteSource(file), file.getPath(), false);
+  }
+
+  private static void assertSameChain(ProToken tok1, ProToken tok2, boolean before) {
+    while (tok1 != null) {
+      assertNotNull(tok2);
+      assertEquals(tok1, tok2);
+      tok1 = before ? tok1.getPrev() : tok1.getNext();
+      tok2 = before ? tok2.getPrev() : tok2.getNext();
+    }
+    assertNull(tok2);
+  }
+
+  private static List<ProToken> readAll(TokenStream stream) throws TokenStreamException {
+    List<ProToken> list = new ArrayList<>();
+    ProToken tok = (ProToken) stream.nextToken();
+    while (tok.getNodeType() != ABLNodeType.EOF) {
+      list.add(tok);
+      tok = (ProToken) stream.nextToken();
+    }
+    list.add(tok);
+    return list;
+  }
+
+  /**
+   * Previous implementation of ProgressLexer#getANTLR2TokenStream(true)
+   */
+  private static TokenStream legacyStream(ProgressLexer lexer) {
+    TokenStream wrapper = () -> {
+      org.prorefactor.proparse.antlr4.ProToken tok = (org.prorefactor.proparse.antlr4.ProToken) lexer.nextToken();
+      return new ProToken(tok.getNodeType() == ABLNodeType.EOF_ANTLR4 ? ABLNodeType.EOF : tok.getNodeType(),
+          tok.getText(), tok.getFileIndex(), Strings.nullToEmpty(lexer.getFilename(tok.getFileIndex())),
+          tok.getLine(), tok.getCharPositionInLine(), tok.getEndFileIndex(), tok.getEndLine(),
+          tok.getEndCharPositionInLine(), tok.getMacroSourceNum(), tok.getAnalyzeSuspend(), false,
+          tok.isMacroExpansion());
+    };
+    TokenStreamHiddenTokenFilter filter = new TokenStreamHiddenTokenFilter(wrapper);
+    filter.hide(ABLNodeType.WS.getType());
+    filter.hide(ABLNodeType.COMMENT.getType());
+    filter.hide(ABLNodeType.AMPMESSAGE.getType());
+    filter.hide(ABLNodeType.AMPANALYZESUSPEND.getType());
+    filter.hide(ABLNodeType.AMPANALYZERESUME.getType());
+    filter.hide(ABLNodeType.AMPGLOBALDEFINE.getType());
+    filter.hide(ABLNodeType.AMPSCOPEDDEFINE.getType());
+    filter.hide(ABLNodeType.AMPUNDEFINE.getType());
+    filter.hide(ABLNodeType.PROPARSEDIRECTIVE.getType());
+    return filter;
+  }
+}
@@ -0,0 +1,62 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.IConstants;
+import org.prorefactor.core.JPNode;
+import org.prorefactor.core.ProToken;
+import org.testng.annotations.Test;
+
+/**
+ * Attributes and links of JPNode objects. Memory footprint is measured by JPNodeBenchmark in the benchmarks module.
+ */
+public class JPNodeAttributesTest {
+  @Test
+  public void testAttributes() {
+    JPNode node = new JPNode(new ProToken(ABLNodeType.ID, "foo"));
+    assertEquals(node.attrGet(IConstants.OPERATOR), 0);
+    node.setOperator();
+    assertTrue(node.isOperator());
+    assertEquals(node.attrGet(IConstants.OPERATOR), IConstants.TRUE);
+    node.attrSet(IConstants.OPERATOR, IConstants.FALSE);
+    assertEquals(node.attrGet(IConstants.OPERATOR), IConstants.FALSE);
+
+    // Explicit value takes precedence over computed value
+    node.attrSet(IConstants.ABBREVIATED, IConstants.TRUE);
+    assertEquals(node.attrGet(IConstants.ABBREVIATED), IConstants.TRUE);
+    node.attrSet(IConstants.ABBREVIATED, IConstants.FALSE);
+    assertEquals(node.attrGet(IConstants.ABBREVIATED), IConstants.FALSE);
+
+    node.setStatementHead(5);
+    assertTrue(node.isStateHead());
+    assertEquals(node.getState2(), 5);
+    node.attrSet(IConstants.STORETYPE, IConstants.ST_DBTABLE);
+    node.attrSet(IConstants.STORETYPE, IConstants.ST_TTABLE);
+    assertEquals(node.attrGet(IConstants.STORETYPE), IConstants.ST_TTABLE);
+    assertEquals(node.getState2(), 5);
+
+    node.attrSet(IConstants.QUALIFIED_CLASS_INT, "rssw.Foo");
+    node.setLink(IConstants.COMMENTS, "// Comment");
+    assertEquals(node.attrGetS(IConstants.QUALIFIED_CLASS_INT), "rssw.Foo");
+    assertEquals(node.getComments(), "// Comment");
+    assertEquals(node.getLink(IConstants.QUALIFIED_CLASS_INT), null);
+    node.setLink(IConstants.COMMENTS, null);
+    assertEquals(node.getLink(IConstants.COMMENTS), null);
+  }
+}
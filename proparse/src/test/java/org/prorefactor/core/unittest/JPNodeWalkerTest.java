@@ -0,0 +1,145 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.ICallback;
+import org.prorefactor.core.JPNode;
+import org.prorefactor.core.JPNodeWalker;
+import org.prorefactor.core.ProToken;
+import org.prorefactor.core.unittest.util.UnitTestModule;
+import org.prorefactor.refactor.RefactorSession;
+import org.prorefactor.treeparser.ParseUnit;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import antlr.ANTLRException;
+
+public class JPNodeWalkerTest {
+  private static final String SRC_DIR = "src/test/resources/data/bugsfixed";
+
+  private RefactorSession session;
+
+  @BeforeTest
+  public void setUp() {
+    Injector injector = Guice.createInjector(new UnitTestModule());
+    session = injector.getInstance(RefactorSession.class);
+  }
+
+  @Test
+  public void testOperator() {
+    // 1 + 2, with a sibling which must not be visited
+    JPNode plus = new JPNode(new ProToken(ABLNodeType.PLUS, "+"));
+    plus.setOperator();
+    JPNode one = new JPNode(new ProToken(ABLNodeType.NUMBER, "1"));
+    JPNode two = new JPNode(new ProToken(ABLNodeType.NUMBER, "2"));
+    plus.addChild(one);
+    plus.addChild(two);
+    plus.setNextSibling(new JPNode(new ProToken(ABLNodeType.PERIOD, ".")));
+    NodeCollector collector = new NodeCollector(null);
+    plus.walk(collector);
+    assertEquals(collector.getResult().size(), 3);
+    assertEquals(collector.getResult().get(0), one);
+    assertEquals(collector.getResult().get(1), plus);
+    assertEquals(collector.getResult().get(2), two);
+  }
+
+  @Test
+  public void testDeepTree() {
+    JPNode root = new JPNode(new ProToken(ABLNodeType.DO, "DO"));
+    JPNode node = root;
+    for (int zz = 0; zz < 100000; zz++) {
+      JPNode child = new JPNode(new ProToken(ABLNodeType.DO, "DO"));
+      node.addChild(child);
+      node.addChild(new JPNode(new ProToken(ABLNodeType.PERIOD, ".")));
+      node = child;
+    }
+    NodeCollector collector = new NodeCollector(null);
+    JPNodeWalker.create().walk(root, collector::visitNode);
+    assertEquals(collector.getResult().size(), 200001);
+    assertEquals(collector.getResult().get(1).getNodeType(), ABLNodeType.DO);
+    assertEquals(collector.getResult().get(200000).getNodeType(), ABLNodeType.PERIOD);
+  }
+
+  @Test
+  public void testCorpus() {
+    JPNodeWalker<JPNode> walker = JPNodeWalker.create();
+    int numFiles = 0;
+    for (File f : new File(SRC_DIR).listFiles()) {
+      if (!f.getName().endsWith(".p") && !f.getName().endsWith(".cls"))
+        continue;
+      ParseUnit unit = new ParseUnit(f, session);
+      try {
+        unit.parse();
+      } catch (ANTLRException | RuntimeException uncaught) {
+        continue;
+      }
+      numFiles++;
+      for (ABLNodeType pruned : new ABLNodeType[] {null, ABLNodeType.DEFINE, ABLNodeType.PROCEDURE}) {
+        NodeCollector expected = new NodeCollector(pruned);
+        recursiveWalk(unit.getTopNode(), expected);
+        NodeCollector actual = new NodeCollector(pruned);
+        walker.walk(unit.getTopNode(), actual::visitNode);
+        assertEquals(actual.getResult(), expected.getResult(), f.getName());
+      }
+    }
+    assertTrue(numFiles > 10);
+  }
+
+  /**
+   * Previous implementation of JPNode#walk()
+   */
+  private static void recursiveWalk(JPNode node, ICallback<?> callback) {
+    if (node.isOperator()) {
+      recursiveWalk(node.getFirstChild(), callback);
+      callback.visitNode(node);
+      recursiveWalk(node.getFirstChild().getNextSibling(), callback);
+    } else if (callback.visitNode(node)) {
+      for (JPNode child : node.getDirectChildren()) {
+        recursiveWalk(child, callback);
+      }
+    }
+  }
+
+  private static class NodeCollector implements ICallback<List<JPNode>> {
+    private final List<JPNode> nodes = new ArrayList<>();
+    private final ABLNodeType pruned;
+
+    NodeCollector(ABLNodeType pruned) {
+      this.pruned = pruned;
+    }
+
+    @Override
+    public List<JPNode> getResult() {
+      return nodes;
+    }
+
+    @Override
+    public boolean visitNode(JPNode node) {
+      nodes.add(node);
+      return node.getNodeType() != pruned;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.ProToken;
+import org.prorefactor.core.unittest.util.UnitTestModule;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+import org.prorefactor.refactor.RefactorSession;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import antlr.TokenStream;
+import antlr.TokenStreamException;
+
+/**
+ * Keyword recognition from the lexer's buffer, compared with the previous implementation (map of keywords and all
+ * their abbreviations, built from node type definitions). Allocations are measured in the benchmarks module.
+ */
+public class KeywordLookupTest {
+  private static final String SRC_DIR = "src/test/resources/data/bugsfixed";
+
+  private RefactorSession session;
+  // Text of each ID or keyword token in the corpus
+  private List<StringBuilder> words;
+  // Previous implementation of keyword lookup
+  private Map<String, ABLNodeType> literals;
+
+  @BeforeTest
+  public void setUp() throws TokenStreamException, ReflectiveOperationException {
+    Injector injector = Guice.createInjector(new UnitTestModule());
+    session = injector.getInstance(RefactorSession.class);
+    words = new ArrayList<>();
+    for (File f : new File(SRC_DIR).listFiles()) {
+      if (!f.getName().endsWith(".p") && !f.getName().endsWith(".cls"))
+        continue;
+      // Lexer only, so that include files are not required
+      ProgressLexer lexer = new ProgressLexer(session, Files.asByteSource(f), f.getPath(), true);
+      TokenStream stream = lexer.getANTLR2TokenStream(true);
+      ProToken tok = (ProToken) stream.nextToken();
+      while (tok.getNodeType() != ABLNodeType.EOF) {
+        if ((tok.getNodeType() == ABLNodeType.ID) || tok.getNodeType().isKeyword())
+          words.add(new StringBuilder(tok.getText()));
+        tok = (ProToken) stream.nextToken();
+      }
+    }
+
+    literals = new HashMap<>();
+    for (ABLNodeType type : ABLNodeType.values()) {
+      if (type.isKeyword()) {
+        addAbbreviations(type.getText(), intField(type, "abbrMain"), type);
+        addAbbreviations(type.getAlternate(), intField(type, "abbrAlt1"), type);
+        addAbbreviations(type.getAlternate2(), intField(type, "abbrAlt2"), type);
+      }
+    }
+  }
+
+  @Test
+  public void testLiterals() {
+    assertSame(ABLNodeType.getLiteral("define"), ABLNodeType.DEFINE);
+    assertSame(ABLNodeType.getLiteral("DeF"), ABLNodeType.DEFINE);
+    assertSame(ABLNodeType.getLiteral(new StringBuilder("DEFI")), ABLNodeType.DEFINE);
+    assertNull(ABLNodeType.getLiteral("de"));
+    assertNull(ABLNodeType.getLiteral("definex"));
+    assertNull(ABLNodeType.getLiteral("défine"));
+    assertNull(ABLNodeType.getLiteral(""));
+    assertNull(ABLNodeType.getLiteral((CharSequence) null));
+    assertSame(ABLNodeType.getLiteral("xyz", ABLNodeType.ID), ABLNodeType.ID);
+    assertEquals(ABLNodeType.getFullText("def"), "DEFINE");
+    assertEquals(ABLNodeType.getTypeNum("DEFINE"), ABLNodeType.DEFINE.getType());
+    assertEquals(ABLNodeType.getTypeNum("xyz"), -1);
+
+    for (ABLNodeType type : ABLNodeType.values()) {
+      assertSame(ABLNodeType.getNodeType(type.getType()), type);
+      assertEquals(ABLNodeType.isKeywordType(type.getType()), type.isKeyword());
+      if (type.isKeyword()) {
+        assertSame(ABLNodeType.getLiteral(type.getText().toUpperCase()), type);
+        if (type.getAlternate() != null)
+          assertSame(ABLNodeType.getLiteral(type.getAlternate()), type);
+      }
+    }
+    assertSame(ABLNodeType.getNodeType(-100), ABLNodeType.INVALID_NODE);
+    assertSame(ABLNodeType.getNodeType(Integer.MAX_VALUE), ABLNodeType.INVALID_NODE);
+    assertFalse(ABLNodeType.isKeywordType(-100));
+  }
+
+  @Test
+  public void testAbbreviations() {
+    assertTrue(literals.size() > ABLNodeType.values().length);
+    for (Map.Entry<String, ABLNodeType> entry : literals.entrySet()) {
+      assertSame(ABLNodeType.getLiteral(entry.getKey()), entry.getValue(), entry.getKey());
+      assertSame(ABLNodeType.getLiteral(entry.getKey().toUpperCase()), entry.getValue(), entry.getKey());
+    }
+    // Every prefix of every keyword, so that abbreviations below minimum length are also checked
+    for (ABLNodeType type : ABLNodeType.values()) {
+      if (!type.isKeyword())
+        continue;
+      for (String str : new String[] {type.getText(), type.getAlternate(), type.getAlternate2()}) {
+        if (str == null)
+          continue;
+        for (int zz = 1; zz <= str.length(); zz++) {
+          String prefix = str.substring(0, zz);
+          assertSame(ABLNodeType.getLiteral(prefix), literals.get(prefix), prefix);
+        }
+        assertSame(ABLNodeType.getLiteral(str + "x"), literals.get(str + "x"), str + "x");
+      }
+    }
+    // Minimum length, and just below
+    assertSame(ABLNodeType.getLiteral("accum"), ABLNodeType.ACCUMULATE);
+    assertNull(ABLNodeType.getLiteral("accu"));
+    assertSame(ABLNodeType.getLiteral("ABS"), ABLNodeType.ABSOLUTE);
+    assertNull(ABLNodeType.getLiteral("AB"));
+  }
+
+  @Test
+  public void testCorpus() {
+    assertTrue(words.size() > 1000);
+    int numKeywords = 0;
+    for (StringBuilder word : words) {
+      ABLNodeType type = ABLNodeType.getLiteral(word, null);
+      assertSame(type, literals.get(word.toString().toLowerCase()), word.toString());
+      if (type != null)
+        numKeywords++;
+    }
+    assertTrue(numKeywords > 100);
+  }
+
+  private void addAbbreviations(String keyword, int minLength, ABLNodeType type) {
+    if (keyword == null)
+      return;
+    for (int zz = minLength; zz <= keyword.length(); zz++) {
+      // No duplicates allowed in definition
+      assertNull(literals.put(keyword.substring(0, zz).toLowerCase(), type), keyword.substring(0, zz));
+    }
+  }
+
+  private static int intField(ABLNodeType type, String name) throws ReflectiveOperationException {
+    Field f = ABLNodeType.class.getDeclaredField(name);
+    f.setAccessible(true);
+    return f.getInt(type);
+  }
+}
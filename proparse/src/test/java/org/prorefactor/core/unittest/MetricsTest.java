@@ -15,9 +15,16 @@
 package org.prorefactor.core.unittest;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.JPNodeMetrics;
+import org.prorefactor.core.JPNodeMetrics.LineType;
+import org.prorefactor.core.TokenCapture;
 import org.prorefactor.core.unittest.util.UnitTestModule;
 import org.prorefactor.refactor.RefactorSession;
 import org.prorefactor.treeparser.ParseUnit;
@@ -56,4 +63,104 @@ public class MetricsTest {
     assertEquals(unit.getMetrics().getComments(), 2);
   }
 
+  @Test
+  public void test03() throws ANTLRException, IOException {
+    ParseUnit unit = new ParseUnit(new FileInputStream("src/test/resources/data/include.p"), "include.p", session);
+    TokenCapture capture = unit.lexAndCaptureTokens();
+    // Include reference is a line of code when preprocessor is not used
+    assertEquals(capture.getMetrics().getLoc(), 3);
+    assertEquals(capture.getMetrics().getComments(), 6);
+    assertTrue(capture.size() > 0);
+    assertEquals(capture.getNodeType(0), ABLNodeType.COMMENT);
+    assertEquals(capture.getLine(0), 1);
+    assertEquals(capture.getColumn(0), 1);
+  }
+
+  @Test
+  public void test03Parse() throws ANTLRException, IOException {
+    ParseUnit unit = new ParseUnit(new FileInputStream("src/test/resources/data/include.p"), "include.p", session);
+    unit.enableTokenCapture();
+    unit.enableTimings();
+    unit.parse();
+    TokenCapture capture = unit.getTokenCapture();
+    // Tokens are captured by the parser's lexer pass, include reference is not a line of code
+    assertEquals(capture.getMetrics().getLoc(), 2);
+    assertEquals(capture.getMetrics().getComments(), 6);
+    int numIncludes = 0;
+    int numStrings = 0;
+    for (int zz = 0; zz < capture.size(); zz++) {
+      if (capture.getNodeType(zz) == ABLNodeType.INCLUDEDIRECTIVE) {
+        numIncludes++;
+        assertEquals(capture.getLine(zz), 4);
+        assertEquals(capture.getColumn(zz), 1);
+        assertEquals(capture.getEndLine(zz), 4);
+        assertEquals(capture.getEndColumn(zz), 9);
+      }
+      if (capture.getNodeType(zz) == ABLNodeType.QSTRING)
+        numStrings++;
+    }
+    assertEquals(numIncludes, 1);
+    // Nothing from inc.i
+    assertEquals(numStrings, 2);
+    // Include file is read by the preprocessor
+    assertTrue(unit.getLexerTime() > 0);
+    assertTrue(unit.getPreprocessorTime() > 0);
+  }
+
+  @Test
+  public void test03ParseNotTimed() throws ANTLRException, IOException {
+    ParseUnit unit = new ParseUnit(new FileInputStream("src/test/resources/data/include.p"), "include.p", session);
+    unit.parse();
+    assertEquals(unit.getLexerTime(), 0);
+    assertEquals(unit.getPreprocessorTime(), 0);
+  }
+
+  @Test
+  public void test04() throws ANTLRException {
+    ParseUnit unit = new ParseUnit(new File("src/test/resources/data/metrics.p"), session);
+    unit.lexAndGenerateMetrics();
+    JPNodeMetrics metrics = unit.getMetrics();
+
+    assertEquals(metrics.getLoc(), 5);
+    assertEquals(metrics.getComments(), 3);
+    // File ends with a newline
+    assertEquals(metrics.getNumLines(), 10);
+    assertEquals(metrics.getLineType(1), LineType.COMMENT);
+    assertEquals(metrics.getLineType(2), LineType.COMMENT);
+    assertEquals(metrics.getLineType(3), LineType.BLANK);
+    assertEquals(metrics.getLineType(4), LineType.PREPROCESSOR);
+    assertEquals(metrics.getLineType(5), LineType.PREPROCESSOR);
+    assertEquals(metrics.getLineType(6), LineType.CODE);
+    assertEquals(metrics.getLineType(7), LineType.PREPROCESSOR);
+    assertEquals(metrics.getLineType(8), LineType.BLANK);
+    assertEquals(metrics.getLineType(9), LineType.CODE);
+    assertEquals(metrics.getLineType(10), LineType.BLANK);
+    assertEquals(metrics.getLines(LineType.CODE), 2);
+    assertEquals(metrics.getLines(LineType.COMMENT), 2);
+    assertEquals(metrics.getLines(LineType.BLANK), 3);
+    assertEquals(metrics.getLines(LineType.PREPROCESSOR), 3);
+  }
+
+  @Test
+  public void test05() throws ANTLRException {
+    ParseUnit unit = new ParseUnit(new File("src/test/resources/data/metrics2.p"), session);
+    unit.lexAndGenerateMetrics();
+    JPNodeMetrics metrics = unit.getMetrics();
+
+    // Multi-line string, and trailing blank lines
+    assertEquals(metrics.getLoc(), 2);
+    assertEquals(metrics.getComments(), 1);
+    assertEquals(metrics.getNumLines(), 7);
+    assertEquals(metrics.getLineType(1), LineType.CODE);
+    assertEquals(metrics.getLineType(2), LineType.CODE);
+    assertEquals(metrics.getLineType(3), LineType.CODE);
+    assertEquals(metrics.getLineType(4), LineType.BLANK);
+    assertEquals(metrics.getLineType(5), LineType.COMMENT);
+    assertEquals(metrics.getLineType(6), LineType.BLANK);
+    assertEquals(metrics.getLineType(7), LineType.BLANK);
+    assertEquals(metrics.getLines(LineType.CODE), 3);
+    assertEquals(metrics.getLines(LineType.COMMENT), 1);
+    assertEquals(metrics.getLines(LineType.BLANK), 3);
+  }
+
 }
@@ -0,0 +1,83 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.JPNode;
+import org.prorefactor.core.NodeTypeIndex;
+import org.prorefactor.core.unittest.util.UnitTestModule;
+import org.prorefactor.refactor.RefactorSession;
+import org.prorefactor.treeparser.ParseUnit;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+import antlr.ANTLRException;
+
+public class NodeTypeIndexTest {
+  private static final String SRC_DIR = "src/test/resources/data/bugsfixed";
+
+  private RefactorSession session;
+
+  @BeforeTest
+  public void setUp() {
+    Injector injector = Guice.createInjector(new UnitTestModule());
+    session = injector.getInstance(RefactorSession.class);
+  }
+
+  @Test
+  public void testCorpus() throws ANTLRException {
+    int numFiles = 0;
+    for (File f : new File(SRC_DIR).listFiles()) {
+      if (!f.getName().endsWith(".p") && !f.getName().endsWith(".cls"))
+        continue;
+      ParseUnit unit = new ParseUnit(f, session);
+      try {
+        unit.parse();
+      } catch (ANTLRException | RuntimeException uncaught) {
+        continue;
+      }
+      numFiles++;
+      // Computed before index is built
+      List<JPNode> defines = unit.getTopNode().query(ABLNodeType.DEFINE);
+      List<JPNode> mainFile = unit.getTopNode().queryMainFile(ABLNodeType.IF, ABLNodeType.ID, ABLNodeType.PERIOD);
+      List<JPNode> stateHeads = unit.getTopNode().queryStateHead(ABLNodeType.DO, ABLNodeType.DEFINE);
+      List<JPNode> allStateHeads = unit.getTopNode().queryStateHead();
+      int size = unit.getTopNode().size();
+
+      NodeTypeIndex index = unit.getNodeTypeIndex();
+      assertSame(unit.getNodeTypeIndex(), index);
+      assertEquals(index.size(), size, f.getName());
+      assertEquals(index.count(ABLNodeType.DEFINE), defines.size());
+      assertEquals(index.query(ABLNodeType.DEFINE), defines);
+      assertEquals(index.queryMainFile(ABLNodeType.PERIOD, ABLNodeType.IF, ABLNodeType.ID), mainFile);
+      assertEquals(index.queryStateHead(ABLNodeType.DEFINE, ABLNodeType.DO, ABLNodeType.DO), stateHeads);
+      assertEquals(index.queryStateHead(), allStateHeads);
+      // Top node now uses index
+      assertEquals(unit.getTopNode().queryStateHead(ABLNodeType.DO, ABLNodeType.DEFINE), stateHeads);
+    }
+    assertTrue(numFiles > 10);
+  }
+
+}
@@ -0,0 +1,146 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.core.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.prorefactor.core.schema.Database;
+import org.prorefactor.core.schema.IDatabase;
+import org.prorefactor.core.schema.IField;
+import org.prorefactor.core.schema.ITable;
+import org.prorefactor.core.schema.Schema;
+import org.prorefactor.core.schema.Table;
+import org.prorefactor.core.unittest.util.SportsSchema;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+public class SchemaIndexTest {
+  private Schema schema;
+  private List<ITable> tables;
+
+  @BeforeTest
+  public void setUp() throws IOException {
+    schema = new SportsSchema();
+    tables = new ArrayList<>();
+    Iterator<ITable> iter = schema.getAllTablesIterator();
+    while (iter.hasNext()) {
+      tables.add(iter.next());
+    }
+  }
+
+  @Test
+  public void testTableAbbreviations() {
+    for (ITable table : tables) {
+      String name = table.getName();
+      for (int zz = 1; zz <= name.length(); zz++) {
+        String prefix = name.substring(0, zz);
+        assertSame(schema.lookupTable(prefix), lookupTable(tables, prefix), prefix);
+        assertSame(schema.lookupTable(prefix.toUpperCase()), lookupTable(tables, prefix), prefix);
+        String dbName = table.getDatabase().getName();
+        assertSame(schema.lookupTable(dbName, prefix), lookupTable(table.getDatabase().getTableSet(), prefix),
+            dbName + "." + prefix);
+      }
+    }
+    assertNull(schema.lookupTable("zzz"));
+    assertNull(schema.lookupTable("sports2000", "zzz"));
+    assertNull(schema.lookupTable("nodb", "customer"));
+  }
+
+  @Test
+  public void testUniqueness() {
+    assertNotNull(schema.lookupTable("cust"));
+    assertEquals(schema.lookupTable("cust").getName(), "Customer");
+    // BillTo and Bin
+    assertNull(schema.lookupTable("bi"));
+    assertEquals(schema.lookupTable("bil").getName(), "BillTo");
+    assertEquals(schema.lookupTable("sports2000", "CUSTOMER").getName(), "Customer");
+  }
+
+  @Test
+  public void testUnqualifiedFields() {
+    for (ITable table : tables) {
+      for (IField field : table.getFieldPosOrder()) {
+        String name = field.getName();
+        for (int zz = 1; zz <= name.length(); zz++) {
+          String prefix = name.substring(0, zz);
+          assertSame(schema.lookupUnqualifiedField(prefix), lookupUnqualifiedField(prefix), prefix);
+        }
+      }
+    }
+    assertNull(schema.lookupUnqualifiedField("zzzz"));
+  }
+
+  @Test
+  public void testDatabases() {
+    assertNotNull(schema.lookupDatabase("sports2000"));
+    assertSame(schema.lookupDatabase("SPORTS2000"), schema.lookupDatabase("sports2000"));
+    assertNull(schema.lookupDatabase("sports"));
+  }
+
+  @Test
+  public void testFromDatabases() {
+    Database db = new Database("db1");
+    db.add(new Table("tt1", db));
+    db.add(new Table("tt2", db));
+    db.add(new Table("xx", db));
+    Schema schema2 = new Schema(db);
+    assertNull(schema2.lookupTable("tt"));
+    assertEquals(schema2.lookupTable("x").getName(), "xx");
+    assertEquals(schema2.lookupTable("db1", "tt2").getName(), "tt2");
+    // Meta schema
+    assertNotNull(schema2.lookupTable("_file"));
+    assertNotNull(schema2.lookupTable("db1._file"));
+  }
+
+  /**
+   * Previous implementation, with a linear scan of sorted tables
+   */
+  private static ITable lookupTable(Iterable<ITable> set, String name) {
+    String lname = name.toLowerCase();
+    Iterator<ITable> it = set.iterator();
+    ITable table = null;
+    while (it.hasNext()) {
+      ITable t = it.next();
+      if (t.getName().toLowerCase().compareTo(lname) >= 0) {
+        table = t;
+        break;
+      }
+    }
+    if ((table == null) || !table.getName().toLowerCase().startsWith(lname))
+      return null;
+    if (table.getName().equalsIgnoreCase(name))
+      return table;
+    if (it.hasNext() && it.next().getName().toLowerCase().startsWith(lname))
+      return null;
+    return table;
+  }
+
+  private IField lookupUnqualifiedField(String name) {
+    for (ITable table : tables) {
+      IField field = table.lookupField(name);
+      if (field != null)
+        return field;
+    }
+    return null;
+  }
+}
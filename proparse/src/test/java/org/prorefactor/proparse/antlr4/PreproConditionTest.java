@@ -0,0 +1,127 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.proparse.antlr4;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.prorefactor.core.schema.Schema;
+import org.prorefactor.proparse.antlr4.PreprocessorParser.PreproIfEvalContext;
+import org.prorefactor.refactor.RefactorSession;
+import org.prorefactor.refactor.settings.IProparseSettings;
+import org.prorefactor.refactor.settings.ProparseSettings;
+import org.prorefactor.treeparser.ParseUnit;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.ByteSource;
+
+import antlr.ANTLRException;
+
+public class PreproConditionTest {
+  private static final int[] NO_DEFINED = new int[0];
+
+  private RefactorSession session;
+  private IProparseSettings settings;
+
+  @BeforeMethod
+  public void setUp() {
+    settings = new ProparseSettings("src/test/resources/data");
+    session = new RefactorSession(settings, new Schema());
+  }
+
+  @Test
+  public void testCompiled() {
+    String[] exprs = {
+        "TRUE", "NOT FALSE", "-1 GT -2", "(1 + 1 = 2) AND TRUE", "'abc' BEGINS 'AB'", "'abc ' = 'ABC'",
+        "'abcd' MATCHES 'a*d'", "'a' + 'b' <> 'ab'", "1 OR 0", "'' OR NOT ''", "3 - 5 < -1", "TRUE > FALSE",
+        "'abc' <= 'abd'", "2 >= 3"};
+    for (String expr : exprs) {
+      PreproIfEvalContext tree = parse(expr);
+      PreproCondition condition = new PreproCondition(tree, NO_DEFINED);
+      assertTrue(condition.isCompiled(), expr);
+      assertEquals(condition.evaluate(settings, NO_DEFINED), (boolean) new PreproEval(settings).visitPreproIfEval(tree),
+          expr);
+    }
+  }
+
+  @Test
+  public void testNotCompiled() {
+    String[] exprs = {"INTEGER('12') = 12", "1.5 > 1", "OPSYS = 'WIN32' OR TRUE", "? = ?", "2 * 3 = 6"};
+    for (String expr : exprs) {
+      PreproIfEvalContext tree = parse(expr);
+      PreproCondition condition = new PreproCondition(tree, NO_DEFINED);
+      assertFalse(condition.isCompiled(), expr);
+      assertEquals(condition.evaluate(settings, NO_DEFINED), (boolean) new PreproEval(settings).visitPreproIfEval(tree),
+          expr);
+    }
+  }
+
+  @Test
+  public void testDefined() {
+    // First token stands for DEFINED()
+    PreproCondition condition = new PreproCondition(parse("0 >= 2"), new int[] {0});
+    assertTrue(condition.isCompiled());
+    assertTrue(condition.evaluate(settings, new int[] {3}));
+    assertFalse(condition.evaluate(settings, new int[] {1}));
+    assertTrue(condition.evaluate(settings, new int[] {2}));
+
+    // Same on the PreproEval path
+    condition = new PreproCondition(parse("INTEGER(0) >= 2"), new int[] {2});
+    assertFalse(condition.isCompiled());
+    assertTrue(condition.evaluate(settings, new int[] {3}));
+    assertFalse(condition.evaluate(settings, new int[] {1}));
+    assertTrue(condition.evaluate(settings, new int[] {2}));
+  }
+
+  @Test
+  public void testSession() throws ANTLRException {
+    File file = new File("src/test/resources/data/preprocessor/preprocessor01.p");
+    ParseUnit unit1 = new ParseUnit(file, session);
+    unit1.parse();
+    PreproConditionCache cache = session.getPreproConditionCache();
+    long misses = cache.getStats().missCount();
+    long hits = cache.getStats().hitCount();
+    assertTrue(cache.size() > 0);
+
+    ParseUnit unit2 = new ParseUnit(file, session);
+    unit2.parse();
+    assertEquals(cache.getStats().missCount(), misses);
+    assertEquals(cache.getStats().hitCount(), hits + misses + hits);
+    assertEquals(unit2.getTopNode().size(), unit1.getTopNode().size());
+  }
+
+  private PreproIfEvalContext parse(String expr) {
+    ProgressLexer lexer = new ProgressLexer(session, ByteSource.wrap(expr.getBytes(StandardCharsets.UTF_8)), "expr.p",
+        true);
+    List<ProToken> tokens = new ArrayList<>();
+    Token tok = lexer.nextToken();
+    while (tok.getType() != Token.EOF) {
+      if (tok.getType() != PreprocessorParser.WS)
+        tokens.add((ProToken) tok);
+      tok = lexer.nextToken();
+    }
+    return new PreprocessorParser(new CommonTokenStream(new ListTokenSource(tokens))).preproIfEval();
+  }
+}
@@ -400,8 +400,8 @@ public class ANTLR4ParserTest {
         parser.addErrorListener(new DescriptiveErrorListener());
         tree = parser.program();
       }
-      JPNode root4 = new JPNodeVisitor(parser.getParserSupport(), (BufferedTokenStream) parser.getInputStream()).visit(
-          tree).build(parser.getParserSupport());
+      JPNode root4 = new JPNodeVisitor(parser.getParserSupport(), (BufferedTokenStream) parser.getInputStream()).buildTree(
+          tree);
       displayParseInfo(parser.getParseInfo());
       displayRootNode4(root4, parser.getParserSupport(), "target/antlr4.txt");
 
@@ -0,0 +1,181 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.proparse.antlr4.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.prorefactor.core.ABLNodeType;
+import org.prorefactor.core.unittest.util.UnitTestModule;
+import org.prorefactor.proparse.antlr4.JPNode;
+import org.prorefactor.proparse.antlr4.JPNodeVisitor;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+import org.prorefactor.proparse.antlr4.Proparse.BlockorstateContext;
+import org.prorefactor.proparse.antlr4.Proparse.Class_blockorstateContext;
+import org.prorefactor.proparse.antlr4.TwoStageParser;
+import org.prorefactor.refactor.RefactorSession;
+import org.testng.annotations.BeforeTest;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+public class JPNodeBuilderTest {
+  private static final String SRC_DIR = "src/test/resources/data/bugsfixed";
+
+  private RefactorSession session;
+
+  @BeforeTest
+  public void setUp() {
+    Injector injector = Guice.createInjector(new UnitTestModule());
+    session = injector.getInstance(RefactorSession.class);
+  }
+
+  @Test
+  public void testLongTrees() {
+    JPNode.Builder root = new JPNode.Builder(ABLNodeType.CODE_BLOCK);
+    JPNode.Builder last = new JPNode.Builder(ABLNodeType.PERIOD, ".");
+    root.setDown(last);
+    for (int zz = 1; zz < 100000; zz++) {
+      last = last.setRight(new JPNode.Builder(ABLNodeType.PERIOD, ".")).getRight();
+    }
+    JPNode.Builder deep = new JPNode.Builder(ABLNodeType.DO, "DO");
+    last.setRight(deep);
+    for (int zz = 0; zz < 100000; zz++) {
+      JPNode.Builder child = new JPNode.Builder(ABLNodeType.DO, "DO");
+      deep.setDown(child);
+      deep = child;
+    }
+
+    JPNode node = root.build();
+    assertEquals(node.getNumberOfChildren(), 100001);
+    assertEquals(node.getFirstChild().getParent(), node);
+    JPNode lastChild = node.getDirectChildren().get(100000);
+    assertEquals(lastChild.getPreviousSibling().getNodeType(), ABLNodeType.PERIOD);
+    int depth = 0;
+    for (JPNode child = lastChild; child != null; child = child.getFirstChild()) {
+      depth++;
+    }
+    assertEquals(depth, 100001);
+    // Builders are released
+    assertNull(root.getDown());
+  }
+
+  @Test
+  public void testBuildStatements() {
+    JPNode.Builder stmt1 = new JPNode.Builder(ABLNodeType.DEFINE, "DEFINE").setStatement(ABLNodeType.VARIABLE);
+    stmt1.setDown(new JPNode.Builder(ABLNodeType.VARIABLE, "VARIABLE")).getDown().setRight(
+        new JPNode.Builder(ABLNodeType.ID, "x"));
+    JPNode.Builder stmt2 = new JPNode.Builder(ABLNodeType.PERIOD, ".");
+    stmt1.setRight(stmt2);
+
+    assertEquals(stmt1.buildStatements(), stmt1);
+    assertNull(stmt1.getDown());
+    assertEquals(stmt1.getRight(), stmt2);
+    try {
+      stmt1.setDown(new JPNode.Builder(ABLNodeType.ID, "y"));
+      throw new AssertionError("Builder shouldn't be modified once built");
+    } catch (IllegalStateException expected) {
+      // Nothing
+    }
+
+    JPNode node = new JPNode.Builder(ABLNodeType.CODE_BLOCK).setDown(stmt1).build();
+    assertEquals(node.getNumberOfChildren(), 2);
+    JPNode define = node.getFirstChild();
+    assertTrue(define.isStateHead());
+    assertEquals(define.getState2(), ABLNodeType.VARIABLE.getType());
+    assertEquals(define.getParent(), node);
+    assertEquals(define.getNumberOfChildren(), 2);
+    assertEquals(define.getFirstChild().getNextSibling().getText(), "x");
+    assertEquals(define.getNextSibling().getNodeType(), ABLNodeType.PERIOD);
+    assertFalse(define.getNextSibling().isStateHead());
+  }
+
+  @Test
+  public void testCorpus() {
+    // Statement by statement generation gives the same tree as one single build at the end
+    TwoStageParser parser = session.getTwoStageParser();
+    int numFiles = 0;
+    for (File f : new File(SRC_DIR).listFiles()) {
+      if (!f.getName().endsWith(".p") && !f.getName().endsWith(".cls"))
+        continue;
+      String expected;
+      String actual;
+      try {
+        TwoStageParser.Result result = parser.parse(createLexer(f));
+        expected = dump(new ReferenceVisitor(result).visit(result.getTree()).build());
+        result = parser.parse(createLexer(f));
+        actual = dump(new JPNodeVisitor(result.getParserSupport(), result.getTokenStream()).buildTree(
+            result.getTree()));
+      } catch (RuntimeException uncaught) {
+        // Lexer errors, not related to tree generation
+        continue;
+      }
+      numFiles++;
+      assertEquals(actual, expected, f.getName());
+    }
+    assertTrue(numFiles > 10);
+  }
+
+  private ProgressLexer createLexer(File file) {
+    ProgressLexer lexer = new ProgressLexer(session, Files.asByteSource(file), file.getPath(), false);
+    lexer.setMergeNameDotInId(true);
+    return lexer;
+  }
+
+  private static String dump(JPNode node) {
+    StringBuilder sb = new StringBuilder();
+    dump(node, sb);
+    return sb.toString();
+  }
+
+  private static void dump(JPNode node, StringBuilder sb) {
+    sb.append('(').append(node.getNodeType()).append(' ').append(node.getText()).append(' ').append(
+        node.getLine()).append(':').append(node.getColumn());
+    if (node.isStateHead())
+      sb.append(" S").append(node.getState2());
+    if (node.isOperator())
+      sb.append(" O");
+    for (JPNode child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      sb.append(' ');
+      dump(child, sb);
+    }
+    sb.append(')');
+  }
+
+  /**
+   * Doesn't generate JPNode objects before the end of the visitor
+   */
+  private static class ReferenceVisitor extends JPNodeVisitor {
+    ReferenceVisitor(TwoStageParser.Result result) {
+      super(result.getParserSupport(), result.getTokenStream());
+    }
+
+    @Override
+    public JPNode.Builder visitBlockorstate(BlockorstateContext ctx) {
+      return visitChildren(ctx);
+    }
+
+    @Override
+    public JPNode.Builder visitClass_blockorstate(Class_blockorstateContext ctx) {
+      return visitChildren(ctx);
+    }
+  }
+}
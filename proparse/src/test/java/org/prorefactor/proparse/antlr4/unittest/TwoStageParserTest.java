@@ -0,0 +1,154 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.proparse.antlr4.unittest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.prorefactor.core.unittest.util.UnitTestModule;
+import org.prorefactor.proparse.antlr4.ProgressLexer;
+import org.prorefactor.proparse.antlr4.Proparse;
+import org.prorefactor.proparse.antlr4.ProparseErrorStrategy;
+import org.prorefactor.proparse.antlr4.TwoStageParser;
+import org.prorefactor.refactor.RefactorSession;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+
+public class TwoStageParserTest {
+  private static final String SRC_DIR = "src/test/resources/data/bugsfixed";
+
+  private RefactorSession session;
+
+  @BeforeMethod
+  public void setUp() {
+    Injector injector = Guice.createInjector(new UnitTestModule());
+    session = injector.getInstance(RefactorSession.class);
+  }
+
+  @Test
+  public void testSameSession() {
+    assertNotNull(session.getTwoStageParser());
+    assertTrue(session.getTwoStageParser() == session.getTwoStageParser());
+  }
+
+  @Test
+  public void testWarmUp() {
+    TwoStageParser parser = session.getTwoStageParser();
+    assertEquals(parser.getDFASize(), 0);
+    assertEquals(parser.warmUp(), 2);
+    assertTrue(parser.getDFASize() > 0);
+    // Not part of statistics
+    assertEquals(parser.getParseCount(), 0);
+    assertEquals(parser.getFallbackCount(), 0);
+
+    // Bundled files are expected to be parsed in SLL mode
+    for (String str : new String[] {"warmup/procedure.p", "warmup/SampleClass.cls"}) {
+      ByteSource src = com.google.common.io.Resources.asByteSource(TwoStageParser.class.getResource(str));
+      TwoStageParser.Result result = parser.parse(createLexer(src, str));
+      assertFalse(result.isFallback(), str);
+      assertEquals(result.getParser().getNumberOfSyntaxErrors(), 0, str);
+    }
+    parser.clearDFA();
+    assertEquals(parser.getDFASize(), 0);
+  }
+
+  @Test
+  public void testFallback() {
+    TwoStageParser parser = session.getTwoStageParser();
+    TwoStageParser.Result result = parser.parse(
+        createLexer(ByteSource.wrap("define variable x as. message 'x'.".getBytes()), "fallback.p"));
+    assertTrue(result.isFallback());
+    assertNotNull(result.getTree());
+    assertTrue(result.getTree().getChildCount() > 0);
+    assertEquals(parser.getParseCount(), 1);
+    assertEquals(parser.getFallbackCount(), 1);
+    assertEquals(parser.getFallbackTriggers().size(), 1);
+    assertEquals(parser.getFallbackTriggers().values().iterator().next().longValue(), 1L);
+
+    result = parser.parse(createLexer(ByteSource.wrap("message 'x'.".getBytes()), "nofallback.p"));
+    assertFalse(result.isFallback());
+    assertEquals(parser.getParseCount(), 2);
+    assertEquals(parser.getFallbackCount(), 1);
+  }
+
+  @Test
+  public void testCorpus() throws Exception {
+    // Same trees as a single LL parse, also when shared DFA is used from multiple threads
+    Map<String, String> expected = new HashMap<>();
+    List<File> files = new ArrayList<>();
+    for (File f : new File(SRC_DIR).listFiles()) {
+      if (!f.getName().endsWith(".p") && !f.getName().endsWith(".cls"))
+        continue;
+      try {
+        ProgressLexer lexer = createLexer(Files.asByteSource(f), f.getPath());
+        Proparse parser = new Proparse(new CommonTokenStream(lexer));
+        parser.initAntlr4(session, lexer.getFilenameList());
+        parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+        parser.setErrorHandler(new ProparseErrorStrategy());
+        parser.removeErrorListeners();
+        expected.put(f.getPath(), parser.program().toStringTree(parser));
+        files.add(f);
+      } catch (RuntimeException uncaught) {
+        // Lexer errors, not related to parser
+      }
+    }
+    assertTrue(files.size() > 10);
+
+    TwoStageParser parser = session.getTwoStageParser();
+    ExecutorService service = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int zz = 0; zz < 4; zz++) {
+        for (File f : files) {
+          results.add(service.submit(() -> {
+            TwoStageParser.Result result = parser.parse(createLexer(Files.asByteSource(f), f.getPath()));
+            return result.getTree().toStringTree(result.getParser());
+          }));
+        }
+      }
+      for (int zz = 0; zz < results.size(); zz++) {
+        File f = files.get(zz % files.size());
+        assertEquals(results.get(zz).get(), expected.get(f.getPath()), f.getName());
+      }
+    } finally {
+      service.shutdown();
+    }
+    assertEquals(parser.getParseCount(), 4 * files.size());
+  }
+
+  private ProgressLexer createLexer(ByteSource src, String fileName) {
+    ProgressLexer lexer = new ProgressLexer(session, src, fileName, false);
+    lexer.setMergeNameDotInId(true);
+    return lexer;
+  }
+}
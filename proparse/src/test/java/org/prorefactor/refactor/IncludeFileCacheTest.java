@@ -0,0 +1,92 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.refactor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.prorefactor.core.schema.Schema;
+import org.prorefactor.refactor.IncludeFileCache.IncludeFileContent;
+import org.prorefactor.refactor.settings.ProparseSettings;
+import org.prorefactor.treeparser.ParseUnit;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+import antlr.ANTLRException;
+
+public class IncludeFileCacheTest {
+
+  @Test
+  public void testCache() throws IOException {
+    File tmp = File.createTempFile("inc", ".i");
+    tmp.deleteOnExit();
+    Files.write("MESSAGE 'Hello'.", tmp, StandardCharsets.UTF_8);
+
+    IncludeFileCache cache = new IncludeFileCache();
+    IncludeFileContent content1 = cache.get(tmp, StandardCharsets.UTF_8);
+    assertEquals(content1.getContent(), "MESSAGE 'Hello'.");
+    assertFalse(content1.isXCoded());
+    assertSame(cache.get(tmp, StandardCharsets.UTF_8), content1);
+    assertEquals(cache.getStats().hitCount(), 1);
+    assertEquals(cache.getStats().missCount(), 1);
+
+    // Different size, so not served from cache
+    Files.write("MESSAGE 'Hello world'.", tmp, StandardCharsets.UTF_8);
+    assertEquals(cache.get(tmp, StandardCharsets.UTF_8).getContent(), "MESSAGE 'Hello world'.");
+    assertEquals(cache.getStats().missCount(), 2);
+  }
+
+  @Test
+  public void testXCode() throws IOException {
+    File tmp = File.createTempFile("xcode", ".i");
+    tmp.deleteOnExit();
+    Files.write(new byte[] {0x11, 0x20, 0x20}, tmp);
+
+    IncludeFileContent content = new IncludeFileCache().get(tmp, StandardCharsets.UTF_8);
+    assertTrue(content.isXCoded());
+    assertNull(content.getContent());
+  }
+
+  @Test
+  public void testDisabled() throws IOException {
+    File tmp = File.createTempFile("inc", ".i");
+    tmp.deleteOnExit();
+    Files.write("MESSAGE 'Hello'.", tmp, StandardCharsets.UTF_8);
+
+    IncludeFileCache cache = new IncludeFileCache(0);
+    assertEquals(cache.get(tmp, StandardCharsets.UTF_8).getContent(), "MESSAGE 'Hello'.");
+    assertEquals(cache.get(tmp, StandardCharsets.UTF_8).getContent(), "MESSAGE 'Hello'.");
+    assertEquals(cache.size(), 0);
+  }
+
+  @Test
+  public void testSession() throws ANTLRException {
+    RefactorSession session = new RefactorSession(new ProparseSettings("src/test/resources/data"), new Schema());
+    new ParseUnit(new File("src/test/resources/data/include.p"), session).parse();
+    long misses = session.getIncludeFileCache().getStats().missCount();
+    assertTrue(misses > 0);
+    new ParseUnit(new File("src/test/resources/data/include.p"), session).parse();
+    assertEquals(session.getIncludeFileCache().getStats().missCount(), misses);
+    assertEquals(session.getIncludeFileCache().getStats().hitCount(), misses);
+  }
+}
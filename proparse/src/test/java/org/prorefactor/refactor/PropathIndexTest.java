@@ -0,0 +1,81 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.refactor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.prorefactor.core.schema.Schema;
+import org.prorefactor.refactor.settings.ProparseSettings;
+import org.testng.annotations.Test;
+
+import com.google.common.io.Files;
+
+public class PropathIndexTest {
+
+  @Test
+  public void testFind() {
+    PropathIndex index = new PropathIndex(Arrays.asList("src/test/resources/data/xref", "src/test/resources/data"));
+    assertEquals(index.find("inc.i"), "src/test/resources/data" + File.separatorChar + "inc.i");
+    assertEquals(index.find("rssw/pct/ScopeTest.cls"),
+        "src/test/resources/data" + File.separatorChar + "rssw/pct/ScopeTest.cls");
+    assertEquals(index.find("shared.p.xref"), "src/test/resources/data/xref" + File.separatorChar + "shared.p.xref");
+    assertNull(index.find("foobar.i"));
+    assertNull(index.find("foo/bar.i"));
+    assertEquals(index.getMisses(), 5);
+    assertEquals(index.getHits(), 0);
+
+    // Second lookups are served from memory
+    assertNotNull(index.find("inc.i"));
+    assertNull(index.find("foobar.i"));
+    assertEquals(index.getMisses(), 5);
+    assertEquals(index.getHits(), 2);
+
+    // Relative segments are not resolved from directory listings
+    assertEquals(index.find("xref/../inc.i"), "src/test/resources/data" + File.separatorChar + "xref/../inc.i");
+  }
+
+  @Test
+  public void testInvalidate() throws IOException {
+    File dir = Files.createTempDir();
+    PropathIndex index = new PropathIndex(Arrays.asList(dir.getAbsolutePath()));
+    assertNull(index.find("test.i"));
+    File file = new File(dir, "test.i");
+    Files.write(new byte[] {}, file);
+    // Negative results are cached
+    assertNull(index.find("test.i"));
+    index.invalidate();
+    assertEquals(index.find("test.i"), file.getAbsolutePath());
+
+    file.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testSession() {
+    RefactorSession session = new RefactorSession(new ProparseSettings("src/test/resources/data"), new Schema());
+    assertNotNull(session.findFileForClassName("rssw.pct.ScopeTest"));
+    assertNull(session.findFileForClassName("rssw.pct.FooBar"));
+    assertEquals(session.findFile("inc.i"), "src/test/resources/data" + File.separatorChar + "inc.i");
+    assertEquals(session.findFile("foobar.i"), "");
+    assertNull(session.findFile3("foobar.i"));
+    assertEquals(session.getPropathIndex().getDirectoryCount(), 2);
+  }
+}
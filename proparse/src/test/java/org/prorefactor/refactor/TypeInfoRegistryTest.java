@@ -0,0 +1,182 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.refactor;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.EnumSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import eu.rssw.pct.ProgressClasses;
+import eu.rssw.pct.elements.AccessType;
+import eu.rssw.pct.elements.IParameter;
+import eu.rssw.pct.elements.IPropertyElement;
+import eu.rssw.pct.elements.ITypeInfo;
+import eu.rssw.pct.elements.v11.BufferElementV11;
+import eu.rssw.pct.elements.v11.MethodElementV11;
+import eu.rssw.pct.elements.v11.PropertyElementV11;
+import eu.rssw.pct.elements.v11.TypeInfoV11;
+import eu.rssw.pct.elements.v11.VariableElementV11;
+
+public class TypeInfoRegistryTest {
+
+  @Test
+  public void testLookup() {
+    TypeInfoRegistry registry = new TypeInfoRegistry();
+    registry.putAll(ProgressClasses.getProgressClasses());
+    assertEquals(registry.size(), 1);
+    assertNotNull(registry.get("Progress.Lang.Object"));
+    assertSame(registry.get("progress.lang.object"), registry.get("Progress.Lang.Object"));
+    assertNull(registry.get("Progress.Lang.Class"));
+    assertNull(registry.get(null));
+    assertTrue(registry.contains("PROGRESS.LANG.OBJECT"));
+    assertFalse(registry.contains("Progress.Lang.Class"));
+    assertEquals(registry.getHits(), 3);
+    assertEquals(registry.getMisses(), 1);
+
+    // Re-injection replaces previous entry
+    ITypeInfo info = new TypeInfoV11("Progress.Lang.Object", null, null, 0);
+    registry.put(info);
+    assertEquals(registry.size(), 1);
+    assertSame(registry.get("progress.lang.object"), info);
+
+    // Whatever the case
+    ITypeInfo info2 = new TypeInfoV11("PROGRESS.LANG.OBJECT", null, null, 0);
+    registry.put(info2);
+    assertEquals(registry.size(), 1);
+    assertSame(registry.get("Progress.Lang.Object"), info2);
+    assertSame(registry.get("PROGRESS.LANG.OBJECT"), info2);
+    assertEquals(registry.get("progress.lang.object").getTypeName(), "PROGRESS.LANG.OBJECT");
+  }
+
+  @Test
+  public void testConcurrentInjection() throws InterruptedException {
+    TypeInfoRegistry registry = new TypeInfoRegistry();
+    ExecutorService service = Executors.newFixedThreadPool(8);
+    for (int zz = 0; zz < 10000; zz++) {
+      final int num = zz;
+      service.submit(() -> registry.put(new TypeInfoV11("rssw.Class" + num, null, null, 0)));
+    }
+    service.shutdown();
+    assertTrue(service.awaitTermination(1, TimeUnit.MINUTES));
+    assertEquals(registry.size(), 10000);
+    assertNotNull(registry.get("RSSW.CLASS9999"));
+  }
+
+  @Test
+  public void testLoader() {
+    TypeInfoRegistry registry = new TypeInfoRegistry();
+    AtomicInteger numCalls = new AtomicInteger();
+    registry.setLoader(name -> {
+      numCalls.incrementAndGet();
+      if ("rssw.Child".equalsIgnoreCase(name))
+        return new TypeInfoV11("rssw.Child", "rssw.Parent", null, 0);
+      if ("rssw.Parent".equalsIgnoreCase(name))
+        return new TypeInfoV11("rssw.Parent", null, null, 0);
+      // Wrong class name returned by loader
+      if ("rssw.Other".equalsIgnoreCase(name))
+        return new TypeInfoV11("rssw.Something", null, null, 0);
+      return null;
+    });
+    assertEquals(registry.size(), 0);
+
+    ITypeInfo child = registry.get("rssw.child");
+    assertNotNull(child);
+    assertEquals(registry.size(), 1);
+    assertSame(registry.get("rssw.Child"), child);
+    assertEquals(numCalls.get(), 1);
+    // Super-types loaded on demand
+    assertNotNull(registry.get(child.getParentTypeName()));
+    assertEquals(numCalls.get(), 2);
+
+    // Negative results are memoized
+    assertNull(registry.get("rssw.Unknown"));
+    assertNull(registry.get("RSSW.UNKNOWN"));
+    assertNull(registry.get("rssw.Other"));
+    assertNull(registry.get("rssw.Other"));
+    assertEquals(numCalls.get(), 4);
+    assertEquals(registry.getLoads(), 2);
+    assertFalse(registry.contains("rssw.Unknown"));
+
+    // Injected classes are still available when loader is removed
+    registry.setLoader(null);
+    assertNotNull(registry.get("rssw.Parent"));
+    assertNull(registry.get("rssw.Unknown2"));
+  }
+
+  @Test
+  public void testResolve() {
+    TypeInfoRegistry registry = new TypeInfoRegistry();
+    TypeInfoV11 root = new TypeInfoV11("rssw.Root", null, null, 0);
+    root.getMethods().add(new MethodElementV11("RootMethod", EnumSet.of(AccessType.PUBLIC), 0, 0, "", 0, new IParameter[] {}));
+    root.getProperties().add(createProperty("Prop1", AccessType.PROTECTED));
+    root.getProperties().add(createProperty("Prop2", AccessType.PUBLIC));
+    root.getBuffers().add(new BufferElementV11("bRoot", EnumSet.of(AccessType.PROTECTED), "ttRoot", null, 0));
+    TypeInfoV11 child = new TypeInfoV11("rssw.Child", "rssw.Root", null, 0);
+    child.getMethods().add(new MethodElementV11("ChildMethod", EnumSet.of(AccessType.PUBLIC), 0, 0, "", 0, new IParameter[] {}));
+    child.getProperties().add(createProperty("Prop1", AccessType.PRIVATE));
+    child.getProperties().add(createProperty("Prop3", AccessType.PRIVATE));
+    registry.put(root);
+    registry.put(child);
+
+    ResolvedTypeInfo view = registry.resolve(child);
+    assertNotNull(view);
+    assertSame(registry.resolve(child), view);
+    assertEquals(view.getHierarchy().size(), 2);
+    assertTrue(view.hasMethod("childmethod"));
+    assertTrue(view.hasMethod("ROOTMETHOD"));
+    assertFalse(view.hasMethod("Prop1"));
+    // Same result as walking up the hierarchy
+    assertTrue(view.hasProperty("prop1"));
+    assertSame(view.getProperty("prop1"), child.getProperty("prop1"));
+    assertTrue(view.hasProperty("prop2"));
+    assertFalse(view.hasProperty("prop3"));
+    assertNotNull(view.getProperty("prop3"));
+    assertTrue(view.hasBuffer("BROOT"));
+    assertEquals(view.getBuffer("broot").getTableName(), "ttRoot");
+    assertFalse(view.hasTempTable("ttRoot"));
+    assertNull(registry.resolve(null));
+
+    // Re-injection of super-class invalidates view
+    TypeInfoV11 root2 = new TypeInfoV11("rssw.Root", null, null, 0);
+    registry.put(root2);
+    ResolvedTypeInfo view2 = registry.resolve(child);
+    assertNotSame(view2, view);
+    assertSame(view2.getHierarchy().get(1), root2);
+    assertFalse(view2.hasMethod("RootMethod"));
+    assertFalse(view2.hasBuffer("bRoot"));
+
+    // Circular references
+    registry.put(new TypeInfoV11("rssw.Circ1", "rssw.Circ2", null, 0));
+    registry.put(new TypeInfoV11("rssw.Circ2", "rssw.Circ1", null, 0));
+    assertNotNull(registry.resolve(registry.get("rssw.Circ1")));
+  }
+
+  private static IPropertyElement createProperty(String name, AccessType access) {
+    return new PropertyElementV11(name, EnumSet.of(access), 0,
+        new VariableElementV11(name, EnumSet.of(access), 0, 0, 0, null), null, null);
+  }
+}
@@ -0,0 +1,66 @@
+/********************************************************************************
+ * Copyright (c) 2015-2018 Riverside Software
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0.
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU Lesser General Public License v3.0
+ * which is available at https://www.gnu.org/licenses/lgpl-3.0.txt
+ *
+ * SPDX-License-Identifier: EPL-2.0 OR LGPL-3.0
+ ********************************************************************************/
+package org.prorefactor.xref;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.prorefactor.xref.CrossReference.Reference;
+import org.testng.annotations.Test;
+
+public class XrefReaderTest {
+
+  @Test
+  public void testSharedObjects() throws IOException, XMLStreamException {
+    CrossReference xref;
+    try (InputStream input = new FileInputStream("src/test/resources/data/xref/shared.p.xref")) {
+      xref = new XrefReader().read(input);
+    }
+    assertEquals(xref.getReferenceTypes().size(), 4);
+    assertEquals(xref.count("COMPILE"), 1);
+    assertEquals(xref.count("NEW-SHR-VARIABLE"), 3);
+    assertEquals(xref.count("NEW-SHR-TEMPTABLE"), 1);
+    assertEquals(xref.count("NEW-SHR-DATASET"), 0);
+    assertTrue(xref.getReferences("NEW-SHR-DATASET").isEmpty());
+
+    List<Reference> vars = xref.getReferences("NEW-SHR-VARIABLE");
+    assertEquals(vars.get(0).getObjectIdentifier(), "xx");
+    assertEquals(vars.get(0).getSourceFile(), "src/shared.p");
+    assertEquals(vars.get(0).getFileNum(), 1);
+    assertEquals(vars.get(0).getLineNum(), 3);
+    assertEquals(vars.get(1).getObjectIdentifier(), "yy");
+    assertEquals(vars.get(2).getObjectIdentifier(), "xx");
+    assertEquals(vars.get(2).getSourceFile(), "src/shared.i");
+    assertEquals(vars.get(2).getFileNum(), 2);
+    assertEquals(vars.get(2).getLineNum(), 2);
+
+    // Line-num in nested elements are not taken into account
+    assertEquals(xref.getReferences("RUN").get(0).getLineNum(), 6);
+  }
+
+  @Test(expectedExceptions = XMLStreamException.class)
+  public void testInvalidXml() throws IOException, XMLStreamException {
+    try (InputStream input = new FileInputStream("src/test/resources/data/xref/invalid.xref")) {
+      new XrefReader().read(input);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+/* Header
+   comment */
+
+&GLOBAL-DEFINE FOO 1
+&IF {&FOO} = 1 &THEN
+MESSAGE "Hello". /* Trailing */
+&ENDIF
+
+DEFINE VARIABLE x AS INTEGER NO-UNDO.
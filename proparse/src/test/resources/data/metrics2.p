@@ -0,0 +1,6 @@
+MESSAGE "first line
+second line
+third line".
+
+/* Comment */
+
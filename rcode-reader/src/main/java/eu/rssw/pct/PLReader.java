@@ -26,14 +26,22 @@ import java.io.InputStream;
 import java.io.RandomAccessFile;
 
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class for reading and extracting contents of a Progress Library file.
+ * <p>
+ * In memory-mapped mode, library is mapped once, table of contents is decoded from the mapped buffer, and entries are
+ * available as read-only slices of the mapped buffer, without any copy. A memory-mapped PLReader can be shared between
+ * threads.
  * 
  * @author <a href="mailto:g.querret+PCT@gmail.com">Gilles QUERRET</a>
  */
@@ -43,10 +51,21 @@ public class PLReader {
   private static final int ENCODING_SIZE = 20;
   private static final int FILE_LIST_OFFSET_V11 = 0x22;
 
-  private File pl;
-  private List<FileEntry> files = null;
+  private final File pl;
+  private final boolean memoryMapped;
+  private volatile List<FileEntry> files = null;
+  private Map<String, FileEntry> index;
+  private ByteBuffer mappedBuffer;
 
   public PLReader(File file) {
+    this(file, false);
+  }
+
+  /**
+   * @param memoryMapped If true, file is memory-mapped on first access and kept mapped until this object is garbage
+   *          collected
+   */
+  public PLReader(File file, boolean memoryMapped) {
     String name = file.getPath();
     SecurityManager sm = System.getSecurityManager();
     if (sm != null) {
@@ -54,6 +73,7 @@ public class PLReader {
     }
 
     this.pl = file;
+    this.memoryMapped = memoryMapped;
   }
 
   /**
@@ -63,20 +83,54 @@ public class PLReader {
    */
   public List<FileEntry> getFileList() {
     if (this.files == null)
-      readFileList();
+      init();
     return files;
   }
 
   public FileEntry getEntry(String name) {
-    for (FileEntry entry : getFileList()) {
-      if (entry.getFileName().equals(name))
-        return entry;
+    if (this.files == null)
+      init();
+    return index.get(name);
+  }
+
+  private synchronized void init() {
+    if (this.files != null)
+      return;
+    List<FileEntry> list = memoryMapped ? readMappedFileList() : readFileList();
+    Map<String, FileEntry> map = new HashMap<>();
+    for (FileEntry entry : list) {
+      // First entry wins, as in a sequential search
+      map.putIfAbsent(entry.getFileName(), entry);
     }
+    index = map;
+    files = Collections.unmodifiableList(list);
+  }
+
+  private List<FileEntry> readMappedFileList() {
+    try (RandomAccessFile raf = new RandomAccessFile(pl, "r")) {
+      FileChannel fc = raf.getChannel();
+      // Mapping stays valid once channel is closed
+      MappedByteBuffer buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+      if ((buffer.limit() < FILE_LIST_OFFSET_V11 + 4) || ((buffer.getShort(0) & 0xffff) != MAGIC_V11))
+        throw new RuntimeException("Not a valid PL file");
 
-    return null;
+      Charset charset = getCharset(buffer);
+      int offset = buffer.getInt(FILE_LIST_OFFSET_V11);
+      List<FileEntry> list = new ArrayList<>();
+      FileEntry fe = null;
+      while ((fe = readEntry(buffer, offset, charset)) != null) {
+        if (fe.isValid())
+          list.add(fe);
+        offset += fe.getTocSize();
+      }
+      mappedBuffer = buffer.asReadOnlyBuffer();
+      return list;
+    } catch (IOException caught) {
+      throw new RuntimeException(caught);
+    }
   }
 
-  private void readFileList() {
+  private List<FileEntry> readFileList() {
     try (RandomAccessFile raf = new RandomAccessFile(pl, "r")) {
       FileChannel fc = raf.getChannel();
       ByteBuffer magic = ByteBuffer.allocate(2);
@@ -86,19 +140,45 @@ public class PLReader {
 
       Charset charset = getCharset(fc);
       int offset = getTOCOffset(fc);
-      files = new ArrayList<>();
+      List<FileEntry> list = new ArrayList<>();
       FileEntry fe = null;
       while ((fe = readEntry(fc, offset, charset)) != null) {
         if (fe.isValid())
-          files.add(fe);
+          list.add(fe);
         offset += fe.getTocSize();
       }
+      return list;
     } catch (IOException caught) {
       throw new RuntimeException(caught);
     }
   }
 
+  /**
+   * Returns read-only view of entry content. In memory-mapped mode, this is a slice of the mapped file, otherwise
+   * content is read from disk.
+   */
+  public ByteBuffer getByteBuffer(FileEntry fe) throws IOException {
+    if (!memoryMapped) {
+      ByteBuffer bb = ByteBuffer.allocate(fe.getSize());
+      try (RandomAccessFile raf = new RandomAccessFile(pl, "r")) {
+        raf.getChannel().read(bb, fe.getOffset());
+      }
+      bb.flip();
+      return bb.asReadOnlyBuffer();
+    }
+    getFileList();
+    if ((fe.getOffset() < 0) || ((long) fe.getOffset() + fe.getSize() > mappedBuffer.limit()))
+      throw new IOException("Entry " + fe.getFileName() + " is out of PL file bounds");
+    // Duplicate, so that position and limit of shared buffer are never modified
+    ByteBuffer bb = mappedBuffer.duplicate();
+    bb.position(fe.getOffset());
+    bb.limit(fe.getOffset() + fe.getSize());
+    return bb.slice();
+  }
+
   public InputStream getInputStream(FileEntry fe) throws IOException {
+    if (memoryMapped)
+      return new ByteBufferInputStream(getByteBuffer(fe));
     ByteBuffer bb = null;
     try (RandomAccessFile raf = new RandomAccessFile(pl, "r")) {
       FileChannel fc = raf.getChannel();
@@ -126,6 +206,19 @@ public class PLReader {
     }
   }
 
+  private static Charset getCharset(ByteBuffer buffer) {
+    StringBuilder sbEncoding = new StringBuilder();
+    int zz = 0;
+    while ((zz < ENCODING_SIZE) && (buffer.get(ENCODING_OFFSET + zz) != 0)) {
+      sbEncoding.append((char) buffer.get(ENCODING_OFFSET + zz++));
+    }
+    try {
+      return Charset.forName(sbEncoding.toString());
+    } catch (IllegalArgumentException iae) {
+      return Charset.forName("US-ASCII");
+    }
+  }
+
   private int getTOCOffset(FileChannel fc) throws IOException {
     ByteBuffer bTOC = ByteBuffer.allocate(4);
     if (fc.read(bTOC, FILE_LIST_OFFSET_V11) != 4)
@@ -171,4 +264,43 @@ public class PLReader {
     }
 
   }
+
+  /**
+   * Same as {@link #readEntry(FileChannel, int, Charset)}, with absolute reads in the mapped buffer
+   */
+  private static FileEntry readEntry(ByteBuffer buffer, int offset, Charset charset) {
+    if ((offset < 0) || (offset >= buffer.limit()))
+      return null;
+    byte b1 = buffer.get(offset);
+    if (b1 == (byte) 0xFE) {
+      int zz = 1;
+      while ((offset + zz < buffer.limit()) && (buffer.get(offset + zz) != (byte) 0xFF)) {
+        zz++;
+      }
+
+      return new FileEntry(zz);
+    } else if (b1 == (byte) 0xFF) {
+      if (offset + 1 >= buffer.limit())
+        return null;
+      int fNameSize = (int) buffer.get(offset + 1) & 0xFF;
+      if (fNameSize == 0)
+        return new FileEntry(29);
+      if (offset + 2 + fNameSize + 48 > buffer.limit())
+        return null;
+      ByteBuffer b2 = buffer.duplicate();
+      b2.position(offset + 2);
+      b2.limit(offset + 2 + fNameSize);
+      String fName = charset.decode(b2).toString();
+      int base = offset + 2 + fNameSize;
+      int fileOffset = buffer.getInt(base + 6);
+      int fileSize = buffer.getInt(base + 11);
+      long added = buffer.getInt(base + 15) * 1000L;
+      long modified = buffer.getInt(base + 19) * 1000L;
+
+      int tocSize = (buffer.get(base + 47) == 0 ? 50 : 49) + fNameSize;
+      return new FileEntry(fName, modified, added, fileOffset, fileSize, tocSize);
+    } else {
+      return null;
+    }
+  }
 }
@@ -19,6 +19,7 @@
  */
 package eu.rssw.pct;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
@@ -34,6 +35,7 @@ import java.util.Set;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
 
 import eu.rssw.pct.elements.DataType;
 import eu.rssw.pct.elements.ITypeInfo;
@@ -104,6 +106,14 @@ public class RCodeInfo {
     this(input, null);
   }
 
+  /**
+   * Parse rcode from a ByteBuffer, for example an entry of a memory-mapped PL file. Position and limit of the buffer
+   * are not modified, and only header, segment table and type block are copied.
+   */
+  public RCodeInfo(ByteBuffer buffer) throws InvalidRCodeException, IOException {
+    this(new ByteBufferInputStream(buffer.duplicate()), null);
+  }
+
   /**
    * Parse InputStream and store debug segment information
    * 
@@ -119,28 +129,19 @@ public class RCodeInfo {
     processSegmentTable(input, out);
 
     if ((initialValueSegmentOffset >= 0) && (initialValueSegmentSize > 0)) {
-      long bytesRead = input.skip(initialValueSegmentOffset);
-      if (bytesRead != initialValueSegmentOffset) {
-        throw new InvalidRCodeException("Not enough bytes to reach initial values segment");
-      }
+      skipFully(input, initialValueSegmentOffset, "Not enough bytes to reach initial values segment");
       processInitialValueSegment(input, out);
     }
 
     if ((debugSegmentOffset > 0) && (debugSegmentSize > 0)) {
-      long bytesRead = input.skip(debugSegmentOffset - initialValueSegmentSize);
-      if (bytesRead != debugSegmentOffset - initialValueSegmentSize) {
-        throw new InvalidRCodeException("Not enough bytes to reach debug segment");
-      }
+      skipFully(input, debugSegmentOffset - initialValueSegmentSize, "Not enough bytes to reach debug segment");
       processDebugSegment(input, out);
     }
 
     if (typeBlockSize > 0) {
       int skip = debugSegmentOffset > 0 ? rcodeSize - debugSegmentOffset - debugSegmentSize
           : rcodeSize - initialValueSegmentSize - debugSegmentSize;
-      long bytesRead = input.skip(skip);
-      if (bytesRead != skip) {
-        throw new InvalidRCodeException("Not enough bytes to reach type block");
-      }
+      skipFully(input, skip, "Not enough bytes to reach type block");
       processTypeBlock(input, out);
       isClass = true;
     }
@@ -148,6 +149,18 @@ public class RCodeInfo {
     input.close();
   }
 
+  /**
+   * InputStream#skip() can skip less bytes than requested (buffered or compressed streams), or go past the end of a
+   * file, so skipping is done with ByteStreams
+   */
+  private static void skipFully(InputStream input, long n, String message) throws IOException, InvalidRCodeException {
+    try {
+      ByteStreams.skipFully(input, n);
+    } catch (EOFException caught) {
+      throw new InvalidRCodeException(message);
+    }
+  }
+
   private final void processHeader(InputStream input, PrintStream out) throws IOException, InvalidRCodeException {
     byte[] header = new byte[HEADER_SIZE];
     int bytesRead = input.read(header);
@@ -275,6 +288,11 @@ public class RCodeInfo {
   }
 
   private final void processInitialValueSegment(InputStream input, PrintStream out) throws IOException, InvalidRCodeException {
+    if (out == null) {
+      // Content is not used
+      skipFully(input, initialValueSegmentSize, "Not enough bytes in initial value segment block");
+      return;
+    }
     byte[] segment = new byte[initialValueSegmentSize];
     int bytesRead = input.read(segment);
     if (bytesRead != initialValueSegmentSize) {
@@ -287,6 +305,11 @@ public class RCodeInfo {
   }
 
   void processDebugSegment(InputStream input, PrintStream out) throws IOException, InvalidRCodeException {
+    if (out == null) {
+      // Content is not used
+      skipFully(input, debugSegmentSize, "Not enough bytes in debug segment block");
+      return;
+    }
     byte[] segment = new byte[debugSegmentSize];
     int bytesRead = input.read(segment);
     if (bytesRead != debugSegmentSize) {
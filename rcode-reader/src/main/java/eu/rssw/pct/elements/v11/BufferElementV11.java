@@ -29,7 +29,7 @@ import eu.rssw.pct.elements.AccessType;
 import eu.rssw.pct.elements.IBufferElement;
 
 public class BufferElementV11 extends AbstractAccessibleElement implements IBufferElement {
-  private static final int TEMP_TABLE = 4;
+  static final int TEMP_TABLE = 4;
 
   private final String tableName;
   private final String databaseName;
@@ -31,9 +31,9 @@ import eu.rssw.pct.elements.IIndexComponentElement;
 import eu.rssw.pct.elements.IIndexElement;
 
 public class IndexElementV11 extends AbstractElement implements IIndexElement {
-  private static final int UNIQUE_INDEX = 2;
-  private static final int WORD_INDEX = 8;
-  private static final int DEFAULT_INDEX = 16;
+  static final int UNIQUE_INDEX = 2;
+  static final int WORD_INDEX = 8;
+  static final int DEFAULT_INDEX = 16;
 
   private final IIndexComponentElement[] indexComponents;
   private final int primary;
@@ -0,0 +1,407 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.pct.elements.v11;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+import eu.rssw.pct.elements.AccessType;
+import eu.rssw.pct.elements.DataType;
+import eu.rssw.pct.elements.IAccessibleElement;
+import eu.rssw.pct.elements.IBufferElement;
+import eu.rssw.pct.elements.IEventElement;
+import eu.rssw.pct.elements.IIndexComponentElement;
+import eu.rssw.pct.elements.IIndexElement;
+import eu.rssw.pct.elements.IMethodElement;
+import eu.rssw.pct.elements.IParameter;
+import eu.rssw.pct.elements.IPropertyElement;
+import eu.rssw.pct.elements.ITableElement;
+import eu.rssw.pct.elements.ITypeInfo;
+import eu.rssw.pct.elements.IVariableElement;
+
+/**
+ * Binary serialization of ITypeInfo objects, so that type info can be kept on disk without reading rcode again. Only
+ * what is visible through ITypeInfo and the element interfaces is kept ; objects are always read back as V11 objects,
+ * whatever the rcode version was.
+ */
+public final class TypeInfoSerializer {
+  /**
+   * To be incremented each time the binary format changes
+   */
+  public static final int VERSION = 1;
+
+  private static final int ACCESS_PUBLIC = 1;
+  private static final int ACCESS_PROTECTED = 2;
+  private static final int ACCESS_PRIVATE = 4;
+  private static final int ACCESS_STATIC = 8;
+  private static final int ACCESS_ABSTRACT = 16;
+
+  private static final int EXTENT_INDETERMINATE = 32769;
+
+  private TypeInfoSerializer() {
+    // No constructor
+  }
+
+  public static void write(ITypeInfo info, DataOutput out) throws IOException {
+    writeString(out, info.getTypeName());
+    writeString(out, info.getParentTypeName());
+    writeString(out, info.getAssemblyName());
+    out.writeInt(getFlags(info));
+    out.writeInt(info.getInterfaces().size());
+    for (String str : info.getInterfaces()) {
+      writeString(out, str);
+    }
+    out.writeInt(info.getMethods().size());
+    for (IMethodElement mthd : info.getMethods()) {
+      writeMethod(out, mthd);
+    }
+    out.writeInt(info.getProperties().size());
+    for (IPropertyElement prop : info.getProperties()) {
+      writeString(out, prop.getName());
+      writeAccessType(out, prop);
+      writeNullable(out, prop.getVariable());
+      if (prop.getVariable() != null)
+        writeVariable(out, prop.getVariable());
+      writeNullable(out, prop.getGetter());
+      if (prop.getGetter() != null)
+        writeMethod(out, prop.getGetter());
+      writeNullable(out, prop.getSetter());
+      if (prop.getSetter() != null)
+        writeMethod(out, prop.getSetter());
+    }
+    out.writeInt(info.getEvents().size());
+    for (IEventElement evt : info.getEvents()) {
+      writeString(out, evt.getName());
+      writeAccessType(out, evt);
+      out.writeInt(getDataTypeNum(evt.getReturnType()));
+      writeString(out, evt.getReturnTypeName());
+      writeString(out, evt.getDelegateName());
+      writeParameters(out, evt.getParameters());
+    }
+    out.writeInt(info.getVariables().size());
+    for (IVariableElement var : info.getVariables()) {
+      writeVariable(out, var);
+    }
+    out.writeInt(info.getTables().size());
+    for (ITableElement tbl : info.getTables()) {
+      writeTable(out, tbl);
+    }
+    out.writeInt(info.getBuffers().size());
+    for (IBufferElement buf : info.getBuffers()) {
+      writeString(out, buf.getName());
+      writeAccessType(out, buf);
+      writeString(out, buf.getTableName());
+      writeString(out, buf.getDatabaseName());
+      out.writeBoolean(buf.isTempTableBuffer());
+    }
+  }
+
+  public static ITypeInfo read(DataInput in) throws IOException {
+    String typeName = readString(in);
+    String parentTypeName = readString(in);
+    String assemblyName = readString(in);
+    int flags = in.readInt();
+    String[] interfaces = new String[in.readInt()];
+    for (int zz = 0; zz < interfaces.length; zz++) {
+      interfaces[zz] = readString(in);
+    }
+    TypeInfoV11 info = new TypeInfoV11(typeName, parentTypeName, assemblyName, flags, interfaces);
+    for (int zz = in.readInt(); zz > 0; zz--) {
+      info.getMethods().add(readMethod(in));
+    }
+    for (int zz = in.readInt(); zz > 0; zz--) {
+      String name = readString(in);
+      Set<AccessType> accessType = readAccessType(in);
+      IVariableElement var = in.readBoolean() ? readVariable(in) : null;
+      IMethodElement getter = in.readBoolean() ? readMethod(in) : null;
+      IMethodElement setter = in.readBoolean() ? readMethod(in) : null;
+      info.getProperties().add(
+          new PropertyElementV11(name, accessType, getPropertyFlags(var, getter, setter), var, getter, setter));
+    }
+    for (int zz = in.readInt(); zz > 0; zz--) {
+      String name = readString(in);
+      Set<AccessType> accessType = readAccessType(in);
+      int returnType = in.readInt();
+      String returnTypeName = readString(in);
+      String delegateName = readString(in);
+      info.getEvents().add(
+          new EventElementV11(name, accessType, 0, returnType, returnTypeName, delegateName, readParameters(in)));
+    }
+    for (int zz = in.readInt(); zz > 0; zz--) {
+      info.getVariables().add(readVariable(in));
+    }
+    for (int zz = in.readInt(); zz > 0; zz--) {
+      info.getTables().add(readTable(in));
+    }
+    for (int zz = in.readInt(); zz > 0; zz--) {
+      String name = readString(in);
+      Set<AccessType> accessType = readAccessType(in);
+      String tableName = readString(in);
+      String dbName = readString(in);
+      int bufFlags = in.readBoolean() ? BufferElementV11.TEMP_TABLE : 0;
+      info.getBuffers().add(new BufferElementV11(name, accessType, tableName, dbName, bufFlags));
+    }
+
+    return info;
+  }
+
+  private static int getFlags(ITypeInfo info) {
+    int flags = 0;
+    if (info.isFinal())
+      flags |= TypeInfoV11.IS_FINAL;
+    if (info.isInterface())
+      flags |= TypeInfoV11.IS_INTERFACE;
+    if (info.isUseWidgetPool())
+      flags |= TypeInfoV11.USE_WIDGET_POOL;
+    if (info.hasStatics())
+      flags |= TypeInfoV11.HAS_STATICS;
+    if (info.isBuiltIn())
+      flags |= TypeInfoV11.IS_BUILTIN;
+    if (info.isHybrid())
+      flags |= TypeInfoV11.IS_HYBRID;
+    if (info.hasDotNetBase())
+      flags |= TypeInfoV11.HAS_DOTNETBASE;
+    if (info.isAbstract())
+      flags |= TypeInfoV11.IS_ABSTRACT;
+    if (info.isSerializable())
+      flags |= TypeInfoV11.IS_SERIALIZABLE;
+    return flags;
+  }
+
+  private static void writeMethod(DataOutput out, IMethodElement mthd) throws IOException {
+    writeString(out, mthd.getName());
+    writeAccessType(out, mthd);
+    int flags = 0;
+    if (mthd.isStatic())
+      flags |= MethodElementV11.STATIC_METHOD;
+    if (mthd.isProcedure())
+      flags |= MethodElementV11.PROCEDURE_METHOD;
+    if (mthd.isFunction())
+      flags |= MethodElementV11.FUNCTION_METHOD;
+    if (mthd.isConstructor())
+      flags |= MethodElementV11.CONSTRUCTOR_METHOD;
+    if (mthd.isDestructor())
+      flags |= MethodElementV11.DESTRUCTOR_METHOD;
+    if (mthd.isOverloaded())
+      flags |= MethodElementV11.OVERLOADED_METHOD;
+    out.writeInt(flags);
+    out.writeInt(getDataTypeNum(mthd.getReturnType()));
+    writeString(out, mthd.getReturnTypeName());
+    out.writeInt(mthd.getExtent() == -1 ? EXTENT_INDETERMINATE : mthd.getExtent());
+    writeParameters(out, mthd.getParameters());
+  }
+
+  private static IMethodElement readMethod(DataInput in) throws IOException {
+    String name = readString(in);
+    Set<AccessType> accessType = readAccessType(in);
+    int flags = in.readInt();
+    int returnType = in.readInt();
+    String returnTypeName = readString(in);
+    int extent = in.readInt();
+    return new MethodElementV11(name, accessType, flags, returnType, returnTypeName, extent, readParameters(in));
+  }
+
+  private static void writeParameters(DataOutput out, IParameter[] params) throws IOException {
+    out.writeInt(params.length);
+    for (IParameter param : params) {
+      writeString(out, param.getName());
+      out.writeInt(param.getExtent());
+      out.writeInt(param.getParameterType().getNum());
+      out.writeInt(param.getMode().getRCodeConstant());
+      if (param.isClassDataType()) {
+        out.writeInt(DataType.CLASS.getNum());
+        writeString(out, param.getDataType());
+      } else {
+        out.writeInt(param instanceof MethodParameterV11 ? getDataTypeNum(((MethodParameterV11) param).getABLDataType())
+            : DataType.valueOf(param.getDataType()).getNum());
+        writeString(out, null);
+      }
+    }
+  }
+
+  private static IParameter[] readParameters(DataInput in) throws IOException {
+    IParameter[] params = new IParameter[in.readInt()];
+    for (int zz = 0; zz < params.length; zz++) {
+      String name = readString(in);
+      int extent = in.readInt();
+      int type = in.readInt();
+      int mode = in.readInt();
+      int dataType = in.readInt();
+      String dataTypeName = readString(in);
+      params[zz] = new MethodParameterV11(zz, name, type, mode, 0, dataType, dataTypeName, extent);
+    }
+    return params;
+  }
+
+  private static void writeVariable(DataOutput out, IVariableElement var) throws IOException {
+    writeString(out, var.getName());
+    writeAccessType(out, var);
+    out.writeInt(getDataTypeNum(var.getDataType()));
+    out.writeInt(var.getExtent());
+    int flags = 0;
+    if (var.isReadOnly())
+      flags |= VariableElementV11.READ_ONLY;
+    if (var.isWriteOnly())
+      flags |= VariableElementV11.WRITE_ONLY;
+    if (var.baseIsDotNet())
+      flags |= VariableElementV11.BASE_IS_DOTNET;
+    if (var.isNoUndo())
+      flags |= VariableElementV11.NO_UNDO;
+    out.writeInt(flags);
+    writeString(out, var.getTypeName());
+  }
+
+  private static IVariableElement readVariable(DataInput in) throws IOException {
+    String name = readString(in);
+    Set<AccessType> accessType = readAccessType(in);
+    int dataType = in.readInt();
+    int extent = in.readInt();
+    int flags = in.readInt();
+    return new VariableElementV11(name, accessType, dataType, extent, flags, readString(in));
+  }
+
+  private static void writeTable(DataOutput out, ITableElement tbl) throws IOException {
+    writeString(out, tbl.getName());
+    writeAccessType(out, tbl);
+    writeString(out, tbl.getBeforeTableName());
+    out.writeInt(tbl.getFields().length);
+    for (IVariableElement fld : tbl.getFields()) {
+      writeVariable(out, fld);
+    }
+    out.writeInt(tbl.getIndexes().length);
+    for (IIndexElement idx : tbl.getIndexes()) {
+      writeString(out, idx.getName());
+      out.writeBoolean(idx.isPrimary());
+      int flags = 0;
+      if (idx.isUnique())
+        flags |= IndexElementV11.UNIQUE_INDEX;
+      if (idx.isWordIndex())
+        flags |= IndexElementV11.WORD_INDEX;
+      if (idx.isDefaultIndex())
+        flags |= IndexElementV11.DEFAULT_INDEX;
+      out.writeInt(flags);
+      out.writeInt(idx.getIndexComponents().length);
+      for (IIndexComponentElement comp : idx.getIndexComponents()) {
+        out.writeInt(comp.getFieldPosition());
+        out.writeBoolean(comp.isAscending());
+      }
+    }
+  }
+
+  private static ITableElement readTable(DataInput in) throws IOException {
+    String name = readString(in);
+    Set<AccessType> accessType = readAccessType(in);
+    String beforeTableName = readString(in);
+    IVariableElement[] fields = new IVariableElement[in.readInt()];
+    for (int zz = 0; zz < fields.length; zz++) {
+      fields[zz] = readVariable(in);
+    }
+    IIndexElement[] indexes = new IIndexElement[in.readInt()];
+    for (int zz = 0; zz < indexes.length; zz++) {
+      String idxName = readString(in);
+      int primary = in.readBoolean() ? 1 : 0;
+      int flags = in.readInt();
+      IIndexComponentElement[] components = new IIndexComponentElement[in.readInt()];
+      for (int yy = 0; yy < components.length; yy++) {
+        int position = in.readInt();
+        components[yy] = new IndexComponentElementV11(position, 0, in.readBoolean());
+      }
+      indexes[zz] = new IndexElementV11(idxName, primary, flags, components);
+    }
+    return new TableElementV11(name, accessType, 0, fields, indexes, beforeTableName);
+  }
+
+  private static int getPropertyFlags(IVariableElement var, IMethodElement getter, IMethodElement setter) {
+    int flags = 0;
+    if (var != null)
+      flags |= PropertyElementV11.PROPERTY_AS_VARIABLE;
+    if (getter != null) {
+      flags |= PropertyElementV11.HAS_GETTER;
+      if (getter.isPublic())
+        flags |= PropertyElementV11.PUBLIC_GETTER;
+      if (getter.isProtected())
+        flags |= PropertyElementV11.PROTECTED_GETTER;
+      if (getter.isPrivate())
+        flags |= PropertyElementV11.PRIVATE_GETTER;
+    }
+    if (setter != null) {
+      flags |= PropertyElementV11.HAS_SETTER;
+      if (setter.isPublic())
+        flags |= PropertyElementV11.PUBLIC_SETTER;
+      if (setter.isProtected())
+        flags |= PropertyElementV11.PROTECTED_SETTER;
+      if (setter.isPrivate())
+        flags |= PropertyElementV11.PRIVATE_SETTER;
+    }
+    return flags;
+  }
+
+  private static int getDataTypeNum(DataType type) {
+    return type == null ? -1 : type.getNum();
+  }
+
+  private static void writeAccessType(DataOutput out, IAccessibleElement elem) throws IOException {
+    int val = 0;
+    if (elem.isPublic())
+      val |= ACCESS_PUBLIC;
+    if (elem.isProtected())
+      val |= ACCESS_PROTECTED;
+    if (elem.isPrivate())
+      val |= ACCESS_PRIVATE;
+    if (elem.isStatic())
+      val |= ACCESS_STATIC;
+    if (elem.isAbstract())
+      val |= ACCESS_ABSTRACT;
+    out.writeByte(val);
+  }
+
+  private static Set<AccessType> readAccessType(DataInput in) throws IOException {
+    int val = in.readByte();
+    Set<AccessType> set = EnumSet.noneOf(AccessType.class);
+    if ((val & ACCESS_PUBLIC) != 0)
+      set.add(AccessType.PUBLIC);
+    if ((val & ACCESS_PROTECTED) != 0)
+      set.add(AccessType.PROTECTED);
+    if ((val & ACCESS_PRIVATE) != 0)
+      set.add(AccessType.PRIVATE);
+    if ((val & ACCESS_STATIC) != 0)
+      set.add(AccessType.STATIC);
+    if ((val & ACCESS_ABSTRACT) != 0)
+      set.add(AccessType.ABSTRACT);
+    return set;
+  }
+
+  private static void writeNullable(DataOutput out, Object obj) throws IOException {
+    out.writeBoolean(obj != null);
+  }
+
+  private static void writeString(DataOutput out, String str) throws IOException {
+    out.writeBoolean(str != null);
+    if (str != null)
+      out.writeUTF(str);
+  }
+
+  private static String readString(DataInput in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+}
@@ -43,16 +43,16 @@ import eu.rssw.pct.elements.ITypeInfo;
 import eu.rssw.pct.elements.IVariableElement;
 
 public class TypeInfoV11 implements ITypeInfo {
-  private static final int IS_FINAL = 1;
-  private static final int IS_INTERFACE = 2;
-  private static final int USE_WIDGET_POOL = 4;
-  private static final int IS_DOTNET = 8;
-  private static final int HAS_STATICS = 64;
-  private static final int IS_BUILTIN = 128;
-  private static final int IS_HYBRID = 2048;
-  private static final int HAS_DOTNETBASE = 4096;
-  private static final int IS_ABSTRACT = 32768;
-  private static final int IS_SERIALIZABLE = 65536;
+  static final int IS_FINAL = 1;
+  static final int IS_INTERFACE = 2;
+  static final int USE_WIDGET_POOL = 4;
+  static final int IS_DOTNET = 8;
+  static final int HAS_STATICS = 64;
+  static final int IS_BUILTIN = 128;
+  static final int IS_HYBRID = 2048;
+  static final int HAS_DOTNETBASE = 4096;
+  static final int IS_ABSTRACT = 32768;
+  static final int IS_SERIALIZABLE = 65536;
   
   protected String typeName;
   protected String parentTypeName;
@@ -30,10 +30,10 @@ import eu.rssw.pct.elements.DataType;
 import eu.rssw.pct.elements.IVariableElement;
 
 public class VariableElementV11 extends AbstractAccessibleElement implements IVariableElement {
-  private static final int READ_ONLY = 1;
-  private static final int WRITE_ONLY = 2;
-  private static final int BASE_IS_DOTNET = 4;
-  private static final int NO_UNDO = 8;
+  static final int READ_ONLY = 1;
+  static final int WRITE_ONLY = 2;
+  static final int BASE_IS_DOTNET = 4;
+  static final int NO_UNDO = 8;
 
   private final int dataType;
   private final int extent;
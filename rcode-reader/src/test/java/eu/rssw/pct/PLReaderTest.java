@@ -21,6 +21,8 @@ package eu.rssw.pct;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -40,4 +42,50 @@ public class PLReaderTest {
     Assert.assertTrue(rci.getTypeInfo().getTables().size() == 0);
   }
 
+  @Test
+  public void testMemoryMapped() throws IOException, InvalidRCodeException {
+    PLReader pl1 = new PLReader(new File("src/test/resources/ablunit.pl"));
+    PLReader pl2 = new PLReader(new File("src/test/resources/ablunit.pl"), true);
+    List<FileEntry> list1 = pl1.getFileList();
+    List<FileEntry> list2 = pl2.getFileList();
+    Assert.assertEquals(list2.size(), list1.size());
+    for (int zz = 0; zz < list1.size(); zz++) {
+      FileEntry fe1 = list1.get(zz);
+      FileEntry fe2 = list2.get(zz);
+      Assert.assertEquals(fe2.getFileName(), fe1.getFileName());
+      Assert.assertEquals(fe2.getOffset(), fe1.getOffset());
+      Assert.assertEquals(fe2.getSize(), fe1.getSize());
+      Assert.assertEquals(fe2.getModDate(), fe1.getModDate());
+      Assert.assertSame(pl2.getEntry(fe2.getFileName()), fe2);
+      Assert.assertEquals(pl2.getByteBuffer(fe2), pl1.getByteBuffer(fe1));
+    }
+    Assert.assertNull(pl2.getEntry("foobar.r"));
+
+    FileEntry entry = pl2.getEntry("OpenEdge/ABLUnit/Reflection/ClassAnnotationInfo.r");
+    ByteBuffer buffer = pl2.getByteBuffer(entry);
+    Assert.assertTrue(buffer.isReadOnly());
+    Assert.assertEquals(buffer.remaining(), entry.getSize());
+    RCodeInfo rci1 = new RCodeInfo(pl1.getInputStream(pl1.getEntry(entry.getFileName())));
+    RCodeInfo rci2 = new RCodeInfo(buffer);
+    // Buffer is not modified
+    Assert.assertEquals(buffer.position(), 0);
+    Assert.assertTrue(rci2.isClass());
+    Assert.assertEquals(rci2.getTypeInfo().getMethods().size(), rci1.getTypeInfo().getMethods().size());
+    Assert.assertEquals(rci2.getTypeInfo().getProperties().size(), rci1.getTypeInfo().getProperties().size());
+  }
+
+  @Test
+  public void testConcurrentReaders() {
+    PLReader pl = new PLReader(new File("src/test/resources/ablunit.pl"), true);
+    long numClasses = pl.getFileList().parallelStream().filter(entry -> entry.getFileName().endsWith(".r")).filter(
+        entry -> {
+          try {
+            return new RCodeInfo(pl.getByteBuffer(entry)).isClass();
+          } catch (IOException | InvalidRCodeException caught) {
+            throw new IllegalStateException(caught);
+          }
+        }).count();
+    Assert.assertTrue(numClasses > 0);
+  }
+
 }
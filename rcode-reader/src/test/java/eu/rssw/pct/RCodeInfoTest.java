@@ -25,7 +25,13 @@ import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.testng.annotations.Test;
 
@@ -210,4 +216,33 @@ public class RCodeInfoTest {
     }
   }
 
+  @Test
+  public void testPartialSkip() throws IOException {
+    // InputStream#skip() is allowed to skip less bytes than requested
+    try (InputStream input = new FilterInputStream(new FileInputStream("src/test/resources/rcode/propList.r")) {
+      @Override
+      public long skip(long n) throws IOException {
+        return super.skip(Math.min(n, 1));
+      }
+    }) {
+      RCodeInfo rci = new RCodeInfo(input);
+      assertTrue(rci.isClass());
+      assertEquals(rci.getTypeInfo().getProperties().size(), 6);
+    } catch (InvalidRCodeException caught) {
+      throw new RuntimeException("RCode should be valid", caught);
+    }
+  }
+
+  @Test(expectedExceptions = InvalidRCodeException.class)
+  public void testTruncated() throws IOException, InvalidRCodeException {
+    // FileInputStream#skip() can go past the end of file
+    byte[] rcode = Files.readAllBytes(Paths.get("src/test/resources/rcode/propList.r"));
+    Path truncated = Files.createTempFile("rcode", ".r");
+    Files.write(truncated, Arrays.copyOf(rcode, rcode.length / 2));
+    try (InputStream input = new FileInputStream(truncated.toFile())) {
+      new RCodeInfo(input);
+    } finally {
+      Files.delete(truncated);
+    }
+  }
 }
@@ -0,0 +1,108 @@
+/*
+ * OpenEdge plugin for SonarQube
+ * Copyright (c) 2015-2018 Riverside Software
+ * contact AT riverside DASH software DOT fr
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package eu.rssw.pct;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import org.testng.annotations.Test;
+
+import eu.rssw.pct.RCodeInfo.InvalidRCodeException;
+import eu.rssw.pct.elements.IPropertyElement;
+import eu.rssw.pct.elements.ITypeInfo;
+import eu.rssw.pct.elements.v11.TypeInfoSerializer;
+
+public class TypeInfoSerializerTest {
+
+  @Test
+  public void testAllClasses() throws IOException, InvalidRCodeException {
+    int numClasses = 0;
+    for (File f : new File("src/test/resources/rcode").listFiles((dir, name) -> name.endsWith(".r"))) {
+      try (FileInputStream input = new FileInputStream(f)) {
+        RCodeInfo rci = new RCodeInfo(input);
+        if (!rci.isClass())
+          continue;
+        numClasses++;
+        ITypeInfo info = rci.getTypeInfo();
+        ITypeInfo info2 = read(write(info));
+        assertEquals(info2.getTypeName(), info.getTypeName());
+        assertEquals(info2.getParentTypeName(), info.getParentTypeName());
+        assertEquals(info2.getInterfaces(), info.getInterfaces());
+        assertEquals(info2.getMethods().size(), info.getMethods().size());
+        assertEquals(info2.getProperties().size(), info.getProperties().size());
+        assertEquals(info2.getTables().size(), info.getTables().size());
+        assertEquals(info2.getBuffers().size(), info.getBuffers().size());
+        // Nothing is lost after first round-trip
+        assertEquals(write(info2), write(info), f.getName());
+      }
+    }
+    assertTrue(numClasses > 5);
+  }
+
+  @Test
+  public void testProperties() throws IOException, InvalidRCodeException {
+    try (FileInputStream input = new FileInputStream("src/test/resources/rcode/propList.r")) {
+      ITypeInfo info = read(write(new RCodeInfo(input).getTypeInfo()));
+      assertEquals(info.getProperties().size(), 6);
+      IPropertyElement prop5 = info.getProperty("prop5");
+      assertNotNull(prop5);
+      assertTrue(prop5.isProtected());
+      assertTrue(prop5.isAbstract());
+      IPropertyElement prop6 = info.getProperty("prop6");
+      assertNotNull(prop6);
+      assertTrue(prop6.isPublic());
+      assertTrue(prop6.isStatic());
+    }
+  }
+
+  @Test
+  public void testProgressClasses() throws IOException {
+    for (ITypeInfo info : ProgressClasses.getProgressClasses()) {
+      ITypeInfo info2 = read(write(info));
+      assertEquals(info2.getTypeName(), info.getTypeName());
+      assertEquals(info2.getMethods().size(), 4);
+      assertTrue(info2.hasMethod("ToString"));
+      assertEquals(write(info2), write(info));
+    }
+  }
+
+  private static byte[] write(ITypeInfo info) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(baos)) {
+      TypeInfoSerializer.write(info, out);
+    }
+    return baos.toByteArray();
+  }
+
+  private static ITypeInfo read(byte[] bytes) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+      return TypeInfoSerializer.read(in);
+    }
+  }
+}